@@ -0,0 +1,73 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.benchmark;
+
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.SyntheticDataGenerator;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Seeded input files of the benchmarks, written by {@link SyntheticDataGenerator}: an MGF and an mzML file with the
+ * same spectra and an mzIdentML file with one PSM per spectrum, so the benchmarks don't depend on files that can't
+ * be shared.
+ */
+public class BenchmarkData {
+
+    private final SyntheticDataGenerator generator = new SyntheticDataGenerator();
+
+    /**
+     * @param numberOfSpectra number of spectra and PSMs
+     * @param seed seed of the peptides and peaks
+     */
+    public BenchmarkData(int numberOfSpectra, long seed) {
+        generator.setNumberOfPsms(numberOfSpectra);
+        generator.setSeed(seed);
+    }
+
+    public int getNumberOfSpectra() {
+        return (int) generator.getNumberOfPsms();
+    }
+
+    /**
+     * @return title of the spectrum in the MGF file, id of the spectrum in the mzML file
+     */
+    public static String getSpectrumTitle(int spectrum) {
+        return SyntheticDataGenerator.getSpectrumTitle(spectrum);
+    }
+
+    public void writeMgf(File file) throws IOException {
+        generator.writeMgf(file);
+    }
+
+    public void writeMzMl(File file) throws IOException {
+        generator.writeMzMl(file);
+    }
+
+    /**
+     * Write an mzIdentML 1.1 file with one PSM per spectrum of the MGF file, identified by the index of the spectrum.
+     *
+     * @param file mzIdentML file
+     * @param mgfFile MGF file written by {@link #writeMgf(File)}
+     */
+    public void writeMzIdentML(File file, File mgfFile) throws IOException {
+        generator.setPeakFormat(SyntheticDataGenerator.PeakFormat.MGF);
+        generator.setResultFormat(SyntheticDataGenerator.ResultFormat.MZID);
+        generator.writeMzIdentML(file, mgfFile);
+    }
+
+    /**
+     * @param zip zip archive to write
+     * @param files files stored in the archive
+     */
+    public static void zip(File zip, List<File> files) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zip)))) {
+            for (File file : files) {
+                out.putNextEntry(new ZipEntry(file.getName()));
+                Files.copy(file.toPath(), out);
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Compares a JMH result file with the baseline of the project and fails when a benchmark got slower than the
+ * threshold allows. Benchmarks are matched on their name and parameters; the ones missing from either file are
+ * reported but don't fail the check, a missing baseline does. With -update the result replaces the baseline.
+ *
+ * <pre>
+ * BenchmarkRegression baseline.json result.json thresholdPercent [-check|-update]
+ * </pre>
+ */
+public class BenchmarkRegression {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: BenchmarkRegression baseline.json result.json thresholdPercent [-check|-update]");
+            System.exit(2);
+        }
+        File baselineFile = new File(args[0]);
+        File resultFile = new File(args[1]);
+        double threshold = Double.parseDouble(args[2]);
+        if (args.length > 3 && "-update".equals(args[3])) {
+            Files.createDirectories(baselineFile.getAbsoluteFile().getParentFile().toPath());
+            Files.copy(resultFile.toPath(), baselineFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Baseline updated: " + baselineFile);
+            return;
+        }
+        if (!baselineFile.isFile()) {
+            System.err.println("No baseline at " + baselineFile + ", run the benchmarks with -Djmh.updateBaseline to create it");
+            System.exit(1);
+        }
+        Map<String, Score> baseline = read(baselineFile);
+        Map<String, Score> result = read(resultFile);
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Score> entry : result.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if (before == null) {
+                System.out.println("NEW\t" + entry.getKey() + "\t" + after);
+                continue;
+            }
+            // throughput is better when higher, the other modes measure time
+            double change = 100 * (after.score - before.score) / before.score * (after.isThroughput() ? -1 : 1);
+            String line = String.format(Locale.ROOT, "%s\t%s\t%s -> %s\t%+.1f%%", change > threshold ? "SLOWER" : "OK",
+                    entry.getKey(), before, after, change);
+            System.out.println(line);
+            if (change > threshold) {
+                regressions.add(line);
+            }
+        }
+        for (String key : baseline.keySet()) {
+            if (!result.containsKey(key)) {
+                System.out.println("MISSING\t" + key);
+            }
+        }
+        if (!regressions.isEmpty()) {
+            System.err.println(regressions.size() + " benchmarks are more than " + threshold + "% slower than the baseline");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> read(File file) throws IOException {
+        Object json = new JsonParser(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)).parse();
+        Map<String, Score> scores = new TreeMap<>();
+        for (Object item : (List<?>) json) {
+            Map<?, ?> benchmark = (Map<?, ?>) item;
+            StringBuilder key = new StringBuilder((String) benchmark.get("benchmark"));
+            Map<?, ?> params = (Map<?, ?>) benchmark.get("params");
+            if (params != null) {
+                for (Map.Entry<?, ?> param : new TreeMap<>(params).entrySet()) {
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue());
+                }
+            }
+            Map<?, ?> metric = (Map<?, ?>) benchmark.get("primaryMetric");
+            Object score = metric.get("score");
+            double value = score instanceof Number ? ((Number) score).doubleValue() : Double.parseDouble(String.valueOf(score));
+            if (!Double.isNaN(value)) {
+                scores.put(key.toString(), new Score(value, (String) metric.get("scoreUnit"), (String) benchmark.get("mode")));
+            }
+        }
+        return scores;
+    }
+
+    private static class Score {
+
+        private final double score;
+        private final String unit;
+        private final String mode;
+
+        Score(double score, String unit, String mode) {
+            this.score = score;
+            this.unit = unit;
+            this.mode = mode;
+        }
+
+        boolean isThroughput() {
+            return "thrpt".equals(mode);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.3f %s", score, unit);
+        }
+    }
+
+    /**
+     * Just enough JSON for the JMH result files: objects, arrays, strings, numbers, booleans and null.
+     */
+    private static class JsonParser {
+
+        private final String text;
+        private int position;
+
+        JsonParser(String text) {
+            this.text = text;
+        }
+
+        Object parse() {
+            skipWhitespace();
+            char c = text.charAt(position);
+            if (c == '{') {
+                Map<String, Object> object = new LinkedHashMap<>();
+                position++;
+                skipWhitespace();
+                if (text.charAt(position) == '}') {
+                    position++;
+                    return object;
+                }
+                do {
+                    skipWhitespace();
+                    String name = parseString();
+                    skipWhitespace();
+                    expect(':');
+                    object.put(name, parse());
+                    skipWhitespace();
+                } while (text.charAt(position++) == ',');
+                return object;
+            } else if (c == '[') {
+                List<Object> array = new ArrayList<>();
+                position++;
+                skipWhitespace();
+                if (text.charAt(position) == ']') {
+                    position++;
+                    return array;
+                }
+                do {
+                    array.add(parse());
+                    skipWhitespace();
+                } while (text.charAt(position++) == ',');
+                return array;
+            } else if (c == '"') {
+                return parseString();
+            } else if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            } else if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            } else if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            String number = text.substring(start, position);
+            // JMH writes "NaN" between quotes, so any other token is an error
+            if (number.isEmpty()) {
+                throw new IllegalArgumentException("Unexpected character at " + position + ": " + c);
+            }
+            return Double.parseDouble(number);
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            char c;
+            while ((c = text.charAt(position++)) != '"') {
+                if (c == '\\') {
+                    c = text.charAt(position++);
+                    switch (c) {
+                        case 'n':
+                            value.append('\n');
+                            break;
+                        case 't':
+                            value.append('\t');
+                            break;
+                        case 'r':
+                            value.append('\r');
+                            break;
+                        case 'b':
+                            value.append('\b');
+                            break;
+                        case 'f':
+                            value.append('\f');
+                            break;
+                        case 'u':
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                            position += 4;
+                            break;
+                        default:
+                            value.append(c);
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+            return value.toString();
+        }
+
+        private void expect(char c) {
+            if (text.charAt(position) != c) {
+                throw new IllegalArgumentException("Expected " + c + " at " + position);
+            }
+            position++;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
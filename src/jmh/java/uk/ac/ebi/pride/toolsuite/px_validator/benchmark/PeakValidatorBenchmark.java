@@ -0,0 +1,73 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.benchmark;
+
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.MzIdentMLStreamValidator;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.PeakReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ResultReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.validators.PeakValidationOptions;
+import uk.ac.ebi.pride.toolsuite.px_validator.validators.PeakValidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Peak validation of the PSMs of an mzIdentML file against its MGF file, indexing included, with the default
+ * sample and with every PSM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PeakValidatorBenchmark {
+
+    @Param({"10000"})
+    private int psms;
+
+    @Param({"false", "true"})
+    private boolean fullPeakCheck;
+
+    private File folder;
+    private File mgf;
+    private PIASimpleCompiler piaCompiler;
+    private List<SpectraData> spectraData;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("peak-benchmark").toFile();
+        BenchmarkData data = new BenchmarkData(psms, 1);
+        mgf = new File(folder, "benchmark.mgf");
+        data.writeMgf(mgf);
+        File mzIdentML = new File(folder, "benchmark.mzid");
+        data.writeMzIdentML(mzIdentML, mgf);
+        MzIdentMLStreamValidator validator = new MzIdentMLStreamValidator(new ResultReport());
+        validator.validate(mzIdentML);
+        spectraData = validator.getSpectraData();
+        piaCompiler = new PIASimpleCompiler();
+        piaCompiler.getDataFromFile(mzIdentML.getName(), mzIdentML.getAbsolutePath(), null,
+                InputFileParserFactory.InputFileTypes.MZIDENTML_INPUT.getFileTypeShort());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public List<PeakReport> validate() {
+        PeakValidationOptions options = new PeakValidationOptions();
+        // the peak file is indexed by every invocation
+        options.setIndexCache(null);
+        options.setFullPeakCheck(fullPeakCheck);
+        return new PeakValidator(piaCompiler, spectraData, Collections.singletonList(mgf), new ResultReport(), options).validate();
+    }
+}
@@ -0,0 +1,55 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ebi.pride.data.validation.ValidationMessage;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.PeakReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ResultReport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of a large report, with many peak files and many errors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResultReportBenchmark {
+
+    @Param({"100", "10000"})
+    private int peakFiles;
+
+    @Param({"0", "100000"})
+    private int errors;
+
+    private ResultReport report;
+
+    @Setup
+    public void setUp() {
+        report = new ResultReport();
+        report.setAssayFile("benchmark.mzid");
+        List<PeakReport> peakReports = new ArrayList<>();
+        for (int i = 0; i < peakFiles; i++) {
+            PeakReport peakReport = new PeakReport();
+            peakReport.setPeakFile("benchmark" + i + ".mgf");
+            peakReport.setNumberOfPeaks(1000);
+            peakReport.setNumberOfDetectedPsms(1000);
+            peakReports.add(peakReport);
+        }
+        report.setPeakReports(peakReports);
+        report.setNumberOfPeakFiles(peakFiles);
+        for (int i = 0; i < errors; i++) {
+            report.addException(new IOException("Error " + i), ValidationMessage.Type.ERROR);
+        }
+    }
+
+    @Benchmark
+    public String render() {
+        return report.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.MzIdentMLStreamValidator;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ResultReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XSD validation of an mzIdentML file, alone and with the counting of proteins, peptides and PSMs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SchemaValidationBenchmark {
+
+    @Param({"10000"})
+    private int psms;
+
+    private File folder;
+    private File mzIdentML;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("schema-benchmark").toFile();
+        BenchmarkData data = new BenchmarkData(psms, 1);
+        File mgf = new File(folder, "benchmark.mgf");
+        data.writeMgf(mgf);
+        mzIdentML = new File(folder, "benchmark.mzid");
+        data.writeMzIdentML(mzIdentML, mgf);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public int validateSchema() {
+        ResultReport report = new ResultReport();
+        new MzIdentMLStreamValidator(report, MzIdentMLStreamValidator.Mode.SCHEMA_ONLY).validate(mzIdentML);
+        return report.getNumErrors();
+    }
+
+    @Benchmark
+    public int validateSchemaAndCount() {
+        ResultReport report = new ResultReport();
+        MzIdentMLStreamValidator validator = new MzIdentMLStreamValidator(report, MzIdentMLStreamValidator.Mode.FULL);
+        validator.validate(mzIdentML);
+        return validator.getNumberOfPSMs();
+    }
+}
@@ -0,0 +1,89 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.benchmark;
+
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
+import de.mpc.pia.modeller.PIAModeller;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.SpectraDataExtractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the SpectraData of an mzIdentML file with {@link SpectraDataExtractor}, against the former round trip
+ * through PIA: writing the PIA intermediate XML to a temp file and parsing it again with PIAModeller. The PIA
+ * compiler is filled and its intermediate structure built once in the setup, so the round trip time only counts
+ * the write and the parse. The bytes of the temp files are reported as the tempBytes counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpectraDataExtractionBenchmark {
+
+    @Param({"10000"})
+    private int psms;
+
+    private File folder;
+    private File mzIdentML;
+    private PIASimpleCompiler piaCompiler;
+
+    /**
+     * Bytes written to temp files by the invocations of an iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class TempFiles {
+        public long tempBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tempBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("spectradata-benchmark").toFile();
+        BenchmarkData data = new BenchmarkData(psms, 1);
+        File mgf = new File(folder, "benchmark.mgf");
+        data.writeMgf(mgf);
+        mzIdentML = new File(folder, "benchmark.mzid");
+        data.writeMzIdentML(mzIdentML, mgf);
+        piaCompiler = new PIASimpleCompiler();
+        piaCompiler.getDataFromFile(mzIdentML.getName(), mzIdentML.getAbsolutePath(), null,
+                InputFileParserFactory.InputFileTypes.MZIDENTML_INPUT.getFileTypeShort());
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public int extractSpectraData(TempFiles tempFiles) throws IOException {
+        return SpectraDataExtractor.fromMzIdentML(mzIdentML).size();
+    }
+
+    @Benchmark
+    public int piaRoundTrip(TempFiles tempFiles) throws IOException {
+        File intermediate = File.createTempFile("assay", ".tmp", folder);
+        try {
+            piaCompiler.writeOutXML(intermediate);
+            tempFiles.tempBytes += intermediate.length();
+            Collection<SpectraData> spectraData = new PIAModeller(intermediate.getAbsolutePath()).getSpectraData().values();
+            return spectraData.size();
+        } finally {
+            Files.delete(intermediate.toPath());
+        }
+    }
+}
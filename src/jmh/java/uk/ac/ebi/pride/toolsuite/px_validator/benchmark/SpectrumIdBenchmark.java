@@ -0,0 +1,75 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.benchmark;
+
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIDFormat;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.Utility;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spectrum id of a PSM for every spectrum id format, {@link Utility#getSpectrumId(SpectraData, PeptideSpectrumMatch)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpectrumIdBenchmark {
+
+    private static final int PSMS = 1024;
+
+    /**
+     * Accessions of the formats of {@link Utility.SpecIdFormat}, none for a format without accession
+     */
+    @Param({"MS:1001528", "MS:1000774", "MS:1000775", "MS:1001530", "MS:1000776", "MS:1000770", "MS:1000777",
+            "MS:1000768", "MS:1000796", "none"})
+    private String accession;
+
+    private SpectraData spectraData;
+    private PeptideSpectrumMatch[] psms;
+
+    @Setup
+    public void setUp() {
+        CvParam cvParam = new CvParam();
+        cvParam.setAccession(accession);
+        SpectrumIDFormat format = new SpectrumIDFormat();
+        format.setCvParam(cvParam);
+        spectraData = new SpectraData();
+        spectraData.setSpectrumIDFormat(format);
+        String prefix;
+        switch (Utility.getSpectraDataIdFormat(accession)) {
+            case MASCOT_QUERY_NUM:
+                prefix = "query=";
+                break;
+            case MULTI_PEAK_LIST_NATIVE_ID:
+                prefix = "index=";
+                break;
+            case SINGLE_PEAK_LIST_NATIVE_ID:
+                prefix = "file=";
+                break;
+            case MZML_ID:
+                prefix = "mzMLid=";
+                break;
+            default:
+                prefix = "scan=";
+        }
+        psms = new PeptideSpectrumMatch[PSMS];
+        for (int i = 0; i < PSMS; i++) {
+            psms[i] = new PeptideSpectrumMatch((long) i, 2, 500.0, 0.0, null, "PEPTIDEK", 0, prefix + i,
+                    BenchmarkData.getSpectrumTitle(i), null, null);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PSMS)
+    public void getSpectrumId(Blackhole blackhole) {
+        for (PeptideSpectrumMatch psm : psms) {
+            blackhole.consume(Utility.getSpectrumId(spectraData, psm));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.JmzReaderSpectrumService;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.PeakList;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.Utility;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
+import uk.ac.ebi.pride.utilities.util.Triple;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random access to the spectra of an indexed MGF or mzML file, through the reader and through the peak list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpectrumLookupBenchmark {
+
+    private static final int SPECTRA = 20000;
+
+    @Param({"MGF", "MZML"})
+    private Utility.FileType format;
+
+    private File folder;
+    private String path;
+    private JmzReaderSpectrumService service;
+    private String[] ids;
+    private int[] positions;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("lookup-benchmark").toFile();
+        BenchmarkData data = new BenchmarkData(SPECTRA, 1);
+        File file = new File(folder, format == Utility.FileType.MGF ? "benchmark.mgf" : "benchmark.mzML");
+        if (format == Utility.FileType.MGF) {
+            data.writeMgf(file);
+        } else {
+            data.writeMzMl(file);
+        }
+        path = file.getPath();
+        service = JmzReaderSpectrumService.getInstance(
+                Collections.singletonList(new Triple<>(path, null, format)), 1, null);
+        service.getSpectrumIndex(path);
+        // random order, the same for every run
+        Random random = new Random(1);
+        ids = new String[SPECTRA];
+        positions = new int[SPECTRA];
+        for (int i = 0; i < SPECTRA; i++) {
+            positions[i] = random.nextInt(SPECTRA);
+            ids[i] = BenchmarkData.getSpectrumTitle(positions[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        service.close();
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public Spectrum getSpectrumById() throws JMzReaderException {
+        next = (next + 1) % SPECTRA;
+        return service.getSpectrumById(path, ids[next]);
+    }
+
+    @Benchmark
+    public PeakList getPeakList() throws JMzReaderException {
+        next = (next + 1) % SPECTRA;
+        return service.getPeakList(path, positions[next]);
+    }
+}
@@ -0,0 +1,56 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ebi.pride.toolsuite.px_validator.Validator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of a zip archive of peak files, {@link Validator#extractZipArchives(List)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UnzipBenchmark {
+
+    @Param({"4"})
+    private int files;
+
+    private File folder;
+    private File zip;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("unzip-benchmark").toFile();
+        File content = new File(folder, "content");
+        content.mkdirs();
+        List<File> peakFiles = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            File mgf = new File(content, "benchmark" + i + ".mgf");
+            new BenchmarkData(5000, i).writeMgf(mgf);
+            peakFiles.add(mgf);
+        }
+        zip = new File(folder, "benchmark.zip");
+        BenchmarkData.zip(zip, peakFiles);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public List<File> extractZipArchives() {
+        return Validator.extractZipArchives(Collections.singletonList(zip));
+    }
+}
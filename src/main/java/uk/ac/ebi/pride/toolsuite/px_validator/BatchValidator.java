@@ -0,0 +1,341 @@
+package uk.ac.ebi.pride.toolsuite.px_validator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import uk.ac.ebi.pride.data.validation.ValidationMessage;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.BatchReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.IReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.JmzReaderSpectrumService;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.Report;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ReportFormat;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ReportMessage;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.SubmissionGraph;
+import uk.ac.ebi.pride.toolsuite.px_validator.validators.MzIdValidator;
+import uk.ac.ebi.pride.toolsuite.px_validator.validators.MzTabValidator;
+import uk.ac.ebi.pride.toolsuite.px_validator.validators.PeakValidationOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static uk.ac.ebi.pride.toolsuite.px_validator.utils.Utility.*;
+
+/**
+ * Validates many mzIdentML and mzTab files in one JVM. The files come from a directory or from a manifest, a text
+ * file with one result file per line optionally followed by its peak files, separated by tabs; relative paths are
+ * resolved against the manifest folder and lines starting with # are ignored.
+ *
+ * Every file is validated as if it was given alone on the command line, with the other options of the batch. The
+ * files are queued largest first and taken by the workers of a fork-join pool as they become free, so the long
+ * validations start early and the short ones fill the gaps at the end.
+ *
+ * The result files of a submission.px are validated the same way, with one spectrum service shared by all of them
+ * so that a peak file referenced by several result files is only indexed once.
+ *
+ * @author ypriverol
+ */
+@Slf4j
+public class BatchValidator {
+
+  private static final String MANIFEST_COMMENT = "#";
+  private static final String REPORT_EXT = ".report";
+  private static final String MZTAB_LOG_EXT = ".mztab-errors.txt";
+  /**
+   * Options that are set per file and not copied from the batch command line.
+   */
+  private static final Set<String> FILE_OPTIONS = new HashSet<>(Arrays.asList(ARG_BATCH, ARG_MZID, ARG_MZTAB, ARG_PXFILE,
+      ARG_PX_FILES, ARG_OUTPUTFILE, ARG_REPORTFILE, ARG_REPORT_DIR, ARG_BATCH_THREADS));
+
+  private final CommandLine cmd;
+  private final File reportDirectory;
+  private final ReportFormat reportFormat;
+  private final int threads;
+  private final SubmissionGraph submission;
+  private final JmzReaderSpectrumService spectrumService;
+
+  /**
+   * @param cmd command line arguments, with the -batch option
+   */
+  public BatchValidator(CommandLine cmd) {
+    this(cmd, null, null);
+  }
+
+  /**
+   * @param cmd command line arguments
+   * @param submission result files of a submission with their peak files, null to read them from the -batch option
+   * @param spectrumService spectrum service shared by all the result files, may be null
+   */
+  public BatchValidator(CommandLine cmd, SubmissionGraph submission, JmzReaderSpectrumService spectrumService) {
+    this.cmd = cmd;
+    this.submission = submission;
+    this.spectrumService = spectrumService;
+    if (cmd.hasOption(ARG_REPORT_DIR)) {
+      reportDirectory = new File(cmd.getOptionValue(ARG_REPORT_DIR));
+    } else if (cmd.hasOption(ARG_REPORTFILE)) {
+      reportDirectory = new File(cmd.getOptionValue(ARG_REPORTFILE)).getAbsoluteFile().getParentFile();
+    } else {
+      reportDirectory = null;
+    }
+    reportFormat = ReportFormat.fromCommandLine(cmd);
+    threads = cmd.hasOption(ARG_BATCH_THREADS) ? Integer.parseInt(cmd.getOptionValue(ARG_BATCH_THREADS)) : getDefaultThreads();
+    if (threads < 1) {
+      throw new IllegalArgumentException("The number of batch threads must be a positive number -- " + threads);
+    }
+  }
+
+  /**
+   * @return half the available processors, validations also use threads of their own
+   */
+  public static int getDefaultThreads() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  }
+
+  /**
+   * Validate all the files of the batch and write the report of every file to the report folder.
+   *
+   * @return summary of the batch
+   */
+  public IReport validate() {
+    BatchReport batchReport = new BatchReport();
+    // the result of every file is added to the report file as soon as it is validated
+    streamMessages(batchReport, cmd.hasOption(ARG_REPORTFILE) ? new File(cmd.getOptionValue(ARG_REPORTFILE)) : null, reportFormat);
+    return validate(batchReport);
+  }
+
+  /**
+   * @param batchReport report the files are added to
+   * @return summary of the batch
+   */
+  public BatchReport validate(BatchReport batchReport) {
+    batchReport.setNumberOfThreads(threads);
+    List<Job> jobs;
+    try {
+      jobs = submission != null ? getJobs(submission) : getJobs(new File(cmd.getOptionValue(ARG_BATCH)));
+      setReportNames(jobs);
+      if (reportDirectory != null && !reportDirectory.isDirectory() && !reportDirectory.mkdirs()) {
+        throw new IOException("Unable to create the report folder " + reportDirectory);
+      }
+    } catch (IOException e) {
+      batchReport.addException(e, ValidationMessage.Type.ERROR);
+      return batchReport;
+    }
+    // largest first, the workers take the next file of the queue when they are done
+    jobs.sort(Comparator.comparingLong((Job job) -> job.file.length()).reversed());
+    log.info("Validating " + jobs.size() + " files with " + threads + " threads");
+
+    long start = System.currentTimeMillis();
+    AtomicInteger next = new AtomicInteger();
+    List<Callable<Void>> workers = new ArrayList<>();
+    for (int i = 0; i < Math.min(threads, jobs.size()); i++) {
+      workers.add(() -> {
+        int job;
+        while ((job = next.getAndIncrement()) < jobs.size()) {
+          batchReport.addEntry(run(jobs.get(job)));
+        }
+        return null;
+      });
+    }
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      pool.invokeAll(workers);
+    } finally {
+      pool.shutdown();
+    }
+    batchReport.setWallTime(System.currentTimeMillis() - start);
+    return batchReport;
+  }
+
+  private BatchReport.Entry run(Job job) {
+    long start = System.currentTimeMillis();
+    log.info("Validating " + job.file.getPath());
+    IReport report;
+    try {
+      CommandLine jobCmd = SubmissionToolValidator.parseArgs(getArgs(job));
+      if (spectrumService != null) {
+        PeakValidationOptions options = PeakValidationOptions.fromCommandLine(jobCmd);
+        options.setSpectrumService(spectrumService);
+        report = (job.type == FileType.MZTAB ? MzTabValidator.getInstance(jobCmd, options)
+            : MzIdValidator.getInstance(jobCmd, options)).validate();
+      } else {
+        report = Validator.startValidation(jobCmd);
+      }
+    } catch (Exception e) {
+      log.error("Validation of " + job.file.getPath() + " failed", e);
+      report = null;
+    }
+    long time = System.currentTimeMillis() - start;
+    if (report == null) {
+      Report failure = new Report();
+      failure.addMessage(new ReportMessage(ValidationMessage.Type.ERROR, "Validation of " + job.file.getPath() + " failed"));
+      writeReport(job, failure);
+    } else {
+      writeReport(job, report);
+    }
+    log.info("Validated " + job.file.getPath() + " in " + time + "ms");
+    return new BatchReport.Entry(job.file.getPath(), job.file.length(), report, time);
+  }
+
+  private void writeReport(Job job, IReport report) {
+    if (reportDirectory == null) {
+      log.info(report.toString());
+      return;
+    }
+    outputReport(report, new File(reportDirectory, job.reportName + REPORT_EXT + reportFormat.getExtension()), reportFormat);
+  }
+
+  /**
+   * @return the command line of the validation of a single file
+   */
+  private String[] getArgs(Job job) throws IOException {
+    List<String> args = new ArrayList<>();
+    boolean hasOwnPeaks = !job.peakFiles.isEmpty();
+    for (Option option : cmd.getOptions()) {
+      if (FILE_OPTIONS.contains(option.getOpt())
+          || (hasOwnPeaks && (ARG_PEAK.equals(option.getOpt()) || ARG_PEAKS.equals(option.getOpt())))) {
+        continue;
+      }
+      if (option.getValues() == null) {
+        args.add("-" + option.getOpt());
+      } else {
+        for (String value : option.getValues()) {
+          args.add("-" + option.getOpt());
+          args.add(value);
+        }
+      }
+    }
+    for (File peakFile : job.peakFiles) {
+      args.add("-" + ARG_PEAK);
+      args.add(peakFile.getPath());
+    }
+    if (job.type == FileType.MZTAB) {
+      args.add("-" + ARG_MZTAB);
+      args.add(job.file.getPath());
+      // the mzTab parser writes its messages to a file
+      File parserLog;
+      if (reportDirectory != null) {
+        parserLog = new File(reportDirectory, job.reportName + MZTAB_LOG_EXT);
+      } else {
+        parserLog = File.createTempFile(job.file.getName(), MZTAB_LOG_EXT);
+        parserLog.deleteOnExit();
+      }
+      args.add("-" + ARG_OUTPUTFILE);
+      args.add(parserLog.getPath());
+    } else {
+      args.add("-" + ARG_MZID);
+      args.add(job.file.getPath());
+    }
+    return args.toArray(new String[0]);
+  }
+
+  /**
+   * @param batch folder of result files or manifest
+   * @return the files to validate
+   * @throws IOException if the manifest can't be read or lists a missing or unsupported file
+   */
+  private static List<Job> getJobs(File batch) throws IOException {
+    List<Job> jobs = new ArrayList<>();
+    if (batch.isDirectory()) {
+      File[] files = batch.listFiles(File::isFile);
+      if (files != null) {
+        for (File file : files) {
+          FileType type = FileType.getFileTypeFromPRIDEFileName(file.getName());
+          if (type == FileType.MZID || type == FileType.MZTAB) {
+            jobs.add(new Job(file, type, Collections.emptyList()));
+          }
+        }
+      }
+    } else if (batch.isFile()) {
+      File folder = batch.getAbsoluteFile().getParentFile();
+      int lineNumber = 0;
+      for (String line : Files.readAllLines(batch.toPath(), StandardCharsets.UTF_8)) {
+        lineNumber++;
+        if (line.trim().isEmpty() || line.trim().startsWith(MANIFEST_COMMENT)) {
+          continue;
+        }
+        String[] fields = line.split("\t");
+        File file = resolve(folder, fields[0].trim());
+        FileType type = FileType.getFileTypeFromPRIDEFileName(file.getName());
+        if (!file.isFile()) {
+          throw new IOException("Line " + lineNumber + " of " + batch.getName() + ": the file can't be found -- " + file);
+        }
+        if (type != FileType.MZID && type != FileType.MZTAB) {
+          throw new IOException("Line " + lineNumber + " of " + batch.getName() + ": not an mzIdentML or mzTab file -- " + file);
+        }
+        List<File> peakFiles = new ArrayList<>();
+        for (int i = 1; i < fields.length; i++) {
+          if (!fields[i].trim().isEmpty()) {
+            peakFiles.add(resolve(folder, fields[i].trim()));
+          }
+        }
+        jobs.add(new Job(file, type, peakFiles));
+      }
+    } else {
+      throw new IOException("The batch folder or manifest can't be found -- " + batch);
+    }
+    if (jobs.isEmpty()) {
+      throw new IOException("No mzIdentML or mzTab file to validate in " + batch);
+    }
+    return jobs;
+  }
+
+  /**
+   * @param submission result files of a submission
+   * @return the files to validate
+   * @throws IOException if the submission has no result file
+   */
+  private static List<Job> getJobs(SubmissionGraph submission) throws IOException {
+    List<Job> jobs = new ArrayList<>();
+    for (File file : submission.getResultFiles()) {
+      jobs.add(new Job(file, submission.getResultFileType(file), submission.getPeakFiles(file)));
+    }
+    if (jobs.isEmpty()) {
+      throw new IOException("No mzIdentML or mzTab file to validate in the submission");
+    }
+    return jobs;
+  }
+
+  /**
+   * Name the report files of the jobs after their result files. Result files from different folders can have the
+   * same name, the second one and the next are prefixed with their position in the batch so that no report
+   * overwrites another.
+   */
+  private static void setReportNames(List<Job> jobs) {
+    Set<String> names = new HashSet<>();
+    for (int i = 0; i < jobs.size(); i++) {
+      Job job = jobs.get(i);
+      String name = job.file.getName();
+      for (int prefix = i + 1; !names.add(name); prefix += jobs.size()) {
+        name = prefix + "_" + job.file.getName();
+      }
+      job.reportName = name;
+    }
+  }
+
+  private static File resolve(File folder, String path) {
+    File file = new File(path);
+    return file.isAbsolute() ? file : new File(folder, path);
+  }
+
+  private static class Job {
+
+    private final File file;
+    private final FileType type;
+    private final List<File> peakFiles;
+    /**
+     * Name of the report files of the job, unique in the batch.
+     */
+    private String reportName;
+
+    Job(File file, FileType type, List<File> peakFiles) {
+      this.file = file;
+      this.type = type;
+      this.peakFiles = peakFiles;
+    }
+  }
+}
@@ -3,8 +3,11 @@ package uk.ac.ebi.pride.toolsuite.px_validator;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.cli.*;
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.IReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ReportFormat;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.SyntheticDataGenerator;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 
 import static uk.ac.ebi.pride.toolsuite.px_validator.utils.Utility.*;
@@ -33,16 +36,23 @@ public class SubmissionToolValidator {
     try {
       CommandLine cmd = SubmissionToolValidator.parseArgs(args);
       if (args.length > 0) {
-        if (cmd.hasOption(ARG_VALIDATION)) {
+        if (cmd.hasOption(ARG_DAEMON)) {
+          new ValidationServer(cmd).start();
+        } else if (cmd.hasOption(ARG_GENERATE)) {
+          SyntheticDataGenerator.fromCommandLine(cmd).generate(new File(cmd.getOptionValue(ARG_GENERATE)));
+        } else if (cmd.hasOption(ARG_VALIDATION)) {
           IReport report = Validator.startValidation(cmd);
           if (report != null) {
             if(cmd.hasOption(ARG_REPORTFILE)){
               File outputFile  = cmd.hasOption(ARG_REPORTFILE) ? new File(cmd.getOptionValue(ARG_REPORTFILE)) : null;
-              outputReport(report, outputFile);
+              outputReport(report, outputFile, ReportFormat.fromCommandLine(cmd));
             }else {
               log.info(report.toString());
             }
           }
+          // startup cost of the mode, the management beans add a few dozen classes of their own
+          log.info("Finished " + ManagementFactory.getRuntimeMXBean().getUptime() + "ms after JVM start, "
+              + ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount() + " classes loaded");
         }  else {
           log.error("Did not find validation command from arguments ");
           Arrays.stream(args).forEach(log::error);
@@ -60,7 +70,7 @@ public class SubmissionToolValidator {
    * @return a CommandLine object of the parsed command line arguments.
    * @throws ParseException if there are problems parsing the command line arguments.
    */
-  private static CommandLine parseArgs(String[] args) throws ParseException{
+  static CommandLine parseArgs(String[] args) throws ParseException{
     Options options = new Options();
     options.addOption(ARG_VALIDATION, false, "start to validate a file");
     options.addOption(ARG_CONVERSION, false, "start to convert a file");
@@ -75,9 +85,39 @@ public class SubmissionToolValidator {
     options.addOption(ARG_INPUTFILE, true, "exact input file");
     options.addOption(ARG_CHROMSIZES, true, "chrom sizes file");
     options.addOption(ARG_REPORTFILE, true, "report file");
+    options.addOption(ARG_REPORT_FORMAT, true, "format of the report file: text, jsonl or tsv (default text), the messages of jsonl and tsv reports are written as they are found");
     options.addOption(ARG_SCHEMA_VALIDATION, false, "XML Schema validation");
     options.addOption(ARG_SCHEMA_ONLY_VALIDATION, false, "XML Schema-only validation");
     options.addOption(ARG_FAST_VALIDATION, false, "Fast Validation of MzIdentML files");
+    options.addOption(ARG_SAMPLE_SIZE, true, "number of results checked by the sampling validations");
+    options.addOption(ARG_THREADS, true, "number of peak files indexed at the same time");
+    options.addOption(ARG_INDEX_CACHE, true, "directory of the peak file index cache, or none to disable it");
+    options.addOption(ARG_FULL_PEAK_CHECK, false, "check every PSM against its spectrum instead of a sample");
+    options.addOption(ARG_PEAK_SAMPLE_SIZE, true, "maximum number of PSMs checked per peak file (default 10)");
+    options.addOption(ARG_CONFIDENCE, true, "confidence level of the PSM sampling, sampling until decided if no peak sample size is given (default 0.95)");
+    options.addOption(ARG_MAX_MISMATCH, true, "accepted rate of PSMs not matching their spectrum (default 0.05)");
+    options.addOption(ARG_SEED, true, "seed of the PSM sampling and of the synthetic files");
+    options.addOption(ARG_PRECURSOR_TOLERANCE, true, "precursor m/z tolerance in ppm or Da, e.g. 10ppm or 0.02Da (default 0.01Da)");
+    options.addOption(ARG_ISOTOPE_ERRORS, true, "number of C13 isotope errors accepted on the precursor m/z (default 1)");
+    options.addOption(ARG_IGNORE_CHARGE, false, "match a PSM whose charge differs from the precursor charge of its spectrum on its m/z alone");
+    options.addOption(ARG_FRAGMENT_CHECK, false, "annotate the sampled spectra with the b and y ions of their peptide");
+    options.addOption(ARG_FRAGMENT_TOLERANCE, true, "fragment m/z tolerance in ppm or Da (default 0.02Da)");
+    options.addOption(ARG_APPROX_COUNTS, false, "estimate the number of distinct proteins and peptides in fixed memory");
+    options.addOption(ARG_BATCH, true, "folder of mzid and mztab files, or manifest listing them with their peak files, validated in one run");
+    options.addOption(ARG_BATCH_THREADS, true, "number of files validated at the same time in batch mode");
+    options.addOption(ARG_REPORT_DIR, true, "folder of the reports of the files validated in batch mode");
+    options.addOption(ARG_PX_FILES, false, "with -px, also validate the result files of the submission against their peak files");
+    options.addOption(ARG_DAEMON, false, "start a validation service on localhost that takes jobs over HTTP");
+    options.addOption(ARG_PORT, true, "port of the validation service, default " + ValidationServer.DEFAULT_PORT);
+    options.addOption(ARG_MAX_JOBS, true, "number of jobs the validation service runs at the same time");
+    options.addOption(ARG_QUEUE_SIZE, true, "number of jobs waiting in the validation service before new ones are refused");
+    options.addOption(ARG_INDEX_MEMORY, true, "number of spectrum indexes the validation service keeps in memory");
+    options.addOption(ARG_JOB_DIR, true, "folder the validation service writes the job reports to, a temporary folder by default");
+    options.addOption(ARG_GENERATE, true, "write a synthetic result file and its peak file to the folder, for scale testing");
+    options.addOption(ARG_PSMS, true, "number of PSMs of the synthetic files (default " + SyntheticDataGenerator.DEFAULT_NUMBER_OF_PSMS + ")");
+    options.addOption(ARG_RESULT_FORMAT, true, "format of the synthetic result file: mzid, mzid12 or mztab (default mzid)");
+    options.addOption(ARG_PEAK_FORMAT, true, "format of the synthetic peak file: mgf or mzml (default mgf)");
+    options.addOption(ARG_DEFECTS, true, "fraction of the synthetic PSMs with each defect, e.g. missing=0.01,precursor=0.01,refs=0.001,schema=0.001");
     CommandLineParser parser = new DefaultParser();
     return parser.parse(options, args);
   }
@@ -0,0 +1,389 @@
+package uk.ac.ebi.pride.toolsuite.px_validator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.IReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ReportFormat;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.SpectrumIndexCache;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static uk.ac.ebi.pride.toolsuite.px_validator.utils.Utility.*;
+
+/**
+ * Validation service listening on the loopback interface, so many files can be validated without starting a JVM
+ * for each of them. The compiled schemas, the loaded classes and the JIT-compiled parsers stay warm between the
+ * jobs, and the most recently used spectrum indexes are kept in memory, see {@link SpectrumIndexCache}.
+ *
+ * A job is the command line of a single validation, one argument per line, without -v:
+ * <pre>
+ * POST   /jobs              submit a job, returns its id; 503 when the queue is full
+ * GET    /jobs              id and status of every job
+ * GET    /jobs/{id}         status of a job
+ * GET    /jobs/{id}/report  report of a finished job
+ * DELETE /jobs/{id}         cancel a queued job or forget a finished one
+ * </pre>
+ * At most -maxjobs jobs run at the same time and -queuesize jobs wait. The report of a finished job is written to a
+ * file of the -jobdir folder, a temporary folder deleted when the server stops by default, and only its status and
+ * number of errors stay in memory. The oldest finished jobs and their report files are forgotten when more than
+ * {@link #MAX_FINISHED_JOBS} are kept, when their reports take more than {@link #MAX_REPORT_BYTES} or when they
+ * finished more than {@link #MAX_FINISHED_AGE} ms ago.
+ *
+ * @author ypriverol
+ */
+@Slf4j
+public class ValidationServer {
+
+  public static final int DEFAULT_PORT = 8090;
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+  public static final int DEFAULT_INDEX_MEMORY = 32;
+  public static final int MAX_FINISHED_JOBS = 10000;
+  public static final long MAX_REPORT_BYTES = 1L << 30;
+  public static final long MAX_FINISHED_AGE = TimeUnit.DAYS.toMillis(1);
+  private static final String JOBS_PATH = "/jobs";
+  private static final String REPORT_PATH = "/report";
+  private static final String REPORT_EXT = ".report.txt";
+
+  private final int port;
+  private final int maxJobs;
+  private final ThreadPoolExecutor jobPool;
+  private final Map<Long, Job> jobs = new LinkedHashMap<>();
+  private final AtomicLong nextId = new AtomicLong(1);
+  private final File configuredJobDirectory;
+  private File jobDirectory;
+  private HttpServer server;
+
+  /**
+   * @param cmd command line arguments, with the -daemon option
+   */
+  public ValidationServer(CommandLine cmd) {
+    port = cmd.hasOption(ARG_PORT) ? Integer.parseInt(cmd.getOptionValue(ARG_PORT)) : DEFAULT_PORT;
+    maxJobs = cmd.hasOption(ARG_MAX_JOBS) ? Integer.parseInt(cmd.getOptionValue(ARG_MAX_JOBS)) : BatchValidator.getDefaultThreads();
+    int queueSize = cmd.hasOption(ARG_QUEUE_SIZE) ? Integer.parseInt(cmd.getOptionValue(ARG_QUEUE_SIZE)) : DEFAULT_QUEUE_SIZE;
+    int indexMemory = cmd.hasOption(ARG_INDEX_MEMORY) ? Integer.parseInt(cmd.getOptionValue(ARG_INDEX_MEMORY)) : DEFAULT_INDEX_MEMORY;
+    if (maxJobs < 1 || queueSize < 1 || indexMemory < 0) {
+      throw new IllegalArgumentException("The number of jobs and the queue size must be positive numbers");
+    }
+    jobPool = new ThreadPoolExecutor(maxJobs, maxJobs, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+        runnable -> new Thread(runnable, "validation-job"));
+    SpectrumIndexCache.setMemoryCapacity(indexMemory);
+    configuredJobDirectory = cmd.hasOption(ARG_JOB_DIR) ? new File(cmd.getOptionValue(ARG_JOB_DIR)) : null;
+  }
+
+  /**
+   * Start listening, the server runs until the JVM is stopped.
+   *
+   * @throws IOException if the port can't be bound or the job folder can't be created
+   */
+  public void start() throws IOException {
+    if (configuredJobDirectory == null) {
+      jobDirectory = Files.createTempDirectory("px-validator-jobs").toFile();
+    } else if (configuredJobDirectory.isDirectory() || configuredJobDirectory.mkdirs()) {
+      jobDirectory = configuredJobDirectory;
+    } else {
+      throw new IOException("Unable to create the job folder " + configuredJobDirectory);
+    }
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext(JOBS_PATH, this::handle);
+    server.setExecutor(Executors.newFixedThreadPool(2));
+    server.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+    log.info("Validation server listening on " + server.getAddress() + " with " + maxJobs + " concurrent jobs, reports in "
+        + jobDirectory);
+  }
+
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+    }
+    jobPool.shutdownNow();
+    synchronized (jobs) {
+      for (Job job : jobs.values()) {
+        job.forget();
+      }
+      jobs.clear();
+    }
+    // a folder given with -jobdir is kept, it may hold other files
+    if (configuredJobDirectory == null && jobDirectory != null && !jobDirectory.delete()) {
+      log.warn("Unable to delete the job folder " + jobDirectory);
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String path = exchange.getRequestURI().getPath();
+      String method = exchange.getRequestMethod();
+      if (path.equals(JOBS_PATH) || path.equals(JOBS_PATH + "/")) {
+        if ("POST".equals(method)) {
+          submit(exchange);
+        } else if ("GET".equals(method)) {
+          send(exchange, 200, listJobs());
+        } else {
+          send(exchange, 405, "Unsupported method " + method);
+        }
+        return;
+      }
+      String[] parts = path.substring(JOBS_PATH.length() + 1).split("/");
+      Job job = getJob(parts[0]);
+      if (job == null) {
+        send(exchange, 404, "Unknown job " + parts[0]);
+      } else if (parts.length == 1 && "GET".equals(method)) {
+        send(exchange, 200, job.getStatusText());
+      } else if (parts.length == 1 && "DELETE".equals(method)) {
+        job.future.cancel(false);
+        synchronized (jobs) {
+          jobs.remove(job.id);
+        }
+        job.forget();
+        send(exchange, 200, "Deleted job " + job.id);
+      } else if (parts.length == 2 && REPORT_PATH.equals("/" + parts[1]) && "GET".equals(method)) {
+        if (job.status != Status.DONE) {
+          send(exchange, 409, job.getStatusText());
+        } else {
+          sendReport(exchange, job);
+        }
+      } else {
+        send(exchange, 404, "Unknown request " + method + " " + path);
+      }
+    } catch (RuntimeException e) {
+      log.error("Request " + exchange.getRequestURI() + " failed", e);
+      send(exchange, 500, e.toString());
+    }
+  }
+
+  private void submit(HttpExchange exchange) throws IOException {
+    List<String> args = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          args.add(line.trim());
+        }
+      }
+    }
+    CommandLine cmd;
+    try {
+      cmd = SubmissionToolValidator.parseArgs(args.toArray(new String[0]));
+    } catch (ParseException e) {
+      send(exchange, 400, "Invalid arguments: " + e.getMessage());
+      return;
+    }
+    if (cmd.hasOption(ARG_DAEMON) || cmd.hasOption(ARG_BATCH)) {
+      send(exchange, 400, "A job validates a single file or submission");
+      return;
+    }
+    Job job = new Job(nextId.getAndIncrement(), args);
+    synchronized (jobs) {
+      try {
+        job.future = jobPool.submit(() -> run(job, cmd));
+      } catch (RejectedExecutionException e) {
+        send(exchange, 503, "The queue is full, " + jobPool.getQueue().size() + " jobs are waiting");
+        return;
+      }
+      jobs.put(job.id, job);
+      forgetFinishedJobs();
+    }
+    send(exchange, 202, String.valueOf(job.id));
+  }
+
+  private void run(Job job, CommandLine cmd) {
+    job.status = Status.RUNNING;
+    job.start = System.currentTimeMillis();
+    try {
+      IReport report = Validator.startValidation(cmd);
+      if (report != null) {
+        if (cmd.hasOption(ARG_REPORTFILE)) {
+          outputReport(report, new File(cmd.getOptionValue(ARG_REPORTFILE)), ReportFormat.fromCommandLine(cmd));
+        }
+        job.spool(report, new File(jobDirectory, job.id + REPORT_EXT));
+      }
+      job.status = report != null ? Status.DONE : Status.FAILED;
+    } catch (Exception e) {
+      log.error("Job " + job.id + " failed", e);
+      job.status = Status.FAILED;
+    } finally {
+      job.end = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Forget the finished jobs that are too old, then the oldest ones until the number of finished jobs and the size
+   * of their reports are under the limits. Called with the lock of the jobs.
+   */
+  private void forgetFinishedJobs() {
+    long oldest = System.currentTimeMillis() - MAX_FINISHED_AGE;
+    int finished = 0;
+    long reportBytes = 0;
+    Iterator<Job> iterator = jobs.values().iterator();
+    while (iterator.hasNext()) {
+      Job job = iterator.next();
+      if (job.isFinished()) {
+        if (job.end < oldest) {
+          iterator.remove();
+          job.forget();
+        } else {
+          finished++;
+          reportBytes += job.reportSize;
+        }
+      }
+    }
+    iterator = jobs.values().iterator();
+    while ((finished > MAX_FINISHED_JOBS || reportBytes > MAX_REPORT_BYTES) && iterator.hasNext()) {
+      Job job = iterator.next();
+      if (job.isFinished()) {
+        iterator.remove();
+        job.forget();
+        finished--;
+        reportBytes -= job.reportSize;
+      }
+    }
+  }
+
+  private Job getJob(String id) {
+    try {
+      synchronized (jobs) {
+        return jobs.get(Long.parseLong(id));
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private String listJobs() {
+    StringBuilder list = new StringBuilder();
+    synchronized (jobs) {
+      forgetFinishedJobs();
+      for (Job job : jobs.values()) {
+        list.append(job.id).append('\t').append(job.status).append('\n');
+      }
+    }
+    list.append("Running : ").append(jobPool.getActiveCount()).append('\n')
+        .append("Queued : ").append(jobPool.getQueue().size()).append('\n');
+    return list.toString();
+  }
+
+  /**
+   * Copy the report file of the job to the response, the report is never read into memory.
+   */
+  private static void sendReport(HttpExchange exchange, Job job) throws IOException {
+    InputStream in;
+    try {
+      in = new FileInputStream(job.reportFile);
+    } catch (FileNotFoundException e) {
+      // forgotten while the request was handled
+      send(exchange, 404, "The report of job " + job.id + " was deleted");
+      return;
+    }
+    try (InputStream report = in; OutputStream out = exchange.getResponseBody()) {
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      // length 0, the body is sent in chunks as it is copied
+      exchange.sendResponseHeaders(200, 0);
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = report.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+  }
+
+  private static void send(HttpExchange exchange, int code, String body) throws IOException {
+    byte[] bytes = (body.endsWith("\n") ? body : body + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private enum Status {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+  }
+
+  private static class Job {
+
+    private final long id;
+    private final List<String> args;
+    private final long submitted = System.currentTimeMillis();
+    private volatile Status status = Status.QUEUED;
+    private volatile long start;
+    private volatile long end;
+    private volatile int errors = -1;
+    private volatile File reportFile;
+    private volatile long reportSize;
+    private volatile boolean forgotten;
+    private Future<?> future;
+
+    Job(long id, List<String> args) {
+      this.id = id;
+      this.args = args;
+    }
+
+    boolean isFinished() {
+      return status == Status.DONE || status == Status.FAILED;
+    }
+
+    /**
+     * Write the report to the file and keep only its number of errors.
+     */
+    void spool(IReport report, File file) throws IOException {
+      reportFile = file;
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+        report.writeText(writer);
+      } catch (IOException e) {
+        deleteReport();
+        throw e;
+      }
+      errors = report.getNumErrors();
+      reportSize = file.length();
+      if (forgotten) {
+        // deleted while it was running
+        deleteReport();
+      }
+    }
+
+    /**
+     * Delete the report file, the job is no longer listed.
+     */
+    void forget() {
+      forgotten = true;
+      deleteReport();
+    }
+
+    private void deleteReport() {
+      File file = reportFile;
+      if (file != null && file.exists() && !file.delete()) {
+        log.warn("Unable to delete the report of job " + id + " -- " + file);
+      }
+    }
+
+    String getStatusText() {
+      StringBuilder text = new StringBuilder();
+      text.append("Job : ").append(id).append('\n')
+          .append("Arguments : ").append(String.join(" ", args)).append('\n')
+          .append("Status : ").append(status).append('\n');
+      if (start > 0) {
+        text.append("Queued (ms) : ").append(start - submitted).append('\n');
+      }
+      if (end > 0) {
+        text.append("Time (ms) : ").append(end - start).append('\n');
+      }
+      if (errors >= 0) {
+        text.append("Errors : ").append(errors).append('\n');
+      }
+      return text.toString();
+    }
+  }
+}
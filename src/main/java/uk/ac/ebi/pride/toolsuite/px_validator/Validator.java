@@ -4,14 +4,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.cli.CommandLine;
 
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.*;
-import uk.ac.ebi.pride.toolsuite.px_validator.validators.MzIdValidator;
-import uk.ac.ebi.pride.toolsuite.px_validator.validators.MzTabValidator;
-import uk.ac.ebi.pride.toolsuite.px_validator.validators.PXFileValidator;
+import uk.ac.ebi.pride.toolsuite.px_validator.validators.ValidatorProvider;
+import uk.ac.ebi.pride.toolsuite.px_validator.validators.ValidatorRegistry;
 
 import java.io.*;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
 
 import static uk.ac.ebi.pride.toolsuite.px_validator.utils.Utility.*;
 
@@ -33,30 +31,20 @@ public class Validator {
    */
   public static IReport startValidation(CommandLine cmd) {
     IReport report = null;
-    if (cmd.hasOption(ARG_PXFILE)) {
-      try {
-        uk.ac.ebi.pride.toolsuite.px_validator.validators.Validator validator = PXFileValidator.getInstance(cmd);
-        report = validator.validate();
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-
-    } else if(cmd.hasOption(ARG_MZTAB)){
-      try {
-        uk.ac.ebi.pride.toolsuite.px_validator.validators.Validator validator = MzTabValidator.getInstance(cmd);
-        report = validator.validate();
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-    } else if(cmd.hasOption(ARG_MZID)){
-      try {
-        uk.ac.ebi.pride.toolsuite.px_validator.validators.Validator validator = MzIdValidator.getInstance(cmd);
-        report = validator.validate();
-      } catch (Exception e) {
-        e.printStackTrace();
+    if (cmd.hasOption(ARG_BATCH)) {
+      report = new BatchValidator(cmd).validate();
+    } else {
+      // only the classes of the validator of the file are loaded
+      ValidatorProvider provider = ValidatorRegistry.getProvider(cmd);
+      if (provider != null) {
+        try {
+          report = provider.getInstance(cmd).validate();
+        } catch (Exception e) {
+          log.error("Validation failed", e);
+        }
+      } else {
+        log.error("Unable to validate unknown input file type");
       }
-    }else {
-      log.error("Unable to validate unknown input file type");
     }
     return report;
   }
@@ -101,7 +89,8 @@ public class Validator {
           log.info("Added peak file: " + peakFile.getPath());
         }
       }
-      peakFiles = extractZipFiles(peakFiles);
+      // zip archives are unpacked, gzipped peak files are read in place by the spectrum service
+      peakFiles = extractZipArchives(peakFiles);
     } else {
       log.error("Peak file not supplied with mzIdentML file.");
     }
@@ -111,80 +100,50 @@ public class Validator {
   /**
    * This method extracts an input list of files.
    *
-   * @param files a list of input zip files to extract.
+   * @param files a list of input files, the gzipped and zip files are extracted.
    * @return a list of extracted files.
    */
   public static List<File> extractZipFiles(List<File> files) {
-    List<File> zippedFiles = findZippedFiles(files);
+    return extractFiles(files, findZippedFiles(files));
+  }
+
+  /**
+   * This method extracts the zip archives of an input list of files. Gzipped files are kept, they are read in place.
+   *
+   * @param files a list of input files.
+   * @return a list of files with the zip archives replaced by their content.
+   */
+  public static List<File> extractZipArchives(List<File> files) {
+    return extractFiles(files, files.stream().filter(Decompressor::isZip).collect(Collectors.toList()));
+  }
+
+  private static List<File> extractFiles(List<File> files, List<File> zippedFiles) {
+    List<File> result = new ArrayList<>(files);
     if (zippedFiles.size()>0) {
-      files.removeAll(zippedFiles);
-      files.addAll(unzipFiles(zippedFiles, zippedFiles.get(0).getParentFile().getAbsoluteFile()));
+      result.removeAll(zippedFiles);
+      result.addAll(unzipFiles(zippedFiles, zippedFiles.get(0).getParentFile().getAbsoluteFile()));
     }
-    return files.stream().distinct().collect(Collectors.toList());
+    return result.stream().distinct().collect(Collectors.toList());
   }
 
   /**
-   * ~This method identifies any gzipped files.
+   * ~This method identifies any gzipped or zip files.
    * @param files a list if input files.
-   * @return a list of files that are gzipped.
+   * @return a list of files that are gzipped or zip archives.
    */
   private static List<File> findZippedFiles(List<File> files) {
-    return files.stream().filter(file -> file.getName().endsWith(".gz")).collect(Collectors.toList());
+    return files.stream().filter(file -> GzipFile.isGzip(file) || Decompressor.isZip(file)).collect(Collectors.toList());
   }
 
   /**
-   * This method extracts a list of iniput gzipped files to an output directory.
+   * This method extracts a list of input gzipped files and zip archives to an output directory.
    * @param zippedFiles a list of input files to extract.
    * @param outputFolder the output directory.
    * @return a list of files that have been extracted.
    */
   private static List<File> unzipFiles(List<File> zippedFiles, File outputFolder) {
-    List<File> unzippedFiles = new ArrayList<>();
-    zippedFiles.parallelStream().forEach(inputFile -> {
-      try {
-        log.info("Unzipping file: " + inputFile.getAbsolutePath());
-        FileInputStream fis = null;
-        GZIPInputStream gs = null;
-        FileOutputStream fos = null;
-        BufferedOutputStream bos = null;
-        try {
-          fis = new FileInputStream(inputFile);
-          gs = new GZIPInputStream(fis);
-          String outputFile = outputFolder + File.separator + inputFile.getName().replace(".gz", "");
-          fos = new FileOutputStream(outputFile);
-          bos = new BufferedOutputStream(fos, 2048);
-          byte[] data = new byte[2048];
-          int count;
-          while ((count = gs.read(data, 0, 2048)) != -1) {
-            bos.write(data, 0, count);
-          }
-          bos.flush();
-          bos.close();
-          unzippedFiles.add(new File(outputFile));
-          log.info("Unzipped file: " + outputFile);
-        } finally {
-          if (fis != null) {
-            fis.close();
-          }
-          if (gs != null) {
-            gs.close();
-          }
-          if (fos != null) {
-            fos.close();
-          }
-          if (bos != null) {
-            bos.close();
-          }
-        }
-      } catch (IOException ioe) {
-        log.error("IOException when unzipping files.", ioe);
-      }
-    });
-    return unzippedFiles;
+    try (Decompressor decompressor = new Decompressor(Decompressor.getDefaultThreads())) {
+      return decompressor.decompress(zippedFiles, outputFolder);
+    }
   }
 }
-
-
-
-
-
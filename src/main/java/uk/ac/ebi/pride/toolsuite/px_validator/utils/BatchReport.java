@@ -0,0 +1,189 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of a batch validation: one line per result file and the totals of the batch. The full report of every
+ * file is written separately.
+ */
+@Slf4j
+@Getter
+@Setter
+@NoArgsConstructor
+public class BatchReport extends Report {
+
+    private int numberOfThreads;
+    private long wallTime;
+    private final List<Entry> entries = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int numberOfStreamedEntries;
+
+    /**
+     * Add the result of a file, written to the report file right away if the messages of the report are streamed.
+     */
+    public synchronized void addEntry(Entry entry) {
+        entries.add(entry);
+        ReportWriter writer = getMessageWriter();
+        if (writer != null && numberOfStreamedEntries == entries.size() - 1) {
+            try {
+                writer.writeRecord(ReportWriter.FILE, entry.getFields());
+                writer.flush();
+                numberOfStreamedEntries++;
+            } catch (IOException e) {
+                log.error("Unable to stream the result of " + entry.file + " to the report file", e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void writeText(Appendable out) throws IOException {
+        super.writeText(out);
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(Entry::getFile));
+        for (Entry entry : sorted) {
+            out.append("FILE\t").append(entry.file)
+                    .append("\tSize : ").append(String.valueOf(entry.fileSize))
+                    .append("\tStatus : ").append(entry.getStatus())
+                    .append("\tErrors : ").append(String.valueOf(entry.errors))
+                    .append("\tTime (ms) : ").append(String.valueOf(entry.time));
+            if (entry.hasCounts) {
+                out.append("\tProteins : ").append(String.valueOf(entry.proteins))
+                        .append("\tPeptides : ").append(String.valueOf(entry.peptides))
+                        .append("\tPSMs : ").append(String.valueOf(entry.psms));
+            }
+            out.append('\n');
+        }
+        Totals totals = new Totals();
+        out.append("Number of files : ").append(String.valueOf(entries.size())).append('\n')
+                .append("Valid files : ").append(String.valueOf(totals.valid)).append('\n')
+                .append("Invalid files : ").append(String.valueOf(entries.size() - totals.valid - totals.failed)).append('\n')
+                .append("Failed validations : ").append(String.valueOf(totals.failed)).append('\n')
+                .append("Total size : ").append(String.valueOf(totals.size)).append('\n')
+                .append("Threads : ").append(String.valueOf(numberOfThreads)).append('\n')
+                .append("Wall time (ms) : ").append(String.valueOf(wallTime)).append('\n')
+                .append("Sum of validation times (ms) : ").append(String.valueOf(totals.time)).append('\n');
+    }
+
+    @Override
+    public synchronized void write(ReportWriter writer) throws IOException {
+        super.write(writer);
+    }
+
+    @Override
+    protected void writeDetails(ReportWriter writer) throws IOException {
+        for (Entry entry : entries.subList(numberOfStreamedEntries, entries.size())) {
+            writer.writeRecord(ReportWriter.FILE, entry.getFields());
+        }
+    }
+
+    @Override
+    protected void addSummary(Map<String, Object> summary) {
+        super.addSummary(summary);
+        Totals totals = new Totals();
+        summary.put("files", entries.size());
+        summary.put("validFiles", totals.valid);
+        summary.put("invalidFiles", entries.size() - totals.valid - totals.failed);
+        summary.put("failedValidations", totals.failed);
+        summary.put("totalSize", totals.size);
+        summary.put("threads", numberOfThreads);
+        summary.put("wallTimeMs", wallTime);
+        summary.put("validationTimeMs", totals.time);
+    }
+
+    /**
+     * Totals of the files of the batch.
+     */
+    private class Totals {
+
+        private long valid;
+        private long failed;
+        private long time;
+        private long size;
+
+        private Totals() {
+            for (Entry entry : entries) {
+                if (entry.failed) {
+                    failed++;
+                } else if (entry.errors == 0) {
+                    valid++;
+                }
+                time += entry.time;
+                size += entry.fileSize;
+            }
+        }
+    }
+
+    /**
+     * Result of the validation of one file. Only the numbers of the summary are kept, the report itself is written
+     * to its own file and dropped, so a batch of many files doesn't hold all their messages.
+     */
+    @Getter
+    public static class Entry {
+
+        private final String file;
+        private final long fileSize;
+        private final boolean failed;
+        private final int errors;
+        /**
+         * True if the report is a {@link ResultReport} and the protein, peptide and PSM counts are known.
+         */
+        private final boolean hasCounts;
+        private final int proteins;
+        private final int peptides;
+        private final int psms;
+        private final long time;
+
+        /**
+         * @param file path of the result file
+         * @param fileSize size of the file
+         * @param report report of the file, null if the validation failed
+         * @param time validation time in ms
+         */
+        public Entry(String file, long fileSize, IReport report, long time) {
+            this.file = file;
+            this.fileSize = fileSize;
+            this.failed = report == null;
+            this.errors = report != null ? report.getNumErrors() : 0;
+            this.hasCounts = report instanceof ResultReport;
+            ResultReport result = hasCounts ? (ResultReport) report : null;
+            this.proteins = result != null ? result.getNumberOfProteins() : 0;
+            this.peptides = result != null ? result.getNumberOfPeptides() : 0;
+            this.psms = result != null ? result.getNumberOfPSMs() : 0;
+            this.time = time;
+        }
+
+        public String getStatus() {
+            return failed ? "Failed" : errors == 0 ? "Valid" : "Invalid";
+        }
+
+        /**
+         * @return fields of the file record of the report
+         */
+        public Map<String, Object> getFields() {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("file", file);
+            fields.put("fileSize", fileSize);
+            fields.put("status", getStatus());
+            fields.put("errors", errors);
+            fields.put("timeMs", time);
+            if (hasCounts) {
+                fields.put("proteins", proteins);
+                fields.put("peptides", peptides);
+                fields.put("psms", psms);
+            }
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Decompresses .gz files and unpacks .zip archives on a bounded pool of threads, and logs the throughput of every file.
+ *
+ * Files are handled on one pool and the pieces of a file, the entries of a zip archive or the blocks of a BGZF file,
+ * on a second pool, so a file never waits for a thread held by another file. BGZF files record the size of every
+ * block in its header, so the blocks are inflated in parallel and written at their offset in the output. Other gzip
+ * files are inflated sequentially: the boundaries of their members are only known once the previous member is
+ * inflated.
+ */
+@Slf4j
+public class Decompressor implements Closeable {
+
+    public static final String ZIP_EXTENSION = ".zip";
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long CHUNK_SIZE = 8 << 20;
+    private static final int BGZF_HEADER_SIZE = 18;
+
+    private final ExecutorService filePool;
+    private final ExecutorService blockPool;
+
+    /**
+     * @param threads number of files, and of pieces of files, decompressed at the same time
+     */
+    public Decompressor(int threads) {
+        this.filePool = newPool(threads, "decompress-file-");
+        this.blockPool = newPool(threads, "decompress-block-");
+    }
+
+    /**
+     * @return the number of cores, but not more than 4
+     */
+    public static int getDefaultThreads() {
+        return Math.min(Runtime.getRuntime().availableProcessors(), 4);
+    }
+
+    private static ExecutorService newPool(int threads, String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, name + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param file any file
+     * @return true if the file name ends with .zip
+     */
+    public static boolean isZip(File file) {
+        return file.getName().toLowerCase().endsWith(ZIP_EXTENSION);
+    }
+
+    /**
+     * Decompress .gz files and unpack .zip archives into a folder. A file that can't be decompressed is logged
+     * and left out of the result.
+     *
+     * @param files .gz and .zip files
+     * @param outputFolder folder the files are written to
+     * @return the decompressed files, in the order of the input
+     */
+    public List<File> decompress(List<File> files, File outputFolder) {
+        List<Future<List<File>>> results = new ArrayList<>();
+        for (File file : files) {
+            results.add(filePool.submit(() -> isZip(file) ? unzip(file, outputFolder)
+                    : Collections.singletonList(gunzip(file, new File(outputFolder, new GzipFile(file).getUncompressedName())))));
+        }
+        List<File> decompressed = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                decompressed.addAll(results.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Interrupted while decompressing " + files.get(i).getName());
+                break;
+            } catch (ExecutionException e) {
+                log.error("Unable to decompress " + files.get(i).getAbsolutePath(), e.getCause());
+            }
+        }
+        return decompressed;
+    }
+
+    /**
+     * Decompress a gzip file.
+     *
+     * @param source gzip file
+     * @param target decompressed file, replaced if it exists
+     * @return the target file
+     * @throws IOException if the file can't be decompressed
+     */
+    public File gunzip(File source, File target) throws IOException {
+        long start = System.currentTimeMillis();
+        List<long[]> blocks = readBgzfBlocks(source);
+        try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (blocks != null) {
+                inflateBlocks(source, blocks, out);
+            } else {
+                try (InputStream in = new GzipFile(source).open()) {
+                    copy(in, out);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(target.toPath());
+            throw e;
+        }
+        logThroughput(source, target.length(), start);
+        return target;
+    }
+
+    /**
+     * Unpack the files of a zip archive, the entries are written in parallel.
+     *
+     * @param source zip archive
+     * @param outputFolder folder the entries are written to, keeping their path in the archive
+     * @return the unpacked files
+     * @throws IOException if the archive can't be read or an entry points outside the output folder
+     */
+    public List<File> unzip(File source, File outputFolder) throws IOException {
+        long start = System.currentTimeMillis();
+        Path root = outputFolder.toPath().toAbsolutePath().normalize();
+        List<Future<File>> results = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(source)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                Path target = root.resolve(entry.getName()).normalize();
+                if (!target.startsWith(root)) {
+                    throw new IOException("Entry " + entry.getName() + " of " + source.getName() + " is outside the output folder");
+                }
+                results.add(blockPool.submit(() -> {
+                    Files.createDirectories(target.getParent());
+                    try (InputStream in = zip.getInputStream(entry);
+                         FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                 StandardOpenOption.TRUNCATE_EXISTING)) {
+                        copy(in, out);
+                    }
+                    return target.toFile();
+                }));
+            }
+            List<File> files = new ArrayList<>();
+            long size = 0;
+            for (Future<File> result : results) {
+                File file = await(result, source);
+                files.add(file);
+                size += file.length();
+            }
+            logThroughput(source, size, start);
+            return files;
+        }
+    }
+
+    /**
+     * Read the block sizes of a BGZF file from the block headers.
+     *
+     * @return for every block its compressed offset, its compressed size and its uncompressed size, or null if the
+     * file is not BGZF
+     */
+    private static List<long[]> readBgzfBlocks(File source) throws IOException {
+        List<long[]> blocks = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(BGZF_HEADER_SIZE);
+        ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                header.clear();
+                if (readFully(in, header, position) < BGZF_HEADER_SIZE) {
+                    return null;
+                }
+                int blockSize = getBgzfBlockSize(header.array());
+                if (blockSize < 0 || position + blockSize > size) {
+                    return null;
+                }
+                trailer.clear();
+                readFully(in, trailer, position + blockSize - 4);
+                blocks.add(new long[]{position, blockSize, trailer.getInt(0) & 0xffffffffL});
+                position += blockSize;
+            }
+        }
+        return blocks.isEmpty() ? null : blocks;
+    }
+
+    /**
+     * @param header first bytes of a gzip member
+     * @return the size of the BGZF block, or -1 if the member has no BGZF header
+     */
+    private static int getBgzfBlockSize(byte[] header) {
+        boolean isBgzf = (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8 && (header[3] & 4) != 0
+                && (header[10] & 0xff) == 6 && header[11] == 0 && header[12] == 'B' && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+        return isBgzf ? ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1 : -1;
+    }
+
+    private void inflateBlocks(File source, List<long[]> blocks, FileChannel out) throws IOException {
+        List<Future<?>> results = new ArrayList<>();
+        long outputOffset = 0;
+        int first = 0;
+        long chunkSize = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            chunkSize += blocks.get(i)[2];
+            if (chunkSize >= CHUNK_SIZE || i == blocks.size() - 1) {
+                List<long[]> chunk = blocks.subList(first, i + 1);
+                long chunkOffset = outputOffset;
+                results.add(blockPool.submit(() -> {
+                    inflateChunk(source, chunk, out, chunkOffset);
+                    return null;
+                }));
+                outputOffset += chunkSize;
+                first = i + 1;
+                chunkSize = 0;
+            }
+        }
+        for (Future<?> result : results) {
+            await(result, source);
+        }
+    }
+
+    private static void inflateChunk(File source, List<long[]> blocks, FileChannel out, long outputOffset) throws IOException {
+        long start = blocks.get(0)[0];
+        long[] last = blocks.get(blocks.size() - 1);
+        ByteBuffer compressed = ByteBuffer.allocate((int) (last[0] + last[1] - start)).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            readFully(in, compressed, start);
+        }
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        try {
+            for (long[] block : blocks) {
+                int offset = (int) (block[0] - start);
+                int extraLength = (compressed.get(offset + 10) & 0xff) | (compressed.get(offset + 11) & 0xff) << 8;
+                int dataOffset = offset + 12 + extraLength;
+                int dataLength = (int) block[1] - 12 - extraLength - 8;
+                byte[] data = new byte[(int) block[2]];
+                inflater.reset();
+                inflater.setInput(compressed.array(), dataOffset, dataLength);
+                int inflated = 0;
+                try {
+                    while (inflated < data.length && !inflater.finished()) {
+                        int n = inflater.inflate(data, inflated, data.length - inflated);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        inflated += n;
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt BGZF block at byte " + block[0] + " of " + source.getName(), e);
+                }
+                crc.reset();
+                crc.update(data, 0, inflated);
+                long expectedCrc = compressed.getInt(offset + (int) block[1] - 8) & 0xffffffffL;
+                if (inflated != data.length || crc.getValue() != expectedCrc) {
+                    throw new IOException("Corrupt BGZF block at byte " + block[0] + " of " + source.getName());
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer, outputOffset + buffer.position());
+                }
+                outputOffset += data.length;
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void copy(InputStream in, FileChannel out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+        }
+    }
+
+    private static int readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static <T> T await(Future<T> result, File source) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decompressing " + source.getName(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to decompress " + source.getName(), e.getCause());
+        }
+    }
+
+    private static void logThroughput(File source, long uncompressedSize, long start) {
+        long time = Math.max(1, System.currentTimeMillis() - start);
+        log.info(String.format("Decompressed %s, %.1f MB to %.1f MB in %d ms (%.1f MB/s)", source.getName(),
+                source.length() / 1048576.0, uncompressedSize / 1048576.0, time, uncompressedSize / 1048576.0 / (time / 1000.0)));
+    }
+
+    /**
+     * Stop the threads, the decompressions still running are interrupted.
+     */
+    @Override
+    public void close() {
+        filePool.shutdownNow();
+        blockPool.shutdownNow();
+    }
+}
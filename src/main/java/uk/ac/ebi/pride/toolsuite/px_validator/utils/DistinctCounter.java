@@ -0,0 +1,55 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+/**
+ * Counts the distinct values of a stream of strings from their 64-bit hashes, without keeping the strings.
+ */
+public interface DistinctCounter {
+
+    /**
+     * @param hash 64-bit hash of a value, see {@link #hash(CharSequence)}
+     */
+    void add(long hash);
+
+    /**
+     * @return number of distinct values added, exact or estimated depending on the implementation
+     */
+    long count();
+
+    default void add(CharSequence value) {
+        add(hash(value));
+    }
+
+    /**
+     * @return true if {@link #count()} is an estimate
+     */
+    default boolean isApproximate() {
+        return false;
+    }
+
+    /**
+     * @param isApproximate true for a {@link HyperLogLog} estimate in fixed memory, false for an exact count in an
+     *                      {@link OffHeapLongHashSet} that turns into an estimate if the set gets too large, see
+     *                      {@link FallbackDistinctCounter}
+     * @return DistinctCounter
+     */
+    static DistinctCounter create(boolean isApproximate) {
+        return isApproximate ? new HyperLogLog() : new FallbackDistinctCounter();
+    }
+
+    /**
+     * {@link IdHashSet#hash(CharSequence)} with its bits mixed by the MurmurHash3 finalizer, so every bit of the
+     * hash depends on every character; the counters use the low bits as bucket and the high bits as rank.
+     *
+     * @param value string value
+     * @return hash
+     */
+    static long hash(CharSequence value) {
+        long hash = IdHashSet.hash(value);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,51 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exact count in an {@link OffHeapLongHashSet} while the set fits in its memory budget. When the set is full, its
+ * values are moved to a {@link HyperLogLog}, the table is freed and the count is an estimate from then on.
+ */
+@Slf4j
+public class FallbackDistinctCounter implements DistinctCounter {
+
+    private OffHeapLongHashSet set;
+    private HyperLogLog estimate;
+
+    public FallbackDistinctCounter() {
+        this(new OffHeapLongHashSet());
+    }
+
+    /**
+     * @param set set the values are counted in until it is full
+     */
+    public FallbackDistinctCounter(OffHeapLongHashSet set) {
+        this.set = set;
+    }
+
+    @Override
+    public void add(long hash) {
+        if (estimate != null) {
+            estimate.add(hash);
+            return;
+        }
+        set.add(hash);
+        if (set.isFull()) {
+            log.warn("More than " + set.count() + " distinct values, counting them with a HyperLogLog estimate from now on");
+            estimate = new HyperLogLog();
+            set.forEach(estimate::add);
+            set.free();
+            set = null;
+        }
+    }
+
+    @Override
+    public long count() {
+        return estimate != null ? estimate.count() : set.count();
+    }
+
+    @Override
+    public boolean isApproximate() {
+        return estimate != null;
+    }
+}
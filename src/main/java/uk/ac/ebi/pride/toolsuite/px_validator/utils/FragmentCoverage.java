@@ -0,0 +1,36 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.Getter;
+
+/**
+ * Result of the annotation of a spectrum with the fragment ions of its peptide, see {@link FragmentMatcher}.
+ */
+@Getter
+public class FragmentCoverage {
+
+    private final int theoreticalIons;
+    private final int matchedIons;
+    private final double explainedIntensity;
+    private final double totalIntensity;
+
+    public FragmentCoverage(int theoreticalIons, int matchedIons, double explainedIntensity, double totalIntensity) {
+        this.theoreticalIons = theoreticalIons;
+        this.matchedIons = matchedIons;
+        this.explainedIntensity = explainedIntensity;
+        this.totalIntensity = totalIntensity;
+    }
+
+    /**
+     * @return fraction of the theoretical ions found among the peaks
+     */
+    public double getMatchedIonFraction() {
+        return theoreticalIons > 0 ? (double) matchedIons / theoreticalIons : 0;
+    }
+
+    /**
+     * @return fraction of the intensity of the spectrum in peaks annotated with an ion
+     */
+    public double getExplainedIntensityFraction() {
+        return totalIntensity > 0 ? explainedIntensity / totalIntensity : 0;
+    }
+}
@@ -0,0 +1,167 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import de.mpc.pia.intermediate.Modification;
+
+import java.util.Map;
+
+/**
+ * Annotates the peaks of a spectrum with the b and y ions of the peptide of a PSM and measures how well the spectrum
+ * supports the peptide: the fraction of the theoretical ions found among the peaks and the fraction of the intensity
+ * of the spectrum explained by them.
+ *
+ * Ion masses are monoisotopic. Fragments are singly charged, and also doubly charged for precursors of charge 3 or
+ * more. Modifications are taken from the PIA positions: 0 is the N-terminus, 1 to n the residues and n + 1 the
+ * C-terminus.
+ */
+public class FragmentMatcher {
+
+    public static final double PROTON = 1.007276467;
+    public static final double WATER = 18.010564684;
+
+    private static final double[] RESIDUE_MASSES = new double[26];
+
+    static {
+        RESIDUE_MASSES['A' - 'A'] = 71.037113805;
+        RESIDUE_MASSES['C' - 'A'] = 103.009184505;
+        RESIDUE_MASSES['D' - 'A'] = 115.026943065;
+        RESIDUE_MASSES['E' - 'A'] = 129.042593135;
+        RESIDUE_MASSES['F' - 'A'] = 147.068413945;
+        RESIDUE_MASSES['G' - 'A'] = 57.021463735;
+        RESIDUE_MASSES['H' - 'A'] = 137.058911875;
+        RESIDUE_MASSES['I' - 'A'] = 113.084064015;
+        RESIDUE_MASSES['K' - 'A'] = 128.094963050;
+        RESIDUE_MASSES['L' - 'A'] = 113.084064015;
+        RESIDUE_MASSES['M' - 'A'] = 131.040484645;
+        RESIDUE_MASSES['N' - 'A'] = 114.042927470;
+        RESIDUE_MASSES['O' - 'A'] = 237.147726925;
+        RESIDUE_MASSES['P' - 'A'] = 97.052763875;
+        RESIDUE_MASSES['Q' - 'A'] = 128.058577540;
+        RESIDUE_MASSES['R' - 'A'] = 156.101111050;
+        RESIDUE_MASSES['S' - 'A'] = 87.032028435;
+        RESIDUE_MASSES['T' - 'A'] = 101.047678505;
+        RESIDUE_MASSES['U' - 'A'] = 150.953633405;
+        RESIDUE_MASSES['V' - 'A'] = 99.068413945;
+        RESIDUE_MASSES['W' - 'A'] = 186.079312980;
+        RESIDUE_MASSES['Y' - 'A'] = 163.063328575;
+    }
+
+    private final double tolerance;
+    private final boolean isPpm;
+
+    /**
+     * @param tolerance maximum difference between a theoretical ion and a peak
+     * @param isPpm true if the tolerance is in ppm, false if it is in Da
+     */
+    public FragmentMatcher(double tolerance, boolean isPpm) {
+        if (tolerance < 0 || Double.isNaN(tolerance)) {
+            throw new IllegalArgumentException("Invalid fragment tolerance -- " + tolerance);
+        }
+        this.tolerance = tolerance;
+        this.isPpm = isPpm;
+    }
+
+    /**
+     * @param value tolerance such as "20ppm", "0.02Da" or "0.02", see {@link PrecursorMatcher#parse(String, int)}
+     * @return FragmentMatcher
+     */
+    public static FragmentMatcher parse(String value) {
+        PrecursorMatcher matcher = PrecursorMatcher.parse(value, 0);
+        return new FragmentMatcher(matcher.getTolerance(), matcher.isPpm());
+    }
+
+    /**
+     * @param residue one letter code of an amino acid
+     * @return monoisotopic mass of the residue, 0 if unknown
+     */
+    public static double getResidueMass(char residue) {
+        char code = Character.toUpperCase(residue);
+        return code >= 'A' && code <= 'Z' ? RESIDUE_MASSES[code - 'A'] : 0;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public boolean isPpm() {
+        return isPpm;
+    }
+
+    /**
+     * @param sequence peptide sequence
+     * @param modifications modifications by position, may be null
+     * @param charge precursor charge of the PSM, 0 if unknown
+     * @param peaks peaks of the spectrum
+     * @return the coverage, or null if the sequence has residues of unknown mass or a modification has no mass
+     */
+    public FragmentCoverage match(String sequence, Map<Integer, Modification> modifications, int charge, PeakList peaks) {
+        if (sequence == null || sequence.length() < 2) {
+            return null;
+        }
+        int length = sequence.length();
+        // prefixMasses[i] is the mass of the first i residues with their modifications and the N-terminal one
+        double[] prefixMasses = new double[length + 1];
+        double nTerminal = getModificationMass(modifications, 0);
+        double cTerminal = getModificationMass(modifications, length + 1);
+        if (Double.isNaN(nTerminal) || Double.isNaN(cTerminal)) {
+            return null;
+        }
+        prefixMasses[0] = nTerminal;
+        for (int i = 0; i < length; i++) {
+            double mass = getResidueMass(sequence.charAt(i));
+            double modification = getModificationMass(modifications, i + 1);
+            if (mass == 0 || Double.isNaN(modification)) {
+                return null;
+            }
+            prefixMasses[i + 1] = prefixMasses[i] + mass + modification;
+        }
+        double peptideMass = prefixMasses[length] + cTerminal;
+
+        boolean[] isExplained = new boolean[peaks.size()];
+        int maxFragmentCharge = Math.abs(charge) >= 3 ? 2 : 1;
+        int theoreticalIons = 0;
+        int matchedIons = 0;
+        for (int z = 1; z <= maxFragmentCharge; z++) {
+            for (int i = 1; i < length; i++) {
+                double bMass = prefixMasses[i];
+                double yMass = peptideMass - prefixMasses[i] + WATER;
+                theoreticalIons += 2;
+                if (annotate(peaks, (bMass + z * PROTON) / z, isExplained)) {
+                    matchedIons++;
+                }
+                if (annotate(peaks, (yMass + z * PROTON) / z, isExplained)) {
+                    matchedIons++;
+                }
+            }
+        }
+        double explainedIntensity = 0;
+        for (int i = 0; i < isExplained.length; i++) {
+            if (isExplained[i]) {
+                explainedIntensity += peaks.getIntensity(i);
+            }
+        }
+        return new FragmentCoverage(theoreticalIons, matchedIons, explainedIntensity, peaks.getTotalIntensity());
+    }
+
+    private boolean annotate(PeakList peaks, double mz, boolean[] isExplained) {
+        int peak = peaks.findClosest(mz, isPpm ? mz * tolerance * 1e-6 : tolerance);
+        if (peak < 0) {
+            return false;
+        }
+        isExplained[peak] = true;
+        return true;
+    }
+
+    /**
+     * @return the mass of the modifications at the position, 0 if there are none, NaN if the mass isn't known
+     */
+    private static double getModificationMass(Map<Integer, Modification> modifications, int position) {
+        if (modifications == null) {
+            return 0;
+        }
+        Modification modification = modifications.get(position);
+        if (modification == null) {
+            return 0;
+        }
+        return modification.getMass() != null ? modification.getMass() : Double.NaN;
+    }
+}
@@ -0,0 +1,434 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the uncompressed content of a gzip file in place, without writing a decompressed copy.
+ *
+ * Every stream opened on the file records checkpoints, the compressed and uncompressed offsets of the gzip members
+ * it goes through, at most one every {@link #CHECKPOINT_SPACING} uncompressed bytes. {@link #openAt(long)} starts
+ * inflating at the last checkpoint before the requested offset. Only multi-member files such as BGZF get random
+ * access this way. A single-member file, the usual output of gzip, has none: restarting inside a member needs the
+ * last 32KB of output and the bit position of a deflate block, and {@link Inflater} can't be primed with a bit
+ * position, so such a file is inflated from its start on every {@link #openAt(long)}. Several offsets are read
+ * with a {@link Cursor} in ascending order instead, which inflates the file once front to back.
+ */
+@Slf4j
+public class GzipFile {
+
+    public static final String EXTENSION = ".gz";
+
+    private static final long CHECKPOINT_SPACING = 1 << 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+
+    private long[] compressedOffsets = new long[16];
+    private long[] uncompressedOffsets = new long[16];
+    private int numberOfCheckpoints;
+
+    private File inflatedFile;
+
+    public GzipFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param file any file
+     * @return true if the file name ends with .gz
+     */
+    public static boolean isGzip(File file) {
+        return file.getName().toLowerCase().endsWith(EXTENSION);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the name of the file without the .gz extension
+     */
+    public String getUncompressedName() {
+        return file.getName().substring(0, file.getName().length() - EXTENSION.length());
+    }
+
+    /**
+     * @return a stream of the uncompressed content
+     * @throws IOException if the file can't be opened
+     */
+    public InputStream open() throws IOException {
+        return new MemberInputStream(0, 0);
+    }
+
+    /**
+     * @param uncompressedOffset offset in the uncompressed content
+     * @return a stream of the uncompressed content starting at the offset
+     * @throws IOException if the file can't be read or is shorter than the offset
+     */
+    public InputStream openAt(long uncompressedOffset) throws IOException {
+        long[] checkpoint = getCheckpoint(uncompressedOffset);
+        MemberInputStream in = new MemberInputStream(checkpoint[0], checkpoint[1]);
+        try {
+            skipFully(in, uncompressedOffset - checkpoint[1], uncompressedOffset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    private void skipFully(InputStream in, long n, long uncompressedOffset) throws IOException {
+        long remaining = n;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                throw new EOFException("Offset " + uncompressedOffset + " is past the end of " + file.getName());
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * @return a cursor reading the content at increasing offsets through one stream
+     */
+    public Cursor openCursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Decompress the file to a temporary file for the readers that need a plain file. The copy is made once, on the
+     * first call, and removed by {@link #deleteInflatedFile()} or else when the JVM exits.
+     *
+     * @return the decompressed file
+     * @throws IOException if the file can't be decompressed
+     */
+    public synchronized File getInflatedFile() throws IOException {
+        if (inflatedFile == null) {
+            File directory = Files.createTempDirectory("px-validator-").toFile();
+            directory.deleteOnExit();
+            File target = new File(directory, getUncompressedName());
+            target.deleteOnExit();
+            try (Decompressor decompressor = new Decompressor(Decompressor.getDefaultThreads())) {
+                decompressor.gunzip(file, target);
+            }
+            inflatedFile = target;
+        }
+        return inflatedFile;
+    }
+
+    /**
+     * Delete the decompressed copy, if one was made; the readers opened on it can't be used afterwards.
+     */
+    public synchronized void deleteInflatedFile() {
+        if (inflatedFile != null) {
+            File directory = inflatedFile.getParentFile();
+            if (!inflatedFile.delete() || !directory.delete()) {
+                log.warn("Unable to delete " + inflatedFile);
+            }
+            inflatedFile = null;
+        }
+    }
+
+    /**
+     * @return compressed and uncompressed offsets of the last checkpoint at or before the offset, zeros if there is none
+     */
+    private synchronized long[] getCheckpoint(long uncompressedOffset) {
+        int i = Arrays.binarySearch(uncompressedOffsets, 0, numberOfCheckpoints, uncompressedOffset);
+        int checkpoint = i >= 0 ? i : -i - 2;
+        return checkpoint >= 0 ? new long[]{compressedOffsets[checkpoint], uncompressedOffsets[checkpoint]} : new long[2];
+    }
+
+    private synchronized void addCheckpoint(long compressedOffset, long uncompressedOffset) {
+        if (numberOfCheckpoints > 0 && uncompressedOffset - uncompressedOffsets[numberOfCheckpoints - 1] < CHECKPOINT_SPACING) {
+            return;
+        }
+        if (numberOfCheckpoints == compressedOffsets.length) {
+            compressedOffsets = Arrays.copyOf(compressedOffsets, numberOfCheckpoints << 1);
+            uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, numberOfCheckpoints << 1);
+        }
+        compressedOffsets[numberOfCheckpoints] = compressedOffset;
+        uncompressedOffsets[numberOfCheckpoints] = uncompressedOffset;
+        numberOfCheckpoints++;
+    }
+
+    /**
+     * Reads the content at a series of offsets through one inflating stream. The last block of content read is kept,
+     * so an offset at or after the start of that block, such as the next spectrum after a reader that read ahead,
+     * continues the stream. A smaller offset starts again from the last checkpoint before it, as does an offset
+     * past the next checkpoint, so offsets in ascending order inflate the file at most once.
+     */
+    public class Cursor implements Closeable {
+
+        private MemberInputStream in;
+        private final byte[] window = new byte[BUFFER_SIZE];
+        private long windowStart;
+        private int windowLength;
+        private int windowPosition;
+
+        /**
+         * @param uncompressedOffset offset in the uncompressed content
+         * @return stream of the content from the offset, valid until the next call; closing it does nothing
+         * @throws IOException if the file can't be read or is shorter than the offset
+         */
+        public InputStream at(long uncompressedOffset) throws IOException {
+            long streamOffset = windowStart + windowLength;
+            if (in != null && uncompressedOffset >= windowStart && uncompressedOffset <= streamOffset) {
+                windowPosition = (int) (uncompressedOffset - windowStart);
+                return new WindowInputStream();
+            }
+            long[] checkpoint = getCheckpoint(uncompressedOffset);
+            if (in == null || uncompressedOffset < windowStart || checkpoint[1] > streamOffset) {
+                close();
+                in = new MemberInputStream(checkpoint[0], checkpoint[1]);
+                streamOffset = checkpoint[1];
+            }
+            skipFully(in, uncompressedOffset - streamOffset, uncompressedOffset);
+            windowStart = uncompressedOffset;
+            windowLength = 0;
+            windowPosition = 0;
+            return new WindowInputStream();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+        }
+
+        private class WindowInputStream extends InputStream {
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (windowPosition == windowLength) {
+                    int read = in.read(window, 0, window.length);
+                    if (read < 0) {
+                        return -1;
+                    }
+                    windowStart += windowLength;
+                    windowLength = read;
+                    windowPosition = 0;
+                }
+                int n = Math.min(len, windowLength - windowPosition);
+                System.arraycopy(window, windowPosition, b, off, n);
+                windowPosition += n;
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Inflates the members of the file one after the other and checks their CRC and size. Like
+     * {@link java.util.zip.GZIPInputStream}, bytes after the last member that are not a gzip header are ignored.
+     */
+    private class MemberInputStream extends InputStream {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int bufferLength;
+        private int bufferPosition;
+        private long bufferOffset;
+
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private long uncompressedOffset;
+        private long memberStart;
+        private boolean isInMember;
+        private boolean isFirstMember = true;
+        private boolean isEnd;
+
+        MemberInputStream(long compressedOffset, long uncompressedOffset) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            channel.position(compressedOffset);
+            this.in = Channels.newInputStream(channel);
+            this.bufferOffset = compressedOffset;
+            this.uncompressedOffset = uncompressedOffset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!isEnd) {
+                if (!isInMember) {
+                    startMember();
+                    continue;
+                }
+                int inflated;
+                try {
+                    inflated = inflater.inflate(b, off, len);
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt gzip data in " + file.getName() + " near byte " + bufferOffset, e);
+                }
+                if (inflated > 0) {
+                    crc.update(b, off, inflated);
+                    uncompressedOffset += inflated;
+                    return inflated;
+                }
+                if (inflater.finished()) {
+                    bufferPosition = bufferLength - inflater.getRemaining();
+                    endMember();
+                } else if (inflater.needsInput()) {
+                    if (!fill()) {
+                        throw new EOFException("Unexpected end of " + file.getName());
+                    }
+                    inflater.setInput(buffer, 0, bufferLength);
+                    bufferPosition = bufferLength;
+                } else if (inflater.needsDictionary()) {
+                    throw new IOException("Unsupported gzip data in " + file.getName());
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] scratch = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(scratch, 0, (int) Math.min(n - skipped, scratch.length));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+
+        private void startMember() throws IOException {
+            long compressedOffset = bufferOffset + bufferPosition;
+            if (!ensureAvailable()) {
+                isEnd = true;
+                return;
+            }
+            int id1 = readByte();
+            if (!ensureAvailable()) {
+                isEnd = checkTrailingBytes();
+                return;
+            }
+            int id2 = readByte();
+            if (id1 != 0x1f || id2 != 0x8b) {
+                isEnd = checkTrailingBytes();
+                return;
+            }
+            if (readByte() != 8) {
+                throw new IOException("Unsupported compression method in " + file.getName());
+            }
+            int flags = readByte();
+            skipBytes(6);
+            if ((flags & 4) != 0) {
+                skipBytes(readByte() | readByte() << 8);
+            }
+            if ((flags & 8) != 0) {
+                while (readByte() != 0) {
+                    // file name
+                }
+            }
+            if ((flags & 16) != 0) {
+                while (readByte() != 0) {
+                    // comment
+                }
+            }
+            if ((flags & 2) != 0) {
+                skipBytes(2);
+            }
+            addCheckpoint(compressedOffset, uncompressedOffset);
+            inflater.reset();
+            crc.reset();
+            memberStart = uncompressedOffset;
+            isInMember = true;
+            isFirstMember = false;
+            inflater.setInput(buffer, bufferPosition, bufferLength - bufferPosition);
+            bufferPosition = bufferLength;
+        }
+
+        private void endMember() throws IOException {
+            long expectedCrc = readInt();
+            long expectedSize = readInt();
+            if (expectedCrc != crc.getValue() || expectedSize != ((uncompressedOffset - memberStart) & 0xffffffffL)) {
+                throw new IOException("Corrupt gzip member in " + file.getName() + ", CRC or size mismatch");
+            }
+            isInMember = false;
+        }
+
+        private boolean checkTrailingBytes() throws IOException {
+            if (isFirstMember) {
+                throw new IOException(file.getName() + " is not in gzip format");
+            }
+            return true;
+        }
+
+        private boolean ensureAvailable() throws IOException {
+            return bufferPosition < bufferLength || fill();
+        }
+
+        private boolean fill() throws IOException {
+            bufferOffset += bufferLength;
+            bufferPosition = 0;
+            bufferLength = 0;
+            int read;
+            while ((read = in.read(buffer)) == 0) {
+                // nothing available yet
+            }
+            if (read < 0) {
+                return false;
+            }
+            bufferLength = read;
+            return true;
+        }
+
+        private int readByte() throws IOException {
+            if (!ensureAvailable()) {
+                throw new EOFException("Unexpected end of " + file.getName());
+            }
+            return buffer[bufferPosition++] & 0xff;
+        }
+
+        private long readInt() throws IOException {
+            return (readByte() | readByte() << 8 | readByte() << 16 | (long) readByte() << 24) & 0xffffffffL;
+        }
+
+        private void skipBytes(int n) throws IOException {
+            for (int i = 0; i < n; i++) {
+                readByte();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+/**
+ * HyperLogLog estimate of the number of distinct values in 2^{@link #PRECISION} one-byte registers, 16KB whatever
+ * the number of values, with a standard error of about 0.8%. Small counts use linear counting.
+ */
+public class HyperLogLog implements DistinctCounter {
+
+    public static final int PRECISION = 14;
+    private static final int NUMBER_OF_REGISTERS = 1 << PRECISION;
+
+    private final byte[] registers = new byte[NUMBER_OF_REGISTERS];
+
+    @Override
+    public void add(long hash) {
+        int register = (int) (hash & (NUMBER_OF_REGISTERS - 1));
+        // rank of the first set bit in the remaining 50 bits, the extra bit caps the rank
+        long remaining = (hash >>> PRECISION) | (1L << (Long.SIZE - PRECISION));
+        byte rank = (byte) (Long.numberOfTrailingZeros(remaining) + 1);
+        if (rank > registers[register]) {
+            registers[register] = rank;
+        }
+    }
+
+    @Override
+    public boolean isApproximate() {
+        return true;
+    }
+
+    @Override
+    public long count() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double m = NUMBER_OF_REGISTERS;
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log(m / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
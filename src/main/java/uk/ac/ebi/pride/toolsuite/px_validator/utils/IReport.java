@@ -2,14 +2,33 @@ package uk.ac.ebi.pride.toolsuite.px_validator.utils;
 
 import uk.ac.ebi.pride.data.validation.ValidationMessage;
 
+import java.io.IOException;
 import java.io.Serializable;
 
 public interface IReport extends Serializable {
 
     String toString();
 
+    /**
+     * Add the message of the exception, the exception itself is not kept.
+     */
     void addException(Exception e, ValidationMessage.Type code);
 
+    /**
+     * Add a message, from any thread.
+     */
+    void addMessage(ReportMessage message);
+
     int getNumErrors();
 
+    /**
+     * Write the report in the text format, the same as {@link #toString()} without building it in memory.
+     */
+    void writeText(Appendable out) throws IOException;
+
+    /**
+     * Write the report as the records of a machine-readable format.
+     */
+    void write(ReportWriter writer) throws IOException;
+
 }
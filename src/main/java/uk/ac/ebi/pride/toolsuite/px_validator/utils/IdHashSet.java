@@ -0,0 +1,73 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of string ids kept as sorted 64-bit hashes, 8 bytes per id. Ids are added first and
+ * looked up after {@link #seal()}. A lookup may in theory give a false positive on a hash collision,
+ * which is acceptable for reference checks on sampled data.
+ */
+public class IdHashSet {
+
+    private long[] hashes = new long[1024];
+    private int size;
+    private boolean sealed;
+
+    public void add(String id) {
+        if (sealed) {
+            throw new IllegalStateException("Ids can't be added after the set is sealed");
+        }
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size << 1);
+        }
+        hashes[size++] = hash(id);
+    }
+
+    /**
+     * Sort the hashes and drop the duplicates, the set can be queried afterwards.
+     */
+    public void seal() {
+        if (sealed) {
+            return;
+        }
+        Arrays.sort(hashes, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || hashes[distinct - 1] != hashes[i]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        size = distinct;
+        hashes = Arrays.copyOf(hashes, size);
+        sealed = true;
+    }
+
+    public boolean contains(String id) {
+        if (!sealed) {
+            seal();
+        }
+        return Arrays.binarySearch(hashes, 0, size, hash(id)) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the characters of a string.
+     *
+     * @param value string value
+     * @return hash
+     */
+    public static long hash(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash ^= (c & 0xff);
+            hash *= 0x100000001b3L;
+            hash ^= (c >>> 8);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,497 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import uk.ac.ebi.pride.data.validation.ValidationMessage;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks the xsd:unique and xsd:keyref constraints of the mzIdentML root element on the SAX event stream, instead of
+ * the identity constraint checks of the schema validator, whose time grows quadratically with the number of refs.
+ *
+ * The constraints are read from the bundled XSD. The ids of every unique constraint are kept as 64-bit hashes in an
+ * {@link OffHeapLongHashSet}, a duplicate is reported when it is found. A ref is resolved when it is read if its id
+ * was seen before, which is the case for most refs of an mzIdentML file; the others are kept, without their value
+ * once {@value #MAX_KEPT_VALUES} are kept, and resolved at the end of the document. Past {@value #MAX_PENDING_REFS}
+ * unresolved refs, or if a set of ids outgrows its memory, the remaining checks are skipped. Skipping them is a limit
+ * of the checker, not a fault of the file, so it is logged and not added to the report.
+ *
+ * The messages are those of the schema validator, cvc-identity-constraint.4.1 for a duplicate and
+ * cvc-identity-constraint.4.3 for a ref to a missing id, with the position of the element that has the value.
+ */
+@Slf4j
+public class IdentityConstraintChecker {
+
+    public static final String DUPLICATE_UNIQUE = "cvc-identity-constraint.4.1";
+    public static final String KEY_NOT_FOUND = "cvc-identity-constraint.4.3";
+    private static final int MAX_PENDING_REFS = 1 << 20;
+    private static final int MAX_KEPT_VALUES = 1000;
+    private static final String XSD_NS = XMLConstants.W3C_XML_SCHEMA_NS_URI;
+    private static final String ROOT = "MzIdentML";
+
+    private static final Map<String, Constraints> constraintsByXsd = new ConcurrentHashMap<>();
+
+    private final IReport report;
+    private final Constraints constraints;
+    private final int maxPendingRefs;
+    private final int maxIds;
+    private final OffHeapLongHashSet[] ids;
+    /**
+     * Unique constraints whose ids outgrew the memory of their set
+     */
+    private final boolean[] disabled;
+    private Locator locator;
+    private boolean isActive = true;
+    private int depth;
+    private Node[][] active = new Node[16][];
+    private int[] activeCount = new int[16];
+    private final StringBuilder value = new StringBuilder();
+    private long numberOfErrors;
+
+    private int numberOfPendingRefs;
+    private long[] pendingHashes = new long[1024];
+    private int[] pendingKeyrefs = new int[1024];
+    private int[] pendingLines = new int[1024];
+    private int[] pendingColumns = new int[1024];
+    private final String[] pendingValues = new String[MAX_KEPT_VALUES];
+    private long numberOfSkippedRefs;
+
+    /**
+     * @param report report the errors are added to
+     * @param version value of the version attribute of the MzIdentML root element, may be null
+     */
+    public IdentityConstraintChecker(IReport report, String version) throws SAXException {
+        this(report, version, MAX_PENDING_REFS, 0);
+    }
+
+    /**
+     * @param maxPendingRefs number of unresolved refs kept until the end of the document
+     * @param maxIds number of slots the set of ids of a constraint can grow to, 0 for the default of
+     *               {@link OffHeapLongHashSet}
+     */
+    IdentityConstraintChecker(IReport report, String version, int maxPendingRefs, int maxIds) throws SAXException {
+        this.report = report;
+        this.maxPendingRefs = maxPendingRefs;
+        this.maxIds = maxIds;
+        this.constraints = getConstraints(SchemaCache.getMzIdentMLXsdUrl(version));
+        this.ids = new OffHeapLongHashSet[constraints.names.length];
+        this.disabled = new boolean[constraints.names.length];
+    }
+
+    public void setDocumentLocator(Locator locator) {
+        this.locator = locator;
+    }
+
+    public void startElement(String uri, String localName, Attributes attributes) {
+        if (!isActive) {
+            return;
+        }
+        if (depth == 0 && !ROOT.equals(localName)) {
+            // the schema validator reports the wrong root, there is nothing to check
+            isActive = false;
+            return;
+        }
+        if (depth == active.length) {
+            active = Arrays.copyOf(active, depth << 1);
+            activeCount = Arrays.copyOf(activeCount, depth << 1);
+        }
+        Node[] nodes = active[depth];
+        if (nodes == null) {
+            nodes = active[depth] = new Node[4];
+        }
+        int count = 0;
+        if (depth == 0) {
+            nodes[count++] = constraints.root;
+        } else {
+            Node[] parents = active[depth - 1];
+            for (int i = 0; i < activeCount[depth - 1]; i++) {
+                Node parent = parents[i];
+                Map<String, Node> named = parent.children.get(uri);
+                Node child = named != null ? named.get(localName) : null;
+                if (child != null) {
+                    nodes = add(nodes, count++, child);
+                }
+                if (parent.wildcard != null) {
+                    nodes = add(nodes, count++, parent.wildcard);
+                }
+            }
+        }
+        active[depth] = nodes;
+        activeCount[depth] = count;
+        for (int i = 0; i < count; i++) {
+            for (int constraint : nodes[i].constraints) {
+                check(constraint, attributes);
+            }
+        }
+        depth++;
+    }
+
+    public void endElement() {
+        if (isActive) {
+            depth--;
+        }
+    }
+
+    /**
+     * Resolve the refs kept until the end of the document and release the ids.
+     */
+    public void endDocument() {
+        for (int i = 0; i < numberOfPendingRefs; i++) {
+            int keyref = pendingKeyrefs[i];
+            int refer = constraints.refers[keyref];
+            if (!isDisabled(refer) && (ids[refer] == null || !ids[refer].contains(pendingHashes[i]))) {
+                String value = i < MAX_KEPT_VALUES ? "'" + pendingValues[i] + "'" : "(not kept)";
+                addError(KEY_NOT_FOUND, "Key '" + constraints.names[keyref] + "' with value " + value
+                        + " not found for identity constraint of element '" + ROOT + "'.", pendingLines[i], pendingColumns[i]);
+            }
+        }
+        if (numberOfSkippedRefs > 0) {
+            log.warn(numberOfSkippedRefs + " refs to ids not seen yet were not checked, more than " + maxPendingRefs
+                    + " refs were pending");
+        }
+        numberOfPendingRefs = 0;
+        free();
+    }
+
+    /**
+     * Release the ids, also when the document ends early.
+     */
+    public void free() {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != null) {
+                ids[i].free();
+                ids[i] = null;
+            }
+        }
+        isActive = false;
+    }
+
+    public long getNumberOfErrors() {
+        return numberOfErrors;
+    }
+
+    /**
+     * @return false if some ids or refs were not checked because the checker reached one of its limits
+     */
+    public boolean isComplete() {
+        if (numberOfSkippedRefs > 0) {
+            return false;
+        }
+        for (boolean isDisabled : disabled) {
+            if (isDisabled) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Node[] add(Node[] nodes, int i, Node node) {
+        if (i == nodes.length) {
+            nodes = Arrays.copyOf(nodes, i << 1);
+        }
+        nodes[i] = node;
+        return nodes;
+    }
+
+    private void check(int constraint, Attributes attributes) {
+        String[] fields = constraints.fields[constraint];
+        String single = null;
+        if (fields.length == 1) {
+            single = attributes.getValue("", fields[0]);
+            if (single == null) {
+                return;
+            }
+        } else {
+            value.setLength(0);
+            for (String field : fields) {
+                String fieldValue = attributes.getValue("", field);
+                if (fieldValue == null) {
+                    return;
+                }
+                value.append(value.length() == 0 ? "" : ",").append(fieldValue);
+            }
+        }
+        CharSequence key = single != null ? single : value;
+        long hash = DistinctCounter.hash(key);
+        int refer = constraints.refers[constraint];
+        if (refer < 0) {
+            if (isDisabled(constraint)) {
+                return;
+            }
+            OffHeapLongHashSet keys = ids[constraint];
+            if (keys == null) {
+                keys = ids[constraint] = maxIds > 0 ? new OffHeapLongHashSet(maxIds) : new OffHeapLongHashSet();
+            }
+            if (!keys.addIfAbsent(hash)) {
+                addError(DUPLICATE_UNIQUE, "Duplicate unique value [" + key + "] declared for identity constraint \""
+                        + constraints.names[constraint] + "\" of element \"" + ROOT + "\".", getLine(), getColumn());
+            } else if (keys.isFull()) {
+                disable(constraint);
+            }
+        } else {
+            if (isDisabled(refer)) {
+                return;
+            }
+            OffHeapLongHashSet keys = ids[refer];
+            if (keys == null || !keys.contains(hash)) {
+                addPending(constraint, hash, key);
+            }
+        }
+    }
+
+    private boolean isDisabled(int unique) {
+        return disabled[unique];
+    }
+
+    private void disable(int unique) {
+        disabled[unique] = true;
+        log.warn("More than " + ids[unique].count() + " ids for identity constraint " + constraints.names[unique]
+                + ", the rest of its ids and refs are not checked");
+        ids[unique].free();
+        ids[unique] = null;
+    }
+
+    private void addPending(int keyref, long hash, CharSequence key) {
+        if (numberOfPendingRefs == maxPendingRefs) {
+            numberOfSkippedRefs++;
+            return;
+        }
+        if (numberOfPendingRefs == pendingHashes.length) {
+            int capacity = Math.min(maxPendingRefs, numberOfPendingRefs << 1);
+            pendingHashes = Arrays.copyOf(pendingHashes, capacity);
+            pendingKeyrefs = Arrays.copyOf(pendingKeyrefs, capacity);
+            pendingLines = Arrays.copyOf(pendingLines, capacity);
+            pendingColumns = Arrays.copyOf(pendingColumns, capacity);
+        }
+        int i = numberOfPendingRefs++;
+        pendingHashes[i] = hash;
+        pendingKeyrefs[i] = keyref;
+        pendingLines[i] = getLine();
+        pendingColumns[i] = getColumn();
+        if (i < MAX_KEPT_VALUES) {
+            pendingValues[i] = key.toString();
+        }
+    }
+
+    private void addError(String code, String message, int line, int column) {
+        numberOfErrors++;
+        report.addMessage(new ReportMessage(ValidationMessage.Type.ERROR, code, code + ": " + message, line, column));
+    }
+
+    private int getLine() {
+        return locator != null ? locator.getLineNumber() : ReportMessage.UNKNOWN;
+    }
+
+    private int getColumn() {
+        return locator != null ? locator.getColumnNumber() : ReportMessage.UNKNOWN;
+    }
+
+    private static Constraints getConstraints(URL xsd) throws SAXException {
+        Constraints constraints = constraintsByXsd.get(xsd.toString());
+        if (constraints == null) {
+            ConstraintReader reader = new ConstraintReader();
+            try (InputStream in = xsd.openStream()) {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setNamespaceAware(true);
+                factory.newSAXParser().parse(new InputSource(in), reader);
+            } catch (IOException | ParserConfigurationException e) {
+                throw new SAXException("Can't read the identity constraints of " + xsd, e);
+            }
+            constraints = reader.build();
+            constraintsByXsd.put(xsd.toString(), constraints);
+        }
+        return constraints;
+    }
+
+    /**
+     * Element of a selector path, relative to the root element.
+     */
+    private static class Node {
+        /**
+         * Child steps by namespace and local name, an unprefixed step has no namespace
+         */
+        private final Map<String, Map<String, Node>> children = new HashMap<>();
+        private Node wildcard;
+        private int[] constraints = new int[0];
+
+        private Node wildcard() {
+            if (wildcard == null) {
+                wildcard = new Node();
+            }
+            return wildcard;
+        }
+
+        private Node child(String namespace, String localName) {
+            return children.computeIfAbsent(namespace, ns -> new HashMap<>()).computeIfAbsent(localName, name -> new Node());
+        }
+    }
+
+    /**
+     * The constraints of the root element of one XSD, the unique constraints have no refer.
+     */
+    private static class Constraints {
+        private final Node root = new Node();
+        private String[] names;
+        private String[][] fields;
+        private int[] refers;
+    }
+
+    /**
+     * Reads the xsd:unique, xsd:key and xsd:keyref declarations of the MzIdentML element. Only selectors of child
+     * steps and fields of a single attribute are supported, which covers every constraint of the mzIdentML XSDs; any
+     * other constraint is left out with a warning in the log.
+     */
+    private static class ConstraintReader extends DefaultHandler {
+
+        private final Map<String, String> prefixes = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<String> selectors = new ArrayList<>();
+        private final List<List<String>> fields = new ArrayList<>();
+        private final List<String> refers = new ArrayList<>();
+        private int depth;
+        private boolean isInRoot;
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) {
+            prefixes.put(prefix, uri);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            depth++;
+            if (!XSD_NS.equals(uri)) {
+                return;
+            }
+            if (depth == 2 && "element".equals(localName)) {
+                isInRoot = ROOT.equals(attributes.getValue("name"));
+            } else if (isInRoot && depth == 3) {
+                switch (localName) {
+                    case "unique":
+                    case "key":
+                    case "keyref":
+                        names.add(attributes.getValue("name"));
+                        String refer = attributes.getValue("refer");
+                        refers.add(refer == null ? null : refer.substring(refer.indexOf(':') + 1));
+                        selectors.add(null);
+                        fields.add(new ArrayList<>());
+                        break;
+                    default:
+                        break;
+                }
+            } else if (isInRoot && depth == 4 && !names.isEmpty()) {
+                int last = names.size() - 1;
+                if ("selector".equals(localName)) {
+                    selectors.set(last, attributes.getValue("xpath"));
+                } else if ("field".equals(localName)) {
+                    fields.get(last).add(attributes.getValue("xpath"));
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (depth == 2) {
+                isInRoot = false;
+            }
+            depth--;
+        }
+
+        private Constraints build() {
+            Constraints constraints = new Constraints();
+            int n = names.size();
+            constraints.names = names.toArray(new String[0]);
+            constraints.fields = new String[n][];
+            constraints.refers = new int[n];
+            Node[] nodes = new Node[n];
+            Map<String, Integer> uniques = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                constraints.fields[i] = toAttributeNames(fields.get(i));
+                nodes[i] = constraints.fields[i] != null ? toNode(constraints.root, selectors.get(i)) : null;
+                if (nodes[i] != null && refers.get(i) == null) {
+                    uniques.put(names.get(i), i);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                Node node = nodes[i];
+                Integer refer = refers.get(i) == null ? Integer.valueOf(-1) : uniques.get(refers.get(i));
+                constraints.refers[i] = refer == null ? -1 : refer;
+                if (node == null || refer == null) {
+                    // a keyref to an unsupported constraint is left out as well
+                    log.warn("Identity constraint " + names.get(i) + " is not checked, its selector or fields are not supported");
+                    continue;
+                }
+                node.constraints = Arrays.copyOf(node.constraints, node.constraints.length + 1);
+                node.constraints[node.constraints.length - 1] = i;
+            }
+            return constraints;
+        }
+
+        /**
+         * @return node of the selector, null if the selector isn't a path of child steps
+         */
+        private Node toNode(Node root, String selector) {
+            if (selector == null) {
+                return null;
+            }
+            String path = selector.trim();
+            if (path.equals(".")) {
+                return root;
+            }
+            if (path.startsWith("./")) {
+                path = path.substring(2);
+            }
+            if (path.isEmpty() || path.contains("//") || path.contains("|") || path.contains("@") || path.contains("(")) {
+                return null;
+            }
+            Node node = root;
+            for (String step : path.split("/")) {
+                if (step.equals("*")) {
+                    node = node.wildcard();
+                    continue;
+                }
+                int colon = step.indexOf(':');
+                // an unprefixed step is in no namespace and never matches a qualified mzIdentML element
+                String namespace = colon < 0 ? "" : prefixes.get(step.substring(0, colon));
+                if (namespace == null || step.equals(".")) {
+                    return null;
+                }
+                node = node.child(namespace, step.substring(colon + 1));
+            }
+            return node;
+        }
+
+        /**
+         * @return the names of the attributes of the fields, null if a field is not a single unprefixed attribute
+         */
+        private static String[] toAttributeNames(List<String> fields) {
+            if (fields.isEmpty()) {
+                return null;
+            }
+            String[] attributeNames = new String[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                String field = fields.get(i).trim();
+                if (!field.startsWith("@") || field.contains(":") || field.contains("/")) {
+                    return null;
+                }
+                attributeNames[i] = field.substring(1);
+            }
+            return attributeNames;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import uk.ac.ebi.pride.tools.jmzreader.JMzReader;
 import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
 import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
 import uk.ac.ebi.pride.tools.mgf_parser.MgfFile;
+import uk.ac.ebi.pride.tools.mgf_parser.model.Ms2Query;
 import uk.ac.ebi.pride.tools.ms2_parser.Ms2File;
 import uk.ac.ebi.pride.tools.mzdata_wrapper.MzMlWrapper;
 import uk.ac.ebi.pride.tools.mzxml_parser.MzXMLFile;
@@ -14,56 +15,96 @@ import uk.ac.ebi.pride.tools.mzxml_parser.MzXMLParsingException;
 import uk.ac.ebi.pride.tools.pkl_parser.PklFile;
 import uk.ac.ebi.pride.tools.pride_wrapper.PRIDEXmlWrapper;
 import uk.ac.ebi.pride.utilities.util.Triple;
-import uk.ac.ebi.pride.utilities.util.Tuple;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Slf4j
-public class JmzReaderSpectrumService {
+public class JmzReaderSpectrumService implements Closeable {
     public static final Pattern patternScanInTitle = Pattern.compile("^.*scan=(\\d+).*$");
 
     /**
-     * Map of all readers containing the spectra
+     * Peak files are read from disk while they are indexed, more threads than this rarely help.
      */
-    Map<String, JMzReader> readers;
+    public static final int MAX_INDEXING_THREADS = 4;
+
+    /**
+     * File type of every peak file, the readers are only opened when needed
+     */
+    private final Map<String, Utility.FileType> fileTypes = new ConcurrentHashMap<>();
+
+    /**
+     * Map of all readers containing the spectra, opened or being opened
+     */
+    private final Map<String, FutureTask<JMzReader>> readers = new ConcurrentHashMap<>();
+
+    /**
+     * Spectrum index of every peak file, loaded from the cache or built from the reader
+     */
+    private final Map<String, FutureTask<SpectrumIndex>> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * Gzipped peak files, read in place
+     */
+    private final Map<String, GzipFile> gzipFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Cache of the spectrum indexes, may be null
+     */
+    private final SpectrumIndexCache indexCache;
+
+    /**
+     * Time spent opening and indexing each peak file, in milliseconds
+     */
+    private final Map<String, Long> indexingTimes = new ConcurrentHashMap<>();
+
+    private final ExecutorService indexingPool;
+
+    /**
+     * Metrics the indexing of the peak files is recorded in
+     */
+    private volatile ValidationMetrics metrics = ValidationMetrics.NONE;
 
     /**
      * Based on the file type of the peak file, get the correct reader to parse the peak file
      * @param spectrumFileList spectrum File List
-     * @throws JMzReaderException JMzReader Exception
-     * @throws MzXMLParsingException MzXML Parsing Exception
+     * @param indexingThreads number of peak files indexed at the same time
+     * @param indexCache cache of the spectrum indexes, may be null
      */
-    private JmzReaderSpectrumService(List<Triple<String, SpectraData, Utility.FileType>> spectrumFileList) throws JMzReaderException, MzXMLParsingException {
-        this.readers = new HashMap<>();
+    private JmzReaderSpectrumService(List<Triple<String, SpectraData, Utility.FileType>> spectrumFileList, int indexingThreads,
+                                     SpectrumIndexCache indexCache) {
+        this.indexCache = indexCache;
         for (Triple<String, SpectraData, Utility.FileType> entry : spectrumFileList) {
-            String key = Paths.get(entry.getFirst()).toString();
-            Utility.FileType value = entry.getThird();
-
-            if (value == Utility.FileType.MGF) {
-                this.readers.put(key, new MgfFile(new File(key), true));
-            }
-            if (value == Utility.FileType.PRIDE) {
-                this.readers.put(key, new PRIDEXmlWrapper(new File(key)));
-            }
-            if( value == Utility.FileType.MZML){
-                this.readers.put(key, new MzMlWrapper(new File(key)));
-            }
-            if( value == Utility.FileType.PKL){
-                this.readers.put(key, new PklFile(new File(key)));
-            }
-            if( value == Utility.FileType.MZXML){
-                this.readers.put(key, new MzXMLFile(new File(key)));
-            }
-            if( value == Utility.FileType.MS2){
-                this.readers.put(key, new Ms2File(new File(key)));
-            }
+            fileTypes.put(Paths.get(entry.getFirst()).toString(), entry.getThird());
         }
+        int poolSize = Math.max(1, Math.min(indexingThreads, fileTypes.size()));
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.indexingPool = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "peak-indexer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -75,56 +116,291 @@ public class JmzReaderSpectrumService {
      * @throws MzXMLParsingException MzXMLParsingException Exception
      */
     public static JmzReaderSpectrumService getInstance(List<Triple<String, SpectraData, Utility.FileType>> spectrumFileList) throws JMzReaderException, MzXMLParsingException {
-        return new JmzReaderSpectrumService(spectrumFileList);
+        return getInstance(spectrumFileList, getDefaultIndexingThreads());
     }
 
     /**
-     * Get the Spectrum by the spectrum Id
-     * @param filePath absolute file path
-     * @param id spectrum Id
-     * @return Spectrum
+     * Return an instance that allow to read the spectra from the original file. The readers are opened on first
+     * use or when they are prefetched, on a pool of indexingThreads threads.
+     *
+     * @param spectrumFileList spectrum File List
+     * @param indexingThreads number of peak files indexed at the same time
+     * @return JmzReaderSpectrumService JmzReader Spectrum Service
      * @throws JMzReaderException JMzReader Exception
+     * @throws MzXMLParsingException MzXMLParsingException Exception
      */
-    public Spectrum getSpectrumById(String filePath, String id) throws JMzReaderException {
-        JMzReader reader = readers.get(filePath);
+    public static JmzReaderSpectrumService getInstance(List<Triple<String, SpectraData, Utility.FileType>> spectrumFileList,
+                                                       int indexingThreads) throws JMzReaderException, MzXMLParsingException {
+        return new JmzReaderSpectrumService(spectrumFileList, indexingThreads, null);
+    }
 
-        try{
-            // Remove the scan prefix if the id starts like scan=ScanNum
-            if(id.startsWith("scan="))
-                id = id.replace("scan=", "");
+    /**
+     * Return an instance that allow to read the spectra from the original file and keeps the spectrum index
+     * of every peak file in a cache, see {@link #getSpectrumIndex(String)}.
+     *
+     * @param spectrumFileList spectrum File List
+     * @param indexingThreads number of peak files indexed at the same time
+     * @param indexCache cache of the spectrum indexes, may be null
+     * @return JmzReaderSpectrumService JmzReader Spectrum Service
+     * @throws JMzReaderException JMzReader Exception
+     * @throws MzXMLParsingException MzXMLParsingException Exception
+     */
+    public static JmzReaderSpectrumService getInstance(List<Triple<String, SpectraData, Utility.FileType>> spectrumFileList,
+                                                       int indexingThreads, SpectrumIndexCache indexCache) throws JMzReaderException, MzXMLParsingException {
+        return new JmzReaderSpectrumService(spectrumFileList, indexingThreads, indexCache);
+    }
 
-            Spectrum spec = null;
-            if(reader.getSpectraIds().contains(id)){
-                spec = reader.getSpectrumById(id);
+    /**
+     * @return the number of cores, but not more than {@link #MAX_INDEXING_THREADS}
+     */
+    public static int getDefaultIndexingThreads() {
+        return Math.min(Runtime.getRuntime().availableProcessors(), MAX_INDEXING_THREADS);
+    }
+
+    /**
+     * Add peak files to a service shared by several result files; a file already known keeps its type and its
+     * index, so every peak file is indexed once.
+     * @param spectrumFileList spectrum File List
+     */
+    public void addSpectrumFiles(List<Triple<String, SpectraData, Utility.FileType>> spectrumFileList) {
+        for (Triple<String, SpectraData, Utility.FileType> entry : spectrumFileList) {
+            if (entry.getThird() != null) {
+                fileTypes.putIfAbsent(Paths.get(entry.getFirst()).toString(), entry.getThird());
             }
+        }
+    }
 
-            /***
-             * In some cases the id is written wronly and the scan is annotated as controllerType=0 controllerNumber=1 scan=1 while in the
-             * mzidentml is annotated as scan=1
-             */
-            String finalId = id;
-            if (spec == null){
-
-                List<Tuple<String, String>> spectra = reader.getSpectraIds()
-                        .stream().filter(x -> x.contains(finalId))
-                        .map(x -> new Tuple<>(x, x)).collect(Collectors.toList());
-                if(spectra.size() == 1)
-                    spec =  reader.getSpectrumById(spectra.get(0).getValue());
-                else{
-                    spectra = reader.getSpectraIds().stream().map(x-> {
-                        String[] scans = x.split(" ");
-                        for(String idScan: scans){
-                            if(idScan.contains("scan")){
-                                return new Tuple<>(idScan.trim(),x);
-                            }
-                        }
-                        return new Tuple<>(x,x);
-                    }).collect(Collectors.toList()).stream().filter(x -> x.getKey().equalsIgnoreCase("scan=" + finalId)).collect(Collectors.toList());
-                    if(spectra.size() == 1)
-                        spec =  reader.getSpectrumById(spectra.get(0).getValue());
-                }
+    /**
+     * Start loading the spectrum index of the given peak files in the background. The readers are only
+     * opened for the files without a cached index: MGF files are scanned without a reader, see {@link MgfIndexer},
+     * mzML and mzXML files are parsed as a stream, see {@link XmlSpectrumIndexer}, and gzipped files are indexed
+     * while they are inflated, see {@link GzipFile}.
+     * @param filePaths absolute file paths
+     */
+    public void prefetch(Collection<String> filePaths) {
+        for (String filePath : filePaths) {
+            FutureTask<SpectrumIndex> task = indexTask(filePath);
+            indexingPool.execute(task);
+        }
+    }
+
+    /**
+     * Get the index of the spectra of a peak file. It is read from the cache when the file hasn't changed since
+     * it was cached, otherwise it is built by scanning the file, or from the reader for the other formats or if the
+     * scan fails, and stored in the cache.
+     * @param filePath absolute file path
+     * @return spectrum index
+     * @throws JMzReaderException if the file can't be read
+     */
+    public SpectrumIndex getSpectrumIndex(String filePath) throws JMzReaderException {
+        return await(indexTask(filePath), filePath);
+    }
+
+    /**
+     * @param filePath absolute file path
+     * @return time spent opening and indexing the file in milliseconds, or null if it hasn't been opened
+     */
+    public Long getIndexingTime(String filePath) {
+        return indexingTimes.get(filePath);
+    }
+
+    /**
+     * @param metrics metrics the indexing of the peak files is recorded in
+     */
+    public void setMetrics(ValidationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private FutureTask<SpectrumIndex> indexTask(String filePath) {
+        return indexes.computeIfAbsent(filePath, key -> new FutureTask<>(() -> loadSpectrumIndex(key)));
+    }
+
+    private SpectrumIndex loadSpectrumIndex(String filePath) throws JMzReaderException {
+        try (ValidationMetrics.StageTimer timer = metrics.start(ValidationMetrics.Stage.PEAK_INDEXING)) {
+            SpectrumIndex index = loadSpectrumIndex(filePath, timer);
+            timer.addRecords(index.size());
+            return index;
+        }
+    }
+
+    private SpectrumIndex loadSpectrumIndex(String filePath, ValidationMetrics.StageTimer timer) throws JMzReaderException {
+        File file = new File(filePath);
+        long start = System.currentTimeMillis();
+        SpectrumIndex index = indexCache != null ? indexCache.get(file) : null;
+        if (index != null) {
+            long time = System.currentTimeMillis() - start;
+            indexingTimes.put(filePath, time);
+            log.info("Loaded the cached index of " + file.getName() + " in " + time + "ms");
+            return index;
+        }
+        // a cached index doesn't read the peak file
+        timer.addBytes(file.length());
+        if (GzipFile.isGzip(file)) {
+            index = indexGzipFile(filePath);
+        } else if (fileTypes.get(filePath) == Utility.FileType.MGF) {
+            try {
+                index = MgfIndexer.index(file);
+            } catch (IOException e) {
+                log.warn("Unable to scan " + file.getName() + ", indexing it with the MGF reader: " + e.getMessage());
+            }
+        } else if (isXml(fileTypes.get(filePath))) {
+            try (InputStream in = new FileInputStream(file)) {
+                index = XmlSpectrumIndexer.index(in, fileTypes.get(filePath), file.getName());
+            } catch (IOException e) {
+                log.warn("Unable to scan " + file.getName() + ", indexing it with the reader: " + e.getMessage());
             }
-            if(spec != null && spec.getMsLevel() == 1)
+        }
+        if (index == null) {
+            index = indexFromReader(filePath);
+        }
+        long time = System.currentTimeMillis() - start;
+        indexingTimes.put(filePath, time);
+        log.info("Indexed " + index.size() + " spectra of " + file.getName() + " in " + time + "ms");
+        if (indexCache != null) {
+            indexCache.put(file, index);
+        }
+        return index;
+    }
+
+    /**
+     * Index a gzipped MGF, mzML or mzXML file while it is inflated, without writing a decompressed copy.
+     * @param filePath absolute file path
+     * @return spectrum index, or null if the format can't be read as a stream
+     */
+    private SpectrumIndex indexGzipFile(String filePath) {
+        Utility.FileType fileType = fileTypes.get(filePath);
+        if (fileType != Utility.FileType.MGF && !isXml(fileType)) {
+            return null;
+        }
+        GzipFile gzipFile = getGzipFile(filePath);
+        try (InputStream in = gzipFile.open()) {
+            return fileType == Utility.FileType.MGF ? MgfIndexer.index(in, gzipFile.getFile().getName())
+                    : XmlSpectrumIndexer.index(in, fileType, gzipFile.getFile().getName());
+        } catch (IOException e) {
+            log.warn("Unable to scan " + gzipFile.getFile().getName() + ", indexing it with the reader: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isXml(Utility.FileType fileType) {
+        return fileType == Utility.FileType.MZML || fileType == Utility.FileType.MZXML;
+    }
+
+    private GzipFile getGzipFile(String filePath) {
+        return gzipFiles.computeIfAbsent(filePath, key -> new GzipFile(new File(key)));
+    }
+
+    private SpectrumIndex indexFromReader(String filePath) throws JMzReaderException {
+        JMzReader reader = getReader(filePath);
+        SpectrumIndex.Builder builder = new SpectrumIndex.Builder();
+        Iterator<Spectrum> iterator = reader.getSpectrumIterator();
+        while (iterator.hasNext()) {
+            Spectrum spectrum = iterator.next();
+            String id = spectrum.getId();
+            Matcher scan = patternScanInTitle.matcher(id != null ? id : "");
+            builder.add(id,
+                    spectrum instanceof Ms2Query ? ((Ms2Query) spectrum).getTitle() : null,
+                    scan.matches() ? Integer.parseInt(scan.group(1)) : -1,
+                    -1,
+                    spectrum.getMsLevel() != null ? spectrum.getMsLevel() : 0,
+                    spectrum.getPrecursorCharge() != null ? spectrum.getPrecursorCharge() : 0,
+                    spectrum.getPrecursorMZ() != null ? spectrum.getPrecursorMZ() : Double.NaN);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get the reader of a peak file, opening it if needed and waiting until it has been indexed.
+     * @param filePath absolute file path
+     * @return reader
+     * @throws JMzReaderException if the file can't be opened
+     */
+    private JMzReader getReader(String filePath) throws JMzReaderException {
+        return await(readers.computeIfAbsent(filePath, key -> new FutureTask<>(() -> openReader(key))), filePath);
+    }
+
+    /**
+     * Run the task in the calling thread unless another thread already did, and wait for its result.
+     */
+    private static <T> T await(FutureTask<T> task, String filePath) throws JMzReaderException {
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMzReaderException("Interrupted while indexing " + filePath, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JMzReaderException) {
+                throw (JMzReaderException) e.getCause();
+            }
+            throw new JMzReaderException("Unable to index " + filePath, e.getCause());
+        }
+    }
+
+    private JMzReader openReader(String filePath) throws JMzReaderException {
+        Utility.FileType value = fileTypes.get(filePath);
+        File file = new File(filePath);
+        long start = System.currentTimeMillis();
+        JMzReader reader;
+        try {
+            if (GzipFile.isGzip(file)) {
+                // the readers need random access to a plain file
+                file = getGzipFile(filePath).getInflatedFile();
+            }
+            if (value == Utility.FileType.MGF) {
+                reader = new MgfFile(file, true);
+            } else if (value == Utility.FileType.PRIDE) {
+                reader = new PRIDEXmlWrapper(file);
+            } else if (value == Utility.FileType.MZML) {
+                reader = new MzMlWrapper(file);
+            } else if (value == Utility.FileType.PKL) {
+                reader = new PklFile(file);
+            } else if (value == Utility.FileType.MZXML) {
+                reader = new MzXMLFile(file);
+            } else if (value == Utility.FileType.MS2) {
+                reader = new Ms2File(file);
+            } else {
+                throw new JMzReaderException("No reader available for " + filePath + " of type " + value);
+            }
+        } catch (MzXMLParsingException e) {
+            throw new JMzReaderException("Unable to parse " + filePath, e);
+        } catch (IOException e) {
+            throw new JMzReaderException("Unable to decompress " + filePath, e);
+        }
+        long time = System.currentTimeMillis() - start;
+        indexingTimes.put(filePath, time);
+        log.info("Indexed " + file.getName() + " in " + time + "ms");
+        return reader;
+    }
+
+    /**
+     * Stop the indexing threads and delete the decompressed copies of the gzipped peak files, the readers opened on
+     * them can't be used afterwards.
+     */
+    @Override
+    public void close() {
+        indexingPool.shutdownNow();
+        for (GzipFile gzipFile : gzipFiles.values()) {
+            gzipFile.deleteInflatedFile();
+        }
+    }
+
+    /**
+     * Get the Spectrum by the spectrum Id. The id is looked up in the spectrum index of the file, so besides the
+     * native id a spectrum is found by its scan number or its MGF title, see {@link SpectrumIndex#find(String)}.
+     * @param filePath absolute file path
+     * @param id spectrum Id
+     * @return Spectrum, or null if it isn't found or is an MS1 spectrum
+     * @throws JMzReaderException JMzReader Exception
+     */
+    public Spectrum getSpectrumById(String filePath, String id) throws JMzReaderException {
+        SpectrumIndex index = getSpectrumIndex(filePath);
+        int position = index.find(id);
+        if (position < 0 || index.getMsLevel(position) == 1)
+            return null;
+        try{
+            Spectrum spec = readSpectrum(filePath, index.getId(position));
+            if(spec != null && spec.getMsLevel() != null && spec.getMsLevel() == 1)
                 spec = null;
             return spec;
         }catch (NumberFormatException e){
@@ -132,6 +408,122 @@ public class JmzReaderSpectrumService {
         }
     }
 
+    /**
+     * Get the peaks of a spectrum as primitive arrays. MGF, mzML and mzXML spectra are parsed straight from the
+     * offset recorded in the spectrum index, through {@link GzipFile#openAt(long)} for gzipped files, see
+     * {@link XmlPeakListReader}; the other formats, spectra indexed without offsets and mzML arrays that can't be
+     * decoded are read with the jmzreader reader.
+     * @param filePath absolute file path
+     * @param position position of the spectrum in the spectrum index of the file
+     * @return PeakList
+     * @throws JMzReaderException if the spectrum can't be read
+     */
+    public PeakList getPeakList(String filePath, int position) throws JMzReaderException {
+        SpectrumIndex index = getSpectrumIndex(filePath);
+        long offset = index.getOffset(position);
+        if (isReadAtOffset(filePath, offset)) {
+            try (InputStream in = openAt(filePath, offset)) {
+                return readPeakList(in, filePath, index, position);
+            } catch (IOException e) {
+                log.warn("Unable to read spectrum " + index.getId(position) + " of " + filePath + " at byte " + offset
+                        + ", reading it with the reader: " + e.getMessage());
+            }
+        }
+        Spectrum spectrum = readSpectrum(filePath, index.getId(position));
+        if (spectrum == null)
+            throw new JMzReaderException("Spectrum " + index.getId(position) + " not found in " + filePath);
+        return PeakList.from(spectrum.getPeakList());
+    }
+
+    /**
+     * Get the peaks of several spectra of a peak file, in the order of their offsets in the file rather than the
+     * given order. A gzipped MGF, mzML or mzXML file is then inflated once front to back through a
+     * {@link GzipFile.Cursor}, instead of once per spectrum for a single-member file, see {@link GzipFile}.
+     * @param filePath absolute file path
+     * @param positions positions of the spectra in the spectrum index of the file
+     * @param handler receives the peaks of every spectrum
+     * @throws JMzReaderException if a spectrum can't be read
+     */
+    public void readPeakLists(String filePath, int[] positions, PeakListHandler handler) throws JMzReaderException {
+        SpectrumIndex index = getSpectrumIndex(filePath);
+        int[] sorted = IntStream.of(positions).boxed().sorted(Comparator.comparingLong(index::getOffset))
+                .mapToInt(Integer::intValue).toArray();
+        if (!GzipFile.isGzip(new File(filePath)) || !isReadAtOffset(filePath, 0)) {
+            for (int position : sorted) {
+                handler.accept(position, getPeakList(filePath, position));
+            }
+            return;
+        }
+        try (GzipFile.Cursor cursor = getGzipFile(filePath).openCursor()) {
+            for (int position : sorted) {
+                long offset = index.getOffset(position);
+                PeakList peaks = null;
+                if (offset >= 0) {
+                    try {
+                        peaks = readPeakList(cursor.at(offset), filePath, index, position);
+                    } catch (IOException e) {
+                        log.warn("Unable to read spectrum " + index.getId(position) + " of " + filePath + " at byte "
+                                + offset + ", reading it with the reader: " + e.getMessage());
+                    }
+                }
+                handler.accept(position, peaks != null ? peaks : getPeakList(filePath, position));
+            }
+        } catch (IOException e) {
+            log.debug("Unable to close the stream of " + filePath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Receives the peaks read by {@link #readPeakLists(String, int[], PeakListHandler)}.
+     */
+    public interface PeakListHandler {
+        /**
+         * @param position position of the spectrum in the spectrum index of the file
+         * @param peaks peaks of the spectrum
+         */
+        void accept(int position, PeakList peaks) throws JMzReaderException;
+    }
+
+    private boolean isReadAtOffset(String filePath, long offset) {
+        Utility.FileType fileType = fileTypes.get(filePath);
+        return offset >= 0 && (fileType == Utility.FileType.MGF || isXml(fileType));
+    }
+
+    /**
+     * Parse the spectrum at the start of the stream. An XML spectrum is read up to the offset of the next one, the
+     * spectra are indexed in the order of their offsets.
+     */
+    private PeakList readPeakList(InputStream in, String filePath, SpectrumIndex index, int position) throws IOException {
+        Utility.FileType fileType = fileTypes.get(filePath);
+        if (fileType == Utility.FileType.MGF) {
+            return PeakList.readMgf(in);
+        }
+        long offset = index.getOffset(position);
+        long next = position + 1 < index.size() ? index.getOffset(position + 1) : -1;
+        return XmlPeakListReader.read(in, next > offset ? next - offset : -1, fileType, index.getId(position));
+    }
+
+    /**
+     * The readers keep a file position, a reader shared by the validations of several result files is used by
+     * one thread at a time.
+     */
+    private Spectrum readSpectrum(String filePath, String id) throws JMzReaderException {
+        JMzReader reader = getReader(filePath);
+        synchronized (reader) {
+            return reader.getSpectrumById(id);
+        }
+    }
+
+    private InputStream openAt(String filePath, long offset) throws IOException {
+        File file = new File(filePath);
+        if (GzipFile.isGzip(file)) {
+            return getGzipFile(filePath).openAt(offset);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel.position(offset);
+        return Channels.newInputStream(channel);
+    }
+
     /**
      * Get the Spectrum by the spectrum index
      * @param filePath absolute file path
@@ -140,9 +532,11 @@ public class JmzReaderSpectrumService {
      * @throws JMzReaderException JMzReader Exception
      */
     public Spectrum getSpectrumByIndex(String filePath, int id) throws JMzReaderException {
-        JMzReader reader = readers.get(filePath);
+        JMzReader reader = getReader(filePath);
         try{
-            return reader.getSpectrumByIndex(id);
+            synchronized (reader) {
+                return reader.getSpectrumByIndex(id);
+            }
         }catch (NumberFormatException e){
             throw new JMzReaderException("Error parsing the following Accession -- " + id);
         }
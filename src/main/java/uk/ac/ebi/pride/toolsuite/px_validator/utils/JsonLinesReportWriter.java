@@ -0,0 +1,71 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes every record as one JSON object per line: {"record": type, "id": id, fields...}.
+ */
+public class JsonLinesReportWriter extends ReportWriter {
+
+    public JsonLinesReportWriter(Writer out) throws IOException {
+        super(out);
+    }
+
+    @Override
+    protected void write(String type, int id, Map<String, ?> fields) throws IOException {
+        out.write("{\"record\":");
+        writeString(type);
+        out.write(",\"id\":");
+        out.write(Integer.toString(id));
+        for (Map.Entry<String, ?> field : fields.entrySet()) {
+            out.write(',');
+            writeString(field.getKey());
+            out.write(':');
+            writeValue(field.getValue());
+        }
+        out.write("}\n");
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null || value instanceof Double && !Double.isFinite((Double) value)) {
+            out.write("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.write(value.toString());
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
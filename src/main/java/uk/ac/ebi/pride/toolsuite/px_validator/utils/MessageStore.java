@@ -0,0 +1,132 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.Getter;
+import uk.ac.ebi.pride.data.validation.ValidationMessage;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Validation messages grouped by level and template, each group with its count and its first messages as examples,
+ * so the memory of a report doesn't grow with the number of messages. Messages are added without locking, from any
+ * number of threads.
+ */
+public class MessageStore implements Serializable {
+
+    public static final int DEFAULT_NUMBER_OF_EXAMPLES = 5;
+    /**
+     * Number of groups after which the messages of new templates are only counted, in one group per level
+     */
+    public static final int MAX_GROUPS = 1000;
+    public static final String OTHER_TEMPLATE = "other messages";
+
+    private final int numberOfExamples;
+    private final ConcurrentHashMap<String, Group> groups = new ConcurrentHashMap<>();
+    private final AtomicLong groupOrder = new AtomicLong();
+    private final LongAdder numberOfMessages = new LongAdder();
+
+    public MessageStore() {
+        this(DEFAULT_NUMBER_OF_EXAMPLES);
+    }
+
+    /**
+     * @param numberOfExamples number of messages kept per group
+     */
+    public MessageStore(int numberOfExamples) {
+        this.numberOfExamples = numberOfExamples;
+    }
+
+    /**
+     * @return true if the message is kept as an example of its group, false if it is only counted
+     */
+    public boolean add(ReportMessage message) {
+        numberOfMessages.increment();
+        String template = message.getTemplate();
+        String key = message.getType() + "\t" + template;
+        Group group = groups.get(key);
+        if (group == null) {
+            if (groups.size() >= MAX_GROUPS) {
+                template = OTHER_TEMPLATE;
+                key = message.getType() + "\t" + template;
+            }
+            String groupTemplate = template;
+            group = groups.computeIfAbsent(key, k -> new Group(message.getType(), groupTemplate));
+        }
+        return group.add(message);
+    }
+
+    public long getNumberOfMessages() {
+        return numberOfMessages.sum();
+    }
+
+    public boolean isEmpty() {
+        return numberOfMessages.sum() == 0;
+    }
+
+    /**
+     * @return the groups in the order of their first message
+     */
+    public List<Group> getGroups() {
+        List<Group> sorted = new ArrayList<>(groups.values());
+        sorted.sort(Comparator.comparingLong(group -> group.order));
+        return sorted;
+    }
+
+    /**
+     * Messages of the same level and template.
+     */
+    public class Group implements Serializable {
+
+        @Getter
+        private final ValidationMessage.Type type;
+        @Getter
+        private final String template;
+        private final long order = groupOrder.getAndIncrement();
+        private final LongAdder count = new LongAdder();
+        private final AtomicInteger nextExample = new AtomicInteger();
+        private final AtomicReferenceArray<ReportMessage> examples = new AtomicReferenceArray<>(numberOfExamples);
+
+        private Group(ValidationMessage.Type type, String template) {
+            this.type = type;
+            this.template = template;
+        }
+
+        private boolean add(ReportMessage message) {
+            count.increment();
+            if (nextExample.get() >= numberOfExamples) {
+                return false;
+            }
+            int example = nextExample.getAndIncrement();
+            if (example >= numberOfExamples) {
+                return false;
+            }
+            examples.set(example, message);
+            return true;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return the first messages of the group, in the order they were added
+         */
+        public List<ReportMessage> getExamples() {
+            List<ReportMessage> list = new ArrayList<>(numberOfExamples);
+            for (int i = 0; i < examples.length(); i++) {
+                ReportMessage example = examples.get(i);
+                if (example != null) {
+                    list.add(example);
+                }
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Builds the {@link SpectrumIndex} of an MGF file by scanning it through memory-mapped windows. Only the
+ * BEGIN IONS / END IONS lines and the TITLE, PEPMASS, CHARGE and SCANS headers are decoded; peak lines are
+ * skipped byte by byte, so no object is created per peak or per spectrum.
+ *
+ * The spectra get the ids used by the MGF reader of jmzreader, their 1-based position in the file, and the offset
+ * of their BEGIN IONS line. A CHARGE before the first spectrum is the default charge of the file.
+ */
+@Slf4j
+public class MgfIndexer {
+
+    /**
+     * Largest region mapped at once, a mapping can't be larger than 2GB.
+     */
+    private static final int MAX_WINDOW_SIZE = 1 << 30;
+
+    private static final int STREAM_BUFFER_SIZE = 1 << 20;
+
+    private static final int MS_LEVEL = 2;
+
+    private MgfIndexer() {
+    }
+
+    /**
+     * @param file MGF file
+     * @return index of the spectra of the file
+     * @throws IOException if the file can't be read or has a line longer than the mapped window
+     */
+    public static SpectrumIndex index(File file) throws IOException {
+        return index(file, MAX_WINDOW_SIZE);
+    }
+
+    /**
+     * Index an MGF file read as a stream, such as a gzipped file being inflated. The offsets are positions in
+     * the uncompressed content.
+     *
+     * @param in MGF content
+     * @param name name of the file, for the log
+     * @return index of the spectra of the file
+     * @throws IOException if the stream can't be read
+     */
+    public static SpectrumIndex index(InputStream in, String name) throws IOException {
+        long start = System.currentTimeMillis();
+        LineParser parser = new LineParser();
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        int length = 0;
+        long bufferOffset = 0;
+        boolean isEnd = false;
+        while (!isEnd) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                isEnd = true;
+            } else {
+                length += read;
+            }
+            ByteBuffer window = ByteBuffer.wrap(buffer, 0, length);
+            int lineStart = 0;
+            while (lineStart < length) {
+                int lineEnd = indexOfNewLine(window, lineStart, length);
+                if (lineEnd < 0) {
+                    if (!isEnd) {
+                        break;
+                    }
+                    lineEnd = length;
+                }
+                parser.parse(window, lineStart, lineEnd, bufferOffset);
+                lineStart = lineEnd + 1;
+            }
+            lineStart = Math.min(lineStart, length);
+            // keep the incomplete last line at the start of the buffer
+            System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+            length -= lineStart;
+            bufferOffset += lineStart;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length << 1);
+            }
+        }
+        return finish(parser, name, start);
+    }
+
+    static SpectrumIndex index(File file, int windowSize) throws IOException {
+        long start = System.currentTimeMillis();
+        LineParser parser = new LineParser();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long windowStart = 0;
+            while (windowStart < size) {
+                int length = (int) Math.min(windowSize, size - windowStart);
+                boolean isLastWindow = windowStart + length == size;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+                int lineStart = 0;
+                while (lineStart < length) {
+                    int lineEnd = indexOfNewLine(window, lineStart, length);
+                    if (lineEnd < 0) {
+                        if (!isLastWindow) {
+                            // the line continues in the next window, which starts with it
+                            break;
+                        }
+                        lineEnd = length;
+                    }
+                    parser.parse(window, lineStart, lineEnd, windowStart);
+                    lineStart = lineEnd + 1;
+                }
+                if (lineStart == 0) {
+                    throw new IOException("Line longer than " + windowSize + " bytes at byte " + windowStart + " of " + file.getName());
+                }
+                windowStart += Math.min(lineStart, length);
+            }
+        }
+        return finish(parser, file.getName(), start);
+    }
+
+    private static SpectrumIndex finish(LineParser parser, String name, long start) {
+        if (parser.isInSpectrum) {
+            log.warn("The last spectrum of " + name + " is not closed by END IONS");
+            parser.endSpectrum();
+        }
+        SpectrumIndex index = parser.builder.build();
+        log.info("Scanned " + index.size() + " MGF spectra of " + name + " in " + (System.currentTimeMillis() - start) + "ms");
+        return index;
+    }
+
+    private static int indexOfNewLine(ByteBuffer window, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (window.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Keeps the headers of the current spectrum while the lines are scanned.
+     */
+    private static class LineParser {
+
+        private final SpectrumIndex.Builder builder = new SpectrumIndex.Builder();
+        private int numberOfSpectra;
+        private int defaultCharge;
+
+        private boolean isInSpectrum;
+        private long offset;
+        private String title;
+        private int scan;
+        private int charge;
+        private double precursorMz;
+
+        void parse(ByteBuffer window, int from, int to, long windowOffset) {
+            while (from < to && isBlank(window.get(from))) {
+                from++;
+            }
+            while (to > from && isBlank(window.get(to - 1))) {
+                to--;
+            }
+            if (from == to) {
+                return;
+            }
+            byte first = window.get(from);
+            if (isInSpectrum && (Character.isDigit(first) || first == '.' || first == '-')) {
+                // peak line
+                return;
+            }
+            if (matches(window, from, to, "BEGIN IONS")) {
+                // a spectrum without END IONS ends at the next one
+                endSpectrum();
+                isInSpectrum = true;
+                offset = windowOffset + from;
+                title = null;
+                scan = -1;
+                charge = defaultCharge;
+                precursorMz = Double.NaN;
+            } else if (matches(window, from, to, "END IONS")) {
+                endSpectrum();
+            } else if (matches(window, from, to, "CHARGE=")) {
+                int value = parseCharge(decode(window, from + "CHARGE=".length(), to));
+                if (isInSpectrum) {
+                    charge = value;
+                } else {
+                    defaultCharge = value;
+                }
+            } else if (isInSpectrum) {
+                if (matches(window, from, to, "TITLE=")) {
+                    title = decode(window, from + "TITLE=".length(), to);
+                } else if (matches(window, from, to, "PEPMASS=")) {
+                    precursorMz = parsePrecursorMz(decode(window, from + "PEPMASS=".length(), to));
+                } else if (matches(window, from, to, "SCANS=")) {
+                    scan = parseFirstNumber(decode(window, from + "SCANS=".length(), to));
+                }
+            }
+        }
+
+        void endSpectrum() {
+            if (isInSpectrum) {
+                numberOfSpectra++;
+                builder.add(Integer.toString(numberOfSpectra), title, scan, offset, MS_LEVEL, charge, precursorMz);
+                isInSpectrum = false;
+            }
+        }
+
+        private static boolean isBlank(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        /**
+         * Case-insensitive match of an ASCII prefix.
+         */
+        private static boolean matches(ByteBuffer window, int from, int to, String prefix) {
+            if (to - from < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (Character.toUpperCase((char) window.get(from + i)) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String decode(ByteBuffer window, int from, int to) {
+            byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = window.get(from + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8).trim();
+        }
+
+        /**
+         * @param value PEPMASS value, the m/z optionally followed by the intensity
+         * @return the m/z or NaN if it can't be parsed
+         */
+        private static double parsePrecursorMz(String value) {
+            int end = 0;
+            while (end < value.length() && !Character.isWhitespace(value.charAt(end))) {
+                end++;
+            }
+            try {
+                return Double.parseDouble(value.substring(0, end));
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        /**
+         * @param value CHARGE value such as 2+, +2, 3- or 2+ and 3+; only the first charge is kept
+         * @return the charge or 0 if it can't be parsed
+         */
+        private static int parseCharge(String value) {
+            int start = 0;
+            while (start < value.length() && !Character.isDigit(value.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while (end < value.length() && Character.isDigit(value.charAt(end))) {
+                end++;
+            }
+            if (start == end || end - start > 3) {
+                return 0;
+            }
+            int charge = Integer.parseInt(value.substring(start, end));
+            boolean isNegative = (end < value.length() && value.charAt(end) == '-') || (start > 0 && value.charAt(start - 1) == '-');
+            return charge > Byte.MAX_VALUE ? 0 : isNegative ? -charge : charge;
+        }
+
+        /**
+         * @param value SCANS value such as 1234 or a range 1234-1236
+         * @return the first scan or -1 if it can't be parsed
+         */
+        private static int parseFirstNumber(String value) {
+            int end = 0;
+            while (end < value.length() && Character.isDigit(value.charAt(end))) {
+                end++;
+            }
+            if (end == 0 || end > 9) {
+                return -1;
+            }
+            return Integer.parseInt(value.substring(0, end));
+        }
+    }
+}
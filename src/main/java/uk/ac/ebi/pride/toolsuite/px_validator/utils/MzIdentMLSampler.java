@@ -0,0 +1,417 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.xml.sax.Attributes;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import uk.ac.ebi.pride.data.validation.ValidationMessage;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+/**
+ * Validates a sample of the SpectrumIdentificationResult blocks of an mzIdentML file. The file is not parsed
+ * from the start: for every sample the reader jumps to a byte offset spread evenly between the first
+ * SpectrumIdentificationList and the end of the last one, scans forward to the next SpectrumIdentificationResult
+ * and validates that block on its own against the XSD type, and checks its SpectraData, Peptide and
+ * PeptideEvidence references against the ids of the header. The tags are found with or without a namespace prefix.
+ */
+@Slf4j
+public class MzIdentMLSampler {
+
+    private static final String RESULT = "SpectrumIdentificationResult";
+    private static final byte[] RESULT_NAME = RESULT.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LIST_NAME = "SpectrumIdentificationList".getBytes(StandardCharsets.US_ASCII);
+    private static final int WINDOW_SIZE = 1 << 16;
+    /**
+     * Longest tag name with its prefix that is looked at, the windows of the file overlap by this length.
+     */
+    private static final int MAX_TAG_LENGTH = 256;
+    private static final int MAX_RESULT_SIZE = 16 << 20;
+
+    private final File file;
+    private final String version;
+    private final Set<String> spectraDataIds;
+    private final IdHashSet peptideIds;
+    private final IdHashSet peptideEvidenceIds;
+    private final IReport report;
+
+    @Getter
+    private int numberOfSampledResults;
+    @Getter
+    private long numberOfSampledPSMs;
+    @Getter
+    private long estimatedNumberOfPSMs;
+
+    /**
+     * @param file mzIdentML file
+     * @param version mzIdentML version from the root element
+     * @param spectraDataIds ids of the SpectraData in Inputs
+     * @param peptideIds ids of the Peptide elements
+     * @param peptideEvidenceIds ids of the PeptideEvidence elements
+     * @param report report the errors are added to
+     */
+    public MzIdentMLSampler(File file, String version, Set<String> spectraDataIds, IdHashSet peptideIds,
+                            IdHashSet peptideEvidenceIds, IReport report) {
+        this.file = file;
+        this.version = version;
+        this.spectraDataIds = spectraDataIds;
+        this.peptideIds = peptideIds;
+        this.peptideEvidenceIds = peptideEvidenceIds;
+        this.report = report;
+    }
+
+    /**
+     * Validate up to sampleSize SpectrumIdentificationResult blocks.
+     *
+     * @param sampleSize number of blocks to check
+     * @throws IOException if the file can't be read
+     */
+    public void validate(int sampleSize) throws IOException {
+        Schema schema;
+        try {
+            schema = SchemaCache.getSpectrumIdentificationResultSchema(version);
+        } catch (SAXException e) {
+            throw new IOException("Unable to compile the SpectrumIdentificationResult schema", e);
+        }
+        long start = System.currentTimeMillis();
+        long sampledBytes = 0;
+        long firstResult = -1;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long listStart = findTag(channel, LIST_NAME, false, 0);
+            if (listStart < 0) {
+                addError("No SpectrumIdentificationList found");
+                return;
+            }
+            if (isEmptyElement(channel, listStart)) {
+                addError("SpectrumIdentificationList at byte " + listStart + " has no SpectrumIdentificationResult");
+                return;
+            }
+            // the blocks stop at the last list, the ProteinDetectionList after it can be as large
+            long listEnd = findLastTag(channel, LIST_NAME, true);
+            if (listEnd < 0) {
+                addError("SpectrumIdentificationList at byte " + listStart + " is not closed");
+                listEnd = channel.size();
+            }
+            long next = listStart;
+            for (int i = 0; i < sampleSize; i++) {
+                long offset = Math.max(next, listStart + (listEnd - listStart) / sampleSize * i);
+                long resultStart = findTag(channel, RESULT_NAME, false, offset);
+                if (resultStart < 0 || resultStart >= listEnd) {
+                    break;
+                }
+                long resultEnd = findTag(channel, RESULT_NAME, true, resultStart);
+                if (resultEnd >= 0) {
+                    resultEnd = findTagEnd(channel, resultEnd);
+                }
+                if (resultEnd < 0) {
+                    addError("SpectrumIdentificationResult at byte " + resultStart + " is not closed");
+                    break;
+                }
+                next = resultEnd;
+                if (resultEnd - resultStart > MAX_RESULT_SIZE) {
+                    addError("SpectrumIdentificationResult at byte " + resultStart + " is larger than " + MAX_RESULT_SIZE + " bytes");
+                    continue;
+                }
+                if (firstResult < 0) {
+                    firstResult = resultStart;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate((int) (resultEnd - resultStart));
+                read(channel, buffer, resultStart);
+                validateResult(new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8), resultStart, schema);
+                sampledBytes += resultEnd - resultStart;
+                numberOfSampledResults++;
+            }
+            if (sampledBytes > 0) {
+                estimatedNumberOfPSMs = Math.round((double) numberOfSampledPSMs * (listEnd - firstResult) / sampledBytes);
+            } else if (sampleSize > 0) {
+                addError("No SpectrumIdentificationResult could be sampled from the SpectrumIdentificationList at byte " + listStart);
+            }
+        }
+        log.info("Sampled " + numberOfSampledResults + " SpectrumIdentificationResult blocks of " + file.getName()
+                + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Find the next start or end tag of an element, reading the file in windows that overlap by
+     * {@link #MAX_TAG_LENGTH}.
+     *
+     * @param channel file channel
+     * @param localName name of the element without its prefix
+     * @param isEndTag look for the end tag instead of the start tag
+     * @param from position to start from
+     * @return position of the '<' of the tag or -1 if it isn't found
+     * @throws IOException if the file can't be read
+     */
+    private static long findTag(FileChannel channel, byte[] localName, boolean isEndTag, long from) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+        long size = channel.size();
+        long position = from;
+        while (position < size) {
+            window.clear();
+            int read = read(channel, window, position);
+            boolean isLast = position + read >= size;
+            // a tag starting in the overlap may be cut, it is looked at again in the next window
+            int limit = isLast ? read : read - MAX_TAG_LENGTH;
+            byte[] bytes = window.array();
+            for (int i = 0; i < limit; i++) {
+                if (bytes[i] == '<' && isTag(bytes, i, read, localName, isEndTag)) {
+                    return position + i;
+                }
+            }
+            position += limit;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the last start or end tag of an element, reading the file backwards in overlapping windows.
+     *
+     * @return position of the '<' of the tag or -1 if it isn't found
+     * @throws IOException if the file can't be read
+     */
+    private static long findLastTag(FileChannel channel, byte[] localName, boolean isEndTag) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+        long end = channel.size();
+        while (true) {
+            long position = Math.max(0, end - WINDOW_SIZE);
+            window.clear();
+            window.limit((int) (end - position));
+            int read = read(channel, window, position);
+            byte[] bytes = window.array();
+            for (int i = read - 1; i >= 0; i--) {
+                if (bytes[i] == '<' && isTag(bytes, i, read, localName, isEndTag)) {
+                    return position + i;
+                }
+            }
+            if (position == 0) {
+                return -1;
+            }
+            // the tags cut at the start of this window are whole in the next one
+            end = position + MAX_TAG_LENGTH;
+        }
+    }
+
+    /**
+     * @param tagStart position of the '<' of a tag
+     * @return position after the '>' closing the tag, or -1 if it isn't found
+     */
+    private static long findTagEnd(FileChannel channel, long tagStart) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(MAX_TAG_LENGTH);
+        int read = read(channel, window, tagStart);
+        for (int i = 0; i < read; i++) {
+            if (window.get(i) == '>') {
+                return tagStart + i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param tagStart position of the '<' of a start tag
+     * @return true if the tag is closed by '/>', the element has no content
+     */
+    private static boolean isEmptyElement(FileChannel channel, long tagStart) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+        // the attributes of the list can be longer than a tag name
+        long tagEnd = findByte(channel, window, tagStart, (byte) '>');
+        if (tagEnd < 0) {
+            return false;
+        }
+        window.clear().limit(1);
+        return read(channel, window, tagEnd - 1) == 1 && window.get(0) == '/';
+    }
+
+    private static long findByte(FileChannel channel, ByteBuffer window, long from, byte b) throws IOException {
+        long position = from;
+        int read;
+        while (true) {
+            window.clear();
+            if ((read = read(channel, window, position)) <= 0) {
+                return -1;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == b) {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Fill the buffer from the position, up to its limit or the end of the file.
+     *
+     * @return number of bytes read
+     */
+    private static int read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position() - start) > 0) {
+            // until the buffer is full or the file ends
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * @param bytes window of the file
+     * @param start position of a '<' in the window
+     * @param end end of the window
+     * @return true if a start or end tag of the element, with or without a prefix, starts there
+     */
+    private static boolean isTag(byte[] bytes, int start, int end, byte[] localName, boolean isEndTag) {
+        int i = start + 1;
+        if (isEndTag) {
+            if (i >= end || bytes[i] != '/') {
+                return false;
+            }
+            i++;
+        }
+        int nameStart = i;
+        int localStart = i;
+        int nameEnd = Math.min(end, nameStart + MAX_TAG_LENGTH);
+        while (i < nameEnd && !isTagDelimiter(bytes[i])) {
+            if (bytes[i] == ':') {
+                localStart = i + 1;
+            }
+            i++;
+        }
+        if (i == nameEnd || i - localStart != localName.length) {
+            return false;
+        }
+        for (int j = 0; j < localName.length; j++) {
+            if (bytes[localStart + j] != localName[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isTagDelimiter(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '>' || b == '/';
+    }
+
+    private void validateResult(String result, long offset, Schema schema) {
+        String namespace = SchemaCache.getMzIdentMLNamespace(version);
+        int nameEnd = result.indexOf(RESULT) + RESULT.length();
+        String prefix = result.substring(1, nameEnd - RESULT.length());
+        String namespaceAttribute = prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix.substring(0, prefix.length() - 1);
+        int headerEnd = result.indexOf('>');
+        String header = headerEnd < 0 ? result : result.substring(0, headerEnd);
+        // the namespaces are declared on the root element, which isn't part of the block
+        StringBuilder declarations = new StringBuilder();
+        if (!header.contains(namespaceAttribute + "=")) {
+            declarations.append(' ').append(namespaceAttribute).append("=\"").append(namespace).append('"');
+        }
+        if (!header.contains("xmlns:xsi=")) {
+            declarations.append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+        }
+        result = result.substring(0, nameEnd) + declarations + result.substring(nameEnd);
+        ErrorHandler errorHandler = new SampleErrorHandler(offset);
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XMLReader reader = factory.newSAXParser().getXMLReader();
+            ValidatorHandler validatorHandler = schema.newValidatorHandler();
+            validatorHandler.setErrorHandler(errorHandler);
+            validatorHandler.setContentHandler(new ReferenceChecker(offset));
+            reader.setContentHandler(validatorHandler);
+            reader.setErrorHandler(errorHandler);
+            reader.parse(new InputSource(new StringReader(result)));
+        } catch (SAXParseException e) {
+            addError(formatMessage(offset, e), ReportMessage.getSchemaCode(e.getMessage()));
+        } catch (SAXException | ParserConfigurationException | IOException e) {
+            addError("SpectrumIdentificationResult at byte " + offset + ": " + e.getMessage());
+        }
+    }
+
+    private void addError(String message) {
+        addError(message, null);
+    }
+
+    private void addError(String message, String code) {
+        report.addMessage(new ReportMessage(ValidationMessage.Type.ERROR, code, message, ReportMessage.UNKNOWN, ReportMessage.UNKNOWN));
+    }
+
+    private static String formatMessage(long offset, SAXParseException e) {
+        return "SpectrumIdentificationResult at byte " + offset + ", line " + e.getLineNumber()
+                + " of the block: " + e.getMessage();
+    }
+
+    private class SampleErrorHandler implements ErrorHandler {
+
+        private final long offset;
+
+        SampleErrorHandler(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void warning(SAXParseException e) {
+            log.debug(formatMessage(offset, e));
+        }
+
+        @Override
+        public void error(SAXParseException e) {
+            addError(formatMessage(offset, e), ReportMessage.getSchemaCode(e.getMessage()));
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) throws SAXException {
+            throw e;
+        }
+    }
+
+    /**
+     * Checks the references of a sampled block against the header and counts its PSMs.
+     */
+    private class ReferenceChecker extends DefaultHandler {
+
+        private final long offset;
+
+        ReferenceChecker(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "SpectrumIdentificationResult":
+                    checkReference("spectraData_ref", attributes.getValue("spectraData_ref"),
+                            spectraDataIds.contains(attributes.getValue("spectraData_ref")));
+                    break;
+                case "SpectrumIdentificationItem":
+                    numberOfSampledPSMs++;
+                    String peptideRef = attributes.getValue("peptide_ref");
+                    checkReference("peptide_ref", peptideRef, peptideRef != null && peptideIds.contains(peptideRef));
+                    break;
+                case "PeptideEvidenceRef":
+                    String evidenceRef = attributes.getValue("peptideEvidence_ref");
+                    checkReference("peptideEvidence_ref", evidenceRef, evidenceRef != null && peptideEvidenceIds.contains(evidenceRef));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void checkReference(String attribute, String value, boolean isFound) {
+            if (value != null && !isFound) {
+                addError("SpectrumIdentificationResult at byte " + offset + ": " + attribute + " '" + value + "' is not defined");
+            }
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.CountingInputStream;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.pride.data.validation.ValidationMessage;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.ValidatorHandler;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Validates an mzIdentML file against its XSD and collects the summary counts of the file in a single
+ * streaming SAX pass. The version is taken from the root element, the matching compiled schema is
+ * fetched from {@link SchemaCache} and every following event goes through the schema validator
+ * before it reaches the counters.
+ *
+ * The xs:unique/xs:keyref checks are done by an {@link IdentityConstraintChecker} instead of the schema
+ * validator, whose checks keep every id and ref on the heap and take time quadratic in the number of refs;
+ * the ids are kept as hashes outside the heap, 8 to 16 bytes per id. In schema-only mode nothing is counted.
+ *
+ * In header mode the pass stops at the first SpectrumIdentificationResult, after the SequenceCollection,
+ * the AnalysisProtocolCollection and the Inputs have been validated, and the ids of the Peptide and
+ * PeptideEvidence elements are kept so that sampled results can be checked against them.
+ */
+@Slf4j
+public class MzIdentMLStreamValidator {
+
+    private static final String VERSION = "version";
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String IDENTITY_CONSTRAINT_CHECKING = "http://apache.org/xml/features/validation/identity-constraint-checking";
+
+    public enum Mode {
+        FULL,
+        SCHEMA_ONLY,
+        HEADER
+    }
+
+    private final IReport report;
+    private final Mode mode;
+    @Getter
+    private long numberOfSchemaErrors;
+
+    @Getter
+    private String version;
+    private final DistinctCounter accessions;
+    private final DistinctCounter peptideSequences;
+    @Getter
+    private int numberOfPSMs;
+    @Getter
+    private final IdHashSet peptideIds = new IdHashSet();
+    @Getter
+    private final IdHashSet peptideEvidenceIds = new IdHashSet();
+    private final SpectraDataExtractor.SpectraDataHandler spectraDataHandler = new SpectraDataExtractor.SpectraDataHandler(false);
+    /**
+     * Metrics the version sniffing and the schema validation are recorded in
+     */
+    @Setter
+    private ValidationMetrics metrics = ValidationMetrics.NONE;
+    private ValidationMetrics.StageTimer stageTimer;
+    private CountingInputStream input;
+    private long sniffedBytes;
+    private long numberOfElements;
+    private IdentityConstraintChecker identityConstraintChecker;
+
+    public MzIdentMLStreamValidator(IReport report) {
+        this(report, Mode.FULL);
+    }
+
+    /**
+     * @param report report the schema errors are added to
+     * @param mode what part of the file is validated and what is collected
+     */
+    public MzIdentMLStreamValidator(IReport report, Mode mode) {
+        this(report, mode, false);
+    }
+
+    /**
+     * @param report report the schema errors are added to
+     * @param mode what part of the file is validated and what is collected
+     * @param isApproximateCounts true to estimate the distinct proteins and peptides in fixed memory, see
+     *                            {@link DistinctCounter#create(boolean)}
+     */
+    public MzIdentMLStreamValidator(IReport report, Mode mode, boolean isApproximateCounts) {
+        this.report = report;
+        this.mode = mode;
+        this.accessions = DistinctCounter.create(isApproximateCounts);
+        this.peptideSequences = DistinctCounter.create(isApproximateCounts);
+    }
+
+    /**
+     * Stream the file once, adding every schema error to the report.
+     *
+     * @param mzIdentML mzIdentML file
+     */
+    public void validate(File mzIdentML) {
+        stageTimer = metrics.start(ValidationMetrics.Stage.VERSION_SNIFF);
+        sniffedBytes = 0;
+        numberOfElements = 0;
+        try (InputStream in = new BufferedInputStream(input = new CountingInputStream(new FileInputStream(mzIdentML)), BUFFER_SIZE)) {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            InputSource source = new InputSource(in);
+            source.setSystemId(mzIdentML.toURI().toString());
+            factory.newSAXParser().parse(source, new SchemaDispatcher());
+        } catch (HeaderParsedException e) {
+            // the results are sampled by the caller
+        } catch (SAXParseException e) {
+            report.addMessage(toMessage(e));
+        } catch (IOException | SAXException | ParserConfigurationException e) {
+            report.addException(e, ValidationMessage.Type.ERROR);
+        } finally {
+            stageTimer.addBytes(input != null ? input.getByteCount() - sniffedBytes : 0).addRecords(numberOfElements).close();
+            input = null;
+            if (identityConstraintChecker != null) {
+                numberOfSchemaErrors += identityConstraintChecker.getNumberOfErrors();
+                identityConstraintChecker.free();
+                identityConstraintChecker = null;
+            }
+        }
+    }
+
+    public int getNumberOfProteins() {
+        return (int) Math.min(Integer.MAX_VALUE, accessions.count());
+    }
+
+    public int getNumberOfPeptides() {
+        return (int) Math.min(Integer.MAX_VALUE, peptideSequences.count());
+    }
+
+    /**
+     * @return true if the numbers of proteins and peptides are estimates, asked for or because there were too many
+     * distinct values to count them exactly
+     */
+    public boolean isApproximateCounts() {
+        return accessions.isApproximate() || peptideSequences.isApproximate();
+    }
+
+    public int getNumberOfSpectraData() {
+        return spectraDataHandler.getSpectraData().size();
+    }
+
+    /**
+     * @return the SpectraData found under Inputs during the pass
+     */
+    public List<SpectraData> getSpectraData() {
+        return spectraDataHandler.getSpectraData();
+    }
+
+    private static ReportMessage toMessage(SAXParseException e) {
+        return new ReportMessage(ValidationMessage.Type.ERROR, ReportMessage.getSchemaCode(e.getMessage()), e.getMessage(),
+                e.getLineNumber(), e.getColumnNumber());
+    }
+
+    private static String formatMessage(SAXParseException e) {
+        return "Line " + e.getLineNumber() + ", column " + e.getColumnNumber() + ": " + e.getMessage();
+    }
+
+    /**
+     * Thrown to stop the parser at the first SpectrumIdentificationResult in header mode.
+     */
+    private static class HeaderParsedException extends SAXException {
+        HeaderParsedException() {
+            super("Header parsed");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Adds the schema errors to the report, malformed XML stops the parsing.
+     */
+    private class ReportErrorHandler implements ErrorHandler {
+
+        @Override
+        public void warning(SAXParseException e) {
+            log.debug(formatMessage(e));
+        }
+
+        @Override
+        public void error(SAXParseException e) {
+            numberOfSchemaErrors++;
+            report.addMessage(toMessage(e));
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) throws SAXException {
+            throw e;
+        }
+    }
+
+    /**
+     * Receives the raw parser events. On the root element it creates the schema validator for the
+     * declared version and then forwards everything to it.
+     */
+    private class SchemaDispatcher extends DefaultHandler {
+
+        private final ErrorHandler errorHandler = new ReportErrorHandler();
+        private final List<String[]> pendingPrefixes = new ArrayList<>();
+        private Locator locator;
+        private ContentHandler target;
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) throws SAXException {
+            if (target == null) {
+                pendingPrefixes.add(new String[]{prefix, uri});
+            } else {
+                target.startPrefixMapping(prefix, uri);
+            }
+        }
+
+        @Override
+        public void endPrefixMapping(String prefix) throws SAXException {
+            if (target != null) {
+                target.endPrefixMapping(prefix);
+            }
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            numberOfElements++;
+            if (target == null) {
+                version = attributes.getValue(VERSION);
+                // the first buffer of the file holds the root element
+                sniffedBytes = input.getByteCount();
+                stageTimer.addBytes(sniffedBytes).addRecords(1).close();
+                stageTimer = metrics.start(ValidationMetrics.Stage.SCHEMA_VALIDATION);
+                ValidatorHandler validatorHandler = SchemaCache.getMzIdentMLSchema(version).newValidatorHandler();
+                validatorHandler.setErrorHandler(errorHandler);
+                // the header pass stops before the refs to the results could be resolved
+                if (disableIdentityConstraints(validatorHandler) && mode != Mode.HEADER) {
+                    identityConstraintChecker = new IdentityConstraintChecker(report, version);
+                    identityConstraintChecker.setDocumentLocator(locator);
+                }
+                if (mode != Mode.SCHEMA_ONLY) {
+                    validatorHandler.setContentHandler(new Counter());
+                }
+                if (locator != null) {
+                    validatorHandler.setDocumentLocator(locator);
+                }
+                validatorHandler.startDocument();
+                for (String[] prefix : pendingPrefixes) {
+                    validatorHandler.startPrefixMapping(prefix[0], prefix[1]);
+                }
+                pendingPrefixes.clear();
+                target = validatorHandler;
+            }
+            if (mode == Mode.HEADER && "SpectrumIdentificationResult".equals(localName)) {
+                throw new HeaderParsedException();
+            }
+            target.startElement(uri, localName, qName, attributes);
+            if (identityConstraintChecker != null) {
+                identityConstraintChecker.startElement(uri, localName, attributes);
+            }
+        }
+
+        /**
+         * @return false if the schema validator keeps doing the identity constraint checks
+         */
+        private boolean disableIdentityConstraints(ValidatorHandler validatorHandler) {
+            try {
+                validatorHandler.setFeature(IDENTITY_CONSTRAINT_CHECKING, false);
+                return true;
+            } catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+                log.warn("Identity constraint checks can't be disabled, memory will grow with the file size");
+                return false;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            target.endElement(uri, localName, qName);
+            if (identityConstraintChecker != null) {
+                identityConstraintChecker.endElement();
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (target != null) {
+                target.characters(ch, start, length);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            if (target != null) {
+                target.ignorableWhitespace(ch, start, length);
+            }
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) throws SAXException {
+            if (this.target != null) {
+                this.target.processingInstruction(target, data);
+            }
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            if (target != null) {
+                target.endDocument();
+            }
+            if (identityConstraintChecker != null) {
+                identityConstraintChecker.endDocument();
+            }
+        }
+
+        @Override
+        public void warning(SAXParseException e) throws SAXException {
+            errorHandler.warning(e);
+        }
+
+        @Override
+        public void error(SAXParseException e) throws SAXException {
+            errorHandler.error(e);
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) throws SAXException {
+            errorHandler.fatalError(e);
+        }
+    }
+
+    /**
+     * Counts proteins, distinct peptide sequences and PSMs on the validated event stream and hands
+     * the Inputs section to the SpectraData handler.
+     */
+    private class Counter extends DefaultHandler {
+
+        private final StringBuilder sequence = new StringBuilder();
+        private boolean isInSequence;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            spectraDataHandler.startElement(uri, localName, qName, attributes);
+            switch (localName) {
+                case "DBSequence":
+                    String accession = attributes.getValue("accession");
+                    if (accession != null) {
+                        accessions.add(accession);
+                    }
+                    break;
+                case "Peptide":
+                    if (mode == Mode.HEADER && attributes.getValue("id") != null) {
+                        peptideIds.add(attributes.getValue("id"));
+                    }
+                    break;
+                case "PeptideEvidence":
+                    if (mode == Mode.HEADER && attributes.getValue("id") != null) {
+                        peptideEvidenceIds.add(attributes.getValue("id"));
+                    }
+                    break;
+                case "PeptideSequence":
+                    sequence.setLength(0);
+                    isInSequence = true;
+                    break;
+                case "SpectrumIdentificationItem":
+                    numberOfPSMs++;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (isInSequence) {
+                sequence.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            spectraDataHandler.endElement(uri, localName, qName);
+            if (isInSequence && "PeptideSequence".equals(localName)) {
+                peptideSequences.add(trim(sequence));
+                isInSequence = false;
+            }
+        }
+
+        private CharSequence trim(StringBuilder value) {
+            int end = value.length();
+            while (end > 0 && Character.isWhitespace(value.charAt(end - 1))) {
+                end--;
+            }
+            value.setLength(end);
+            int start = 0;
+            while (start < end && Character.isWhitespace(value.charAt(start))) {
+                start++;
+            }
+            return start == 0 ? value : value.delete(0, start);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Counts the proteins, peptides and PSMs of an mzTab file in one pass over its PSM section, with the numbers
+ * PIA reports: distinct accessions of the PSMs, distinct peptide sequences and PSMs. A PSM spans the consecutive
+ * rows with the same PSM_ID, one per protein, so the PSMs are counted without keeping their ids. Memory doesn't
+ * depend on the number of PSMs.
+ */
+@Slf4j
+public class MzTabCounter {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String PSM_HEADER = "PSH";
+    private static final String PSM_ROW = "PSM";
+
+    private final DistinctCounter accessions;
+    private final DistinctCounter peptideSequences;
+    private long numberOfPSMs;
+
+    /**
+     * @param isApproximateCounts true to estimate the distinct proteins and peptides in fixed memory, see
+     *                            {@link DistinctCounter#create(boolean)}
+     */
+    public MzTabCounter(boolean isApproximateCounts) {
+        this.accessions = DistinctCounter.create(isApproximateCounts);
+        this.peptideSequences = DistinctCounter.create(isApproximateCounts);
+    }
+
+    /**
+     * @param mzTab mzTab file
+     * @throws IOException if the file can't be read or a PSM row comes before the PSM header
+     */
+    public void count(File mzTab) throws IOException {
+        long start = System.currentTimeMillis();
+        int sequenceColumn = -1;
+        int psmIdColumn = -1;
+        int accessionColumn = -1;
+        boolean hasHeader = false;
+        String previousPsmId = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(mzTab.toPath()),
+                StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(PSM_HEADER)) {
+                    String[] columns = line.split("\t", -1);
+                    for (int i = 0; i < columns.length; i++) {
+                        String column = columns[i].trim();
+                        if ("sequence".equals(column)) {
+                            sequenceColumn = i;
+                        } else if ("PSM_ID".equals(column)) {
+                            psmIdColumn = i;
+                        } else if ("accession".equals(column)) {
+                            accessionColumn = i;
+                        }
+                    }
+                    hasHeader = true;
+                } else if (line.startsWith(PSM_ROW)) {
+                    if (!hasHeader) {
+                        throw new IOException("PSM row before the PSM header in " + mzTab.getName());
+                    }
+                    String psmId = getField(line, psmIdColumn);
+                    if (psmId == null || !psmId.equals(previousPsmId)) {
+                        numberOfPSMs++;
+                    }
+                    previousPsmId = psmId;
+                    addField(peptideSequences, line, sequenceColumn);
+                    addField(accessions, line, accessionColumn);
+                }
+            }
+        }
+        log.info("Counted " + numberOfPSMs + " PSMs of " + mzTab.getName() + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    public int getNumberOfProteins() {
+        return (int) Math.min(Integer.MAX_VALUE, accessions.count());
+    }
+
+    public int getNumberOfPeptides() {
+        return (int) Math.min(Integer.MAX_VALUE, peptideSequences.count());
+    }
+
+    /**
+     * @return true if the numbers of proteins and peptides are estimates, asked for or because there were too many
+     * distinct values to count them exactly
+     */
+    public boolean isApproximateCounts() {
+        return accessions.isApproximate() || peptideSequences.isApproximate();
+    }
+
+    public int getNumberOfPSMs() {
+        return (int) Math.min(Integer.MAX_VALUE, numberOfPSMs);
+    }
+
+    private static void addField(DistinctCounter counter, String line, int column) {
+        String value = getField(line, column);
+        if (value != null && !value.isEmpty() && !"null".equals(value)) {
+            counter.add(value);
+        }
+    }
+
+    /**
+     * @return the value of a tab-separated column of the line, null if the column is missing
+     */
+    private static String getField(String line, int column) {
+        if (column < 0) {
+            return null;
+        }
+        int start = 0;
+        for (int i = 0; i < column; i++) {
+            start = line.indexOf('\t', start) + 1;
+            if (start == 0) {
+                return null;
+            }
+        }
+        int end = line.indexOf('\t', start);
+        return line.substring(start, end < 0 ? line.length() : end).trim();
+    }
+}
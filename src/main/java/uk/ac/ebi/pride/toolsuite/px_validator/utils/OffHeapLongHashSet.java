@@ -0,0 +1,214 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.function.LongConsumer;
+
+/**
+ * Set of 64-bit hashes in an open-addressing table allocated outside the Java heap, 8 to 16 bytes per distinct
+ * value, so counting doesn't grow the heap. Two strings with the same hash are counted once, which for 64-bit hashes
+ * stays far below one error per billion values.
+ *
+ * The table doubles when it is 3/4 full and the old table is freed right away instead of waiting for the GC. It
+ * stops growing at 1GB or at an eighth of the maximum heap, the default direct memory limit, whichever is smaller;
+ * the set is then {@link #isFull() full} and the caller has to give up exact counting.
+ */
+@Slf4j
+public class OffHeapLongHashSet implements DistinctCounter {
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    /**
+     * Largest table, 1GB; a direct buffer holds less than 2GB.
+     */
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final long EMPTY = 0;
+    /**
+     * Stands for the hash 0, which marks the empty slots.
+     */
+    private static final long ZERO = 0x9e3779b97f4a7c15L;
+
+    private final int maxCapacity;
+    private ByteBuffer buffer;
+    private LongBuffer table;
+    private int mask;
+    private long size;
+    private boolean isFull;
+
+    public OffHeapLongHashSet() {
+        this(getDefaultMaxCapacity());
+    }
+
+    /**
+     * @param maxCapacity number of slots the table can grow to, rounded down to a power of 2
+     */
+    public OffHeapLongHashSet(int maxCapacity) {
+        this.maxCapacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.min(maxCapacity, MAX_CAPACITY)));
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return number of slots of a table of an eighth of the maximum heap
+     */
+    private static int getDefaultMaxCapacity() {
+        long slots = Runtime.getRuntime().maxMemory() / 8 / Long.BYTES;
+        return (int) Math.min(MAX_CAPACITY, Math.max(INITIAL_CAPACITY, slots));
+    }
+
+    @Override
+    public void add(long hash) {
+        addIfAbsent(hash);
+    }
+
+    /**
+     * @param hash value to add
+     * @return true if the value wasn't in the set
+     * @throws IllegalStateException if the set is full and the value is new
+     */
+    public boolean addIfAbsent(long hash) {
+        if (hash == EMPTY) {
+            hash = ZERO;
+        }
+        if (isFull && !contains(hash)) {
+            throw new IllegalStateException("The set is full at " + size + " values");
+        }
+        if (insert(table, mask, hash)) {
+            size++;
+            if (size > (mask + 1L) * 3 / 4) {
+                grow();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public boolean contains(long hash) {
+        if (hash == EMPTY) {
+            hash = ZERO;
+        }
+        int slot = (int) hash & mask;
+        while (true) {
+            long value = table.get(slot);
+            if (value == EMPTY) {
+                return false;
+            }
+            if (value == hash) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public long count() {
+        return size;
+    }
+
+    /**
+     * @return true if the table can't grow any more, no new value can be added
+     */
+    public boolean isFull() {
+        return isFull;
+    }
+
+    /**
+     * Pass every value of the set to the consumer.
+     */
+    public void forEach(LongConsumer consumer) {
+        for (int i = 0; i <= mask; i++) {
+            long value = table.get(i);
+            if (value != EMPTY) {
+                consumer.accept(value == ZERO ? EMPTY : value);
+            }
+        }
+    }
+
+    /**
+     * Release the table, the set can't be used afterwards.
+     */
+    public void free() {
+        if (buffer != null) {
+            free(buffer);
+            buffer = null;
+            table = null;
+        }
+    }
+
+    private static boolean insert(LongBuffer table, int mask, long hash) {
+        int slot = (int) hash & mask;
+        while (true) {
+            long value = table.get(slot);
+            if (value == EMPTY) {
+                table.put(slot, hash);
+                return true;
+            }
+            if (value == hash) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        int capacity = mask + 1;
+        if (capacity >= maxCapacity) {
+            isFull = true;
+            return;
+        }
+        ByteBuffer oldBuffer = buffer;
+        LongBuffer old = table;
+        try {
+            allocate(capacity << 1);
+        } catch (OutOfMemoryError e) {
+            log.warn("No direct memory left to grow the set beyond " + size + " values");
+            isFull = true;
+            return;
+        }
+        for (int i = 0; i < capacity; i++) {
+            long value = old.get(i);
+            if (value != EMPTY) {
+                insert(table, mask, value);
+            }
+        }
+        free(oldBuffer);
+    }
+
+    private void allocate(int capacity) {
+        // a direct buffer is zeroed, every slot starts EMPTY
+        ByteBuffer allocated = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+        buffer = allocated;
+        table = allocated.asLongBuffer();
+        mask = capacity - 1;
+    }
+
+    /**
+     * Free a direct buffer now, through Unsafe.invokeCleaner on Java 9 and later or the cleaner of the buffer on
+     * Java 8. If neither is accessible the buffer is left to the GC.
+     */
+    private static void free(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Direct buffer left to the GC: " + e);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Peaks of a spectrum as two parallel primitive arrays sorted by m/z, so theoretical ions are looked up by binary
+ * search without boxing.
+ */
+public class PeakList {
+
+    private static final int BUFFER_SIZE = 1 << 14;
+    private static final double[] POWERS_OF_TEN = new double[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final double[] mzs;
+    private final double[] intensities;
+    private final double totalIntensity;
+
+    private PeakList(double[] mzs, double[] intensities) {
+        this.mzs = mzs;
+        this.intensities = intensities;
+        double total = 0;
+        for (double intensity : intensities) {
+            total += intensity;
+        }
+        this.totalIntensity = total;
+    }
+
+    /**
+     * @param peakList peak list of a jmzreader spectrum, m/z to intensity
+     * @return PeakList
+     */
+    public static PeakList from(Map<Double, Double> peakList) {
+        Builder builder = new Builder(peakList != null ? peakList.size() : 0);
+        if (peakList != null) {
+            for (Map.Entry<Double, Double> peak : peakList.entrySet()) {
+                if (peak.getKey() != null && peak.getValue() != null) {
+                    builder.add(peak.getKey(), peak.getValue());
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read the peaks of one MGF spectrum, from its BEGIN IONS line to its END IONS line, without creating objects per
+     * peak. Reading stops at END IONS or at the next BEGIN IONS.
+     *
+     * @param in MGF content starting at the BEGIN IONS line of the spectrum
+     * @return PeakList
+     * @throws IOException if the stream can't be read
+     */
+    public static PeakList readMgf(InputStream in) throws IOException {
+        Builder builder = new Builder(256);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long[] end = new long[1];
+        int length = 0;
+        boolean isBegun = false;
+        boolean isEnd = false;
+        while (!isEnd) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                isEnd = true;
+            } else {
+                length += read;
+            }
+            int lineStart = 0;
+            while (lineStart < length) {
+                int lineEnd = lineStart;
+                while (lineEnd < length && buffer[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                if (lineEnd == length && !isEnd) {
+                    break;
+                }
+                int from = lineStart;
+                while (from < lineEnd && isBlank(buffer[from])) {
+                    from++;
+                }
+                if (startsWith(buffer, from, lineEnd, "BEGIN IONS")) {
+                    if (isBegun) {
+                        return builder.build();
+                    }
+                    isBegun = true;
+                } else if (startsWith(buffer, from, lineEnd, "END IONS")) {
+                    return builder.build();
+                } else if (isBegun && from < lineEnd && (Character.isDigit(buffer[from]) || buffer[from] == '.')) {
+                    parsePeak(buffer, from, lineEnd, end, builder);
+                }
+                lineStart = lineEnd + 1;
+            }
+            lineStart = Math.min(lineStart, length);
+            System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+            length -= lineStart;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length << 1);
+            }
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return mzs.length;
+    }
+
+    public double getMz(int i) {
+        return mzs[i];
+    }
+
+    public double getIntensity(int i) {
+        return intensities[i];
+    }
+
+    public double getTotalIntensity() {
+        return totalIntensity;
+    }
+
+    /**
+     * @param mz m/z
+     * @param tolerance maximum difference in m/z
+     * @return position of the peak closest to the m/z, or -1 if no peak is within the tolerance
+     */
+    public int findClosest(double mz, double tolerance) {
+        int i = Arrays.binarySearch(mzs, mz);
+        if (i >= 0) {
+            return i;
+        }
+        int above = -i - 1;
+        int below = above - 1;
+        int closest;
+        if (below < 0) {
+            closest = above;
+        } else if (above >= mzs.length) {
+            closest = below;
+        } else {
+            closest = mz - mzs[below] <= mzs[above] - mz ? below : above;
+        }
+        return closest < mzs.length && Math.abs(mzs[closest] - mz) <= tolerance ? closest : -1;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean startsWith(byte[] buffer, int from, int to, String prefix) {
+        if (to - from < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (Character.toUpperCase((char) buffer[from + i]) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse "m/z intensity [charge]"; lines that are not two numbers are ignored.
+     */
+    private static void parsePeak(byte[] buffer, int from, int to, long[] end, Builder builder) {
+        double mz = parseNumber(buffer, from, to, end);
+        int next = (int) end[0];
+        while (next < to && isBlank(buffer[next])) {
+            next++;
+        }
+        if (Double.isNaN(mz) || next == end[0] || next >= to) {
+            return;
+        }
+        double intensity = parseNumber(buffer, next, to, end);
+        if (!Double.isNaN(intensity)) {
+            builder.add(mz, intensity);
+        }
+    }
+
+    /**
+     * Parse an unsigned decimal number with an optional exponent, the usual MGF notation. Numbers with more than 18
+     * significant digits lose the digits beyond, far below the precision of a peak.
+     *
+     * @param end position after the number on return
+     * @return the number, or NaN if there is none
+     */
+    private static double parseNumber(byte[] buffer, int from, int to, long[] end) {
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        int i = from;
+        boolean isFraction = false;
+        boolean hasDigits = false;
+        for (; i < to; i++) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                hasDigits = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (isFraction) {
+                        exponent--;
+                    }
+                } else if (!isFraction) {
+                    exponent++;
+                }
+            } else if (b == '.' && !isFraction) {
+                isFraction = true;
+            } else {
+                break;
+            }
+        }
+        if (!hasDigits) {
+            return Double.NaN;
+        }
+        if (i < to && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            int j = i + 1;
+            boolean isNegative = false;
+            if (j < to && (buffer[j] == '-' || buffer[j] == '+')) {
+                isNegative = buffer[j] == '-';
+                j++;
+            }
+            int value = 0;
+            int start = j;
+            while (j < to && buffer[j] >= '0' && buffer[j] <= '9' && j - start < 4) {
+                value = value * 10 + (buffer[j] - '0');
+                j++;
+            }
+            if (j > start) {
+                exponent += isNegative ? -value : value;
+                i = j;
+            }
+        }
+        end[0] = i;
+        if (exponent == 0) {
+            return mantissa;
+        }
+        if (Math.abs(exponent) < POWERS_OF_TEN.length) {
+            return exponent > 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        }
+        return mantissa * Math.pow(10, exponent);
+    }
+
+    /**
+     * Collects peaks in any order, they are sorted by m/z when the list is built.
+     */
+    public static class Builder {
+
+        private double[] mzs;
+        private double[] intensities;
+        private int size;
+        private boolean isSorted = true;
+
+        public Builder(int capacity) {
+            mzs = new double[Math.max(capacity, 16)];
+            intensities = new double[mzs.length];
+        }
+
+        public Builder add(double mz, double intensity) {
+            if (size == mzs.length) {
+                mzs = Arrays.copyOf(mzs, size << 1);
+                intensities = Arrays.copyOf(intensities, size << 1);
+            }
+            if (size > 0 && mz < mzs[size - 1]) {
+                isSorted = false;
+            }
+            mzs[size] = mz;
+            intensities[size] = intensity;
+            size++;
+            return this;
+        }
+
+        public PeakList build() {
+            double[] sortedMzs = Arrays.copyOf(mzs, size);
+            double[] sortedIntensities = Arrays.copyOf(intensities, size);
+            if (!isSorted) {
+                sort(sortedMzs, sortedIntensities, 0, size - 1);
+            }
+            return new PeakList(sortedMzs, sortedIntensities);
+        }
+
+        /**
+         * Quicksort of the m/z values carrying the intensities along.
+         */
+        private static void sort(double[] keys, double[] values, int low, int high) {
+            while (low < high) {
+                if (high - low < 16) {
+                    for (int i = low + 1; i <= high; i++) {
+                        double key = keys[i];
+                        double value = values[i];
+                        int j = i - 1;
+                        while (j >= low && keys[j] > key) {
+                            keys[j + 1] = keys[j];
+                            values[j + 1] = values[j];
+                            j--;
+                        }
+                        keys[j + 1] = key;
+                        values[j + 1] = value;
+                    }
+                    return;
+                }
+                double pivot = keys[(low + high) >>> 1];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (keys[i] < pivot) {
+                        i++;
+                    }
+                    while (keys[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        double key = keys[i];
+                        keys[i] = keys[j];
+                        keys[j] = key;
+                        double value = values[i];
+                        values[i] = values[j];
+                        values[j] = value;
+                        i++;
+                        j--;
+                    }
+                }
+                // recurse into the smaller part, loop on the larger one
+                if (j - low < high - i) {
+                    sort(keys, values, low, j);
+                    low = i;
+                } else {
+                    sort(keys, values, i, high);
+                    high = j;
+                }
+            }
+        }
+    }
+}
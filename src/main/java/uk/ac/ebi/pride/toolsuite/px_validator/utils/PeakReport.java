@@ -1,14 +1,18 @@
 package uk.ac.ebi.pride.toolsuite.px_validator.utils;
 
-import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
+ * Results of the checks of a peak file. Only the number of detected PSMs and small records of the undetected ones
+ * are kept, not the PIA PSMs, so a report doesn't hold on to the PIA object graph.
+ *
  * @author Suresh Hewapathirana
  */
 @Getter
@@ -19,15 +23,80 @@ public class PeakReport extends Report{
     private String peakFile;
     private long fileSize;
     private int numberOfPeaks;
-    private List<PeptideSpectrumMatch> detectedPsms = new ArrayList<>();
-    private List<PeptideSpectrumMatch> undetectedPsms = new ArrayList<>();
+    private long indexingTime;
+    private boolean isFullCheck;
+    private long numberOfDetectedPsms;
+    private long numberOfUndetectedPsms;
+    private double mismatchRateLower;
+    private double mismatchRateUpper = 1;
+    private boolean isStoppedEarly;
+    private long numberOfFragmentChecks;
+    private double matchedIonFractionSum;
+    private double explainedIntensityFractionSum;
+    private List<PsmMismatch> undetectedPsms = new ArrayList<>();
+
+    public void addDetectedPsm() {
+        numberOfDetectedPsms++;
+    }
+
+    public void addUndetectedPsm(PsmMismatch mismatch) {
+        undetectedPsms.add(mismatch);
+        numberOfUndetectedPsms++;
+    }
+
+    public void addFragmentCoverage(FragmentCoverage coverage) {
+        numberOfFragmentChecks++;
+        matchedIonFractionSum += coverage.getMatchedIonFraction();
+        explainedIntensityFractionSum += coverage.getExplainedIntensityFraction();
+    }
+
+    /**
+     * @return mean fraction of the b and y ions found in the checked spectra
+     */
+    public double getMatchedIonFraction() {
+        return numberOfFragmentChecks > 0 ? matchedIonFractionSum / numberOfFragmentChecks : 0;
+    }
+
+    /**
+     * @return mean fraction of the intensity of the checked spectra explained by b and y ions
+     */
+    public double getExplainedIntensityFraction() {
+        return numberOfFragmentChecks > 0 ? explainedIntensityFractionSum / numberOfFragmentChecks : 0;
+    }
+
+    /**
+     * @return fields of the peak record of the report
+     */
+    public Map<String, Object> getFields() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("peakFile", peakFile);
+        fields.put("fileSize", fileSize);
+        fields.put("peaks", numberOfPeaks);
+        fields.put("indexingTimeMs", indexingTime);
+        fields.put("fullCheck", isFullCheck);
+        fields.put("mismatchRateLower", isFullCheck ? null : mismatchRateLower);
+        fields.put("mismatchRateUpper", isFullCheck ? null : mismatchRateUpper);
+        fields.put("stoppedEarly", isStoppedEarly);
+        fields.put("detectedPsms", numberOfDetectedPsms);
+        fields.put("undetectedPsms", numberOfUndetectedPsms);
+        fields.put("fragmentChecks", numberOfFragmentChecks);
+        fields.put("matchedIonFraction", numberOfFragmentChecks == 0 ? null : getMatchedIonFraction());
+        fields.put("explainedIntensityFraction", numberOfFragmentChecks == 0 ? null : getExplainedIntensityFraction());
+        return fields;
+    }
 
     @Override
     public String toString() {
         return "Peak File : " + peakFile + '\t' +
                 "File Size : " + fileSize + '\t' +
                 "Number Of Peaks : " + numberOfPeaks + '\t' +
-                "Number Of detected peaks : " + detectedPsms.size() + '\t' +
-                "Number Of undetected peaks : " + undetectedPsms.size();
+                "Indexing Time (ms) : " + indexingTime + '\t' +
+                "Checked PSMs : " + (isFullCheck ? "all" : "sample") + '\t' +
+                (isFullCheck ? "" : String.format("Mismatch rate : [%.3f, %.3f]%s\t", mismatchRateLower, mismatchRateUpper,
+                        isStoppedEarly ? " (stopped early)" : "")) +
+                "Number Of detected peaks : " + numberOfDetectedPsms + '\t' +
+                "Number Of undetected peaks : " + numberOfUndetectedPsms +
+                (numberOfFragmentChecks == 0 ? "" : String.format("\tFragment checks : %d\tMatched ions : %.3f\tExplained intensity : %.3f",
+                        numberOfFragmentChecks, getMatchedIonFraction(), getExplainedIntensityFraction()));
     }
 }
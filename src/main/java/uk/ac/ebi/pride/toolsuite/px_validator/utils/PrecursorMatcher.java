@@ -0,0 +1,155 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.Getter;
+
+/**
+ * Decides whether the precursor m/z of a spectrum and the experimental m/z of a PSM are the same precursor.
+ *
+ * The two values match when they are within the tolerance, in ppm of the spectrum m/z or in Da, possibly after
+ * shifting the PSM m/z by up to the given number of C13 isotope spacings, 1.003355 Da divided by the charge,
+ * for the spectra whose precursor was picked on another peak of the isotope envelope. The charge of the PSM is used,
+ * the one of the spectrum when the PSM has none; with no charge at all the spacings of the charges 1 to
+ * {@link #MAX_UNKNOWN_CHARGE} are tried. When the spectrum and the PSM both have a charge and they differ, the PSM
+ * doesn't match whatever its m/z, unless the charge check is turned off. Matching works on primitive values only and
+ * allocates nothing.
+ */
+@Getter
+public class PrecursorMatcher {
+
+    public static final double C13_SPACING = 1.003355;
+    public static final int MAX_UNKNOWN_CHARGE = 4;
+    public static final String PPM = "ppm";
+    public static final String DA = "Da";
+
+    private final double tolerance;
+    private final boolean isPpm;
+    private final int isotopeErrors;
+    private final boolean isChargeChecked;
+
+    /**
+     * @param tolerance maximum difference between the m/z values
+     * @param isPpm true if the tolerance is in ppm, false if it is in Da
+     * @param isotopeErrors number of isotope spacings the PSM m/z may be off by, in either direction
+     */
+    public PrecursorMatcher(double tolerance, boolean isPpm, int isotopeErrors) {
+        this(tolerance, isPpm, isotopeErrors, true);
+    }
+
+    /**
+     * @param tolerance maximum difference between the m/z values
+     * @param isPpm true if the tolerance is in ppm, false if it is in Da
+     * @param isotopeErrors number of isotope spacings the PSM m/z may be off by, in either direction
+     * @param isChargeChecked false to match a PSM whose charge differs from the precursor charge on its m/z alone
+     */
+    public PrecursorMatcher(double tolerance, boolean isPpm, int isotopeErrors, boolean isChargeChecked) {
+        if (tolerance < 0 || Double.isNaN(tolerance)) {
+            throw new IllegalArgumentException("Invalid precursor tolerance -- " + tolerance);
+        }
+        if (isotopeErrors < 0) {
+            throw new IllegalArgumentException("Invalid number of isotope errors -- " + isotopeErrors);
+        }
+        this.tolerance = tolerance;
+        this.isPpm = isPpm;
+        this.isotopeErrors = isotopeErrors;
+        this.isChargeChecked = isChargeChecked;
+    }
+
+    /**
+     * Parse a tolerance such as "10ppm", "0.02Da" or "0.02", a number without unit being in Da.
+     *
+     * @param value tolerance with an optional unit
+     * @param isotopeErrors number of isotope spacings the PSM m/z may be off by
+     * @return PrecursorMatcher
+     */
+    public static PrecursorMatcher parse(String value, int isotopeErrors) {
+        return parse(value, isotopeErrors, true);
+    }
+
+    /**
+     * @param value tolerance with an optional unit
+     * @param isotopeErrors number of isotope spacings the PSM m/z may be off by
+     * @param isChargeChecked false to ignore a charge of the PSM that differs from the precursor charge
+     * @return PrecursorMatcher
+     */
+    public static PrecursorMatcher parse(String value, int isotopeErrors, boolean isChargeChecked) {
+        String trimmed = value.trim();
+        String lower = trimmed.toLowerCase();
+        boolean isPpm = lower.endsWith(PPM);
+        if (isPpm) {
+            trimmed = trimmed.substring(0, trimmed.length() - PPM.length());
+        } else if (lower.endsWith(DA.toLowerCase())) {
+            trimmed = trimmed.substring(0, trimmed.length() - DA.length());
+        }
+        try {
+            return new PrecursorMatcher(Double.parseDouble(trimmed.trim()), isPpm, isotopeErrors, isChargeChecked);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid precursor tolerance -- " + value, e);
+        }
+    }
+
+    /**
+     * @param spectrumMz precursor m/z of the spectrum, NaN if unknown
+     * @param spectrumCharge precursor charge of the spectrum, 0 if unknown
+     * @param psmMz experimental m/z of the PSM, NaN if unknown
+     * @param psmCharge charge of the PSM, 0 if unknown
+     * @return true if the PSM m/z matches the precursor of the spectrum
+     */
+    public boolean matches(double spectrumMz, int spectrumCharge, double psmMz, int psmCharge) {
+        return check(spectrumMz, spectrumCharge, psmMz, psmCharge) == null;
+    }
+
+    /**
+     * @param spectrumMz precursor m/z of the spectrum, NaN if unknown
+     * @param spectrumCharge precursor charge of the spectrum, 0 if unknown
+     * @param psmMz experimental m/z of the PSM, NaN if unknown
+     * @param psmCharge charge of the PSM, 0 if unknown
+     * @return why the PSM doesn't match the precursor of the spectrum, null if it matches
+     */
+    public PsmMismatch.Reason check(double spectrumMz, int spectrumCharge, double psmMz, int psmCharge) {
+        if (Double.isNaN(spectrumMz)) {
+            return PsmMismatch.Reason.NO_PRECURSOR;
+        }
+        if (Double.isNaN(psmMz)) {
+            return PsmMismatch.Reason.MZ;
+        }
+        if (isChargeChecked && spectrumCharge != 0 && psmCharge != 0 && Math.abs(spectrumCharge) != Math.abs(psmCharge)) {
+            return PsmMismatch.Reason.CHARGE;
+        }
+        double allowed = isPpm ? Math.abs(spectrumMz) * tolerance * 1e-6 : tolerance;
+        double difference = psmMz - spectrumMz;
+        if (Math.abs(difference) <= allowed) {
+            return null;
+        }
+        if (isotopeErrors == 0) {
+            return PsmMismatch.Reason.MZ;
+        }
+        int charge = psmCharge != 0 ? Math.abs(psmCharge) : Math.abs(spectrumCharge);
+        if (charge != 0) {
+            return isIsotopeMatch(difference, allowed, charge) ? null : PsmMismatch.Reason.MZ;
+        }
+        for (int z = 1; z <= MAX_UNKNOWN_CHARGE; z++) {
+            if (isIsotopeMatch(difference, allowed, z)) {
+                return null;
+            }
+        }
+        return PsmMismatch.Reason.MZ;
+    }
+
+    /**
+     * The difference is matched against the nearest whole number of isotope spacings within the allowed range.
+     */
+    private boolean isIsotopeMatch(double difference, double allowed, int charge) {
+        double spacing = C13_SPACING / charge;
+        long errors = Math.round(difference / spacing);
+        if (errors == 0 || Math.abs(errors) > isotopeErrors) {
+            return false;
+        }
+        return Math.abs(difference - errors * spacing) <= allowed;
+    }
+
+    @Override
+    public String toString() {
+        return tolerance + (isPpm ? PPM : DA) + (isotopeErrors > 0 ? " with up to " + isotopeErrors + " isotope errors" : "")
+                + (isChargeChecked ? "" : ", charge not checked");
+    }
+}
@@ -0,0 +1,69 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.Getter;
+
+/**
+ * A PSM that doesn't match its spectrum, kept in the {@link PeakReport} instead of the PIA PSM.
+ */
+@Getter
+public class PsmMismatch {
+
+    /**
+     * Why the PSM doesn't match its spectrum.
+     */
+    @Getter
+    public enum Reason {
+        SPECTRUM_NOT_FOUND("spectrum not found"),
+        NO_PRECURSOR("MS1 spectrum or no precursor"),
+        CHARGE("charge differs from the precursor charge"),
+        MZ("m/z differs from the precursor m/z");
+
+        private final String description;
+
+        Reason(String description) {
+            this.description = description;
+        }
+    }
+
+    private final long psmId;
+    private final String spectrumId;
+    private final double psmMz;
+    private final double spectrumMz;
+    private final int charge;
+    private final int spectrumCharge;
+    private final Reason reason;
+
+    /**
+     * @param psmId PIA id of the PSM
+     * @param spectrumId spectrum id referenced by the PSM
+     * @param psmMz experimental m/z of the PSM
+     * @param spectrumMz precursor m/z of the spectrum, NaN if the spectrum isn't found or has no precursor
+     * @param charge charge of the PSM
+     * @param spectrumCharge precursor charge of the spectrum, 0 if unknown
+     * @param reason why the PSM doesn't match
+     */
+    public PsmMismatch(long psmId, String spectrumId, double psmMz, double spectrumMz, int charge, int spectrumCharge,
+                       Reason reason) {
+        this.psmId = psmId;
+        this.spectrumId = spectrumId;
+        this.psmMz = psmMz;
+        this.spectrumMz = spectrumMz;
+        this.charge = charge;
+        this.spectrumCharge = spectrumCharge;
+        this.reason = reason;
+    }
+
+    /**
+     * @return true if the spectrum and its precursor were found, the m/z values differ
+     */
+    public boolean isSpectrumFound() {
+        return !Double.isNaN(spectrumMz);
+    }
+
+    @Override
+    public String toString() {
+        return "PSM " + psmId + " -> " + spectrumId + (isSpectrumFound()
+                ? " m/z " + psmMz + " (" + charge + "+) vs precursor " + spectrumMz + " (" + spectrumCharge + "+)" : "")
+                + ": " + reason.getDescription();
+    }
+}
@@ -0,0 +1,183 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import java.util.Random;
+
+/**
+ * Selects the PSMs checked against their spectrum and decides when enough of them have been checked.
+ *
+ * The PSMs are split in strata by the position of their spectrum in the peak file, in {@link #POSITION_BUCKETS}
+ * equal ranges, and by charge; PSMs whose spectrum isn't found form a stratum of their own. Every stratum gets a share
+ * of the sample proportional to its size and is sampled with a reservoir, and the sample is checked in random order.
+ * The random generator is seeded, so the same files and settings always give the same sample.
+ *
+ * Checking stops as soon as the Wilson score interval of the mismatch rate, at the configured confidence, is entirely
+ * above or below the accepted mismatch rate.
+ */
+public class PsmSampler {
+
+    public static final int POSITION_BUCKETS = 10;
+    private static final int CHARGE_GROUPS = 5;
+
+    private final int sampleSize;
+    private final double maxMismatchRate;
+    private final double z;
+    private final long seed;
+
+    /**
+     * @param sampleSize maximum number of PSMs checked per peak file, 0 to check until the result is decided
+     * @param confidence confidence level of the mismatch rate interval, between 0 and 1
+     * @param maxMismatchRate accepted rate of PSMs not matching their spectrum
+     * @param seed seed of the random generator
+     */
+    public PsmSampler(int sampleSize, double confidence, double maxMismatchRate, long seed) {
+        this.sampleSize = sampleSize;
+        this.maxMismatchRate = maxMismatchRate;
+        this.z = normalQuantile(1 - (1 - confidence) / 2);
+        this.seed = seed;
+    }
+
+    /**
+     * @param positions position of the spectrum of every PSM in the peak file, -1 if it isn't found
+     * @param charges charge of every PSM
+     * @param numberOfSpectra number of spectra in the peak file
+     * @return the indexes of the PSMs to check, in the order they should be checked
+     */
+    public int[] sample(int[] positions, int[] charges, int numberOfSpectra) {
+        int numberOfStrata = POSITION_BUCKETS * CHARGE_GROUPS + 1;
+        int[] strata = new int[positions.length];
+        int[] stratumSizes = new int[numberOfStrata];
+        for (int i = 0; i < positions.length; i++) {
+            strata[i] = getStratum(positions[i], charges[i], numberOfSpectra);
+            stratumSizes[strata[i]]++;
+        }
+        int[] capacities = allocate(stratumSizes, sampleSize > 0 ? Math.min(sampleSize, positions.length) : positions.length);
+        int[] starts = new int[numberOfStrata];
+        int total = 0;
+        for (int s = 0; s < numberOfStrata; s++) {
+            starts[s] = total;
+            total += capacities[s];
+        }
+        Random random = new Random(seed);
+        int[] sample = new int[total];
+        int[] seen = new int[numberOfStrata];
+        for (int i = 0; i < positions.length; i++) {
+            int s = strata[i];
+            seen[s]++;
+            if (seen[s] <= capacities[s]) {
+                sample[starts[s] + seen[s] - 1] = i;
+            } else {
+                int j = random.nextInt(seen[s]);
+                if (j < capacities[s]) {
+                    sample[starts[s] + j] = i;
+                }
+            }
+        }
+        for (int i = total - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = sample[i];
+            sample[i] = sample[j];
+            sample[j] = swap;
+        }
+        return sample;
+    }
+
+    /**
+     * @param checked number of PSMs checked
+     * @param mismatches number of them that don't match their spectrum
+     * @return true if the mismatch rate is clearly above or below the accepted rate
+     */
+    public boolean isDecided(long checked, long mismatches) {
+        double[] interval = getMismatchRateInterval(checked, mismatches);
+        return interval[0] > maxMismatchRate || interval[1] < maxMismatchRate;
+    }
+
+    /**
+     * @param checked number of PSMs checked
+     * @param mismatches number of them that don't match their spectrum
+     * @return lower and upper bound of the Wilson score interval of the mismatch rate
+     */
+    public double[] getMismatchRateInterval(long checked, long mismatches) {
+        if (checked == 0) {
+            return new double[]{0, 1};
+        }
+        double p = (double) mismatches / checked;
+        double z2 = z * z / checked;
+        double center = (p + z2 / 2) / (1 + z2);
+        double halfWidth = z * Math.sqrt(p * (1 - p) / checked + z2 / (4 * checked)) / (1 + z2);
+        return new double[]{Math.max(0, center - halfWidth), Math.min(1, center + halfWidth)};
+    }
+
+    private static int getStratum(int position, int charge, int numberOfSpectra) {
+        if (position < 0 || numberOfSpectra <= 0) {
+            return POSITION_BUCKETS * CHARGE_GROUPS;
+        }
+        int bucket = (int) ((long) position * POSITION_BUCKETS / numberOfSpectra);
+        int chargeGroup = Math.max(0, Math.min(charge, CHARGE_GROUPS - 1));
+        return Math.min(bucket, POSITION_BUCKETS - 1) * CHARGE_GROUPS + chargeGroup;
+    }
+
+    /**
+     * Split the sample between the strata in proportion to their size, giving the rounded off PSMs to the strata
+     * with the largest remainders.
+     */
+    private static int[] allocate(int[] stratumSizes, int sampleSize) {
+        long total = 0;
+        for (int size : stratumSizes) {
+            total += size;
+        }
+        int[] capacities = new int[stratumSizes.length];
+        if (total == 0) {
+            return capacities;
+        }
+        double[] remainders = new double[stratumSizes.length];
+        int allocated = 0;
+        for (int s = 0; s < stratumSizes.length; s++) {
+            double share = (double) sampleSize * stratumSizes[s] / total;
+            capacities[s] = (int) share;
+            remainders[s] = share - capacities[s];
+            allocated += capacities[s];
+        }
+        while (allocated < sampleSize) {
+            int best = -1;
+            for (int s = 0; s < stratumSizes.length; s++) {
+                if (capacities[s] < stratumSizes[s] && (best < 0 || remainders[s] > remainders[best])) {
+                    best = s;
+                }
+            }
+            capacities[best]++;
+            remainders[best] = -1;
+            allocated++;
+        }
+        return capacities;
+    }
+
+    /**
+     * Quantile of the standard normal distribution, with the rational approximation of P. J. Acklam
+     * (relative error below 1.2e-9).
+     *
+     * @param p probability between 0 and 1
+     * @return quantile
+     */
+    static double normalQuantile(double p) {
+        double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02, 1.383577518672690e+02,
+                -3.066479806614716e+01, 2.506628277459239e+00};
+        double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02, 6.680131188771972e+01,
+                -1.328068155288572e+01};
+        double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00, -2.549732539343734e+00,
+                4.374664141464968e+00, 2.938163982698783e+00};
+        double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00};
+        double low = 0.02425;
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - low) {
+            return -normalQuantile(1 - p);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+}
@@ -1,8 +1,13 @@
 package uk.ac.ebi.pride.toolsuite.px_validator.utils;
 
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import uk.ac.ebi.pride.data.validation.ValidationMessage;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 /**
@@ -11,31 +16,141 @@ import java.util.*;
  *
  * @author ypriverol
  */
+@Slf4j
 @NoArgsConstructor
 public class Report implements IReport{
 
-    // This map store the errors for each Report
-    private final List<Map.Entry<Exception, ValidationMessage.Type>> errors = new ArrayList<>();
+    // messages of the report, grouped by template with their first examples
+    private final MessageStore messages = new MessageStore();
+
+    // writer the examples are streamed to as they are added, null to write them with the rest of the report
+    private transient volatile ReportWriter messageWriter;
+    private volatile boolean isMessagesStreamed;
+
+    // time and resources of the validation stages, null if they are not measured
+    @Getter
+    @Setter
+    private ValidationMetrics metrics;
 
     public void addException(Exception exception, ValidationMessage.Type code){
-        errors.add(new AbstractMap.SimpleEntry<>(exception, code));
+        addMessage(ReportMessage.fromException(exception, code));
+    }
+
+    @Override
+    public void addMessage(ReportMessage message) {
+        if (!messages.add(message)) {
+            return;
+        }
+        ReportWriter writer = messageWriter;
+        if (writer != null) {
+            try {
+                writer.writeMessage(message);
+            } catch (IOException e) {
+                log.error("Unable to stream the message to the report file", e);
+            }
+        }
     }
 
     @Override
     public int getNumErrors() {
-        return errors.size();
+        return (int) Math.min(messages.getNumberOfMessages(), Integer.MAX_VALUE);
+    }
+
+    public MessageStore getMessages() {
+        return messages;
+    }
+
+    /**
+     * Write the examples of the messages to the writer as they are added, instead of with the rest of the report.
+     *
+     * @param writer writer of the report file, the rest of the report is written to it by {@link #write(ReportWriter)}
+     */
+    public void streamMessagesTo(ReportWriter writer) {
+        messageWriter = writer;
+        isMessagesStreamed = true;
+    }
+
+    /**
+     * @return writer the messages are streamed to, null if they are kept
+     */
+    public ReportWriter getMessageWriter() {
+        return messageWriter;
+    }
+
+    /**
+     * Stop streaming the messages, the examples added afterwards are only kept.
+     *
+     * @return writer the messages were streamed to, null if there was none
+     */
+    public ReportWriter stopStreamingMessages() {
+        ReportWriter writer = messageWriter;
+        messageWriter = null;
+        return writer;
     }
 
     @Override
-    public String toString() {
-        StringBuilder error = new StringBuilder();
-        for(Map.Entry er: errors)
-            error.append(er.getKey().toString()).append(" == Level Error: ").append(er.getValue()).append(" ==\n");
-        if(errors.isEmpty()){
-            error.append("Status : Valid").append("\n");
+    public void writeText(Appendable out) throws IOException {
+        for (MessageStore.Group group : messages.getGroups()) {
+            List<ReportMessage> examples = group.getExamples();
+            for (ReportMessage example : examples)
+                out.append(example.toString()).append(" == Level Error: ").append(String.valueOf(group.getType())).append(" ==\n");
+            if (group.getCount() > examples.size())
+                out.append(String.valueOf(group.getCount() - examples.size())).append(" more : ").append(group.getTemplate())
+                        .append(" == Level Error: ").append(String.valueOf(group.getType())).append(" ==\n");
+        }
+        if(messages.isEmpty()){
+            out.append("Status : Valid").append("\n");
         }else{
-            error.append("Status : Invalid").append("\n");
+            out.append("Status : Invalid").append("\n");
+        }
+    }
+
+    @Override
+    public void write(ReportWriter writer) throws IOException {
+        List<MessageStore.Group> groups = messages.getGroups();
+        if (!isMessagesStreamed) {
+            for (MessageStore.Group group : groups) {
+                for (ReportMessage example : group.getExamples()) {
+                    writer.writeMessage(example);
+                }
+            }
+        }
+        for (MessageStore.Group group : groups) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("level", group.getType());
+            fields.put("template", group.getTemplate());
+            fields.put("count", group.getCount());
+            fields.put("examples", group.getExamples().size());
+            writer.writeRecord(ReportWriter.GROUP, fields);
+        }
+        writeDetails(writer);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        addSummary(summary);
+        writer.writeRecord(ReportWriter.SUMMARY, summary);
+    }
+
+    /**
+     * Write the records that come between the messages and the summary.
+     */
+    protected void writeDetails(ReportWriter writer) throws IOException {
+    }
+
+    /**
+     * Add the fields of the summary record, subclasses add theirs after these.
+     */
+    protected void addSummary(Map<String, Object> summary) {
+        summary.put("status", getNumErrors() == 0 ? "Valid" : "Invalid");
+        summary.put("messages", getNumErrors());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        try {
+            writeText(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return error.toString();
+        return text.toString();
     }
 }
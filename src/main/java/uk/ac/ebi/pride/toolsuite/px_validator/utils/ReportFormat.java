@@ -0,0 +1,66 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.apache.commons.cli.CommandLine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formats of the report file. The text format is the one read by people, JSON Lines and TSV are written record by
+ * record with the stable schema of {@link ReportWriter}.
+ */
+public enum ReportFormat {
+    TEXT("text", ".txt"), JSONL("jsonl", ".jsonl"), TSV("tsv", ".tsv");
+
+    private final String name;
+    private final String extension;
+
+    ReportFormat(String name, String extension) {
+        this.name = name;
+        this.extension = extension;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return extension of the report files written in the format
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    public static ReportFormat fromName(String name) {
+        for (ReportFormat format : values()) {
+            if (format.name.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown report format " + name + ", expected text, jsonl or tsv");
+    }
+
+    /**
+     * @return format given with the -reportformat option, text if there is none
+     */
+    public static ReportFormat fromCommandLine(CommandLine cmd) {
+        return cmd.hasOption(Utility.ARG_REPORT_FORMAT) ? fromName(cmd.getOptionValue(Utility.ARG_REPORT_FORMAT)) : TEXT;
+    }
+
+    /**
+     * @param file report file, overwritten
+     * @return writer of the records of a machine-readable format
+     */
+    public ReportWriter open(File file) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        switch (this) {
+            case JSONL:
+                return new JsonLinesReportWriter(out);
+            case TSV:
+                return new TsvReportWriter(out);
+            default:
+                out.close();
+                throw new IllegalStateException("The " + name + " report is written by the report itself");
+        }
+    }
+}
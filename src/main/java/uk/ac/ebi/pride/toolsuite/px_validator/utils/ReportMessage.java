@@ -0,0 +1,92 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.Getter;
+import uk.ac.ebi.pride.data.validation.ValidationMessage;
+
+import java.io.Serializable;
+
+/**
+ * A validation message: its level, the code of the check that failed if it has one, the text and where in the file
+ * it was found. Unlike an exception it has no stack trace, so millions of them cost no more than their text.
+ */
+@Getter
+public class ReportMessage implements Serializable {
+
+    /**
+     * Line or column of a message that has no position in the file
+     */
+    public static final int UNKNOWN = -1;
+
+    private final ValidationMessage.Type type;
+    private final String code;
+    private final String message;
+    private final int line;
+    private final int column;
+
+    /**
+     * @param type level of the message
+     * @param code code of the check, e.g. the XML Schema constraint or the mzTab error code, null if there is none
+     * @param message text of the message
+     * @param line line of the file, {@link #UNKNOWN} if there is none
+     * @param column column of the line, {@link #UNKNOWN} if there is none
+     */
+    public ReportMessage(ValidationMessage.Type type, String code, String message, int line, int column) {
+        this.type = type;
+        this.code = code;
+        this.message = message;
+        this.line = line;
+        this.column = column;
+    }
+
+    public ReportMessage(ValidationMessage.Type type, String message) {
+        this(type, null, message, UNKNOWN, UNKNOWN);
+    }
+
+    /**
+     * @return the message of the exception, the exception itself is not kept
+     */
+    public static ReportMessage fromException(Exception exception, ValidationMessage.Type type) {
+        return new ReportMessage(type, exception.getMessage() != null ? exception.getMessage() : exception.toString());
+    }
+
+    /**
+     * @return the XML Schema constraint at the start of a parser message, e.g. cvc-complex-type.4, null if there is none
+     */
+    public static String getSchemaCode(String message) {
+        if (message == null || !message.startsWith("cvc-")) {
+            return null;
+        }
+        int end = message.indexOf(':');
+        return end > 0 ? message.substring(0, end) : null;
+    }
+
+    /**
+     * @return template shared by the messages of the same check: the code if there is one, else the text with every
+     * number replaced by #
+     */
+    public String getTemplate() {
+        if (code != null) {
+            return code;
+        }
+        StringBuilder template = new StringBuilder(message.length());
+        boolean isNumber = false;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (!isNumber) {
+                    template.append('#');
+                    isNumber = true;
+                }
+            } else {
+                template.append(c);
+                isNumber = false;
+            }
+        }
+        return template.toString();
+    }
+
+    @Override
+    public String toString() {
+        return line == UNKNOWN ? message : "Line " + line + (column == UNKNOWN ? "" : ", column " + column) + ": " + message;
+    }
+}
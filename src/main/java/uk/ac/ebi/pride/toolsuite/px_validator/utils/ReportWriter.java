@@ -0,0 +1,84 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes a report as a stream of flat records, so a report of any size is written without being held in memory.
+ * Every record has a type and an id, numbered from 0 per type, and named fields:
+ * <ul>
+ *     <li>report: schemaVersion, the first record of the file</li>
+ *     <li>message: level, message, code, line, column; only the first messages of every group</li>
+ *     <li>group: level, template, count, examples; the messages of one check, after the messages</li>
+ *     <li>summary: status, messages, then the counts of the result file or the totals of the batch</li>
+ *     <li>peak: the checks of one peak file of a result file</li>
+ *     <li>file: the result of one file of a batch</li>
+ * </ul>
+ * A field can be null, e.g. the line of a message without one: JSON lines write null and TSV writes \N.
+ * The summary is the last record of a report, a file without one was cut short. New fields are added at the end of
+ * a record, renaming or removing one changes the schema version.
+ */
+public abstract class ReportWriter implements Closeable {
+
+    public static final int SCHEMA_VERSION = 1;
+    public static final String REPORT = "report";
+    public static final String MESSAGE = "message";
+    public static final String GROUP = "group";
+    public static final String SUMMARY = "summary";
+    public static final String PEAK = "peak";
+    public static final String FILE = "file";
+
+    protected final Writer out;
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    protected ReportWriter(Writer out) throws IOException {
+        this.out = out;
+        writeHeader();
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("schemaVersion", SCHEMA_VERSION);
+        writeRecord(REPORT, fields);
+    }
+
+    public void writeMessage(ReportMessage message) throws IOException {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("level", message.getType());
+        fields.put("message", message.getMessage());
+        fields.put("code", message.getCode());
+        fields.put("line", message.getLine() == ReportMessage.UNKNOWN ? null : message.getLine());
+        fields.put("column", message.getColumn() == ReportMessage.UNKNOWN ? null : message.getColumn());
+        writeRecord(MESSAGE, fields);
+    }
+
+    /**
+     * Write a record, the fields are written in their iteration order.
+     *
+     * @param type type of the record
+     * @param fields values of the fields, numbers and booleans are written as such, null as a missing value,
+     *               anything else as text
+     */
+    public synchronized void writeRecord(String type, Map<String, ?> fields) throws IOException {
+        int id = ids.merge(type, 1, Integer::sum) - 1;
+        write(type, id, fields);
+    }
+
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Write what comes before the first record.
+     */
+    protected void writeHeader() throws IOException {
+    }
+
+    protected abstract void write(String type, int id, Map<String, ?> fields) throws IOException;
+}
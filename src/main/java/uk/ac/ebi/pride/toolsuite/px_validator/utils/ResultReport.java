@@ -4,8 +4,10 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class describes the summary information of an assay file.
@@ -20,25 +22,57 @@ public class ResultReport extends Report {
     private int numberOfProteins;
     private int numberOfPeptides;
     private int numberOfPSMs;
+    private int numberOfSpectraData;
     private int numberOfPeakFiles;
     private boolean isValidSchema = false;
+    private boolean isSampled = false;
+    private int numberOfSampledResults;
+    private boolean isApproximateCounts = false;
     private List<PeakReport> peakReports = new ArrayList<>();
 
     @Override
-    public String toString() {
-        String peakReportSection = "";
+    public void writeText(Appendable out) throws IOException {
+        super.writeText(out);
+        if (isSampled) {
+            out.append("Validation mode : sampled, ").append(String.valueOf(numberOfSampledResults))
+                    .append(" SpectrumIdentificationResult blocks checked, the number of PSMs is an estimate\n");
+        }
+        if (isApproximateCounts) {
+            out.append("Counts : the numbers of proteins and peptides are HyperLogLog estimates\n");
+        }
+        out.append("Assay file : ").append(assayFile).append("\n")
+                .append("Assay file size: ").append(String.valueOf(fileSize)).append("\n")
+                .append("Valid Schema : ").append(String.valueOf(isValidSchema)).append("\n")
+                .append("Number of reported proteins : ").append(String.valueOf(numberOfProteins)).append("\n")
+                .append("Number of reported peptides : ").append(String.valueOf(numberOfPeptides)).append("\n")
+                .append("Number of reported PSMs : ").append(String.valueOf(numberOfPSMs)).append("\n")
+                .append("Number of SpectraData : ").append(String.valueOf(numberOfSpectraData)).append("\n")
+                .append("Number of peak files : ").append(String.valueOf(numberOfPeakFiles)).append("\n");
         for (int i = 0; i < peakReports.size(); i++) {
-            PeakReport peakReport = peakReports.get(i);
-            peakReportSection += "PEAK" + i +'\t' + peakReport.toString() + "\n";
+            out.append("PEAK").append(String.valueOf(i)).append('\t').append(peakReports.get(i).toString()).append("\n");
         }
-        return super.toString() +
-                "Assay file : " + assayFile + "\n" +
-                "Assay file size: " + fileSize + "\n" +
-                "Valid Schema : " + isValidSchema + "\n" +
-                "Number of reported proteins : " + numberOfProteins + "\n" +
-                "Number of reported peptides : " + numberOfPeptides + "\n" +
-                "Number of reported PSMs : " + numberOfPSMs + "\n" +
-                "Number of peak files : " + numberOfPeakFiles + "\n" +
-                peakReportSection;
+    }
+
+    @Override
+    protected void writeDetails(ReportWriter writer) throws IOException {
+        for (PeakReport peakReport : peakReports) {
+            writer.writeRecord(ReportWriter.PEAK, peakReport.getFields());
+        }
+    }
+
+    @Override
+    protected void addSummary(Map<String, Object> summary) {
+        super.addSummary(summary);
+        summary.put("assayFile", assayFile);
+        summary.put("fileSize", fileSize);
+        summary.put("validSchema", isValidSchema);
+        summary.put("proteins", numberOfProteins);
+        summary.put("peptides", numberOfPeptides);
+        summary.put("psms", numberOfPSMs);
+        summary.put("spectraData", numberOfSpectraData);
+        summary.put("peakFiles", numberOfPeakFiles);
+        summary.put("sampled", isSampled);
+        summary.put("sampledResults", numberOfSampledResults);
+        summary.put("approximateCounts", isApproximateCounts);
     }
 }
@@ -0,0 +1,121 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles the bundled mzIdentML XSDs once per JVM and hands out the immutable, thread-safe
+ * {@link Schema} objects to every validation.
+ */
+@Slf4j
+public class SchemaCache {
+
+    private static final String SPECTRUM_IDENTIFICATION_RESULT = "SpectrumIdentificationResult";
+
+    private static final Map<String, Schema> schemas = new ConcurrentHashMap<>();
+
+    private SchemaCache() {
+    }
+
+    /**
+     * Get the compiled mzIdentML schema for a version. Any version other than 1.2.x is validated against 1.1.0.
+     *
+     * @param version value of the version attribute of the MzIdentML root element, may be null
+     * @return compiled Schema
+     * @throws SAXException if the XSD can't be compiled
+     */
+    public static Schema getMzIdentMLSchema(String version) throws SAXException {
+        String xsd = getMzIdentMLXsd(version);
+        Schema schema = schemas.get(xsd);
+        if (schema == null) {
+            synchronized (schemas) {
+                schema = schemas.get(xsd);
+                if (schema == null) {
+                    long start = System.currentTimeMillis();
+                    schema = newSchemaFactory().newSchema(getResource(xsd));
+                    schemas.put(xsd, schema);
+                    log.info("Compiled " + xsd + " in " + (System.currentTimeMillis() - start) + "ms");
+                }
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Get a schema that accepts a single SpectrumIdentificationResult element as document root, so blocks
+     * cut out of a large file can be validated on their own. The element must be in the mzIdentML namespace.
+     *
+     * @param version value of the version attribute of the MzIdentML root element, may be null
+     * @return compiled Schema
+     * @throws SAXException if the XSD can't be compiled
+     */
+    public static Schema getSpectrumIdentificationResultSchema(String version) throws SAXException {
+        String xsd = getMzIdentMLXsd(version);
+        String key = xsd + "#" + SPECTRUM_IDENTIFICATION_RESULT;
+        Schema schema = schemas.get(key);
+        if (schema == null) {
+            synchronized (schemas) {
+                schema = schemas.get(key);
+                if (schema == null) {
+                    URL url = getResource(xsd);
+                    String namespace = getMzIdentMLNamespace(version);
+                    String wrapper = "<xsd:schema xmlns=\"" + namespace + "\" xmlns:xsd=\"" + XMLConstants.W3C_XML_SCHEMA_NS_URI
+                            + "\" targetNamespace=\"" + namespace + "\" elementFormDefault=\"qualified\">"
+                            + "<xsd:include schemaLocation=\"" + url + "\"/>"
+                            + "<xsd:element name=\"" + SPECTRUM_IDENTIFICATION_RESULT + "\" type=\"SpectrumIdentificationResultType\"/>"
+                            + "</xsd:schema>";
+                    // the wrapper needs its own system id, otherwise the include is taken for the wrapper itself
+                    String systemId = url.toString().replace(xsd, SPECTRUM_IDENTIFICATION_RESULT + "-" + xsd);
+                    schema = newSchemaFactory().newSchema(new StreamSource(new StringReader(wrapper), systemId));
+                    schemas.put(key, schema);
+                }
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * @param version value of the version attribute of the MzIdentML root element, may be null
+     * @return the namespace of the mzIdentML version
+     */
+    public static String getMzIdentMLNamespace(String version) {
+        return isVersion12(version) ? "http://psidev.info/psi/pi/mzIdentML/1.2" : "http://psidev.info/psi/pi/mzIdentML/1.1";
+    }
+
+    /**
+     * @param version value of the version attribute of the MzIdentML root element, may be null
+     * @return the bundled XSD of the mzIdentML version
+     */
+    public static URL getMzIdentMLXsdUrl(String version) {
+        return getResource(getMzIdentMLXsd(version));
+    }
+
+    private static boolean isVersion12(String version) {
+        return version != null && version.startsWith("1.2");
+    }
+
+    private static String getMzIdentMLXsd(String version) {
+        return isVersion12(version) ? "mzIdentML1.2.0.xsd" : "mzIdentML1.1.0.xsd";
+    }
+
+    private static URL getResource(String xsd) {
+        URL url = SchemaCache.class.getClassLoader().getResource(xsd);
+        if (url == null) {
+            throw new IllegalStateException("MzIdentML xsd not found: " + xsd);
+        }
+        return url;
+    }
+
+    private static SchemaFactory newSchemaFactory() {
+        return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+    }
+}
@@ -0,0 +1,209 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+import uk.ac.ebi.jmzidml.model.mzidml.FileFormat;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIDFormat;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the SpectraData definitions straight from the source result file, without going through PIA.
+ * For mzIdentML only the document up to the end of {@code Inputs} is parsed; for mzTab only the metadata section.
+ */
+@Slf4j
+public class SpectraDataExtractor {
+
+    private static final Pattern MZTAB_MS_RUN = Pattern.compile("^ms_run\\[(\\d+)]-(location|format|id_format)$");
+    private static final Pattern MZTAB_CV_PARAM = Pattern.compile("^\\[\\s*([^,]*),\\s*([^,]*),.*]$");
+
+    private SpectraDataExtractor() {
+    }
+
+    /**
+     * Get the SpectraData listed under Inputs of an mzIdentML file.
+     *
+     * @param mzIdentML mzIdentML file
+     * @return list of SpectraData
+     * @throws IOException if the file can't be read or isn't well-formed
+     */
+    public static List<SpectraData> fromMzIdentML(File mzIdentML) throws IOException {
+        long start = System.currentTimeMillis();
+        SpectraDataHandler handler = new SpectraDataHandler(true);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(mzIdentML), 1 << 20)) {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.newSAXParser().parse(new InputSource(in), handler);
+        } catch (InputsParsedException e) {
+            // everything after Inputs is not needed
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Unable to read SpectraData from " + mzIdentML.getName(), e);
+        }
+        log.info("Read " + handler.getSpectraData().size() + " SpectraData from " + mzIdentML.getName()
+                + " in " + (System.currentTimeMillis() - start) + "ms");
+        return handler.getSpectraData();
+    }
+
+    /**
+     * Get the SpectraData of an mzTab file from the ms_run entries of the metadata section.
+     * The ids of the SpectraData are the ms_run references, e.g. ms_run[1].
+     *
+     * @param mzTab mzTab file
+     * @return list of SpectraData
+     * @throws IOException if the file can't be read
+     */
+    public static List<SpectraData> fromMzTab(File mzTab) throws IOException {
+        Map<Integer, SpectraData> runs = new TreeMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(mzTab.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("COM") || line.trim().isEmpty()) {
+                    continue;
+                }
+                if (!line.startsWith("MTD")) {
+                    break;
+                }
+                String[] columns = line.split("\t", 3);
+                if (columns.length < 3) {
+                    continue;
+                }
+                Matcher matcher = MZTAB_MS_RUN.matcher(columns[1].trim());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                int index = Integer.parseInt(matcher.group(1));
+                SpectraData spectraData = runs.get(index);
+                if (spectraData == null) {
+                    spectraData = new SpectraData();
+                    spectraData.setId("ms_run[" + index + "]");
+                    runs.put(index, spectraData);
+                }
+                String value = columns[2].trim();
+                switch (matcher.group(2)) {
+                    case "location":
+                        spectraData.setLocation(value);
+                        spectraData.setName(Utility.getRealFileName(value));
+                        break;
+                    case "format":
+                        FileFormat fileFormat = new FileFormat();
+                        fileFormat.setCvParam(parseMzTabCvParam(value));
+                        spectraData.setFileFormat(fileFormat);
+                        break;
+                    default:
+                        SpectrumIDFormat idFormat = new SpectrumIDFormat();
+                        idFormat.setCvParam(parseMzTabCvParam(value));
+                        spectraData.setSpectrumIDFormat(idFormat);
+                        break;
+                }
+            }
+        }
+        return new ArrayList<>(runs.values());
+    }
+
+    private static CvParam parseMzTabCvParam(String value) {
+        CvParam cvParam = new CvParam();
+        Matcher matcher = MZTAB_CV_PARAM.matcher(value);
+        if (matcher.matches()) {
+            cvParam.setCvRef(matcher.group(1).trim());
+            cvParam.setAccession(matcher.group(2).trim());
+        } else {
+            cvParam.setAccession(value);
+        }
+        return cvParam;
+    }
+
+    /**
+     * Thrown to stop the parser once the Inputs element has been read.
+     */
+    private static class InputsParsedException extends SAXException {
+        InputsParsedException() {
+            super("Inputs parsed");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * SAX handler building SpectraData objects. It can be driven by its own parser or receive the
+     * events of another pass over the file.
+     */
+    public static class SpectraDataHandler extends DefaultHandler {
+
+        private final boolean stopAfterInputs;
+        private final List<SpectraData> spectraData = new ArrayList<>();
+        private SpectraData current;
+        private String parent;
+
+        public SpectraDataHandler(boolean stopAfterInputs) {
+            this.stopAfterInputs = stopAfterInputs;
+        }
+
+        public List<SpectraData> getSpectraData() {
+            return spectraData;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("SpectraData".equals(localName)) {
+                current = new SpectraData();
+                current.setId(attributes.getValue("id"));
+                current.setName(attributes.getValue("name"));
+                current.setLocation(attributes.getValue("location"));
+            } else if (current != null) {
+                if ("FileFormat".equals(localName) || "SpectrumIDFormat".equals(localName)) {
+                    parent = localName;
+                } else if ("cvParam".equals(localName) && parent != null) {
+                    CvParam cvParam = new CvParam();
+                    cvParam.setAccession(attributes.getValue("accession"));
+                    cvParam.setName(attributes.getValue("name"));
+                    cvParam.setCvRef(attributes.getValue("cvRef"));
+                    cvParam.setValue(attributes.getValue("value"));
+                    if ("FileFormat".equals(parent)) {
+                        FileFormat fileFormat = new FileFormat();
+                        fileFormat.setCvParam(cvParam);
+                        current.setFileFormat(fileFormat);
+                    } else {
+                        SpectrumIDFormat idFormat = new SpectrumIDFormat();
+                        idFormat.setCvParam(cvParam);
+                        current.setSpectrumIDFormat(idFormat);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if ("SpectraData".equals(localName)) {
+                spectraData.add(current);
+                current = null;
+            } else if (localName.equals(parent)) {
+                parent = null;
+            } else if (stopAfterInputs && "Inputs".equals(localName)) {
+                throw new InputsParsedException();
+            }
+        }
+    }
+}
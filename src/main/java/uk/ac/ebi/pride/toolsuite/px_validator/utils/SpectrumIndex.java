@@ -0,0 +1,413 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * Index of the spectra of one peak file, held in primitive arrays ordered as the spectra appear in the file.
+ * It keeps what the peak checks need without reading the spectra again: the native id, the MGF title, the scan
+ * number, the byte offset, the MS level, the precursor m/z and the precursor charge.
+ * Unknown values are null for titles, -1 for scans and offsets, 0 for MS level and charge and NaN for the
+ * precursor m/z.
+ *
+ * Spectra are looked up in constant time through a table of normalized keys built once per index, see {@link #find(String)}.
+ */
+public class SpectrumIndex {
+
+    private static final int NOT_FOUND = -1;
+    private static final int AMBIGUOUS = -2;
+    private static final int DERIVED_KEY = 0x40000000;
+    private static final String CONTROLLER_PREFIX = "controllerType=0 controllerNumber=1 scan=";
+    private static final byte KEY_ID = 0;
+    private static final byte KEY_ID_PART = 1;
+    private static final byte KEY_TITLE = 2;
+    private static final byte KEY_SCAN = 3;
+
+    private final String[] ids;
+    private final String[] titles;
+    private final int[] scans;
+    private final long[] offsets;
+    private final byte[] msLevels;
+    private final byte[] precursorCharges;
+    private final double[] precursorMzs;
+
+    private volatile Map<String, Integer> positionById;
+    private volatile KeyTable keyTable;
+
+    SpectrumIndex(String[] ids, String[] titles, int[] scans, long[] offsets, byte[] msLevels, byte[] precursorCharges, double[] precursorMzs) {
+        this.ids = ids;
+        this.titles = titles;
+        this.scans = scans;
+        this.offsets = offsets;
+        this.msLevels = msLevels;
+        this.precursorCharges = precursorCharges;
+        this.precursorMzs = precursorMzs;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public String getId(int position) {
+        return ids[position];
+    }
+
+    public String getTitle(int position) {
+        return titles[position];
+    }
+
+    public int getScan(int position) {
+        return scans[position];
+    }
+
+    public long getOffset(int position) {
+        return offsets[position];
+    }
+
+    public int getMsLevel(int position) {
+        return msLevels[position];
+    }
+
+    public int getPrecursorCharge(int position) {
+        return precursorCharges[position];
+    }
+
+    public double getPrecursorMz(int position) {
+        return precursorMzs[position];
+    }
+
+    /**
+     * Get the position of a spectrum from its native id.
+     *
+     * @param id native id as written in the peak file
+     * @return position in the file or -1 if the id isn't found
+     */
+    public int indexOf(String id) {
+        Map<String, Integer> positions = positionById;
+        if (positions == null) {
+            positions = new HashMap<>(ids.length * 2);
+            for (int i = 0; i < ids.length; i++) {
+                positions.putIfAbsent(ids[i], i);
+            }
+            positionById = positions;
+        }
+        Integer position = positions.get(id);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Find a spectrum from an id as written in a result file. Besides the native id, a spectrum is found by its
+     * scan number written as N, scan=N or controllerType=0 controllerNumber=1 scan=N, where the scan number comes
+     * from the native id, the index or the scan=N part of the MGF title, by any whitespace separated part of its
+     * native id, and by its MGF title. Native ids take precedence; any other key shared by several spectra is
+     * ambiguous and not found.
+     *
+     * @param id spectrum id from the result file
+     * @return position in the file or -1 if the id isn't found
+     */
+    public int find(String id) {
+        if (id == null) {
+            return NOT_FOUND;
+        }
+        KeyTable table = keyTable;
+        if (table == null) {
+            synchronized (this) {
+                table = keyTable;
+                if (table == null) {
+                    table = buildKeyTable();
+                    keyTable = table;
+                }
+            }
+        }
+        int position = table.get(id);
+        if (position < 0 && id.startsWith("scan=")) {
+            position = table.get(id.substring("scan=".length()));
+        }
+        return position;
+    }
+
+    private KeyTable buildKeyTable() {
+        int[] keyScans = new int[ids.length];
+        long numberOfKeys = 0;
+        for (int i = 0; i < ids.length; i++) {
+            keyScans[i] = getKeyScan(i);
+            numberOfKeys += countKeys(i, keyScans[i]);
+        }
+        KeyTable table = new KeyTable((int) Math.min(numberOfKeys, 1 << 29), keyScans);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != null) {
+                table.put(ids[i], i, KEY_ID);
+            }
+        }
+        for (int i = 0; i < ids.length; i++) {
+            addDerivedKeys(table, i, keyScans[i]);
+        }
+        return table;
+    }
+
+    /**
+     * @return the scan number of the spectrum, from the scan=N part of its MGF title if it has none, or -1
+     */
+    private int getKeyScan(int position) {
+        int scan = scans[position];
+        if (scan < 0 && titles != null && titles[position] != null) {
+            Matcher matcher = JmzReaderSpectrumService.patternScanInTitle.matcher(titles[position]);
+            if (matcher.matches()) {
+                try {
+                    scan = Integer.parseInt(matcher.group(1));
+                } catch (NumberFormatException e) {
+                    scan = -1;
+                }
+            }
+        }
+        return scan;
+    }
+
+    /**
+     * @return number of keys of the spectrum, the table is sized from their total
+     */
+    private int countKeys(int position, int scan) {
+        int count = 0;
+        String id = ids[position];
+        if (id != null) {
+            int parts = 0;
+            boolean isPart = false;
+            for (int i = 0; i < id.length(); i++) {
+                boolean isWhitespace = Character.isWhitespace(id.charAt(i));
+                if (!isWhitespace && !isPart) {
+                    parts++;
+                }
+                isPart = !isWhitespace;
+            }
+            // an id of one part is its own only part
+            count += parts > 1 ? parts + 1 : 1;
+        }
+        if (titles != null && titles[position] != null) {
+            count++;
+        }
+        return scan >= 0 ? count + 3 : count;
+    }
+
+    /**
+     * Add the keys other than the native id: the whitespace separated parts of the native id, the MGF title and
+     * the scan number in its three notations.
+     */
+    private void addDerivedKeys(KeyTable table, int position, int scan) {
+        String id = ids[position];
+        if (id != null) {
+            int start = -1;
+            for (int i = 0; i <= id.length(); i++) {
+                boolean isWhitespace = i == id.length() || Character.isWhitespace(id.charAt(i));
+                if (!isWhitespace && start < 0) {
+                    start = i;
+                } else if (isWhitespace && start >= 0) {
+                    table.put(id.substring(start, i), position, KEY_ID_PART);
+                    start = -1;
+                }
+            }
+        }
+        if (titles != null && titles[position] != null) {
+            table.put(titles[position], position, KEY_TITLE);
+        }
+        if (scan >= 0) {
+            table.put(Integer.toString(scan), position, KEY_SCAN);
+            table.put("scan=" + scan, position, KEY_SCAN);
+            table.put(CONTROLLER_PREFIX + scan, position, KEY_SCAN);
+        }
+    }
+
+    /**
+     * Confirm that a key found through its hash is a key of the spectrum, without building the keys again.
+     */
+    private boolean hasKey(int position, byte kind, String key, int scan) {
+        switch (kind) {
+            case KEY_ID:
+                return key.equals(ids[position]);
+            case KEY_ID_PART:
+                return isPart(ids[position], key);
+            case KEY_TITLE:
+                return titles != null && key.equals(titles[position]);
+            default:
+                if (scan < 0) {
+                    return false;
+                }
+                if (key.startsWith(CONTROLLER_PREFIX)) {
+                    return isNumber(key, CONTROLLER_PREFIX.length(), scan);
+                }
+                return key.startsWith("scan=") ? isNumber(key, "scan=".length(), scan) : isNumber(key, 0, scan);
+        }
+    }
+
+    /**
+     * @return true if the key is a whitespace separated part of the id
+     */
+    private static boolean isPart(String id, String key) {
+        if (id == null || key.isEmpty()) {
+            return false;
+        }
+        for (int i = id.indexOf(key); i >= 0; i = id.indexOf(key, i + 1)) {
+            int end = i + key.length();
+            if ((i == 0 || Character.isWhitespace(id.charAt(i - 1)))
+                    && (end == id.length() || Character.isWhitespace(id.charAt(end)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the key from the given index is the decimal number, as Integer.toString writes it
+     */
+    private static boolean isNumber(String key, int from, int number) {
+        int length = key.length() - from;
+        if (length <= 0 || length > 10 || length > 1 && key.charAt(from) == '0') {
+            return false;
+        }
+        long value = 0;
+        for (int i = from; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value == number;
+    }
+
+    /**
+     * Open addressing table from the 64-bit hash of a key to a spectrum position and the kind of the key. A hit is
+     * confirmed against that key of the spectrum, so a hash collision never returns the wrong spectrum.
+     */
+    private class KeyTable {
+
+        private final long[] hashes;
+        private final int[] positions;
+        private final byte[] kinds;
+        private final int[] keyScans;
+        private final int mask;
+
+        /**
+         * @param expectedKeys number of keys, the table is at most 3/4 full
+         * @param keyScans scan number of every spectrum, -1 if it has none
+         */
+        KeyTable(int expectedKeys, int[] keyScans) {
+            int capacity = Integer.highestOneBit(Math.max(16, expectedKeys + expectedKeys / 3)) << 1;
+            hashes = new long[capacity];
+            positions = new int[capacity];
+            kinds = new byte[capacity];
+            Arrays.fill(positions, NOT_FOUND);
+            mask = capacity - 1;
+            this.keyScans = keyScans;
+        }
+
+        void put(String key, int position, byte kind) {
+            long hash = IdHashSet.hash(key);
+            int slot = slot(hash);
+            while (positions[slot] != NOT_FOUND && hashes[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            int current = positions[slot];
+            boolean isDerived = kind != KEY_ID;
+            if (current == NOT_FOUND) {
+                hashes[slot] = hash;
+                positions[slot] = isDerived ? position | DERIVED_KEY : position;
+                kinds[slot] = kind;
+            } else if (isDerived && current != AMBIGUOUS && (current & DERIVED_KEY) != 0 && (current & ~DERIVED_KEY) != position) {
+                positions[slot] = AMBIGUOUS;
+            }
+        }
+
+        int get(String key) {
+            long hash = IdHashSet.hash(key);
+            int slot = slot(hash);
+            while (positions[slot] != NOT_FOUND) {
+                if (hashes[slot] == hash) {
+                    int position = positions[slot];
+                    if (position == AMBIGUOUS) {
+                        return NOT_FOUND;
+                    }
+                    position &= ~DERIVED_KEY;
+                    return hasKey(position, kinds[slot], key, keyScans[position]) ? position : NOT_FOUND;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return NOT_FOUND;
+        }
+
+        private int slot(long hash) {
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+
+    String[] getIds() {
+        return ids;
+    }
+
+    String[] getTitles() {
+        return titles;
+    }
+
+    int[] getScans() {
+        return scans;
+    }
+
+    long[] getOffsets() {
+        return offsets;
+    }
+
+    byte[] getMsLevels() {
+        return msLevels;
+    }
+
+    byte[] getPrecursorCharges() {
+        return precursorCharges;
+    }
+
+    double[] getPrecursorMzs() {
+        return precursorMzs;
+    }
+
+    /**
+     * Collects the spectra of a file in growable primitive arrays.
+     */
+    public static class Builder {
+
+        private String[] ids = new String[1024];
+        private String[] titles = new String[1024];
+        private int[] scans = new int[1024];
+        private long[] offsets = new long[1024];
+        private byte[] msLevels = new byte[1024];
+        private byte[] precursorCharges = new byte[1024];
+        private double[] precursorMzs = new double[1024];
+        private int size;
+
+        public Builder add(String id, String title, int scan, long offset, int msLevel, int precursorCharge, double precursorMz) {
+            if (size == ids.length) {
+                int capacity = size << 1;
+                ids = Arrays.copyOf(ids, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                scans = Arrays.copyOf(scans, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                msLevels = Arrays.copyOf(msLevels, capacity);
+                precursorCharges = Arrays.copyOf(precursorCharges, capacity);
+                precursorMzs = Arrays.copyOf(precursorMzs, capacity);
+            }
+            ids[size] = id;
+            titles[size] = title;
+            scans[size] = scan;
+            offsets[size] = offset;
+            msLevels[size] = (byte) msLevel;
+            precursorCharges[size] = (byte) precursorCharge;
+            precursorMzs[size] = precursorMz;
+            size++;
+            return this;
+        }
+
+        public SpectrumIndex build() {
+            return new SpectrumIndex(Arrays.copyOf(ids, size), Arrays.copyOf(titles, size), Arrays.copyOf(scans, size), Arrays.copyOf(offsets, size),
+                    Arrays.copyOf(msLevels, size), Arrays.copyOf(precursorCharges, size), Arrays.copyOf(precursorMzs, size));
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the {@link SpectrumIndex} of every peak file in a cache directory, so a peak file that has already been
+ * validated doesn't need to be scanned again. An entry is keyed on the canonical path, the size and the
+ * modification time of the peak file; any change to the file makes the entry stale. Entries are written to a
+ * temporary file and moved in place, so concurrent runs sharing the directory never read a partial entry. An entry is
+ * mapped in one buffer and its strings are read into one array, so the index of a peak file whose entry would
+ * take more than 2GB isn't cached.
+ *
+ * A long-running validator can also keep the most recently used indexes in memory, see
+ * {@link #setMemoryCapacity(int)}; they are shared by all the caches of the JVM.
+ */
+@Slf4j
+public class SpectrumIndexCache {
+
+    private static final int MAGIC = 0x53494458; // SIDX
+    private static final int FORMAT_VERSION = 2;
+    private static final String EXTENSION = ".sidx";
+
+    /**
+     * Indexes kept in memory, least recently used first, keyed on the name of their entry
+     */
+    private static final Map<String, SpectrumIndex> memory = new LinkedHashMap<String, SpectrumIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SpectrumIndex> eldest) {
+            return size() > memoryCapacity;
+        }
+    };
+    private static int memoryCapacity;
+
+    private final File directory;
+
+    public SpectrumIndexCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cache in the px-validator-index-cache folder of the temporary directory
+     */
+    public static SpectrumIndexCache getDefault() {
+        return new SpectrumIndexCache(new File(System.getProperty("java.io.tmpdir"), "px-validator-index-cache"));
+    }
+
+    /**
+     * Keep up to the given number of indexes in memory, 0 to always read them from the cache directory.
+     *
+     * @param entries number of indexes kept in memory
+     */
+    public static void setMemoryCapacity(int entries) {
+        synchronized (memory) {
+            memoryCapacity = entries;
+            if (entries == 0) {
+                memory.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the cached index of a peak file.
+     *
+     * @param peakFile peak file
+     * @return the index or null if there is no valid entry for the current version of the file
+     */
+    public SpectrumIndex get(File peakFile) {
+        try {
+            File entry = getEntry(peakFile);
+            SpectrumIndex index = getFromMemory(entry);
+            if (index != null || !entry.isFile()) {
+                return index;
+            }
+            try (FileChannel channel = FileChannel.open(entry.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                index = read(buffer, peakFile);
+            }
+            if (index != null) {
+                putInMemory(entry, index);
+            }
+            return index;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring the cached index of " + peakFile.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Store the index of a peak file. Failures are logged, the cache is only an optimisation.
+     *
+     * @param peakFile peak file
+     * @param index index of the peak file
+     */
+    public void put(File peakFile, SpectrumIndex index) {
+        Path temp = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            File entry = getEntry(peakFile);
+            putInMemory(entry, index);
+            temp = Files.createTempFile(directory.toPath(), entry.getName(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                write(out, peakFile, index);
+            }
+            try {
+                Files.move(temp, entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to cache the index of " + peakFile.getName() + ": " + e.getMessage());
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    private static SpectrumIndex getFromMemory(File entry) {
+        synchronized (memory) {
+            return memoryCapacity > 0 ? memory.get(entry.getName()) : null;
+        }
+    }
+
+    private static void putInMemory(File entry, SpectrumIndex index) {
+        synchronized (memory) {
+            if (memoryCapacity > 0) {
+                memory.put(entry.getName(), index);
+            }
+        }
+    }
+
+    private File getEntry(File peakFile) throws IOException {
+        String key = peakFile.getCanonicalPath() + '\n' + peakFile.length() + '\n' + peakFile.lastModified();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return new File(directory, name.append(EXTENSION).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void write(DataOutputStream out, File peakFile, SpectrumIndex index) throws IOException {
+        int count = index.size();
+        byte[] path = peakFile.getCanonicalPath().getBytes(StandardCharsets.UTF_8);
+        byte[][] ids = encode(index.getIds());
+        byte[][] titles = encode(index.getTitles());
+        long size = 4 * Integer.BYTES + 2 * Long.BYTES + path.length
+                + (long) count * (Integer.BYTES + Long.BYTES + 2 + Double.BYTES + 2 * Integer.BYTES)
+                + getLength(ids) + getLength(titles);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("the entry would take " + size + " bytes, more than can be mapped");
+        }
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(peakFile.length());
+        out.writeLong(peakFile.lastModified());
+        out.writeInt(path.length);
+        out.write(path);
+        out.writeInt(count);
+        for (int scan : index.getScans()) {
+            out.writeInt(scan);
+        }
+        for (long offset : index.getOffsets()) {
+            out.writeLong(offset);
+        }
+        out.write(index.getMsLevels());
+        out.write(index.getPrecursorCharges());
+        for (double mz : index.getPrecursorMzs()) {
+            out.writeDouble(mz);
+        }
+        writeStrings(out, ids);
+        writeStrings(out, titles);
+    }
+
+    /**
+     * @return the UTF-8 bytes of every value, null for a null value
+     */
+    private static byte[][] encode(String[] values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i] == null ? null : values[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static long getLength(byte[][] values) {
+        long length = 0;
+        for (byte[] value : values) {
+            length += value == null ? 0 : value.length;
+        }
+        return length;
+    }
+
+    /**
+     * Write the end offset of every value then their bytes. The ends fit in an int, the size of the entry has been
+     * checked by {@link #write(DataOutputStream, File, SpectrumIndex)}.
+     */
+    private static void writeStrings(DataOutputStream out, byte[][] values) throws IOException {
+        int end = 0;
+        for (byte[] value : values) {
+            end += value == null ? 0 : value.length;
+            // a null value is written as a negative end
+            out.writeInt(value == null ? -end - 1 : end);
+        }
+        for (byte[] value : values) {
+            if (value != null) {
+                out.write(value);
+            }
+        }
+    }
+
+    private static SpectrumIndex read(ByteBuffer buffer, File peakFile) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        if (buffer.getLong() != peakFile.length() || buffer.getLong() != peakFile.lastModified()) {
+            return null;
+        }
+        byte[] path = new byte[buffer.getInt()];
+        buffer.get(path);
+        if (!peakFile.getCanonicalPath().equals(new String(path, StandardCharsets.UTF_8))) {
+            return null;
+        }
+        int count = buffer.getInt();
+        int[] scans = new int[count];
+        buffer.asIntBuffer().get(scans);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        long[] offsets = new long[count];
+        buffer.asLongBuffer().get(offsets);
+        buffer.position(buffer.position() + count * Long.BYTES);
+        byte[] msLevels = new byte[count];
+        buffer.get(msLevels);
+        byte[] charges = new byte[count];
+        buffer.get(charges);
+        double[] mzs = new double[count];
+        buffer.asDoubleBuffer().get(mzs);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        String[] ids = readStrings(buffer, count);
+        String[] titles = readStrings(buffer, count);
+        return new SpectrumIndex(ids, titles, scans, offsets, msLevels, charges, mzs);
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, int count) {
+        int[] ends = new int[count];
+        buffer.asIntBuffer().get(ends);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        byte[] blob = new byte[count == 0 ? 0 : decodeEnd(ends[count - 1])];
+        buffer.get(blob);
+        String[] values = new String[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int end = decodeEnd(ends[i]);
+            values[i] = ends[i] < 0 ? null : new String(blob, start, end - start, StandardCharsets.UTF_8);
+            start = end;
+        }
+        return values;
+    }
+
+    private static int decodeEnd(int end) {
+        return end < 0 ? -end - 1 : end;
+    }
+}
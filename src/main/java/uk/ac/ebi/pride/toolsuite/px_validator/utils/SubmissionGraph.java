@@ -0,0 +1,159 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import uk.ac.ebi.pride.data.model.DataFile;
+import uk.ac.ebi.pride.data.model.Submission;
+import uk.ac.ebi.pride.toolsuite.px_validator.Validator;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Result files of a submission.px and the peak files each of them references, from the file mappings of the
+ * submission. A peak file referenced by several result files appears once in {@link #getPeakFiles()}, so it can be
+ * indexed once for all of them. The files are looked up where the submission points to, or else next to the
+ * submission.px file.
+ */
+public class SubmissionGraph {
+
+    private final Map<File, List<File>> peakFilesByResultFile = new LinkedHashMap<>();
+    private final Map<File, Utility.FileType> resultFileTypes = new HashMap<>();
+    private final List<String> missingFiles = new ArrayList<>();
+
+    /**
+     * @param submission parsed submission.px
+     * @param folder folder of the submission.px file
+     */
+    public SubmissionGraph(Submission submission, File folder) {
+        for (DataFile dataFile : submission.getDataFiles()) {
+            Utility.FileType type = getFileType(dataFile);
+            if (type != Utility.FileType.MZID && type != Utility.FileType.MZTAB) {
+                continue;
+            }
+            File resultFile = resolve(dataFile, folder);
+            if (resultFile == null || !resultFile.isFile()) {
+                missingFiles.add(getName(dataFile));
+                continue;
+            }
+            List<File> peakFiles = new ArrayList<>();
+            if (dataFile.getFileMappings() != null) {
+                for (DataFile mapping : dataFile.getFileMappings()) {
+                    if (!isPeakFile(mapping)) {
+                        continue;
+                    }
+                    File peakFile = resolve(mapping, folder);
+                    if (peakFile == null || !peakFile.isFile()) {
+                        missingFiles.add(getName(mapping));
+                    } else if (!peakFiles.contains(peakFile)) {
+                        peakFiles.add(peakFile);
+                    }
+                }
+            }
+            peakFilesByResultFile.put(resultFile, peakFiles);
+            resultFileTypes.put(resultFile, type);
+        }
+    }
+
+    /**
+     * Replace the zip archives among the peak files by their content. Every archive is extracted once, whatever
+     * the number of result files referencing it.
+     */
+    public void extractZipArchives() {
+        Map<File, List<File>> extracted = new HashMap<>();
+        for (Map.Entry<File, List<File>> entry : peakFilesByResultFile.entrySet()) {
+            List<File> peakFiles = new ArrayList<>();
+            for (File peakFile : entry.getValue()) {
+                if (Decompressor.isZip(peakFile)) {
+                    peakFiles.addAll(extracted.computeIfAbsent(peakFile,
+                            zip -> Validator.extractZipArchives(Collections.singletonList(zip))));
+                } else {
+                    peakFiles.add(peakFile);
+                }
+            }
+            entry.setValue(peakFiles);
+        }
+    }
+
+    /**
+     * @return the result files, mzIdentML and mzTab
+     */
+    public Set<File> getResultFiles() {
+        return Collections.unmodifiableSet(peakFilesByResultFile.keySet());
+    }
+
+    public Utility.FileType getResultFileType(File resultFile) {
+        return resultFileTypes.get(resultFile);
+    }
+
+    /**
+     * @return the peak files referenced by the result file
+     */
+    public List<File> getPeakFiles(File resultFile) {
+        return peakFilesByResultFile.getOrDefault(resultFile, Collections.emptyList());
+    }
+
+    /**
+     * @return the distinct peak files of the submission
+     */
+    public Set<File> getPeakFiles() {
+        Set<File> peakFiles = new LinkedHashSet<>();
+        peakFilesByResultFile.values().forEach(peakFiles::addAll);
+        return peakFiles;
+    }
+
+    /**
+     * @return the result files referencing the peak file
+     */
+    public List<File> getResultFiles(File peakFile) {
+        List<File> resultFiles = new ArrayList<>();
+        for (Map.Entry<File, List<File>> entry : peakFilesByResultFile.entrySet()) {
+            if (entry.getValue().contains(peakFile)) {
+                resultFiles.add(entry.getKey());
+            }
+        }
+        return resultFiles;
+    }
+
+    /**
+     * @return the result and peak files of the submission that can't be found
+     */
+    public List<String> getMissingFiles() {
+        return missingFiles;
+    }
+
+    /**
+     * Peak files are recognised by their name, zip archives are taken as archives of peak files.
+     */
+    private static boolean isPeakFile(DataFile dataFile) {
+        String name = getName(dataFile);
+        if (name == null) {
+            return false;
+        }
+        Utility.FileType type = Utility.FileType.getFileTypeFromPRIDEFileName(name);
+        return name.toLowerCase().endsWith(".zip") || (type != null && type != Utility.FileType.MZID
+                && type != Utility.FileType.MZTAB && type != Utility.FileType.PRIDE);
+    }
+
+    /**
+     * The type is taken from the file name.
+     */
+    private static Utility.FileType getFileType(DataFile dataFile) {
+        String name = getName(dataFile);
+        return name != null ? Utility.FileType.getFileTypeFromPRIDEFileName(name) : null;
+    }
+
+    private static String getName(DataFile dataFile) {
+        if (dataFile.getFile() != null) {
+            return dataFile.getFile().getName();
+        }
+        return dataFile.getFilePath() != null ? new File(dataFile.getFilePath()).getName() : null;
+    }
+
+    private static File resolve(DataFile dataFile, File folder) {
+        File file = dataFile.getFile();
+        if (file != null && file.isFile()) {
+            return file.getAbsoluteFile();
+        }
+        String name = getName(dataFile);
+        return name != null ? new File(folder, name).getAbsoluteFile() : null;
+    }
+}
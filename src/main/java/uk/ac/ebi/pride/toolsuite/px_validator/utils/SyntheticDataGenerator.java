@@ -0,0 +1,604 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.CommandLine;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes a seeded result file and its peak file for scale testing: mzIdentML 1.1 or 1.2 or mzTab with one PSM per
+ * spectrum of an MGF or mzML file. The peptides have real precursor masses and their spectra hold the b and y ions of
+ * the peptide among noise peaks, so a file without defects passes the schema, precursor and fragment checks.
+ *
+ * Every protein, peptide, PSM and spectrum is computed from the seed and its index, so the files are streamed in
+ * constant memory whatever the number of PSMs, and the same seed always gives the same files. Defects are injected
+ * in a given fraction of the PSMs, see {@link Defect}; a PSM gets at most one defect.
+ */
+@Slf4j
+@Getter
+@Setter
+@NoArgsConstructor
+public class SyntheticDataGenerator {
+
+    public static final long DEFAULT_NUMBER_OF_PSMS = 10000;
+    public static final long DEFAULT_SEED = 42;
+    public static final String DEFAULT_NAME = "synthetic";
+    /**
+     * Shift of the precursor m/z of the spectra of {@link Defect#WRONG_PRECURSOR}, in Da before dividing by the
+     * charge, far from the tolerance and the isotope errors
+     */
+    public static final double PRECURSOR_SHIFT = 7.5;
+
+    private static final String AMINO_ACIDS = "ACDEFGHILMNPQSTVWY";
+    private static final int MIN_PEPTIDE_LENGTH = 7;
+    private static final int MAX_PEPTIDE_LENGTH = 20;
+    private static final int NOISE_PEAKS = 20;
+    private static final int PSMS_PER_PEPTIDE = 2;
+    private static final int PEPTIDES_PER_PROTEIN = 5;
+    // kinds of the random values, so the values drawn for the same index are unrelated
+    private static final long PEPTIDE = 1;
+    private static final long PSM = 2;
+    private static final long DEFECT = 3;
+    private static final long MZ_ERROR = 4;
+    private static final long PEAKS = 5;
+
+    /**
+     * Defects that can be injected, with the name used in the -defects option.
+     */
+    public enum Defect {
+        /**
+         * The PSM references a spectrum that isn't in the peak file
+         */
+        MISSING_SPECTRUM("missing"),
+        /**
+         * The precursor m/z of the spectrum doesn't match the PSM
+         */
+        WRONG_PRECURSOR("precursor"),
+        /**
+         * The PSM references a peptide that doesn't exist in the mzIdentML file, or an undefined ms_run in mzTab
+         */
+        BROKEN_REFERENCE("refs"),
+        /**
+         * The PSM has no rank in the mzIdentML file, or a charge that isn't a number in mzTab
+         */
+        SCHEMA_VIOLATION("schema");
+
+        private final String name;
+
+        Defect(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Defect fromName(String name) {
+            for (Defect defect : values()) {
+                if (defect.name.equalsIgnoreCase(name)) {
+                    return defect;
+                }
+            }
+            throw new IllegalArgumentException("Unknown defect " + name + ", expected one of missing, precursor, refs, schema");
+        }
+    }
+
+    public enum ResultFormat {
+        MZID("mzid"), MZID_1_2("mzid12"), MZTAB("mztab");
+
+        private final String name;
+
+        ResultFormat(String name) {
+            this.name = name;
+        }
+
+        public static ResultFormat fromName(String name) {
+            for (ResultFormat format : values()) {
+                if (format.name.equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unknown result format " + name + ", expected mzid, mzid12 or mztab");
+        }
+    }
+
+    public enum PeakFormat {
+        MGF, MZML;
+
+        public static PeakFormat fromName(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private long numberOfPsms = DEFAULT_NUMBER_OF_PSMS;
+    private long seed = DEFAULT_SEED;
+    private String name = DEFAULT_NAME;
+    private ResultFormat resultFormat = ResultFormat.MZID;
+    private PeakFormat peakFormat = PeakFormat.MGF;
+    /**
+     * Fraction of the PSMs with each defect
+     */
+    private Map<Defect, Double> defectRates = new EnumMap<>(Defect.class);
+
+    /**
+     * Read the generator settings from the command line arguments, using the defaults for the missing ones.
+     *
+     * @param cmd command line arguments
+     * @return SyntheticDataGenerator
+     */
+    public static SyntheticDataGenerator fromCommandLine(CommandLine cmd) {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        if (cmd.hasOption(Utility.ARG_PSMS)) {
+            generator.setNumberOfPsms(Long.parseLong(cmd.getOptionValue(Utility.ARG_PSMS)));
+        }
+        if (cmd.hasOption(Utility.ARG_SEED)) {
+            generator.setSeed(Long.parseLong(cmd.getOptionValue(Utility.ARG_SEED)));
+        }
+        if (cmd.hasOption(Utility.ARG_RESULT_FORMAT)) {
+            generator.setResultFormat(ResultFormat.fromName(cmd.getOptionValue(Utility.ARG_RESULT_FORMAT)));
+        }
+        if (cmd.hasOption(Utility.ARG_PEAK_FORMAT)) {
+            generator.setPeakFormat(PeakFormat.fromName(cmd.getOptionValue(Utility.ARG_PEAK_FORMAT)));
+        }
+        if (cmd.hasOption(Utility.ARG_DEFECTS)) {
+            generator.setDefectRates(cmd.getOptionValue(Utility.ARG_DEFECTS));
+        }
+        if (generator.getNumberOfPsms() < 1) {
+            throw new IllegalArgumentException("The number of PSMs must be a positive number -- " + generator.getNumberOfPsms());
+        }
+        return generator;
+    }
+
+    /**
+     * @param defects rates such as "missing=0.01,precursor=0.02,refs=0.001,schema=0.001"
+     */
+    public void setDefectRates(String defects) {
+        defectRates.clear();
+        for (String defect : defects.split(",")) {
+            String[] fields = defect.split("=");
+            if (fields.length != 2) {
+                throw new IllegalArgumentException("Invalid defect rate " + defect + ", expected name=rate");
+            }
+            setDefectRate(Defect.fromName(fields[0].trim()), Double.parseDouble(fields[1].trim()));
+        }
+    }
+
+    public void setDefectRate(Defect defect, double rate) {
+        if (rate < 0 || rate > 1 || Double.isNaN(rate)) {
+            throw new IllegalArgumentException("The rate of the " + defect.getName() + " defect must be between 0 and 1 -- " + rate);
+        }
+        defectRates.put(defect, rate);
+        double total = 0;
+        for (double value : defectRates.values()) {
+            total += value;
+        }
+        if (total > 1) {
+            throw new IllegalArgumentException("The defect rates add up to more than 1 -- " + total);
+        }
+    }
+
+    /**
+     * Write the result file and its peak file to the folder, named after {@link #getName()}.
+     *
+     * @param folder output folder, created if missing
+     * @return the result file and the peak file
+     * @throws IOException if a file can't be written
+     */
+    public List<File> generate(File folder) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Unable to create the folder " + folder);
+        }
+        File peakFile = new File(folder, name + (peakFormat == PeakFormat.MZML ? ".mzML" : ".mgf"));
+        File resultFile = new File(folder, name + (resultFormat == ResultFormat.MZTAB ? ".mztab" : ".mzid"));
+        long start = System.currentTimeMillis();
+        if (peakFormat == PeakFormat.MZML) {
+            writeMzMl(peakFile);
+        } else {
+            writeMgf(peakFile);
+        }
+        if (resultFormat == ResultFormat.MZTAB) {
+            writeMzTab(resultFile, peakFile);
+        } else {
+            writeMzIdentML(resultFile, peakFile);
+        }
+        Map<Defect, Long> defects = countDefects();
+        log.info("Generated " + numberOfPsms + " PSMs in " + resultFile.getPath() + " and " + peakFile.getPath() + " in "
+                + (System.currentTimeMillis() - start) + "ms, defects " + defects);
+        return Arrays.asList(resultFile, peakFile);
+    }
+
+    /**
+     * @return number of PSMs with each defect
+     */
+    public Map<Defect, Long> countDefects() {
+        Map<Defect, Long> counts = new EnumMap<>(Defect.class);
+        for (Defect defect : defectRates.keySet()) {
+            counts.put(defect, 0L);
+        }
+        for (long i = 0; i < numberOfPsms && !defectRates.isEmpty(); i++) {
+            Defect defect = getDefect(i);
+            if (defect != null) {
+                counts.merge(defect, 1L, Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the defect of the PSM, null if it has none
+     */
+    public Defect getDefect(long psm) {
+        if (defectRates.isEmpty()) {
+            return null;
+        }
+        double value = random(DEFECT, psm).nextDouble();
+        double total = 0;
+        for (Map.Entry<Defect, Double> entry : defectRates.entrySet()) {
+            total += entry.getValue();
+            if (value < total) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    public long getNumberOfPeptides() {
+        return Math.max(1, numberOfPsms / PSMS_PER_PEPTIDE);
+    }
+
+    public long getNumberOfProteins() {
+        return Math.max(1, getNumberOfPeptides() / PEPTIDES_PER_PROTEIN);
+    }
+
+    /**
+     * @return index of the peptide identified by the PSM
+     */
+    public long getPeptide(long psm) {
+        return random(PSM, psm).nextLong(getNumberOfPeptides());
+    }
+
+    /**
+     * @return index of the protein the peptide belongs to
+     */
+    public long getProtein(long peptide) {
+        return peptide % getNumberOfProteins();
+    }
+
+    /**
+     * @return tryptic sequence of the peptide
+     */
+    public String getSequence(long peptide) {
+        SplittableRandom random = random(PEPTIDE, peptide);
+        int length = MIN_PEPTIDE_LENGTH + random.nextInt(MAX_PEPTIDE_LENGTH - MIN_PEPTIDE_LENGTH + 1);
+        StringBuilder sequence = new StringBuilder(length);
+        for (int i = 0; i < length - 1; i++) {
+            sequence.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+        }
+        return sequence.append(random.nextBoolean() ? 'K' : 'R').toString();
+    }
+
+    public int getCharge(long psm) {
+        return 2 + (int) (mix(seed, PSM, psm) & 1);
+    }
+
+    /**
+     * @return theoretical m/z of the peptide of the PSM
+     */
+    public double getCalculatedMz(long psm) {
+        int charge = getCharge(psm);
+        return (getPeptideMass(getSequence(getPeptide(psm))) + charge * FragmentMatcher.PROTON) / charge;
+    }
+
+    /**
+     * @return m/z reported for the PSM, the theoretical one with a few ppm of error
+     */
+    public double getExperimentalMz(long psm) {
+        double mz = getCalculatedMz(psm);
+        return mz + mz * 5e-6 * (2 * random(MZ_ERROR, psm).nextDouble() - 1);
+    }
+
+    /**
+     * @return title of the spectrum in the MGF file, id of the spectrum in the mzML file
+     */
+    public static String getSpectrumTitle(long spectrum) {
+        return "scan=" + (spectrum + 1);
+    }
+
+    /**
+     * Write one spectrum per PSM, the b and y ions of its peptide among noise peaks.
+     */
+    public void writeMgf(File file) throws IOException {
+        try (Writer out = newWriter(file)) {
+            StringBuilder text = new StringBuilder();
+            for (long i = 0; i < numberOfPsms; i++) {
+                text.setLength(0);
+                text.append("BEGIN IONS\nTITLE=").append(getSpectrumTitle(i)).append("\nPEPMASS=");
+                appendDecimal(text, getPrecursorMz(i)).append("\nCHARGE=").append(getCharge(i)).append("+\n");
+                double[][] peaks = getPeaks(i);
+                for (int j = 0; j < peaks[0].length; j++) {
+                    appendDecimal(text, peaks[0][j]).append(' ');
+                    appendDecimal(text, peaks[1][j]).append('\n');
+                }
+                out.append(text.append("END IONS\n\n"));
+            }
+        }
+    }
+
+    public void writeMzMl(File file) throws IOException {
+        try (Writer out = newWriter(file)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<mzML xmlns=\"http://psi.hupo.org/ms/mzml\" version=\"1.1.0\">\n"
+                    + "<cvList count=\"2\"><cv id=\"MS\" fullName=\"Proteomics Standards Initiative Mass Spectrometry Ontology\" URI=\"https://raw.githubusercontent.com/HUPO-PSI/psi-ms-CV/master/psi-ms.obo\"/>"
+                    + "<cv id=\"UO\" fullName=\"Unit Ontology\" URI=\"http://ontologies.berkeleybop.org/uo.obo\"/></cvList>\n"
+                    + "<fileDescription><fileContent><cvParam cvRef=\"MS\" accession=\"MS:1000580\" name=\"MSn spectrum\"/></fileContent></fileDescription>\n"
+                    + "<softwareList count=\"1\"><software id=\"generator\" version=\"1\"><cvParam cvRef=\"MS\" accession=\"MS:1000531\" name=\"software\"/></software></softwareList>\n"
+                    + "<instrumentConfigurationList count=\"1\"><instrumentConfiguration id=\"IC1\"><cvParam cvRef=\"MS\" accession=\"MS:1000031\" name=\"instrument model\"/></instrumentConfiguration></instrumentConfigurationList>\n"
+                    + "<dataProcessingList count=\"1\"><dataProcessing id=\"DP1\"><processingMethod order=\"1\" softwareRef=\"generator\"><cvParam cvRef=\"MS\" accession=\"MS:1000544\" name=\"Conversion to mzML\"/></processingMethod></dataProcessing></dataProcessingList>\n"
+                    + "<run id=\"run1\" defaultInstrumentConfigurationRef=\"IC1\">\n"
+                    + "<spectrumList count=\"" + numberOfPsms + "\" defaultDataProcessingRef=\"DP1\">\n");
+            StringBuilder text = new StringBuilder();
+            for (long i = 0; i < numberOfPsms; i++) {
+                double[][] peaks = getPeaks(i);
+                text.setLength(0);
+                text.append("<spectrum index=\"").append(i).append("\" id=\"").append(getSpectrumTitle(i))
+                        .append("\" defaultArrayLength=\"").append(peaks[0].length).append("\">")
+                        .append("<cvParam cvRef=\"MS\" accession=\"MS:1000511\" name=\"ms level\" value=\"2\"/>")
+                        .append("<precursorList count=\"1\"><precursor><selectedIonList count=\"1\"><selectedIon>")
+                        .append("<cvParam cvRef=\"MS\" accession=\"MS:1000744\" name=\"selected ion m/z\" value=\"");
+                appendDecimal(text, getPrecursorMz(i))
+                        .append("\" unitCvRef=\"MS\" unitAccession=\"MS:1000040\" unitName=\"m/z\"/>")
+                        .append("<cvParam cvRef=\"MS\" accession=\"MS:1000041\" name=\"charge state\" value=\"").append(getCharge(i)).append("\"/>")
+                        .append("</selectedIon></selectedIonList><activation><cvParam cvRef=\"MS\" accession=\"MS:1000133\" name=\"collision-induced dissociation\"/></activation>")
+                        .append("</precursor></precursorList><binaryDataArrayList count=\"2\">");
+                appendBinaryDataArray(text, peaks[0], "MS:1000514", "m/z array");
+                appendBinaryDataArray(text, peaks[1], "MS:1000515", "intensity array");
+                out.append(text.append("</binaryDataArrayList></spectrum>\n"));
+            }
+            out.write("</spectrumList>\n</run>\n</mzML>\n");
+        }
+    }
+
+    /**
+     * Write an mzIdentML file with one PSM per spectrum of the peak file, in the version of {@link #getResultFormat()}.
+     *
+     * @param file mzIdentML file
+     * @param peakFile peak file written by {@link #writeMgf(File)} or {@link #writeMzMl(File)}
+     */
+    public void writeMzIdentML(File file, File peakFile) throws IOException {
+        boolean isVersion12 = resultFormat == ResultFormat.MZID_1_2;
+        try (Writer out = newWriter(file)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<MzIdentML id=\"" + name + "\" version=\"" + (isVersion12 ? "1.2.0" : "1.1.0")
+                    + "\" xmlns=\"http://psidev.info/psi/pi/mzIdentML/" + (isVersion12 ? "1.2" : "1.1") + "\" creationDate=\"2020-01-01T00:00:00\">\n"
+                    + "<cvList><cv id=\"PSI-MS\" fullName=\"PSI-MS\" uri=\"https://raw.githubusercontent.com/HUPO-PSI/psi-ms-CV/master/psi-ms.obo\"/></cvList>\n"
+                    + "<AnalysisSoftwareList><AnalysisSoftware id=\"AS_generator\" name=\"generator\"><SoftwareName>"
+                    + "<cvParam cvRef=\"PSI-MS\" accession=\"MS:1001456\" name=\"analysis software\"/></SoftwareName></AnalysisSoftware></AnalysisSoftwareList>\n"
+                    + "<SequenceCollection>\n");
+            StringBuilder text = new StringBuilder();
+            for (long i = 0; i < getNumberOfProteins(); i++) {
+                text.setLength(0);
+                text.append("<DBSequence id=\"DBSeq_").append(i).append("\" accession=\"PROT").append(i)
+                        .append("\" searchDatabase_ref=\"SDB_1\"/>\n");
+                out.append(text);
+            }
+            for (long i = 0; i < getNumberOfPeptides(); i++) {
+                text.setLength(0);
+                text.append("<Peptide id=\"Pep_").append(i).append("\"><PeptideSequence>").append(getSequence(i))
+                        .append("</PeptideSequence></Peptide>\n");
+                out.append(text);
+            }
+            for (long i = 0; i < getNumberOfPeptides(); i++) {
+                text.setLength(0);
+                text.append("<PeptideEvidence id=\"PE_").append(i).append("\" peptide_ref=\"Pep_").append(i)
+                        .append("\" dBSequence_ref=\"DBSeq_").append(getProtein(i)).append("\" isDecoy=\"false\"/>\n");
+                out.append(text);
+            }
+            out.write("</SequenceCollection>\n"
+                    + "<AnalysisCollection><SpectrumIdentification id=\"SI_1\" spectrumIdentificationProtocol_ref=\"SIP_1\" spectrumIdentificationList_ref=\"SIL_1\">"
+                    + "<InputSpectra spectraData_ref=\"SD_1\"/><SearchDatabaseRef searchDatabase_ref=\"SDB_1\"/></SpectrumIdentification></AnalysisCollection>\n"
+                    + "<AnalysisProtocolCollection><SpectrumIdentificationProtocol id=\"SIP_1\" analysisSoftware_ref=\"AS_generator\">"
+                    + "<SearchType><cvParam cvRef=\"PSI-MS\" accession=\"MS:1001083\" name=\"ms-ms search\"/></SearchType>"
+                    + "<Threshold><cvParam cvRef=\"PSI-MS\" accession=\"MS:1001494\" name=\"no threshold\"/></Threshold>"
+                    + "</SpectrumIdentificationProtocol></AnalysisProtocolCollection>\n"
+                    + "<DataCollection><Inputs><SearchDatabase id=\"SDB_1\" location=\"" + name + ".fasta\">"
+                    + "<FileFormat><cvParam cvRef=\"PSI-MS\" accession=\"MS:1001348\" name=\"FASTA format\"/></FileFormat><DatabaseName><userParam name=\"" + name + ".fasta\"/></DatabaseName></SearchDatabase>"
+                    + "<SpectraData id=\"SD_1\" location=\"" + peakFile.getName() + "\">"
+                    + (peakFormat == PeakFormat.MZML
+                    ? "<FileFormat><cvParam cvRef=\"PSI-MS\" accession=\"MS:1000584\" name=\"mzML format\"/></FileFormat>"
+                    + "<SpectrumIDFormat><cvParam cvRef=\"PSI-MS\" accession=\"MS:1001530\" name=\"mzML unique identifier\"/></SpectrumIDFormat>"
+                    : "<FileFormat><cvParam cvRef=\"PSI-MS\" accession=\"MS:1001062\" name=\"Mascot MGF format\"/></FileFormat>"
+                    + "<SpectrumIDFormat><cvParam cvRef=\"PSI-MS\" accession=\"MS:1000774\" name=\"multiple peak list nativeID format\"/></SpectrumIDFormat>")
+                    + "</SpectraData></Inputs>\n<AnalysisData><SpectrumIdentificationList id=\"SIL_1\">\n");
+            for (long i = 0; i < numberOfPsms; i++) {
+                Defect defect = getDefect(i);
+                long peptide = getPeptide(i);
+                text.setLength(0);
+                text.append("<SpectrumIdentificationResult id=\"SIR_").append(i).append("\" spectrumID=\"")
+                        .append(getSpectrumId(i, defect)).append("\" spectraData_ref=\"SD_1\">")
+                        .append("<SpectrumIdentificationItem id=\"SII_").append(i).append("\" chargeState=\"").append(getCharge(i))
+                        .append("\" experimentalMassToCharge=\"");
+                appendDecimal(text, getExperimentalMz(i)).append("\" calculatedMassToCharge=\"");
+                appendDecimal(text, getCalculatedMz(i)).append("\" peptide_ref=\"Pep_");
+                if (defect == Defect.BROKEN_REFERENCE) {
+                    text.append("missing_");
+                }
+                text.append(peptide).append('"');
+                if (defect != Defect.SCHEMA_VIOLATION) {
+                    text.append(" rank=\"1\"");
+                }
+                text.append(" passThreshold=\"true\"><PeptideEvidenceRef peptideEvidence_ref=\"PE_").append(peptide).append("\"/>")
+                        .append("<cvParam cvRef=\"PSI-MS\" accession=\"MS:1001330\" name=\"X!Tandem:expect\" value=\"0.001\"/>")
+                        .append("</SpectrumIdentificationItem>")
+                        .append("<cvParam cvRef=\"PSI-MS\" accession=\"MS:1000796\" name=\"spectrum title\" value=\"")
+                        .append(getSpectrumTitle(getSpectrum(i, defect))).append("\"/>")
+                        .append("</SpectrumIdentificationResult>\n");
+                out.append(text);
+            }
+            out.write("</SpectrumIdentificationList></AnalysisData></DataCollection>\n</MzIdentML>\n");
+        }
+    }
+
+    /**
+     * Write an mzTab 1.0 identification file with a protein section and one PSM per spectrum of the peak file.
+     *
+     * @param file mzTab file
+     * @param peakFile peak file written by {@link #writeMgf(File)} or {@link #writeMzMl(File)}
+     */
+    public void writeMzTab(File file, File peakFile) throws IOException {
+        try (Writer out = newWriter(file)) {
+            out.write("MTD\tmzTab-version\t1.0.0\n"
+                    + "MTD\tmzTab-mode\tComplete\n"
+                    + "MTD\tmzTab-type\tIdentification\n"
+                    + "MTD\tmzTab-ID\t" + name + "\n"
+                    + "MTD\tdescription\tSynthetic dataset, seed " + seed + "\n"
+                    + "MTD\tsoftware[1]\t[MS, MS:1001476, X!Tandem, ]\n"
+                    + "MTD\tprotein_search_engine_score[1]\t[MS, MS:1001330, X!Tandem:expect, ]\n"
+                    + "MTD\tpsm_search_engine_score[1]\t[MS, MS:1001330, X!Tandem:expect, ]\n"
+                    + "MTD\tfixed_mod[1]\t[MS, MS:1002453, No fixed modifications searched, ]\n"
+                    + "MTD\tvariable_mod[1]\t[MS, MS:1002454, No variable modifications searched, ]\n"
+                    + (peakFormat == PeakFormat.MZML
+                    ? "MTD\tms_run[1]-format\t[MS, MS:1000584, mzML format, ]\n"
+                    + "MTD\tms_run[1]-location\t" + peakFile.getAbsoluteFile().toURI() + "\n"
+                    + "MTD\tms_run[1]-id_format\t[MS, MS:1001530, mzML unique identifier, ]\n"
+                    : "MTD\tms_run[1]-format\t[MS, MS:1001062, Mascot MGF format, ]\n"
+                    + "MTD\tms_run[1]-location\t" + peakFile.getAbsoluteFile().toURI() + "\n"
+                    + "MTD\tms_run[1]-id_format\t[MS, MS:1000774, multiple peak list nativeID format, ]\n")
+                    + "\nPRH\taccession\tdescription\ttaxid\tspecies\tdatabase\tdatabase_version\tsearch_engine"
+                    + "\tbest_search_engine_score[1]\tsearch_engine_score[1]_ms_run[1]\tnum_psms_ms_run[1]"
+                    + "\tnum_peptides_distinct_ms_run[1]\tnum_peptides_unique_ms_run[1]\tambiguity_members\tmodifications"
+                    + "\tprotein_coverage\n");
+            StringBuilder text = new StringBuilder();
+            for (long i = 0; i < getNumberOfProteins(); i++) {
+                text.setLength(0);
+                text.append("PRT\tPROT").append(i).append("\tSynthetic protein ").append(i).append("\t9606\tHomo sapiens\t")
+                        .append(name).append(".fasta\tnull\t[MS, MS:1001476, X!Tandem, ]\t0.001\t0.001\tnull\tnull\tnull\tnull\tnull\tnull\n");
+                out.append(text);
+            }
+            out.write("\nPSH\tsequence\tPSM_ID\taccession\tunique\tdatabase\tdatabase_version\tsearch_engine"
+                    + "\tsearch_engine_score[1]\tmodifications\tretention_time\tcharge\texp_mass_to_charge\tcalc_mass_to_charge"
+                    + "\tspectra_ref\tpre\tpost\tstart\tend\n");
+            for (long i = 0; i < numberOfPsms; i++) {
+                Defect defect = getDefect(i);
+                long peptide = getPeptide(i);
+                text.setLength(0);
+                text.append("PSM\t").append(getSequence(peptide)).append('\t').append(i + 1).append("\tPROT").append(getProtein(peptide))
+                        .append("\tnull\t").append(name).append(".fasta\tnull\t[MS, MS:1001476, X!Tandem, ]\t0.001\tnull\tnull\t");
+                if (defect == Defect.SCHEMA_VIOLATION) {
+                    text.append("two");
+                } else {
+                    text.append(getCharge(i));
+                }
+                text.append('\t');
+                appendDecimal(text, getExperimentalMz(i)).append('\t');
+                appendDecimal(text, getCalculatedMz(i)).append("\tms_run[").append(defect == Defect.BROKEN_REFERENCE ? 2 : 1)
+                        .append("]:").append(getSpectrumId(i, defect)).append("\tnull\tnull\tnull\tnull\n");
+                out.append(text);
+            }
+        }
+    }
+
+    /**
+     * @return index of the spectrum referenced by the PSM, past the end of the peak file for a missing spectrum
+     */
+    private long getSpectrum(long psm, Defect defect) {
+        return defect == Defect.MISSING_SPECTRUM ? numberOfPsms + psm : psm;
+    }
+
+    private String getSpectrumId(long psm, Defect defect) {
+        long spectrum = getSpectrum(psm, defect);
+        return peakFormat == PeakFormat.MZML ? "mzMLid=" + getSpectrumTitle(spectrum) : "index=" + spectrum;
+    }
+
+    /**
+     * @return precursor m/z of the spectrum, shifted for the PSMs with a wrong precursor
+     */
+    private double getPrecursorMz(long spectrum) {
+        double mz = getExperimentalMz(spectrum);
+        return getDefect(spectrum) == Defect.WRONG_PRECURSOR ? mz + PRECURSOR_SHIFT / getCharge(spectrum) : mz;
+    }
+
+    /**
+     * @return m/z and intensities of the peaks of the spectrum, by increasing m/z
+     */
+    private double[][] getPeaks(long spectrum) {
+        String sequence = getSequence(getPeptide(spectrum));
+        SplittableRandom random = random(PEAKS, spectrum);
+        int ions = 2 * (sequence.length() - 1);
+        double[] mzs = new double[ions + NOISE_PEAKS];
+        double peptideMass = getPeptideMass(sequence);
+        double prefixMass = 0;
+        for (int i = 0; i < sequence.length() - 1; i++) {
+            prefixMass += FragmentMatcher.getResidueMass(sequence.charAt(i));
+            mzs[2 * i] = prefixMass + FragmentMatcher.PROTON;
+            mzs[2 * i + 1] = peptideMass - prefixMass + FragmentMatcher.PROTON;
+        }
+        for (int i = ions; i < mzs.length; i++) {
+            mzs[i] = 100 + random.nextDouble() * 1900;
+        }
+        Arrays.sort(mzs);
+        double[] intensities = new double[mzs.length];
+        for (int i = 0; i < intensities.length; i++) {
+            intensities[i] = 100 + random.nextDouble() * 10000;
+        }
+        return new double[][]{mzs, intensities};
+    }
+
+    private static double getPeptideMass(String sequence) {
+        double mass = FragmentMatcher.WATER;
+        for (int i = 0; i < sequence.length(); i++) {
+            mass += FragmentMatcher.getResidueMass(sequence.charAt(i));
+        }
+        return mass;
+    }
+
+    private SplittableRandom random(long kind, long index) {
+        return new SplittableRandom(mix(seed, kind, index));
+    }
+
+    /**
+     * Finalizer of MurmurHash3, so neighbouring indexes get unrelated values.
+     */
+    private static long mix(long seed, long kind, long index) {
+        long z = seed * 0x9E3779B97F4A7C15L + kind * 0xBF58476D1CE4E5B9L + index;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static void appendBinaryDataArray(StringBuilder text, double[] values, String accession, String name) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (double value : values) {
+            buffer.putDouble(value);
+        }
+        String encoded = Base64.getEncoder().encodeToString(buffer.array());
+        text.append("<binaryDataArray encodedLength=\"").append(encoded.length()).append("\">")
+                .append("<cvParam cvRef=\"MS\" accession=\"MS:1000523\" name=\"64-bit float\"/>")
+                .append("<cvParam cvRef=\"MS\" accession=\"MS:1000576\" name=\"no compression\"/>")
+                .append("<cvParam cvRef=\"MS\" accession=\"").append(accession).append("\" name=\"").append(name).append("\"/>")
+                .append("<binary>").append(encoded).append("</binary></binaryDataArray>");
+    }
+
+    /**
+     * Append a positive value with 5 decimals, without the cost of String.format on millions of peaks.
+     */
+    private static StringBuilder appendDecimal(StringBuilder text, double value) {
+        long scaled = Math.round(value * 100000);
+        text.append(scaled / 100000).append('.');
+        String decimals = Long.toString(scaled % 100000);
+        for (int i = decimals.length(); i < 5; i++) {
+            text.append('0');
+        }
+        return text.append(decimals);
+    }
+
+    private static Writer newWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+}
@@ -0,0 +1,65 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes every field of a record as one row of the columns record, id, field and value, so the columns stay the
+ * same whatever the records are. Tabs, line breaks and backslashes in the values are escaped with a backslash and
+ * a missing value is written as {@value #NULL}, which no escaped value can be.
+ */
+public class TsvReportWriter extends ReportWriter {
+
+    public static final String HEADER = "record\tid\tfield\tvalue\n";
+    public static final String NULL = "\\N";
+
+    public TsvReportWriter(Writer out) throws IOException {
+        super(out);
+    }
+
+    @Override
+    protected void writeHeader() throws IOException {
+        out.write(HEADER);
+    }
+
+    @Override
+    protected void write(String type, int id, Map<String, ?> fields) throws IOException {
+        for (Map.Entry<String, ?> field : fields.entrySet()) {
+            out.write(type);
+            out.write('\t');
+            out.write(Integer.toString(id));
+            out.write('\t');
+            out.write(field.getKey());
+            out.write('\t');
+            if (field.getValue() == null) {
+                out.write(NULL);
+            } else {
+                writeValue(field.getValue().toString());
+            }
+            out.write('\n');
+        }
+    }
+
+    private void writeValue(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+}
@@ -9,8 +9,13 @@ import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
 import uk.ac.ebi.pride.utilities.util.Triple;
 
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -34,6 +39,36 @@ public class Utility {
   public static final String ARG_SCHEMA_VALIDATION = "schema";
   public static final String ARG_SCHEMA_ONLY_VALIDATION = "schemaonly";
   public static final String ARG_FAST_VALIDATION = "fastvalidation";
+  public static final String ARG_SAMPLE_SIZE = "samplesize";
+  public static final String ARG_THREADS = "threads";
+  public static final String ARG_INDEX_CACHE = "indexcache";
+  public static final String ARG_FULL_PEAK_CHECK = "fullpeakcheck";
+  public static final String ARG_PEAK_SAMPLE_SIZE = "peaksamplesize";
+  public static final String ARG_CONFIDENCE = "confidence";
+  public static final String ARG_MAX_MISMATCH = "maxmismatch";
+  public static final String ARG_SEED = "seed";
+  public static final String ARG_PRECURSOR_TOLERANCE = "precursortolerance";
+  public static final String ARG_ISOTOPE_ERRORS = "isotopeerrors";
+  public static final String ARG_IGNORE_CHARGE = "ignorecharge";
+  public static final String ARG_FRAGMENT_CHECK = "fragmentcheck";
+  public static final String ARG_FRAGMENT_TOLERANCE = "fragmenttolerance";
+  public static final String ARG_APPROX_COUNTS = "approxcounts";
+  public static final String ARG_BATCH = "batch";
+  public static final String ARG_BATCH_THREADS = "batchthreads";
+  public static final String ARG_REPORT_DIR = "reportdir";
+  public static final String ARG_PX_FILES = "pxfiles";
+  public static final String ARG_DAEMON = "daemon";
+  public static final String ARG_PORT = "port";
+  public static final String ARG_MAX_JOBS = "maxjobs";
+  public static final String ARG_QUEUE_SIZE = "queuesize";
+  public static final String ARG_INDEX_MEMORY = "indexmemory";
+  public static final String ARG_JOB_DIR = "jobdir";
+  public static final String ARG_GENERATE = "generate";
+  public static final String ARG_PSMS = "psms";
+  public static final String ARG_RESULT_FORMAT = "resultformat";
+  public static final String ARG_PEAK_FORMAT = "peakformat";
+  public static final String ARG_DEFECTS = "defects";
+  public static final String ARG_REPORT_FORMAT = "reportformat";
   public static final String STRING_SEPARATOR = "##";
 
   // peak files
@@ -160,7 +195,8 @@ public class Utility {
       Iterator iterator = spectraDataList.iterator();
       while (iterator.hasNext()) {
         SpectraData spectraData = (SpectraData) iterator.next();
-        if (spectraData.getLocation() != null && spectraData.getLocation().toLowerCase().contains(file.getName().toLowerCase())) {
+        // a gzipped peak file matches the location of the uncompressed file
+        if (spectraData.getLocation() != null && spectraData.getLocation().toLowerCase().contains(returnUnCompressPath(file.getName().toLowerCase()))) {
           spectraFileMap.add(new Triple<>(buildPath + file, spectraData,
                   Utility.FileType.getFileTypeFromSpectraData(spectraData)));
         }
@@ -221,19 +257,80 @@ public class Utility {
   }
 
   /**
-   * Write the output report to a file
-   * @param report report
-   * @param reportFile  report file
+   * Write the report in the text format, or log it if there is no report file.
    */
   public static void outputReport(IReport report, File reportFile){
-    log.info(report.toString());
-    if (reportFile!=null) {
-      try {
-        log.info("Writing report to: " + reportFile.getAbsolutePath());
-        java.nio.file.Files.write(reportFile.toPath(), report.toString().getBytes());
-      } catch (IOException ioe) {
-        log.error("Problem when writing report file: ", ioe);
+    outputReport(report, reportFile, ReportFormat.TEXT);
+  }
+
+  /**
+   * Write the report to the file without building it in memory, or log it if there is no report file. If the messages
+   * of the report are streamed to the file, the rest of the report is added to them.
+   *
+   * @param report report to write
+   * @param reportFile report file, may be null
+   * @param format format of the report file
+   */
+  public static void outputReport(IReport report, File reportFile, ReportFormat format){
+    if (reportFile == null) {
+      log.info(report.toString());
+      return;
+    }
+    log.info("Writing report to: " + reportFile.getAbsolutePath());
+    try {
+      if (format == ReportFormat.TEXT) {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8))) {
+          report.writeText(writer);
+        }
+      } else {
+        ReportWriter streamed = report instanceof Report ? ((Report) report).stopStreamingMessages() : null;
+        try (ReportWriter writer = streamed != null ? streamed : format.open(reportFile)) {
+          report.write(writer);
+        }
       }
+      log.info("Report status: " + (report.getNumErrors() == 0 ? "Valid" : "Invalid") + ", " + report.getNumErrors() + " messages");
+      if (report instanceof Report && ((Report) report).getMetrics() != null) {
+        ((Report) report).getMetrics().write(reportFile);
+      }
+    } catch (IOException ioe) {
+      log.error("Problem when writing report file: ", ioe);
+    }
+  }
+
+  /**
+   * Stream the messages of the report to the report file as they are added, if the format is machine-readable. The
+   * text format is written at the end by {@link #outputReport(IReport, File, ReportFormat)}.
+   *
+   * @param report report of the validation
+   * @param reportFile report file, null if there is none
+   * @param format format of the report file
+   */
+  public static void streamMessages(Report report, File reportFile, ReportFormat format) {
+    if (reportFile == null || format == ReportFormat.TEXT) {
+      return;
+    }
+    try {
+      report.streamMessagesTo(format.open(reportFile));
+    } catch (IOException e) {
+      log.error("Unable to open the report file " + reportFile + ", the messages are kept until the end", e);
+    }
+  }
+
+  /**
+   * Close the writer the messages of the report are streamed to, if the validation stops before
+   * {@link #outputReport(IReport, File, ReportFormat)} could close it. The file is left without a summary record.
+   *
+   * @param report report of the validation
+   */
+  public static void closeMessageStream(Report report) {
+    ReportWriter writer = report.stopStreamingMessages();
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.close();
+    } catch (IOException e) {
+      log.error("Unable to close the report file", e);
     }
   }
 
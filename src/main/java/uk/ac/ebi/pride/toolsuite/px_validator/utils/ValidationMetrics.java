@@ -0,0 +1,339 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Time and resources spent in each stage of a validation: wall and CPU time, bytes read, records processed and the
+ * heap in use, plus latency histograms of the spectrum lookups. The stages may run in several threads at the same
+ * time; the CPU time is the one of the thread running the stage.
+ *
+ * The heap of a stage is the highest heap in use seen when the stage starts and ends, the peak of the JVM over the
+ * whole run is reported separately. The metrics are written next to the report as JSON and in the Prometheus text
+ * format, see {@link #write(File)}.
+ */
+public class ValidationMetrics implements Serializable {
+
+    public static final String JSON_EXT = ".metrics.json";
+    public static final String PROMETHEUS_EXT = ".metrics.prom";
+    /**
+     * Upper bounds of the lookup latency buckets, in seconds
+     */
+    private static final double[] LATENCY_BUCKETS = {1e-6, 2.5e-6, 5e-6, 1e-5, 2.5e-5, 5e-5, 1e-4, 2.5e-4, 5e-4,
+            1e-3, 2.5e-3, 5e-3, 1e-2, 2.5e-2, 5e-2, 0.1, 0.25, 0.5, 1};
+    private static final String PREFIX = "px_validator_";
+    /**
+     * Metrics that record nothing, for the code running without a report
+     */
+    public static final ValidationMetrics NONE = new ValidationMetrics(null, false);
+
+    public enum Stage {
+        VERSION_SNIFF("version_sniff"),
+        SCHEMA_VALIDATION("schema_validation"),
+        COUNTING("counting"),
+        PIA_GET_DATA_FROM_FILE("pia_get_data_from_file"),
+        SPECTRA_DATA_EXTRACTION("spectra_data_extraction"),
+        PEAK_INDEXING("peak_indexing"),
+        PEAK_CHECK("peak_check");
+
+        private final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public enum Lookup {
+        /**
+         * Spectrum id of a PSM to the position of the spectrum in the index
+         */
+        SPECTRUM_ID("spectrum_id"),
+        /**
+         * Peaks of a spectrum read from the peak file
+         */
+        PEAK_LIST("peak_list");
+
+        private final String name;
+
+        Lookup(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final String source;
+    private final boolean isEnabled;
+    private final Map<Stage, StageStats> stages = new EnumMap<>(Stage.class);
+    private final Map<Lookup, Histogram> lookups = new EnumMap<>(Lookup.class);
+
+    /**
+     * @param source file the metrics are about, used as label
+     */
+    public ValidationMetrics(String source) {
+        this(source, true);
+    }
+
+    private ValidationMetrics(String source, boolean isEnabled) {
+        this.source = source;
+        this.isEnabled = isEnabled;
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageStats());
+        }
+        for (Lookup lookup : Lookup.values()) {
+            lookups.put(lookup, new Histogram());
+        }
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Start timing a stage in the calling thread, the stage is recorded when the timer is closed.
+     */
+    public StageTimer start(Stage stage) {
+        return new StageTimer(isEnabled ? stages.get(stage) : null);
+    }
+
+    /**
+     * @param lookup kind of lookup
+     * @param nanos duration of the lookup in nanoseconds
+     */
+    public void recordLookup(Lookup lookup, long nanos) {
+        if (isEnabled) {
+            lookups.get(lookup).record(nanos);
+        }
+    }
+
+    /**
+     * Write the metrics next to the report, in the JSON and Prometheus text formats.
+     *
+     * @param reportFile report file
+     * @throws IOException if a file can't be written
+     */
+    public void write(File reportFile) throws IOException {
+        writeText(new File(reportFile.getPath() + JSON_EXT), toJson());
+        writeText(new File(reportFile.getPath() + PROMETHEUS_EXT), toPrometheus());
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"source\": ").append(quote(source)).append(",\n  \"stages\": [");
+        boolean isFirst = true;
+        for (Map.Entry<Stage, StageStats> entry : stages.entrySet()) {
+            StageStats stats = entry.getValue();
+            synchronized (stats) {
+                if (stats.calls == 0) {
+                    continue;
+                }
+                json.append(isFirst ? "\n" : ",\n").append("    {\"stage\": ").append(quote(entry.getKey().getName()))
+                        .append(", \"calls\": ").append(stats.calls)
+                        .append(", \"wallSeconds\": ").append(seconds(stats.wallNanos))
+                        .append(", \"cpuSeconds\": ").append(seconds(stats.cpuNanos))
+                        .append(", \"bytes\": ").append(stats.bytes)
+                        .append(", \"records\": ").append(stats.records)
+                        .append(", \"peakHeapBytes\": ").append(stats.peakHeap).append('}');
+            }
+            isFirst = false;
+        }
+        json.append("\n  ],\n  \"lookups\": [");
+        isFirst = true;
+        for (Map.Entry<Lookup, Histogram> entry : lookups.entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (histogram.count.get() == 0) {
+                continue;
+            }
+            json.append(isFirst ? "\n" : ",\n").append("    {\"lookup\": ").append(quote(entry.getKey().getName()))
+                    .append(", \"count\": ").append(histogram.count.get())
+                    .append(", \"sumSeconds\": ").append(seconds(histogram.sumNanos.get()))
+                    .append(", \"buckets\": [");
+            long cumulative = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                cumulative += histogram.buckets.get(i);
+                json.append(i > 0 ? ", " : "").append("{\"le\": ").append(LATENCY_BUCKETS[i])
+                        .append(", \"count\": ").append(cumulative).append('}');
+            }
+            json.append("]}");
+            isFirst = false;
+        }
+        json.append("\n  ],\n  \"jvmPeakHeapBytes\": ").append(getJvmPeakHeap()).append("\n}\n");
+        return json.toString();
+    }
+
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        String label = "source=" + quote(source);
+        appendStageMetric(text, "stage_calls_total", "counter", "Number of times the stage ran", label, stats -> String.valueOf(stats.calls));
+        appendStageMetric(text, "stage_wall_seconds_total", "counter", "Wall time spent in the stage", label, stats -> seconds(stats.wallNanos));
+        appendStageMetric(text, "stage_cpu_seconds_total", "counter", "CPU time of the threads running the stage", label, stats -> seconds(stats.cpuNanos));
+        appendStageMetric(text, "stage_bytes_total", "counter", "Bytes read by the stage", label, stats -> String.valueOf(stats.bytes));
+        appendStageMetric(text, "stage_records_total", "counter", "Records processed by the stage", label, stats -> String.valueOf(stats.records));
+        appendStageMetric(text, "stage_peak_heap_bytes", "gauge", "Highest heap in use seen at the start and end of the stage", label, stats -> String.valueOf(stats.peakHeap));
+
+        String name = PREFIX + "lookup_seconds";
+        text.append("# HELP ").append(name).append(" Latency of the spectrum lookups\n# TYPE ").append(name).append(" histogram\n");
+        for (Map.Entry<Lookup, Histogram> entry : lookups.entrySet()) {
+            Histogram histogram = entry.getValue();
+            String labels = label + ",lookup=" + quote(entry.getKey().getName());
+            long cumulative = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                cumulative += histogram.buckets.get(i);
+                text.append(name).append("_bucket{").append(labels).append(",le=\"").append(LATENCY_BUCKETS[i]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            text.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(histogram.count.get()).append('\n')
+                    .append(name).append("_sum{").append(labels).append("} ").append(seconds(histogram.sumNanos.get())).append('\n')
+                    .append(name).append("_count{").append(labels).append("} ").append(histogram.count.get()).append('\n');
+        }
+        name = PREFIX + "jvm_peak_heap_bytes";
+        text.append("# HELP ").append(name).append(" Sum of the peak usage of the heap memory pools\n# TYPE ").append(name)
+                .append(" gauge\n").append(name).append('{').append(label).append("} ").append(getJvmPeakHeap()).append('\n');
+        return text.toString();
+    }
+
+    private void appendStageMetric(StringBuilder text, String metric, String type, String help, String label,
+                                   Function<StageStats, String> value) {
+        String name = PREFIX + metric;
+        text.append("# HELP ").append(name).append(' ').append(help).append("\n# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (Map.Entry<Stage, StageStats> entry : stages.entrySet()) {
+            StageStats stats = entry.getValue();
+            synchronized (stats) {
+                if (stats.calls > 0) {
+                    text.append(name).append('{').append(label).append(",stage=").append(quote(entry.getKey().getName()))
+                            .append("} ").append(value.apply(stats)).append('\n');
+                }
+            }
+        }
+    }
+
+    private static long getJvmPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+
+    private static String quote(String value) {
+        return value == null ? "null" : "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static void writeText(File file, String text) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(text);
+        }
+    }
+
+    /**
+     * Times a stage in the calling thread, see {@link #start(Stage)}.
+     */
+    public static class StageTimer implements AutoCloseable {
+
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        private final StageStats stats;
+        private final long startNanos;
+        private final long startCpu;
+        private final long startHeap;
+        private long bytes;
+        private long records;
+        private boolean isClosed;
+
+        private StageTimer(StageStats stats) {
+            this.stats = stats;
+            startNanos = System.nanoTime();
+            startCpu = stats != null ? getCpuTime() : 0;
+            startHeap = stats != null ? getUsedHeap() : 0;
+        }
+
+        public StageTimer addBytes(long bytes) {
+            this.bytes += bytes;
+            return this;
+        }
+
+        public StageTimer addRecords(long records) {
+            this.records += records;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (stats == null || isClosed) {
+                return;
+            }
+            isClosed = true;
+            stats.add(System.nanoTime() - startNanos, getCpuTime() - startCpu, bytes, records,
+                    Math.max(startHeap, getUsedHeap()));
+        }
+
+        private static long getCpuTime() {
+            return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+        }
+    }
+
+    private static class StageStats implements Serializable {
+
+        private long calls;
+        private long wallNanos;
+        private long cpuNanos;
+        private long bytes;
+        private long records;
+        private long peakHeap;
+
+        synchronized void add(long wall, long cpu, long bytes, long records, long heap) {
+            calls++;
+            wallNanos += wall;
+            cpuNanos += cpu;
+            this.bytes += bytes;
+            this.records += records;
+            peakHeap = Math.max(peakHeap, heap);
+        }
+    }
+
+    private static class Histogram implements Serializable {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(LATENCY_BUCKETS.length);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sumNanos = new AtomicLong();
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            sumNanos.addAndGet(nanos);
+            double seconds = nanos / 1e9;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                if (seconds <= LATENCY_BUCKETS[i]) {
+                    buckets.incrementAndGet(i);
+                    return;
+                }
+            }
+        }
+    }
+}
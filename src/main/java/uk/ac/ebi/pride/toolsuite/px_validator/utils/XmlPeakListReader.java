@@ -0,0 +1,289 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the peaks of one mzML spectrum or mzXML scan from the offset recorded by {@link XmlSpectrumIndexer}, so a
+ * gzipped file is read in place through {@link GzipFile} and a plain one without a jmzreader reader.
+ *
+ * The 32 and 64-bit float and integer arrays are decoded, uncompressed or zlib-compressed. Other encodings, such as
+ * numpress or arrays described by a referenceable param group, are not supported and make the read fail, as does
+ * an element at the offset that isn't the expected spectrum; the caller then falls back to the reader.
+ */
+@Slf4j
+public class XmlPeakListReader {
+
+    private static final String MZ_ARRAY = "MS:1000514";
+    private static final String INTENSITY_ARRAY = "MS:1000515";
+    private static final String INT_32 = "MS:1000519";
+    private static final String FLOAT_32 = "MS:1000521";
+    private static final String INT_64 = "MS:1000522";
+    private static final String FLOAT_64 = "MS:1000523";
+    private static final String ZLIB = "MS:1000574";
+    private static final String NO_COMPRESSION = "MS:1000576";
+
+    /**
+     * A factory per thread, looking one up for every spectrum is slow and sharing one isn't documented as safe
+     */
+    private static final ThreadLocal<XMLInputFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+
+    private XmlPeakListReader() {
+    }
+
+    /**
+     * @param in content of the file from the start tag of the spectrum
+     * @param length number of bytes that can be read, up to the next spectrum, or -1 to read up to the end; the
+     *               parser reads ahead, so a {@link GzipFile.Cursor} keeps streaming only if it stops there
+     * @param fileType {@link Utility.FileType#MZML} or {@link Utility.FileType#MZXML}
+     * @param id id of the spectrum in the spectrum index
+     * @return peaks of the spectrum
+     * @throws IOException if the stream can't be read, doesn't start with the spectrum or has unsupported arrays
+     */
+    public static PeakList read(InputStream in, long length, Utility.FileType fileType, String id) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.get().createXMLStreamReader(length >= 0 ? new BoundedInputStream(in, length) : in);
+            if (fileType == Utility.FileType.MZML) {
+                return readMzML(reader, id);
+            } else if (fileType == Utility.FileType.MZXML) {
+                return readMzXML(reader, id);
+            }
+            throw new IOException("Unsupported file type " + fileType);
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to parse spectrum " + id + ": " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    log.debug("Unable to close the reader of spectrum " + id, e);
+                }
+            }
+        }
+    }
+
+    private static PeakList readMzML(XMLStreamReader reader, String id) throws XMLStreamException, IOException {
+        checkStart(reader, "spectrum", "id", id);
+        double[] mzs = null;
+        double[] intensities = null;
+        String array = null;
+        String type = null;
+        String compression = null;
+        String unsupported = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String element = reader.getLocalName();
+                if ("binaryDataArray".equals(element)) {
+                    array = null;
+                    type = null;
+                    compression = null;
+                    unsupported = null;
+                } else if ("cvParam".equals(element)) {
+                    String accession = reader.getAttributeValue(null, "accession");
+                    if (MZ_ARRAY.equals(accession) || INTENSITY_ARRAY.equals(accession)) {
+                        array = accession;
+                    } else if (INT_32.equals(accession) || FLOAT_32.equals(accession) || INT_64.equals(accession)
+                            || FLOAT_64.equals(accession)) {
+                        type = accession;
+                    } else if (ZLIB.equals(accession) || NO_COMPRESSION.equals(accession)) {
+                        compression = accession;
+                    } else if (isCompression(reader.getAttributeValue(null, "name"))) {
+                        unsupported = accession;
+                    }
+                } else if ("binary".equals(element) && array != null) {
+                    String text = reader.getElementText();
+                    if (unsupported != null || type == null) {
+                        throw new IOException("Unsupported encoding " + (unsupported != null ? unsupported : "(none)")
+                                + " of spectrum " + id);
+                    }
+                    byte[] bytes = decode(text, ZLIB.equals(compression));
+                    double[] values = toDoubles(bytes, ByteOrder.LITTLE_ENDIAN,
+                            INT_64.equals(type) || FLOAT_64.equals(type) ? 64 : 32, INT_32.equals(type) || INT_64.equals(type));
+                    if (MZ_ARRAY.equals(array)) {
+                        mzs = values;
+                    } else {
+                        intensities = values;
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "spectrum".equals(reader.getLocalName())) {
+                break;
+            }
+        }
+        if (mzs == null || intensities == null) {
+            return new PeakList.Builder(0).build();
+        }
+        int size = Math.min(mzs.length, intensities.length);
+        PeakList.Builder builder = new PeakList.Builder(size);
+        for (int i = 0; i < size; i++) {
+            builder.add(mzs[i], intensities[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * The peaks of a scan come before the scans nested in it.
+     */
+    private static PeakList readMzXML(XMLStreamReader reader, String id) throws XMLStreamException, IOException {
+        checkStart(reader, "scan", "num", id);
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String element = reader.getLocalName();
+                if ("scan".equals(element)) {
+                    break;
+                }
+                if ("peaks".equals(element)) {
+                    String precision = reader.getAttributeValue(null, "precision");
+                    String byteOrder = reader.getAttributeValue(null, "byteOrder");
+                    String pairOrder = reader.getAttributeValue(null, "contentType");
+                    if (pairOrder == null) {
+                        pairOrder = reader.getAttributeValue(null, "pairOrder");
+                    }
+                    String compression = reader.getAttributeValue(null, "compressionType");
+                    if (pairOrder != null && !"m/z-int".equals(pairOrder)
+                            || compression != null && !"none".equals(compression) && !"zlib".equals(compression)) {
+                        throw new IOException("Unsupported peaks " + pairOrder + ", " + compression + " of scan " + id);
+                    }
+                    byte[] bytes = decode(reader.getElementText(), "zlib".equals(compression));
+                    double[] values = toDoubles(bytes, "little".equals(byteOrder) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN,
+                            "64".equals(precision) ? 64 : 32, false);
+                    PeakList.Builder builder = new PeakList.Builder(values.length / 2);
+                    for (int i = 0; i + 1 < values.length; i += 2) {
+                        builder.add(values[i], values[i + 1]);
+                    }
+                    return builder.build();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "scan".equals(reader.getLocalName())) {
+                break;
+            }
+        }
+        return new PeakList.Builder(0).build();
+    }
+
+    private static void checkStart(XMLStreamReader reader, String element, String attribute, String id)
+            throws XMLStreamException, IOException {
+        while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+            // skip what comes before the start tag
+        }
+        if (!reader.isStartElement() || !element.equals(reader.getLocalName())
+                || !id.equals(reader.getAttributeValue(null, attribute))) {
+            throw new IOException("The offset of spectrum " + id + " isn't the start of the spectrum");
+        }
+    }
+
+    private static boolean isCompression(String name) {
+        return name != null && (name.contains("compression") || name.contains("Numpress"));
+    }
+
+    private static byte[] decode(String text, boolean isZlib) throws IOException {
+        byte[] bytes = Base64.getMimeDecoder().decode(text);
+        if (!isZlib || bytes.length == 0) {
+            return bytes;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated zlib data");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid zlib data: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static double[] toDoubles(byte[] bytes, ByteOrder order, int bits, boolean isInteger) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+        double[] values = new double[bytes.length / (bits / 8)];
+        for (int i = 0; i < values.length; i++) {
+            if (bits == 64) {
+                values[i] = isInteger ? buffer.getLong() : buffer.getDouble();
+            } else {
+                values[i] = isInteger ? buffer.getInt() : buffer.getFloat();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Ends the stream after a number of bytes, so the parser doesn't read ahead into the next spectrum.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
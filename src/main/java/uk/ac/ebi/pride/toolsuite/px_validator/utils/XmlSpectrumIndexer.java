@@ -0,0 +1,290 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Builds the {@link SpectrumIndex} of an mzML or mzXML file read as a stream, so a gzipped file can be indexed while
+ * it is inflated and a plain one without the indexing pass and the peak decoding of the jmzreader readers. The
+ * spectra get the ids of the jmzreader readers: the spectrum id for mzML and the scan number for mzXML.
+ *
+ * The offset of a spectrum is the position of the '&lt;' of its spectrum or scan start tag in the stream, found by
+ * scanning the bytes as the XML parser reads them; the n-th tag found is the n-th spectrum parsed. A tag written with
+ * a namespace prefix isn't found and leaves the offsets of the file at -1.
+ */
+@Slf4j
+public class XmlSpectrumIndexer {
+
+    private static final String MS_LEVEL = "MS:1000511";
+    private static final String SELECTED_ION_MZ = "MS:1000744";
+    private static final String CHARGE_STATE = "MS:1000041";
+
+    private XmlSpectrumIndexer() {
+    }
+
+    /**
+     * @param in content of the file
+     * @param fileType {@link Utility.FileType#MZML} or {@link Utility.FileType#MZXML}
+     * @param name name of the file, for the log
+     * @return index of the spectra of the file
+     * @throws IOException if the stream can't be read or parsed
+     */
+    public static SpectrumIndex index(InputStream in, Utility.FileType fileType, String name) throws IOException {
+        long start = System.currentTimeMillis();
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        SpectrumIndex.Builder builder = new SpectrumIndex.Builder();
+        XMLStreamReader reader = null;
+        try {
+            if (fileType == Utility.FileType.MZML) {
+                TagOffsets offsets = new TagOffsets(in, "spectrum");
+                reader = factory.createXMLStreamReader(offsets);
+                indexMzML(reader, offsets, builder);
+            } else if (fileType == Utility.FileType.MZXML) {
+                TagOffsets offsets = new TagOffsets(in, "scan");
+                reader = factory.createXMLStreamReader(offsets);
+                indexMzXML(reader, offsets, builder);
+            } else {
+                throw new IOException("Unsupported file type " + fileType + " for " + name);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to parse " + name + ": " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    log.debug("Unable to close the reader of " + name, e);
+                }
+            }
+        }
+        SpectrumIndex index = builder.build();
+        log.info("Scanned " + index.size() + " spectra of " + name + " in " + (System.currentTimeMillis() - start) + "ms");
+        return index;
+    }
+
+    private static void indexMzML(XMLStreamReader reader, TagOffsets offsets, SpectrumIndex.Builder builder)
+            throws XMLStreamException {
+        String id = null;
+        long offset = -1;
+        int msLevel = 0;
+        int charge = 0;
+        double precursorMz = Double.NaN;
+        boolean isInSelectedIon = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String element = reader.getLocalName();
+                if ("spectrum".equals(element)) {
+                    id = reader.getAttributeValue(null, "id");
+                    offset = offsets.next();
+                    msLevel = 0;
+                    charge = 0;
+                    precursorMz = Double.NaN;
+                } else if ("selectedIon".equals(element)) {
+                    isInSelectedIon = true;
+                } else if ("cvParam".equals(element) && id != null) {
+                    String accession = reader.getAttributeValue(null, "accession");
+                    String value = reader.getAttributeValue(null, "value");
+                    if (MS_LEVEL.equals(accession)) {
+                        msLevel = parseInt(value, 0);
+                    } else if (isInSelectedIon && SELECTED_ION_MZ.equals(accession) && Double.isNaN(precursorMz)) {
+                        precursorMz = parseDouble(value);
+                    } else if (isInSelectedIon && CHARGE_STATE.equals(accession) && charge == 0) {
+                        charge = parseInt(value, 0);
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String element = reader.getLocalName();
+                if ("selectedIon".equals(element)) {
+                    isInSelectedIon = false;
+                } else if ("spectrum".equals(element) && id != null) {
+                    builder.add(id, null, getScan(id), offset, msLevel, charge, precursorMz);
+                    id = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * mzXML scans may be nested in their MS1 scan, the scans are added in the order they start.
+     */
+    private static void indexMzXML(XMLStreamReader reader, TagOffsets offsets, SpectrumIndex.Builder builder)
+            throws XMLStreamException {
+        Deque<Scan> open = new ArrayDeque<>();
+        List<Scan> pending = new ArrayList<>();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String element = reader.getLocalName();
+                if ("scan".equals(element)) {
+                    Scan scan = new Scan(reader.getAttributeValue(null, "num"), parseInt(reader.getAttributeValue(null, "msLevel"), 0),
+                            offsets.next());
+                    open.push(scan);
+                    pending.add(scan);
+                } else if ("precursorMz".equals(element) && !open.isEmpty()) {
+                    Scan scan = open.peek();
+                    scan.charge = parseInt(reader.getAttributeValue(null, "precursorCharge"), 0);
+                    if (Double.isNaN(scan.precursorMz)) {
+                        scan.precursorMz = parseDouble(reader.getElementText());
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "scan".equals(reader.getLocalName()) && !open.isEmpty()) {
+                open.pop();
+                if (open.isEmpty()) {
+                    for (Scan scan : pending) {
+                        builder.add(scan.num, null, parseInt(scan.num, -1), scan.offset, scan.msLevel, scan.charge, scan.precursorMz);
+                    }
+                    pending.clear();
+                }
+            }
+        }
+    }
+
+    private static int getScan(String id) {
+        Matcher matcher = JmzReaderSpectrumService.patternScanInTitle.matcher(id);
+        return matcher.matches() ? parseInt(matcher.group(1), -1) : -1;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static double parseDouble(String value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static class Scan {
+
+        private final String num;
+        private final int msLevel;
+        private final long offset;
+        private int charge;
+        private double precursorMz = Double.NaN;
+
+        Scan(String num, int msLevel, long offset) {
+            this.num = num;
+            this.msLevel = msLevel;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Records the positions of the start tags of an element in the bytes read through it. The XML parser reads
+     * ahead, so the tags are found before the parser reports them and are taken in order with {@link #next()}.
+     */
+    private static class TagOffsets extends FilterInputStream {
+
+        private final byte[] tag;
+        private long position;
+        private int matched;
+        private long[] offsets = new long[64];
+        private int first;
+        private int last;
+
+        TagOffsets(InputStream in, String element) {
+            super(in);
+            this.tag = ("<" + element).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * @return position of the next start tag, -1 if there is none
+         */
+        long next() {
+            return first < last ? offsets[first++] : -1;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                scan((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            for (int i = 0; i < read; i++) {
+                scan(b[off + i]);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // the parser never skips, reading keeps the positions right if it did
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void scan(byte b) {
+            if (matched == tag.length) {
+                // the name must end here, <spectrumList or <scanOrigin are other elements
+                if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '>' || b == '/') {
+                    add(position - tag.length);
+                }
+                matched = 0;
+            }
+            if (b == tag[matched]) {
+                matched++;
+            } else {
+                matched = b == '<' ? 1 : 0;
+            }
+            position++;
+        }
+
+        private void add(long offset) {
+            if (first > 0 && first == last) {
+                first = 0;
+                last = 0;
+            }
+            if (last == offsets.length) {
+                if (first > 0) {
+                    System.arraycopy(offsets, first, offsets, 0, last - first);
+                    last -= first;
+                    first = 0;
+                } else {
+                    offsets = Arrays.copyOf(offsets, last << 1);
+                }
+            }
+            offsets[last++] = offset;
+        }
+    }
+}
@@ -3,42 +3,55 @@ package uk.ac.ebi.pride.toolsuite.px_validator.validators;
 import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
 import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
 import org.apache.commons.cli.CommandLine;
-import org.xml.sax.SAXException;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
 import uk.ac.ebi.pride.data.validation.ValidationMessage;
-import uk.ac.ebi.pride.tools.ErrorHandlerIface;
-import uk.ac.ebi.pride.tools.GenericSchemaValidator;
-import uk.ac.ebi.pride.tools.ValidationErrorHandler;
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.IReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.MzIdentMLSampler;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.MzIdentMLStreamValidator;
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.PeakReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ReportFormat;
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.ResultReport;
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.Utility;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ValidationMetrics;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class MzIdValidator implements Validator {
 
-    public static final String VERSION = "version";
-    private static final String VERSION_1_2_0 = "1.2.0";
+    private static final int DEFAULT_SAMPLE_SIZE = 200;
     final private File file;
     private List<File> peakFilesFromCmdLine;
+    private PeakValidationOptions peakValidationOptions;
     boolean isPeakValidationSkipped = false;
+    boolean isSchemaOnly = false;
+    boolean isFastValidation = false;
+    boolean isApproximateCounts = false;
+    private int sampleSize = DEFAULT_SAMPLE_SIZE;
+    private final File reportFile;
+    private final ReportFormat reportFormat;
 
     public static Validator getInstance(CommandLine cmd) throws Exception {
-        return new MzIdValidator(cmd);
+        return new MzIdValidator(cmd, null);
     }
 
-    private MzIdValidator(CommandLine cmd) throws Exception {
+    /**
+     * @param cmd command line arguments
+     * @param peakValidationOptions peak validation settings, read from the command line if null
+     * @return Validator
+     * @throws Exception if the file can't be found
+     */
+    public static Validator getInstance(CommandLine cmd, PeakValidationOptions peakValidationOptions) throws Exception {
+        return new MzIdValidator(cmd, peakValidationOptions);
+    }
+
+    private MzIdValidator(CommandLine cmd, PeakValidationOptions peakValidationOptions) throws Exception {
 
+        reportFile = cmd.hasOption(Utility.ARG_REPORTFILE) ? new File(cmd.getOptionValue(Utility.ARG_REPORTFILE)) : null;
+        reportFormat = ReportFormat.fromCommandLine(cmd);
         if (cmd.hasOption(Utility.ARG_MZID)) {
             file = new File(cmd.getOptionValue(Utility.ARG_MZID));
             if (!file.exists()) {
@@ -48,96 +61,146 @@ public class MzIdValidator implements Validator {
             if (cmd.hasOption(Utility.ARG_SKIP_PEAK_VAL)) {
                 isPeakValidationSkipped = true;
             }
+            if (cmd.hasOption(Utility.ARG_SCHEMA_ONLY_VALIDATION)) {
+                isSchemaOnly = true;
+            }
+            if (cmd.hasOption(Utility.ARG_FAST_VALIDATION)) {
+                isFastValidation = true;
+            }
+            if (cmd.hasOption(Utility.ARG_APPROX_COUNTS)) {
+                isApproximateCounts = true;
+            }
+            if (cmd.hasOption(Utility.ARG_SAMPLE_SIZE)) {
+                sampleSize = Integer.parseInt(cmd.getOptionValue(Utility.ARG_SAMPLE_SIZE));
+                if (sampleSize < 1) {
+                    throw new IllegalArgumentException("The sample size must be a positive number -- " + sampleSize);
+                }
+            }
         } else {
             throw new IOException("In order to validate a mzid file the argument -mzid should be provided");
         }
-        peakFilesFromCmdLine = uk.ac.ebi.pride.toolsuite.px_validator.Validator.getPeakFiles(cmd);
+        if (!isSchemaOnly && !isFastValidation) {
+            peakFilesFromCmdLine = uk.ac.ebi.pride.toolsuite.px_validator.Validator.getPeakFiles(cmd);
+            this.peakValidationOptions = peakValidationOptions != null ? peakValidationOptions
+                    : PeakValidationOptions.fromCommandLine(cmd);
+        }
     }
 
     @Override
     public IReport validate() {
 
-        IReport report = validateMzidSchema(file);
-        ((ResultReport) report).setAssayFile(file.getName());
-        ((ResultReport) report).setFileSize(file.length());
-        if (report.getNumErrors() > 0)
-            return report;
+        ResultReport report = new ResultReport();
+        report.setAssayFile(file.getName());
+        Utility.streamMessages(report, reportFile, reportFormat);
+        boolean isValidated = false;
+        try {
+            IReport result = validate(report);
+            isValidated = true;
+            return result;
+        } finally {
+            // on success the report is completed and closed by Utility.outputReport
+            if (!isValidated) {
+                Utility.closeMessageStream(report);
+            }
+        }
+    }
 
-        PIASimpleCompiler piaCompiler = new PIASimpleCompiler();
-        piaCompiler.getDataFromFile(file.getName(), file.getAbsolutePath(),
-                null, InputFileParserFactory.InputFileTypes.MZIDENTML_INPUT.getFileTypeShort());
-        piaCompiler.buildClusterList();
-        piaCompiler.buildIntermediateStructure();
+    private IReport validate(ResultReport report) {
+        report.setFileSize(file.length());
+        report.setMetrics(new ValidationMetrics(file.getName()));
+        if (isFastValidation && !isSchemaOnly) {
+            return validateSampled(report);
+        }
 
-        int numProteins = piaCompiler.getNrAccessions();
-        int numPeptides = piaCompiler.getNrPeptides();
-        int numPSMs = piaCompiler.getNrPeptideSpectrumMatches();
+        // version sniffing, XSD validation and counting in one pass over the file
+        MzIdentMLStreamValidator streamValidator = new MzIdentMLStreamValidator(report,
+                isSchemaOnly ? MzIdentMLStreamValidator.Mode.SCHEMA_ONLY : MzIdentMLStreamValidator.Mode.FULL, isApproximateCounts);
+        streamValidator.setMetrics(report.getMetrics());
+        streamValidator.validate(file);
+        if (report.getNumErrors() > 0)
+            return report;
+        if (isSchemaOnly) {
+            report.setValidSchema(true);
+            return report;
+        }
 
-        ((ResultReport) report).setAssayFile(file.getName());
-        ((ResultReport) report).setFileSize(file.length());
-        ((ResultReport) report).setNumberOfProteins(numProteins);
-        ((ResultReport) report).setNumberOfPeptides(numPeptides);
-        ((ResultReport) report).setNumberOfPSMs(numPSMs);
-        ((ResultReport) report).setValidSchema(true);
+        report.setNumberOfProteins(streamValidator.getNumberOfProteins());
+        report.setNumberOfPeptides(streamValidator.getNumberOfPeptides());
+        report.setNumberOfPSMs(streamValidator.getNumberOfPSMs());
+        report.setNumberOfSpectraData(streamValidator.getNumberOfSpectraData());
+        report.setApproximateCounts(streamValidator.isApproximateCounts());
+        report.setValidSchema(true);
 
+        // PIA is only needed to resolve the PSMs against the peak files; it reads the whole file again into its own
+        // model, the one pass left besides the streaming one
         if (!isPeakValidationSkipped) {
-            PeakValidator peakValidator = new PeakValidator(piaCompiler, peakFilesFromCmdLine, report);
+            PIASimpleCompiler piaCompiler = new PIASimpleCompiler();
+            try (ValidationMetrics.StageTimer timer = report.getMetrics().start(ValidationMetrics.Stage.PIA_GET_DATA_FROM_FILE)) {
+                piaCompiler.getDataFromFile(file.getName(), file.getAbsolutePath(),
+                        null, InputFileParserFactory.InputFileTypes.MZIDENTML_INPUT.getFileTypeShort());
+                timer.addBytes(file.length()).addRecords(piaCompiler.getNrPeptideSpectrumMatches());
+            }
+
+            PeakValidator peakValidator = new PeakValidator(piaCompiler, streamValidator.getSpectraData(),
+                    peakFilesFromCmdLine, report, peakValidationOptions);
             List<PeakReport> peakReports = peakValidator.validate();
             int numPeakFiles = peakReports.size();
-            ((ResultReport) report).setNumberOfPeakFiles(numPeakFiles);
-            ((ResultReport) report).setPeakReports(peakReports);
+            report.setNumberOfPeakFiles(numPeakFiles);
+            report.setPeakReports(peakReports);
         }
         return report;
     }
 
-    private static IReport validateMzidSchema(File mzIdentML) {
-        IReport report = new ResultReport();
-        try (BufferedReader br = new BufferedReader(new FileReader(mzIdentML))) {
-            GenericSchemaValidator genericValidator = new GenericSchemaValidator();
-            URL url = getMzidSchemaUrl(mzIdentML);
-            if (url == null || url.getPath().length() == 0) {
-                throw new IllegalStateException("MzIdentML xsd not found!");
-            }
-            genericValidator.setSchema(url.toURI());
-            ErrorHandlerIface handler = new ValidationErrorHandler();
-            genericValidator.setErrorHandler(handler);
-            genericValidator.validate(br);
-            List<String> errorMessages = handler.getErrorMessages();
-            for (String error : errorMessages) {
-                report.addException(new IOException(error), ValidationMessage.Type.ERROR);
-            }
-        } catch (IOException | SAXException | URISyntaxException e) {
+    /**
+     * Validate the header, Inputs, SequenceCollection and AnalysisProtocolCollection completely and only a
+     * sample of the SpectrumIdentificationResult blocks. Peak files are not checked in this mode.
+     *
+     * @param report report of the file
+     * @return report
+     */
+    private IReport validateSampled(ResultReport report) {
+        MzIdentMLStreamValidator headerValidator = new MzIdentMLStreamValidator(report, MzIdentMLStreamValidator.Mode.HEADER);
+        headerValidator.setMetrics(report.getMetrics());
+        headerValidator.validate(file);
+        if (report.getNumErrors() > 0)
+            return report;
+
+        Set<String> spectraDataIds = new HashSet<>();
+        for (SpectraData spectraData : headerValidator.getSpectraData()) {
+            spectraDataIds.add(spectraData.getId());
+        }
+        MzIdentMLSampler sampler = new MzIdentMLSampler(file, headerValidator.getVersion(), spectraDataIds,
+                headerValidator.getPeptideIds(), headerValidator.getPeptideEvidenceIds(), report);
+        try (ValidationMetrics.StageTimer timer = report.getMetrics().start(ValidationMetrics.Stage.SCHEMA_VALIDATION)) {
+            sampler.validate(sampleSize);
+            timer.addRecords(sampler.getNumberOfSampledResults());
+        } catch (IOException e) {
             report.addException(e, ValidationMessage.Type.ERROR);
         }
+
+        report.setSampled(true);
+        report.setNumberOfSampledResults(sampler.getNumberOfSampledResults());
+        report.setNumberOfProteins(headerValidator.getNumberOfProteins());
+        report.setNumberOfPeptides(headerValidator.getNumberOfPeptides());
+        report.setNumberOfPSMs((int) Math.min(Integer.MAX_VALUE, sampler.getEstimatedNumberOfPSMs()));
+        report.setNumberOfSpectraData(headerValidator.getNumberOfSpectraData());
+        report.setValidSchema(report.getNumErrors() == 0);
         return report;
     }
 
-    private static URL getMzidSchemaUrl(File mzIdentML) {
-        XMLInputFactory xmlif = XMLInputFactory.newInstance();
-        xmlif.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
-        URL url = null;
-        try (FileReader fileReader = new FileReader(mzIdentML)) {
-            XMLStreamReader xmlr = xmlif.createXMLStreamReader(fileReader);
-            // move to the root element and check its name.
-            xmlr.nextTag();
-            int attributeCount = xmlr.getAttributeCount();
-            for (int i = 0; i < attributeCount; i++) {
-                if (xmlr.getAttributeName(i).toString().equals(VERSION)) {
-                    if (xmlr.getAttributeValue(i).equals(VERSION_1_2_0)) {
-                        url = MzIdValidator.class.getClassLoader().getResource("mzIdentML1.2.0.xsd");
-                    } else {
-                        MzIdValidator.class.getClassLoader().getResource("mzIdentML1.1.0.xsd");
-                    }
-                    break;
-                }
-            }
-        } catch (XMLStreamException e) {
-            throw new RuntimeException(e);
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * Provider of the mzIdentML validator, see {@link ValidatorRegistry}.
+     */
+    public static class Provider implements ValidatorProvider {
+
+        @Override
+        public String getOption() {
+            return Utility.ARG_MZID;
+        }
+
+        @Override
+        public Validator getInstance(CommandLine cmd) throws Exception {
+            return MzIdValidator.getInstance(cmd);
         }
-        return url;
     }
-}
\ No newline at end of file
+}
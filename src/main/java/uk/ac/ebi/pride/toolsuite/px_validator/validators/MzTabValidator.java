@@ -4,34 +4,58 @@ package uk.ac.ebi.pride.toolsuite.px_validator.validators;
 import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
 import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
 import org.apache.commons.cli.CommandLine;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
 import uk.ac.ebi.pride.data.validation.ValidationMessage;
 import uk.ac.ebi.pride.jmztab.utils.MZTabFileParser;
 import uk.ac.ebi.pride.jmztab.utils.errors.MZTabError;
 import uk.ac.ebi.pride.jmztab.utils.errors.MZTabErrorType;
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.IReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.MzTabCounter;
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.PeakReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ReportFormat;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ReportMessage;
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.ResultReport;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.SpectraDataExtractor;
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.Utility;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.ValidationMetrics;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 public class MzTabValidator implements Validator{
 
     private File file;
     private List<File> peakFilesFromCmdLine;
+    private PeakValidationOptions peakValidationOptions;
     boolean isPeakValidationSkipped = false;
+    boolean isSchemaOnly = false;
+    boolean isApproximateCounts = false;
 
     private File outputFile;
+    private final File reportFile;
+    private final ReportFormat reportFormat;
 
     public static Validator getInstance(CommandLine cmd) throws Exception {
-        return new MzTabValidator(cmd);
+        return new MzTabValidator(cmd, null);
     }
 
-    private MzTabValidator(CommandLine cmd) throws Exception{
+    /**
+     * @param cmd command line arguments
+     * @param peakValidationOptions peak validation settings, read from the command line if null
+     * @return Validator
+     * @throws Exception if the file can't be found
+     */
+    public static Validator getInstance(CommandLine cmd, PeakValidationOptions peakValidationOptions) throws Exception {
+        return new MzTabValidator(cmd, peakValidationOptions);
+    }
+
+    private MzTabValidator(CommandLine cmd, PeakValidationOptions peakValidationOptions) throws Exception{
 
+        reportFile = cmd.hasOption(Utility.ARG_REPORTFILE) ? new File(cmd.getOptionValue(Utility.ARG_REPORTFILE)) : null;
+        reportFormat = ReportFormat.fromCommandLine(cmd);
         if(cmd.hasOption(Utility.ARG_MZTAB)){
             file = new File(cmd.getOptionValue(Utility.ARG_MZTAB));
             outputFile = new File(cmd.getOptionValue(Utility.ARG_OUTPUTFILE));
@@ -42,17 +66,51 @@ public class MzTabValidator implements Validator{
             if(cmd.hasOption(Utility.ARG_SKIP_PEAK_VAL)){
                 isPeakValidationSkipped = true;
             }
+            if(cmd.hasOption(Utility.ARG_SCHEMA_ONLY_VALIDATION)){
+                isSchemaOnly = true;
+            }
+            if(cmd.hasOption(Utility.ARG_APPROX_COUNTS)){
+                isApproximateCounts = true;
+            }
         }else{
             throw new IOException("In order to validate a mztab file the argument -mztab should be provided");
         }
-        peakFilesFromCmdLine = uk.ac.ebi.pride.toolsuite.px_validator.Validator.getPeakFiles(cmd);
+        if(!isSchemaOnly) {
+            peakFilesFromCmdLine = uk.ac.ebi.pride.toolsuite.px_validator.Validator.getPeakFiles(cmd);
+            this.peakValidationOptions = peakValidationOptions != null ? peakValidationOptions
+                    : PeakValidationOptions.fromCommandLine(cmd);
+        }
     }
 
     @Override
     public IReport validate() {
         ResultReport report = new ResultReport();
+        Utility.streamMessages(report, reportFile, reportFormat);
+        boolean isValidated = false;
         try {
-            MZTabFileParser mzTab = new MZTabFileParser(file, new FileOutputStream(outputFile));
+            IReport result = validate(report);
+            isValidated = true;
+            return result;
+        } finally {
+            // on success the report is completed and closed by Utility.outputReport
+            if (!isValidated) {
+                Utility.closeMessageStream(report);
+            }
+        }
+    }
+
+    private IReport validate(ResultReport report) {
+        ValidationMetrics metrics = new ValidationMetrics(file.getName());
+        report.setMetrics(metrics);
+        try {
+            MZTabFileParser mzTab;
+            // mzTab has no XSD, the format checks of the parser are the schema validation
+            // the parser writes its output while it parses, the stream is closed right after
+            try (ValidationMetrics.StageTimer timer = metrics.start(ValidationMetrics.Stage.SCHEMA_VALIDATION);
+                 OutputStream out = new FileOutputStream(outputFile)) {
+                mzTab = new MZTabFileParser(file, out);
+                timer.addBytes(file.length());
+            }
 
             for(MZTabError message: mzTab.getErrorList().getErrorList()){
                 ValidationMessage.Type errType;
@@ -63,30 +121,53 @@ public class MzTabValidator implements Validator{
                     errType = ValidationMessage.Type.WARNING;
                 else
                     errType = ValidationMessage.Type.INFO;
-                report.addException(new IOException(message.getMessage()), errType);
+                report.addMessage(new ReportMessage(errType, String.valueOf(message.getType().getCode()), message.getMessage(),
+                        message.getLineNumber(), ReportMessage.UNKNOWN));
             }
 
             if(report.getNumErrors() > 0)
                 return report;
 
-            PIASimpleCompiler piaCompiler = new PIASimpleCompiler();
-            piaCompiler.getDataFromFile(file.getName(), file.getAbsolutePath(), null, InputFileParserFactory.InputFileTypes.MZTAB_INPUT.getFileTypeShort());
-            piaCompiler.buildClusterList();
-            piaCompiler.buildIntermediateStructure();
+            if(isSchemaOnly){
+                report.setAssayFile(file.getName());
+                report.setFileSize(file.length());
+                report.setValidSchema(true);
+                return report;
+            }
 
-            int numProteins = piaCompiler.getNrAccessions();
-            int numPeptides = piaCompiler.getNrPeptides();
-            int numPSMs = piaCompiler.getNrPeptideSpectrumMatches();
+            // the counts come from one streaming pass, PIA clusters and intermediate structure are not built
+            MzTabCounter counter = new MzTabCounter(isApproximateCounts);
+            try (ValidationMetrics.StageTimer timer = metrics.start(ValidationMetrics.Stage.COUNTING)) {
+                counter.count(file);
+                timer.addBytes(file.length()).addRecords(counter.getNumberOfPSMs());
+            }
+
+            int numProteins = counter.getNumberOfProteins();
+            int numPeptides = counter.getNumberOfPeptides();
+            int numPSMs = counter.getNumberOfPSMs();
 
             report.setAssayFile(file.getName());
             (report).setFileSize(file.length());
             (report).setNumberOfPeptides(numPeptides);
             (report).setNumberOfProteins(numProteins);
             (report).setNumberOfPSMs(numPSMs);
+            (report).setApproximateCounts(counter.isApproximateCounts());
             (report).setValidSchema(true);
 
+            // PIA is only needed to resolve the PSMs against the peak files
             if(!isPeakValidationSkipped) {
-                PeakValidator peakValidator = new PeakValidator(piaCompiler, peakFilesFromCmdLine, report);
+                PIASimpleCompiler piaCompiler = new PIASimpleCompiler();
+                try (ValidationMetrics.StageTimer timer = metrics.start(ValidationMetrics.Stage.PIA_GET_DATA_FROM_FILE)) {
+                    piaCompiler.getDataFromFile(file.getName(), file.getAbsolutePath(), null, InputFileParserFactory.InputFileTypes.MZTAB_INPUT.getFileTypeShort());
+                    timer.addBytes(file.length()).addRecords(piaCompiler.getNrPeptideSpectrumMatches());
+                }
+                List<SpectraData> spectraData;
+                try (ValidationMetrics.StageTimer timer = metrics.start(ValidationMetrics.Stage.SPECTRA_DATA_EXTRACTION)) {
+                    spectraData = SpectraDataExtractor.fromMzTab(file);
+                    timer.addRecords(spectraData.size());
+                }
+                PeakValidator peakValidator = new PeakValidator(piaCompiler, spectraData,
+                        peakFilesFromCmdLine, report, peakValidationOptions);
                 List<PeakReport> peakReports = peakValidator.validate();
                 int numPeakFiles = peakReports.size();
                 ((ResultReport) report).setNumberOfPeakFiles(numPeakFiles);
@@ -97,4 +178,20 @@ public class MzTabValidator implements Validator{
         }
         return report;
     }
+
+    /**
+     * Provider of the mzTab validator, see {@link ValidatorRegistry}.
+     */
+    public static class Provider implements ValidatorProvider {
+
+        @Override
+        public String getOption() {
+            return Utility.ARG_MZTAB;
+        }
+
+        @Override
+        public Validator getInstance(CommandLine cmd) throws Exception {
+            return MzTabValidator.getInstance(cmd);
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package uk.ac.ebi.pride.toolsuite.px_validator.validators;
 
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.cli.CommandLine;
 import uk.ac.ebi.pride.data.exception.SubmissionFileException;
 
@@ -8,22 +9,27 @@ import uk.ac.ebi.pride.data.model.Submission;
 import uk.ac.ebi.pride.data.validation.SubmissionValidator;
 import uk.ac.ebi.pride.data.validation.ValidationMessage;
 import uk.ac.ebi.pride.data.validation.ValidationReport;
-import uk.ac.ebi.pride.toolsuite.px_validator.utils.IReport;
-import uk.ac.ebi.pride.toolsuite.px_validator.utils.Report;
-import uk.ac.ebi.pride.toolsuite.px_validator.utils.Utility;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.*;
 
 import java.io.File;
 import java.io.IOException;
 
+/**
+ * Validates the metadata of a submission.px file. With -pxfiles the result files of the submission are validated
+ * as well by a {@link SubmissionFilesValidator}.
+ */
+@Slf4j
 public class PXFileValidator implements Validator {
 
     private File file;
+    private final CommandLine cmd;
 
     public static Validator getInstance(CommandLine cmd) throws Exception {
         return new PXFileValidator(cmd);
     }
 
     private PXFileValidator(CommandLine cmd) throws Exception{
+        this.cmd = cmd;
 
         if(cmd.hasOption(Utility.ARG_PXFILE)){
             file = new File(cmd.getOptionValue(Utility.ARG_PXFILE));
@@ -38,17 +44,55 @@ public class PXFileValidator implements Validator {
 
     @Override
     public IReport validate(){
-        IReport report = new Report();
+        boolean isValidatingFiles = cmd.hasOption(Utility.ARG_PX_FILES);
+        Report report = isValidatingFiles ? new BatchReport() : new Report();
+        Utility.streamMessages(report, cmd.hasOption(Utility.ARG_REPORTFILE) ? new File(cmd.getOptionValue(Utility.ARG_REPORTFILE)) : null,
+                ReportFormat.fromCommandLine(cmd));
+        boolean isValidated = false;
         try {
-            Submission submission = SubmissionFileParser.parse(file);
+            IReport result = validate(report, isValidatingFiles);
+            isValidated = true;
+            return result;
+        } finally {
+            // on success the report is completed and closed by Utility.outputReport
+            if (!isValidated) {
+                Utility.closeMessageStream(report);
+            }
+        }
+    }
+
+    private IReport validate(Report report, boolean isValidatingFiles) {
+        Submission submission;
+        try {
+            submission = SubmissionFileParser.parse(file);
             ValidationReport submissionValidator = SubmissionValidator.validateSubmission(submission);
             for(ValidationMessage message: submissionValidator.getMessages()){
-                report.addException(new IOException(message.getMessage()), message.getType());
+                report.addMessage(new ReportMessage(message.getType(), message.getMessage()));
             }
         } catch (SubmissionFileException | IOException e) {
             report.addException(e, ValidationMessage.Type.ERROR);
-
+            return report;
+        }
+        if (isValidatingFiles) {
+            // a class of its own, so a plain -px run doesn't load the peak file readers
+            new SubmissionFilesValidator(cmd, file).validate(submission, (BatchReport) report);
         }
         return report;
     }
+
+    /**
+     * Provider of the submission.px validator, see {@link ValidatorRegistry}.
+     */
+    public static class Provider implements ValidatorProvider {
+
+        @Override
+        public String getOption() {
+            return Utility.ARG_PXFILE;
+        }
+
+        @Override
+        public Validator getInstance(CommandLine cmd) throws Exception {
+            return PXFileValidator.getInstance(cmd);
+        }
+    }
 }
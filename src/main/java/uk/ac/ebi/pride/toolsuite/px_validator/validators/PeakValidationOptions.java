@@ -0,0 +1,118 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.validators;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.apache.commons.cli.CommandLine;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.FragmentMatcher;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.JmzReaderSpectrumService;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.PrecursorMatcher;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.PsmSampler;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.SpectrumIndexCache;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.Utility;
+
+import java.io.File;
+
+/**
+ * Settings of the peak file checks done by {@link PeakValidator}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class PeakValidationOptions {
+
+    public static final String NO_INDEX_CACHE = "none";
+    public static final int DEFAULT_PEAK_SAMPLE_SIZE = 10;
+    public static final double DEFAULT_CONFIDENCE = 0.95;
+    public static final double DEFAULT_MAX_MISMATCH_RATE = 0.05;
+    public static final long DEFAULT_SEED = 42;
+    public static final String DEFAULT_PRECURSOR_TOLERANCE = "0.01Da";
+    public static final int DEFAULT_ISOTOPE_ERRORS = 1;
+    public static final String DEFAULT_FRAGMENT_TOLERANCE = "0.02Da";
+
+    private int indexingThreads = JmzReaderSpectrumService.getDefaultIndexingThreads();
+    private SpectrumIndexCache indexCache = SpectrumIndexCache.getDefault();
+    private boolean fullPeakCheck;
+    /**
+     * Maximum number of PSMs checked per peak file, 0 to check until the mismatch rate is decided
+     */
+    private int peakSampleSize = DEFAULT_PEAK_SAMPLE_SIZE;
+    private double confidence = DEFAULT_CONFIDENCE;
+    private double maxMismatchRate = DEFAULT_MAX_MISMATCH_RATE;
+    private long seed = DEFAULT_SEED;
+    private PrecursorMatcher precursorMatcher = PrecursorMatcher.parse(DEFAULT_PRECURSOR_TOLERANCE, DEFAULT_ISOTOPE_ERRORS);
+    private boolean fragmentCheck;
+    private FragmentMatcher fragmentMatcher = FragmentMatcher.parse(DEFAULT_FRAGMENT_TOLERANCE);
+    /**
+     * Spectrum service shared by the result files of a submission, null to open one per result file
+     */
+    private JmzReaderSpectrumService spectrumService;
+
+    /**
+     * Read the peak validation settings from the command line arguments, using the defaults for the missing ones.
+     *
+     * @param cmd command line arguments
+     * @return PeakValidationOptions
+     */
+    public static PeakValidationOptions fromCommandLine(CommandLine cmd) {
+        PeakValidationOptions options = new PeakValidationOptions();
+        if (cmd.hasOption(Utility.ARG_THREADS)) {
+            options.setIndexingThreads(parsePositiveInt(cmd, Utility.ARG_THREADS));
+        }
+        if (cmd.hasOption(Utility.ARG_INDEX_CACHE)) {
+            String directory = cmd.getOptionValue(Utility.ARG_INDEX_CACHE);
+            options.setIndexCache(NO_INDEX_CACHE.equalsIgnoreCase(directory) ? null : new SpectrumIndexCache(new File(directory)));
+        }
+        options.setFullPeakCheck(cmd.hasOption(Utility.ARG_FULL_PEAK_CHECK));
+        if (cmd.hasOption(Utility.ARG_PEAK_SAMPLE_SIZE)) {
+            options.setPeakSampleSize(parsePositiveInt(cmd, Utility.ARG_PEAK_SAMPLE_SIZE));
+        } else if (cmd.hasOption(Utility.ARG_CONFIDENCE)) {
+            options.setPeakSampleSize(0);
+        }
+        if (cmd.hasOption(Utility.ARG_CONFIDENCE)) {
+            options.setConfidence(parseRate(cmd, Utility.ARG_CONFIDENCE));
+        }
+        if (cmd.hasOption(Utility.ARG_MAX_MISMATCH)) {
+            options.setMaxMismatchRate(parseRate(cmd, Utility.ARG_MAX_MISMATCH));
+        }
+        if (cmd.hasOption(Utility.ARG_SEED)) {
+            options.setSeed(Long.parseLong(cmd.getOptionValue(Utility.ARG_SEED)));
+        }
+        if (cmd.hasOption(Utility.ARG_PRECURSOR_TOLERANCE) || cmd.hasOption(Utility.ARG_ISOTOPE_ERRORS)
+                || cmd.hasOption(Utility.ARG_IGNORE_CHARGE)) {
+            int isotopeErrors = cmd.hasOption(Utility.ARG_ISOTOPE_ERRORS)
+                    ? Integer.parseInt(cmd.getOptionValue(Utility.ARG_ISOTOPE_ERRORS)) : DEFAULT_ISOTOPE_ERRORS;
+            options.setPrecursorMatcher(PrecursorMatcher.parse(
+                    cmd.getOptionValue(Utility.ARG_PRECURSOR_TOLERANCE, DEFAULT_PRECURSOR_TOLERANCE), isotopeErrors,
+                    !cmd.hasOption(Utility.ARG_IGNORE_CHARGE)));
+        }
+        options.setFragmentCheck(cmd.hasOption(Utility.ARG_FRAGMENT_CHECK));
+        if (cmd.hasOption(Utility.ARG_FRAGMENT_TOLERANCE)) {
+            options.setFragmentMatcher(FragmentMatcher.parse(cmd.getOptionValue(Utility.ARG_FRAGMENT_TOLERANCE)));
+        }
+        return options;
+    }
+
+    /**
+     * @return the sampler of the PSMs checked against their spectrum
+     */
+    public PsmSampler getPsmSampler() {
+        return new PsmSampler(peakSampleSize, confidence, maxMismatchRate, seed);
+    }
+
+    private static int parsePositiveInt(CommandLine cmd, String option) {
+        int value = Integer.parseInt(cmd.getOptionValue(option));
+        if (value < 1) {
+            throw new IllegalArgumentException("-" + option + " must be a positive number -- " + value);
+        }
+        return value;
+    }
+
+    private static double parseRate(CommandLine cmd, String option) {
+        double value = Double.parseDouble(cmd.getOptionValue(option));
+        if (value <= 0 || value >= 1) {
+            throw new IllegalArgumentException("-" + option + " must be between 0 and 1 -- " + value);
+        }
+        return value;
+    }
+}
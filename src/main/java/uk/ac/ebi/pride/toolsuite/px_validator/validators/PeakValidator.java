@@ -3,35 +3,47 @@ package uk.ac.ebi.pride.toolsuite.px_validator.validators;
 
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
-import de.mpc.pia.modeller.PIAModeller;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
 import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
 import uk.ac.ebi.pride.data.validation.ValidationMessage;
 import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
-import uk.ac.ebi.pride.tools.jmzreader.model.Spectrum;
 import uk.ac.ebi.pride.tools.mzxml_parser.MzXMLParsingException;
 import uk.ac.ebi.pride.toolsuite.px_validator.utils.*;
 import uk.ac.ebi.pride.utilities.util.Triple;
 
 import java.io.File;
-import java.io.IOException;
 import java.nio.file.Paths;
-import java.text.DecimalFormat;
 import java.util.*;
 import java.util.stream.Collectors;
 
+@Slf4j
 public class PeakValidator {
 
-    final int NUMBER_OF_CHECKS = 10;
     PIASimpleCompiler piaCompiler;
+    private List<SpectraData> spectrumFiles;
     private List<File> peakFilesFromCmdLine;
     IReport report;
+    private final PeakValidationOptions options;
+    private final ValidationMetrics metrics;
 
-    public PeakValidator(PIASimpleCompiler piaCompiler, List<File> peakFilesFromCmdLine, IReport report) {
+    /**
+     * @param piaCompiler PIA compiler holding the PSMs of the result file
+     * @param spectrumFiles SpectraData read from the result file, see {@link SpectraDataExtractor}
+     * @param peakFilesFromCmdLine peak files given from the command-line
+     * @param report report of the result file
+     * @param options peak validation settings
+     */
+    public PeakValidator(PIASimpleCompiler piaCompiler, List<SpectraData> spectrumFiles, List<File> peakFilesFromCmdLine,
+                         IReport report, PeakValidationOptions options) {
         this.piaCompiler = piaCompiler;
+        this.spectrumFiles = spectrumFiles;
         this.peakFilesFromCmdLine = peakFilesFromCmdLine;
         this.report = report;
+        this.options = options;
+        this.metrics = report instanceof Report && ((Report) report).getMetrics() != null
+                ? ((Report) report).getMetrics() : ValidationMetrics.NONE;
     }
 
     /**
@@ -44,56 +56,60 @@ public class PeakValidator {
         List<PeakReport> reportList =  new ArrayList<>();
 
         // check peak files are correctly referenced and match with in SpectraData in MzIdentML and the Submission.px
-            Map<String, SpectraData> spectrumFilesMap = getSpectraDataMap(piaCompiler);
-        List<SpectraData> spectrumFiles = spectrumFilesMap.entrySet().stream()
-                .map(Map.Entry::getValue)
-                .collect(Collectors.toList());
         List<String> peakFilesRefError = peakFileReferenceCheck(this.peakFilesFromCmdLine, spectrumFiles);
         if (peakFilesRefError.size() > 0) {
             for (String error : peakFilesRefError) {
-                report.addException(new IOException(error), ValidationMessage.Type.ERROR);
+                report.addMessage(new ReportMessage(ValidationMessage.Type.ERROR, error));
             }
         }
 
-        for (Map.Entry<String, SpectraData> entry : spectrumFilesMap.entrySet()){
-            System.out.println(getSpectraDataFormat(entry.getValue()));
+        for (SpectraData spectraData : spectrumFiles){
+            log.debug(spectraData.getId() + " is " + getSpectraDataFormat(spectraData));
         }
 
         Map<String, String> spectraDataIDToOriginalIdMap = piaCompiler.getSpectraDataIDToOriginalIdMap();
         // validate peak files
         Map<Long, PeptideSpectrumMatch> psms = piaCompiler.getAllPeptideSpectrumMatches();
         // group psm by Spectra File
-        Map<String, List<PeptideSpectrumMatch>> psmBySpectaDataRef = getPsmBySpectraGroup(psms);
-        // select few psms from each spectra file
-        Map<String, List<PeptideSpectrumMatch>> selectedPsmBySpectaDataRef = getSelectedPsmsBySpectaDataRef(psmBySpectaDataRef);
+        PsmGroups psmGroups = new PsmGroups(psms);
 
         // prepare to read Spectra from the original Spectra File(eg: mgf)
         JmzReaderSpectrumService service = null;
         List<Triple<String, SpectraData, Utility.FileType>> peakRelatedFiles = null;
         try {
             peakRelatedFiles  = Utility.combineSpectraControllers(peakFilesFromCmdLine, spectrumFiles);
-            service = JmzReaderSpectrumService.getInstance(peakRelatedFiles);
-        } catch (JMzReaderException e) {
-            e.printStackTrace();
-        } catch (MzXMLParsingException e) {
-            e.printStackTrace();
+            if (options.getSpectrumService() != null) {
+                // the peak files shared with other result files are only indexed once
+                service = options.getSpectrumService();
+                service.addSpectrumFiles(peakRelatedFiles);
+            } else {
+                service = JmzReaderSpectrumService.getInstance(peakRelatedFiles, options.getIndexingThreads(), options.getIndexCache());
+                service.setMetrics(metrics);
+            }
+            // index all the referenced peak files concurrently while the PSMs are mapped
+            service.prefetch(peakRelatedFiles.stream().map(entry -> Paths.get(entry.getFirst()).toString())
+                    .collect(Collectors.toSet()));
+        } catch (JMzReaderException | MzXMLParsingException e) {
+            log.error("Unable to open the peak files", e);
+            report.addMessage(new ReportMessage(ValidationMessage.Type.ERROR,
+                    "Unable to open the peak files, the spectra could not be checked: " + e.getMessage()));
         }
 
-        Spectrum fileSpectrum = null;
         String spectrumFile;
 
         // check if the selected PSMs are exits in the Spectra File
         if(service != null){
-            for (Map.Entry<String, List<PeptideSpectrumMatch>> psmEntry : selectedPsmBySpectaDataRef.entrySet()) {
+            for (int group = 0; group < psmGroups.size(); group++) {
+                String spectraDataRef = psmGroups.getSpectraDataRef(group);
+                List<PeptideSpectrumMatch> groupPsms = psmGroups.getPsms(group);
 
                 PeakReport peakReport = new PeakReport();
+                peakReport.setFullCheck(options.isFullPeakCheck());
                 List<Triple<String, SpectraData, Utility.FileType>> currentSpectra = new ArrayList<>();
 
                 // check which spectra file has this psm
                 for (Triple<String, SpectraData, Utility.FileType> peakEntry:peakRelatedFiles) {
-                    String origSpectraDataId = spectraDataIDToOriginalIdMap.get(peakEntry.getSecond().getId());
-                    if(psmEntry.getKey().equals(peakEntry.getSecond().getName()) ||
-                            psmEntry.getKey().equals(origSpectraDataId)){
+                    if(isSpectraDataReferenced(spectraDataRef, peakEntry.getSecond(), spectraDataIDToOriginalIdMap)){
                         currentSpectra.add(peakEntry);
                     }
                 }
@@ -106,118 +122,261 @@ public class PeakValidator {
                     peakReport.setFileSize(file.length());
                     peakReport.setNumberOfPeaks(psms.size());
 
-                    for (PeptideSpectrumMatch psm : psmEntry.getValue()) {
-                        System.out.println(psm.getSpectraDataRef() + " --> " + psm.getID());
-
-                        String spectrumId = Utility.getSpectrumId(currentSpectra.get(0).getSecond(), psm);
-                        try {
-                            if (fileIdFormat != Utility.SpecIdFormat.MULTI_PEAK_LIST_NATIVE_ID) {
-                                fileSpectrum = service.getSpectrumById(spectrumFile, spectrumId);
-                            } else {
-                                fileSpectrum = service.getSpectrumByIndex(spectrumFile, Integer.parseInt(spectrumId));
-                            }
-                        } catch (JMzReaderException e) {
-                            e.printStackTrace();
-                        }
-
-                        DecimalFormat df = new DecimalFormat("#.##");
-                        if(df.format(fileSpectrum.getPrecursorMZ().floatValue()).equals(df.format(psm.getMassToCharge()))){
-                            List<PeptideSpectrumMatch> detectedPsms = peakReport.getDetectedPsms();
-                            detectedPsms.add(psm);
-                            peakReport.setDetectedPsms(detectedPsms);
-                        }else{
-                            List<PeptideSpectrumMatch> undetectedPsms = peakReport.getUndetectedPsms();
-                            undetectedPsms.add(psm);
-                            peakReport.setUndetectedPsms(undetectedPsms);
+                    try (ValidationMetrics.StageTimer timer = metrics.start(ValidationMetrics.Stage.PEAK_CHECK)) {
+                        if (options.isFullPeakCheck()) {
+                            checkAllPsms(service, options.getPrecursorMatcher(), spectrumFile, fileIdFormat, currentSpectra.get(0).getSecond(), groupPsms, peakReport, metrics);
+                        } else {
+                            checkSampledPsms(service, spectrumFile, fileIdFormat, currentSpectra.get(0).getSecond(), groupPsms, peakReport);
                         }
+                        timer.addRecords(groupPsms.size());
                     }
+                    Long indexingTime = service.getIndexingTime(spectrumFile);
+                    peakReport.setIndexingTime(indexingTime != null ? indexingTime : 0);
                 }else{
-                    for (PeptideSpectrumMatch psm:psmEntry.getValue()) {
-                        System.out.println("Spectra File cannot be mapped for " + psm.getID() + " -> " + psm.getSourceID());
-                        List<PeptideSpectrumMatch> undetectedPsms = peakReport.getUndetectedPsms();
-                        undetectedPsms.add(psm);
-                        peakReport.setUndetectedPsms(undetectedPsms);
+                    log.warn("Spectra File cannot be mapped for the " + groupPsms.size() + " PSMs of " + spectraDataRef);
+                    if (options.isFullPeakCheck()) {
+                        peakReport.setNumberOfUndetectedPsms(groupPsms.size());
+                    } else {
+                        checkSampledPsms(service, null, null, null, groupPsms, peakReport);
                     }
                 }
                 reportList.add(peakReport);
             }
+            if (options.getSpectrumService() == null) {
+                service.close();
+            }
         }
         return reportList;
     }
 
     /**
-     * Group PSMs identified from the assay by the Spectra reference
-     * @param psms
-     * @return
+     * Check a sample of the PSMs of a peak file, see {@link PsmSampler}, until the sample is exhausted or the mismatch
+     * rate is clearly above or below the accepted rate.
+     * @param service spectrum service
+     * @param spectrumFile absolute path of the peak file, null if the PSMs can't be mapped to a peak file
+     * @param fileIdFormat spectrum id format of the peak file
+     * @param spectraData SpectraData of the peak file
+     * @param psms PSMs referring to the peak file
+     * @param peakReport report the checked PSMs are added to
      */
-    private Map<String, List<PeptideSpectrumMatch>> getPsmBySpectraGroup(Map<Long, PeptideSpectrumMatch> psms){
-
-        Map<String, List<PeptideSpectrumMatch>> psmBySpectaDataRef = new HashMap<>();
-
-        for (Map.Entry<Long, PeptideSpectrumMatch> entry : psms.entrySet()){
-            PeptideSpectrumMatch psm = entry.getValue();
-            if(psmBySpectaDataRef.containsKey(psm.getSpectraDataRef())){
-                List<PeptideSpectrumMatch> psmList = psmBySpectaDataRef.get(psm.getSpectraDataRef());
-                psmList.add(psm);
-                psmBySpectaDataRef.put(psm.getSpectraDataRef(), psmList);
-            }else{
-                List<PeptideSpectrumMatch> newPsmList = new ArrayList<>();
-                newPsmList.add(psm);
-                psmBySpectaDataRef.put(psm.getSpectraDataRef(), newPsmList);
+    private void checkSampledPsms(JmzReaderSpectrumService service, String spectrumFile, Utility.SpecIdFormat fileIdFormat,
+                                  SpectraData spectraData, List<PeptideSpectrumMatch> psms, PeakReport peakReport) {
+        log.debug(psms.get(0).getSpectraDataRef() + " has " + psms.size() + " identified spectra");
+        SpectrumIndex index = null;
+        if (spectrumFile != null) {
+            try {
+                index = service.getSpectrumIndex(spectrumFile);
+            } catch (JMzReaderException e) {
+                log.error("Unable to index " + spectrumFile, e);
+                report.addMessage(new ReportMessage(ValidationMessage.Type.ERROR, "Unable to read the spectra of "
+                        + new File(spectrumFile).getName() + ", its PSMs are counted as not found: " + e.getMessage()));
             }
         }
-        return psmBySpectaDataRef;
+        int[] positions = new int[psms.size()];
+        int[] charges = new int[psms.size()];
+        for (int i = 0; i < psms.size(); i++) {
+            if (index != null) {
+                long start = System.nanoTime();
+                positions[i] = getPosition(index, fileIdFormat, getSpectrumId(spectraData, psms.get(i)));
+                metrics.recordLookup(ValidationMetrics.Lookup.SPECTRUM_ID, System.nanoTime() - start);
+            } else {
+                positions[i] = -1;
+            }
+            charges[i] = psms.get(i).getCharge();
+        }
+        PsmSampler sampler = options.getPsmSampler();
+        PrecursorMatcher matcher = options.getPrecursorMatcher();
+        int[] sample = sampler.sample(positions, charges, index != null ? index.size() : 0);
+        long checked = 0;
+        long mismatches = 0;
+        for (int psmIndex : sample) {
+            PeptideSpectrumMatch psm = psms.get(psmIndex);
+            int position = positions[psmIndex];
+            PsmMismatch.Reason reason = checkPrecursor(matcher, index, position, psm.getMassToCharge(), charges[psmIndex]);
+            if (reason == null) {
+                peakReport.addDetectedPsm();
+            } else {
+                boolean hasPrecursor = position >= 0 && index.getMsLevel(position) != 1;
+                peakReport.addUndetectedPsm(new PsmMismatch(psm.getID(), getSpectrumId(spectraData, psm),
+                        psm.getMassToCharge(), hasPrecursor ? index.getPrecursorMz(position) : Double.NaN, charges[psmIndex],
+                        hasPrecursor ? index.getPrecursorCharge(position) : 0, reason));
+                mismatches++;
+            }
+            checked++;
+            if (sampler.isDecided(checked, mismatches)) {
+                break;
+            }
+        }
+        double[] interval = sampler.getMismatchRateInterval(checked, mismatches);
+        peakReport.setMismatchRateLower(interval[0]);
+        peakReport.setMismatchRateUpper(interval[1]);
+        peakReport.setStoppedEarly(checked < sample.length);
+        if (options.isFragmentCheck() && index != null) {
+            checkFragments(service, spectrumFile, positions, Arrays.copyOf(sample, (int) checked), psms, peakReport);
+        }
     }
 
     /**
-     * Selects few PSMs that are referred  from each peak file(s)
-     * @param psmBySpectaDataRef all the PSMs from each peak file(s)
-     * @return Map of selected PSMs from each peak file(s)
+     * Annotate the spectra of the checked PSMs with the b and y ions of their peptide and add the coverage to the
+     * report. The spectra are read in the order of their offsets in the peak file, see
+     * {@link JmzReaderSpectrumService#readPeakLists(String, int[], JmzReaderSpectrumService.PeakListHandler)}.
+     * @param service spectrum service
+     * @param spectrumFile absolute path of the peak file
+     * @param positions position of the spectrum of every PSM in the spectrum index of the peak file, -1 if not found
+     * @param checked indexes of the checked PSMs
+     * @param psms PSMs referring to the peak file
+     * @param peakReport report the coverage is added to
      */
-    private Map<String, List<PeptideSpectrumMatch>> getSelectedPsmsBySpectaDataRef(Map<String, List<PeptideSpectrumMatch>> psmBySpectaDataRef){
-
-        Map<String, List<PeptideSpectrumMatch>> selectedPsmBySpectaDataRef = new HashMap<>();
-        Random rand = new Random();
-
-        for (Map.Entry<String, List<PeptideSpectrumMatch>> entry : psmBySpectaDataRef.entrySet()){
-            System.out.println(entry.getKey() + " has " + entry.getValue().size() + " identified spectra");
-            List<PeptideSpectrumMatch> psmList = entry.getValue();
-
-            int numberOfChecks = (entry.getValue().size()>NUMBER_OF_CHECKS)? NUMBER_OF_CHECKS:entry.getValue().size();
-            List<PeptideSpectrumMatch> psmsListSelected = new ArrayList<>();
-            for(int i=0; i<psmList.size(); i+=(psmList.size()/numberOfChecks)) {
-                psmsListSelected.add(psmList.get(i));
+    private void checkFragments(JmzReaderSpectrumService service, String spectrumFile, int[] positions, int[] checked,
+                                List<PeptideSpectrumMatch> psms, PeakReport peakReport) {
+        // a spectrum may be shared by several PSMs
+        Map<Integer, List<PeptideSpectrumMatch>> psmsByPosition = new HashMap<>();
+        for (int psmIndex : checked) {
+            if (positions[psmIndex] >= 0) {
+                psmsByPosition.computeIfAbsent(positions[psmIndex], position -> new ArrayList<>()).add(psms.get(psmIndex));
             }
-            selectedPsmBySpectaDataRef.put(entry.getKey(), psmsListSelected);
         }
-        return selectedPsmBySpectaDataRef;
+        int[] spectra = psmsByPosition.keySet().stream().mapToInt(Integer::intValue).toArray();
+        long[] start = {System.nanoTime()};
+        try {
+            service.readPeakLists(spectrumFile, spectra, (position, peaks) -> {
+                metrics.recordLookup(ValidationMetrics.Lookup.PEAK_LIST, System.nanoTime() - start[0]);
+                for (PeptideSpectrumMatch psm : psmsByPosition.get(position)) {
+                    FragmentCoverage coverage = options.getFragmentMatcher().match(psm.getSequence(), psm.getModifications(),
+                            psm.getCharge(), peaks);
+                    if (coverage != null) {
+                        peakReport.addFragmentCoverage(coverage);
+                    }
+                }
+                start[0] = System.nanoTime();
+            });
+        } catch (JMzReaderException e) {
+            log.error("Unable to read the spectra of " + spectrumFile, e);
+            report.addMessage(new ReportMessage(ValidationMessage.Type.ERROR, "Unable to read the spectra of "
+                    + new File(spectrumFile).getName() + " for the fragment check, " + peakReport.getNumberOfFragmentChecks()
+                    + " PSMs were annotated: " + e.getMessage()));
+        }
     }
 
     /**
-     * Get the Spectra Data along with their ID
-     * @param piaCompiler PIA compiler
-     * @return Map of Spectra Data
+     * Check every PSM of a peak file against the spectrum index, built by one sequential read of the peak file or
+     * loaded from the index cache: each PSM is resolved to the position of its spectrum and its precursor compared
+     * with the one held in the in-memory index arrays, so the peak file itself isn't read again. Only the counts are
+     * kept in the report. With the fragment check the spectra of all the PSMs are then annotated, read in one forward
+     * pass over the peak file.
+     * @param service spectrum service
+     * @param matcher precursor matcher
+     * @param spectrumFile absolute path of the peak file
+     * @param fileIdFormat spectrum id format of the peak file
+     * @param spectraData SpectraData of the peak file
+     * @param psms PSMs referring to the peak file
+     * @param peakReport report the counts are added to
+     * @param metrics metrics the spectrum lookups are recorded in
      */
-    private Map<String, SpectraData> getSpectraDataMap(PIASimpleCompiler piaCompiler){
-        PIAModeller piaModeller = null;
+    private void checkAllPsms(JmzReaderSpectrumService service, PrecursorMatcher matcher, String spectrumFile, Utility.SpecIdFormat fileIdFormat,
+                              SpectraData spectraData, List<PeptideSpectrumMatch> psms, PeakReport peakReport,
+                              ValidationMetrics metrics) {
+        long start = System.currentTimeMillis();
+        String fileName = new File(spectrumFile).getName();
+        SpectrumIndex index;
         try {
-            if (piaCompiler.getAllPeptideSpectrumMatcheIDs() != null
-                    && !piaCompiler.getAllPeptideSpectrumMatcheIDs().isEmpty()) {
-                File inferenceTempFile = File.createTempFile("assay", ".tmp");
-                piaCompiler.writeOutXML(inferenceTempFile);
-                piaCompiler.finish();
-                piaModeller = new PIAModeller(inferenceTempFile.getAbsolutePath());
-                if (inferenceTempFile.exists()) {
-                    inferenceTempFile.deleteOnExit();
-                }
+            index = service.getSpectrumIndex(spectrumFile);
+        } catch (JMzReaderException e) {
+            log.error("Unable to index " + spectrumFile, e);
+            report.addMessage(new ReportMessage(ValidationMessage.Type.ERROR, "Unable to read the spectra of " + fileName
+                    + ", none of its " + psms.size() + " PSMs could be checked: " + e.getMessage()));
+            peakReport.setNumberOfUndetectedPsms(psms.size());
+            return;
+        }
+        long detected = 0;
+        long notFound = 0;
+        // positions are only kept for the fragment check, which reads the spectra afterwards
+        int[] positions = options.isFragmentCheck() ? new int[psms.size()] : null;
+        for (int i = 0; i < psms.size(); i++) {
+            PeptideSpectrumMatch psm = psms.get(i);
+            long lookupStart = System.nanoTime();
+            int position = getPosition(index, fileIdFormat, Utility.getSpectrumId(spectraData, psm));
+            metrics.recordLookup(ValidationMetrics.Lookup.SPECTRUM_ID, System.nanoTime() - lookupStart);
+            if (positions != null) {
+                positions[i] = position;
+            }
+            if (position < 0) {
+                notFound++;
+            } else if (checkPrecursor(matcher, index, position, psm.getMassToCharge(), psm.getCharge()) == null) {
+                detected++;
+            }
+        }
+        peakReport.setNumberOfDetectedPsms(detected);
+        peakReport.setNumberOfUndetectedPsms(psms.size() - detected);
+        log.info("Checked " + psms.size() + " PSMs against " + fileName + " in " + (System.currentTimeMillis() - start)
+                + "ms, " + notFound + " spectra not found");
+        if (positions != null) {
+            int[] all = new int[psms.size()];
+            Arrays.setAll(all, i -> i);
+            checkFragments(service, spectrumFile, positions, all, psms, peakReport);
+        }
+    }
+
+    /**
+     * @param index spectrum index of the peak file
+     * @param fileIdFormat spectrum id format of the peak file
+     * @param spectrumId spectrum id, or 1-based index for multiple peak list files
+     * @return position of the spectrum in the index, or -1 if it isn't found
+     */
+    private static int getPosition(SpectrumIndex index, Utility.SpecIdFormat fileIdFormat, String spectrumId) {
+        if (spectrumId == null)
+            return -1;
+        if (fileIdFormat == Utility.SpecIdFormat.MULTI_PEAK_LIST_NATIVE_ID) {
+            try {
+                int position = Integer.parseInt(spectrumId) - 1;
+                return position >= 0 && position < index.size() ? position : -1;
+            } catch (NumberFormatException e) {
+                return -1;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        assert piaModeller != null;
-        return piaModeller.getSpectraData();
+        return index.find(spectrumId);
+    }
+
+    /**
+     * @param matcher precursor matcher
+     * @param index spectrum index of the peak file, null if the peak file isn't known
+     * @param position position of the spectrum in the index, -1 if it isn't found
+     * @param psmMz experimental m/z of the PSM
+     * @param psmCharge charge of the PSM
+     * @return null if the spectrum is found, isn't an MS1 spectrum and its precursor matches the PSM, otherwise why not
+     */
+    private static PsmMismatch.Reason checkPrecursor(PrecursorMatcher matcher, SpectrumIndex index, int position,
+                                                     double psmMz, int psmCharge) {
+        if (index == null || position < 0)
+            return PsmMismatch.Reason.SPECTRUM_NOT_FOUND;
+        if (index.getMsLevel(position) == 1)
+            return PsmMismatch.Reason.NO_PRECURSOR;
+        return matcher.check(index.getPrecursorMz(position), index.getPrecursorCharge(position), psmMz, psmCharge);
+    }
+
+    /**
+     * @return the spectrum id referenced by the PSM, null if the PSMs can't be mapped to a peak file
+     */
+    private static String getSpectrumId(SpectraData spectraData, PeptideSpectrumMatch psm) {
+        return spectraData != null ? Utility.getSpectrumId(spectraData, psm) : null;
     }
 
+    /**
+     * Check whether the SpectraData read from the result file is the one referenced by the PSMs. PIA may refer
+     * to a SpectraData by its original id, its name or by its own id, which is mapped to the original one.
+     * @param spectraDataRef SpectraData reference of the PSMs
+     * @param spectraData SpectraData from the result file
+     * @param spectraDataIDToOriginalIdMap PIA SpectraData id to original id
+     * @return true if the PSMs refer to the SpectraData
+     */
+    private static boolean isSpectraDataReferenced(String spectraDataRef, SpectraData spectraData, Map<String, String> spectraDataIDToOriginalIdMap){
+        if(spectraDataRef == null)
+            return false;
+        return spectraDataRef.equals(spectraData.getName()) ||
+                spectraDataRef.equals(spectraData.getId()) ||
+                spectraDataRef.equals(spectraDataIDToOriginalIdMap.get(spectraData.getId())) ||
+                (spectraData.getId() != null && spectraData.getId().equals(spectraDataIDToOriginalIdMap.get(spectraDataRef)));
+    }
 
     /**
      * Check the Spectra reference is match with the MzIdentML SpectraData and the Peak files
@@ -233,7 +392,8 @@ public class PeakValidator {
             boolean isFound = false;
             for (SpectraData spectraData : spectraDataInMzIdentML) { // spectra data in mzIdentML file
                 String filename = Utility.getRealFileName(spectraData.getLocation());
-                if(filename.equalsIgnoreCase(peakFileFromCmdLine.getName()) || filename.equalsIgnoreCase(peakFileFromCmdLine.getName()+".gz") ){
+                if(filename.equalsIgnoreCase(peakFileFromCmdLine.getName()) || filename.equalsIgnoreCase(peakFileFromCmdLine.getName()+".gz")
+                        || filename.equalsIgnoreCase(Utility.returnUnCompressPath(peakFileFromCmdLine.getName()))){
                     isFound = true;
                     break;
                 }
@@ -303,4 +463,74 @@ public class PeakValidator {
         }
         return Utility.SpecFileFormat.NONE;
     }
+
+    /**
+     * PSMs grouped by Spectra reference: the keys of the PSMs in the PIA map sorted by Spectra reference and PSM id,
+     * so the same files always give the same samples, and the start of every group in them. The PSMs themselves stay
+     * in the PIA map and are looked up by key.
+     */
+    private static class PsmGroups {
+
+        private static final Comparator<String> REF_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+        private final Map<Long, PeptideSpectrumMatch> psms;
+        private final long[] keys;
+        private final String[] spectraDataRefs;
+        private final int[] starts;
+
+        PsmGroups(Map<Long, PeptideSpectrumMatch> psms) {
+            this.psms = psms;
+            Long[] sortedKeys = psms.keySet().toArray(new Long[0]);
+            Arrays.sort(sortedKeys, Comparator.comparing((Long key) -> psms.get(key).getSpectraDataRef(), REF_ORDER)
+                    .thenComparing(key -> psms.get(key).getID(), Comparator.nullsFirst(Comparator.naturalOrder())));
+            keys = new long[sortedKeys.length];
+            int numberOfGroups = 0;
+            int[] groupStarts = new int[16];
+            List<String> refs = new ArrayList<>();
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = sortedKeys[i];
+                String ref = psms.get(sortedKeys[i]).getSpectraDataRef();
+                if (i == 0 || REF_ORDER.compare(refs.get(numberOfGroups - 1), ref) != 0) {
+                    if (numberOfGroups + 1 == groupStarts.length) {
+                        groupStarts = Arrays.copyOf(groupStarts, groupStarts.length << 1);
+                    }
+                    groupStarts[numberOfGroups++] = i;
+                    refs.add(ref);
+                }
+            }
+            groupStarts[numberOfGroups] = keys.length;
+            starts = Arrays.copyOf(groupStarts, numberOfGroups + 1);
+            spectraDataRefs = refs.toArray(new String[0]);
+        }
+
+        int size() {
+            return spectraDataRefs.length;
+        }
+
+        String getSpectraDataRef(int group) {
+            return spectraDataRefs[group];
+        }
+
+        /**
+         * @return a view of the PSMs of the group, looked up in the PIA map
+         */
+        List<PeptideSpectrumMatch> getPsms(int group) {
+            int start = starts[group];
+            int size = starts[group + 1] - start;
+            return new AbstractList<PeptideSpectrumMatch>() {
+                @Override
+                public PeptideSpectrumMatch get(int i) {
+                    if (i < 0 || i >= size) {
+                        throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+                    }
+                    return psms.get(keys[start + i]);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,82 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.validators;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.CommandLine;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.pride.data.model.Submission;
+import uk.ac.ebi.pride.data.validation.ValidationMessage;
+import uk.ac.ebi.pride.tools.jmzreader.JMzReaderException;
+import uk.ac.ebi.pride.tools.mzxml_parser.MzXMLParsingException;
+import uk.ac.ebi.pride.toolsuite.px_validator.BatchValidator;
+import uk.ac.ebi.pride.toolsuite.px_validator.utils.*;
+import uk.ac.ebi.pride.utilities.util.Triple;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Validates the result files of a submission.px file, with -pxfiles, in parallel against the peak files the
+ * submission maps them to; every peak file is indexed once, in the background, even when several result files
+ * reference it. Only {@link PXFileValidator} refers to this class, when -pxfiles is given, so the peak file readers
+ * are not loaded for the metadata check alone.
+ */
+@Slf4j
+class SubmissionFilesValidator {
+
+    private final CommandLine cmd;
+    private final File file;
+
+    /**
+     * @param cmd command line arguments
+     * @param file submission.px file
+     */
+    SubmissionFilesValidator(CommandLine cmd, File file) {
+        this.cmd = cmd;
+        this.file = file;
+    }
+
+    /**
+     * Validate the result files of the submission with a spectrum service shared by all of them.
+     *
+     * @param submission parsed submission.px file
+     * @param report report the result of every file is added to
+     */
+    public void validate(Submission submission, BatchReport report) {
+        SubmissionGraph graph = new SubmissionGraph(submission, file.getAbsoluteFile().getParentFile());
+        for (String missingFile : graph.getMissingFiles()) {
+            report.addMessage(new ReportMessage(ValidationMessage.Type.ERROR,
+                    "The file of the submission can't be found -- " + missingFile));
+        }
+        JmzReaderSpectrumService service = null;
+        if (!cmd.hasOption(Utility.ARG_SKIP_PEAK_VAL) && !graph.getPeakFiles().isEmpty()) {
+            graph.extractZipArchives();
+            PeakValidationOptions options = PeakValidationOptions.fromCommandLine(cmd);
+            List<Triple<String, SpectraData, Utility.FileType>> peakFiles = new ArrayList<>();
+            for (File peakFile : graph.getPeakFiles()) {
+                peakFiles.add(new Triple<>(peakFile.getPath(), null,
+                        Utility.FileType.getFileTypeFromPRIDEFileName(peakFile.getName())));
+                log.info(peakFile.getName() + " is referenced by " + graph.getResultFiles(peakFile).size() + " result files");
+            }
+            try {
+                service = JmzReaderSpectrumService.getInstance(peakFiles, options.getIndexingThreads(), options.getIndexCache());
+                // the shared peak files are indexed once, so their indexing is measured for the whole submission
+                report.setMetrics(new ValidationMetrics(file.getName()));
+                service.setMetrics(report.getMetrics());
+                // the peak files are indexed while the result files are parsed
+                service.prefetch(peakFiles.stream().map(Triple::getFirst).collect(Collectors.toList()));
+            } catch (JMzReaderException | MzXMLParsingException e) {
+                report.addException(e, ValidationMessage.Type.ERROR);
+                return;
+            }
+        }
+        try {
+            new BatchValidator(cmd, graph, service).validate(report);
+        } finally {
+            if (service != null) {
+                service.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.validators;
+
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * Creates the validator of one type of file. Providers are listed in
+ * META-INF/services/uk.ac.ebi.pride.toolsuite.px_validator.validators.ValidatorProvider and must not load the
+ * classes of their validator before {@link #getInstance(CommandLine)} is called, so a run only loads the libraries
+ * its own validator needs.
+ */
+public interface ValidatorProvider {
+
+    /**
+     * @return the command line option giving the file this provider validates
+     */
+    String getOption();
+
+    /**
+     * @param cmd command line arguments
+     * @return the validator of the file
+     * @throws Exception if the file can't be found
+     */
+    Validator getInstance(CommandLine cmd) throws Exception;
+}
@@ -0,0 +1,33 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.validators;
+
+import org.apache.commons.cli.CommandLine;
+
+import java.util.ServiceLoader;
+
+/**
+ * Finds the validator of a command line among the {@link ValidatorProvider}s on the class path. The providers are
+ * tried in the order of the services file and instantiated only as far as the first one that matches.
+ */
+public class ValidatorRegistry {
+
+    private static final ServiceLoader<ValidatorProvider> providers = ServiceLoader.load(ValidatorProvider.class);
+
+    private ValidatorRegistry() {
+    }
+
+    /**
+     * @param cmd command line arguments
+     * @return the provider of the first file option of the command line, or null if there is none
+     */
+    public static ValidatorProvider getProvider(CommandLine cmd) {
+        // the service loader isn't thread-safe and the validation service looks up validators concurrently
+        synchronized (providers) {
+            for (ValidatorProvider provider : providers) {
+                if (cmd.hasOption(provider.getOption())) {
+                    return provider;
+                }
+            }
+        }
+        return null;
+    }
+}
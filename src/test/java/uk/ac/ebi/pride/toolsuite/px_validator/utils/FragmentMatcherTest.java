@@ -0,0 +1,62 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FragmentMatcherTest {
+
+    private static final String PEPTIDE = "PEPTIDE";
+    /**
+     * Singly charged b1 to b6 and y1 to y6 of PEPTIDE
+     */
+    private static final double[] B_IONS = {98.06004, 227.10263, 324.15539, 425.20307, 538.28713, 653.31408};
+    private static final double[] Y_IONS = {148.06043, 263.08737, 376.17144, 477.21911, 574.27188, 703.31447};
+
+    @Test
+    public void matchesTheBAndYIonsOfAKnownPeptide() {
+        PeakList.Builder builder = new PeakList.Builder(B_IONS.length + Y_IONS.length + 1);
+        for (int i = 0; i < B_IONS.length; i++) {
+            builder.add(B_IONS[i], 10).add(Y_IONS[i], 10);
+        }
+        builder.add(400.5, 30);
+        FragmentCoverage coverage = new FragmentMatcher(0.005, false).match(PEPTIDE, null, 2, builder.build());
+
+        assertNotNull(coverage);
+        assertEquals(12, coverage.getTheoreticalIons());
+        assertEquals(12, coverage.getMatchedIons());
+        assertEquals(1, coverage.getMatchedIonFraction(), 1e-9);
+        assertEquals(120.0 / 150, coverage.getExplainedIntensityFraction(), 1e-9);
+    }
+
+    @Test
+    public void addsDoublyChargedIonsFromCharge3() {
+        PeakList.Builder builder = new PeakList.Builder(2);
+        builder.add((Y_IONS[5] + FragmentMatcher.PROTON) / 2, 1).add(B_IONS[1], 1);
+        FragmentCoverage coverage = new FragmentMatcher(10, true).match(PEPTIDE, null, 3, builder.build());
+
+        assertEquals(24, coverage.getTheoreticalIons());
+        assertEquals(2, coverage.getMatchedIons());
+        assertEquals(1, new FragmentMatcher(10, true).match(PEPTIDE, null, 2, builder.build()).getMatchedIons());
+    }
+
+    @Test
+    public void missesIonsOutsideTheTolerance() {
+        PeakList.Builder builder = new PeakList.Builder(B_IONS.length);
+        for (double ion : B_IONS) {
+            builder.add(ion + 0.05, 1);
+        }
+        FragmentCoverage coverage = new FragmentMatcher(0.02, false).match(PEPTIDE, null, 2, builder.build());
+
+        assertEquals(0, coverage.getMatchedIons());
+        assertEquals(0, coverage.getExplainedIntensityFraction(), 0);
+        assertEquals(B_IONS.length, FragmentMatcher.parse("0.1Da").match(PEPTIDE, null, 2, builder.build()).getMatchedIons());
+    }
+
+    @Test
+    public void skipsUnknownResidues() {
+        PeakList peaks = new PeakList.Builder(1).add(B_IONS[0], 1).build();
+        assertNull(new FragmentMatcher(0.02, false).match("PEPXBZIDE", null, 2, peaks));
+        assertNull(new FragmentMatcher(0.02, false).match("P", null, 2, peaks));
+    }
+}
@@ -0,0 +1,133 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class GzipFileTest {
+
+    private static final int MEMBER_SIZE = 1 << 18;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void openAtSingleMember() throws IOException {
+        byte[] content = content(3 << 20);
+        GzipFile gzipFile = new GzipFile(write("single.mgf.gz", content, content.length));
+        assertArrayEquals(content, read(gzipFile.open(), content.length + 1));
+        for (int offset : new int[]{0, 1, MEMBER_SIZE, 2 << 20, content.length - 10}) {
+            assertRange(content, gzipFile.openAt(offset), offset, 100);
+        }
+    }
+
+    @Test
+    public void openAtMembers() throws IOException {
+        byte[] content = content(3 << 20);
+        GzipFile gzipFile = new GzipFile(write("bgzf.mgf.gz", content, MEMBER_SIZE));
+        // the first pass records the checkpoints the later ones start from
+        assertArrayEquals(content, read(gzipFile.open(), content.length + 1));
+        for (int offset : new int[]{content.length - 10, MEMBER_SIZE - 5, MEMBER_SIZE, 0, (2 << 20) + 12345}) {
+            assertRange(content, gzipFile.openAt(offset), offset, 100);
+        }
+    }
+
+    @Test
+    public void openAtPastTheEnd() throws IOException {
+        byte[] content = content(1000);
+        GzipFile gzipFile = new GzipFile(write("short.mgf.gz", content, content.length));
+        try {
+            gzipFile.openAt(2000).close();
+            fail("Opened past the end");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("past the end"));
+        }
+    }
+
+    @Test
+    public void cursorReadsAnyOrder() throws IOException {
+        byte[] content = content(2 << 20);
+        for (int memberSize : new int[]{content.length, MEMBER_SIZE}) {
+            GzipFile gzipFile = new GzipFile(write("cursor" + memberSize + ".mgf.gz", content, memberSize));
+            try (GzipFile.Cursor cursor = gzipFile.openCursor()) {
+                // reading far ahead of the next offset, as a reader with a buffer does, then going back
+                int[] offsets = {10, 20, 70_000, 70_100, 1 << 20, 500, content.length - 50};
+                for (int offset : offsets) {
+                    assertRange(content, cursor.at(offset), offset, 100_000);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void deletesInflatedFile() throws IOException {
+        byte[] content = content(10_000);
+        GzipFile gzipFile = new GzipFile(write("peaks.mzML.gz", content, content.length));
+        File inflated = gzipFile.getInflatedFile();
+        assertEquals("peaks.mzML", inflated.getName());
+        assertEquals(content.length, inflated.length());
+        gzipFile.deleteInflatedFile();
+        assertFalse(inflated.exists());
+        assertFalse(inflated.getParentFile().exists());
+    }
+
+    private static void assertRange(byte[] content, InputStream in, int offset, int maxLength) throws IOException {
+        int length = Math.min(maxLength, content.length - offset);
+        try (InputStream stream = in) {
+            byte[] read = read(stream, length);
+            assertArrayEquals("content at " + offset, Arrays.copyOfRange(content, offset, offset + length), read);
+        }
+    }
+
+    private static byte[] read(InputStream in, int length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while (out.size() < length && (read = in.read(buffer, 0, Math.min(buffer.length, length - out.size()))) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] content(int length) {
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append(random.nextInt(2000)).append('.').append(random.nextInt(10000)).append(' ')
+                    .append(random.nextInt(100000)).append('\n');
+        }
+        return text.substring(0, length).getBytes();
+    }
+
+    /**
+     * Write the content as consecutive gzip members of memberSize uncompressed bytes, as BGZF does.
+     */
+    private File write(String name, byte[] content, int memberSize) throws IOException {
+        File file = folder.newFile(name);
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int start = 0; start < content.length; start += memberSize) {
+                GZIPOutputStream member = new GZIPOutputStream(out) {
+                    @Override
+                    public void close() throws IOException {
+                        finish();
+                    }
+                };
+                member.write(content, start, Math.min(memberSize, content.length - start));
+                member.close();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,32 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void smallCountsAreExact() {
+        HyperLogLog counter = new HyperLogLog();
+        assertEquals(0, counter.count());
+        for (int i = 0; i < 100; i++) {
+            counter.add("P" + i);
+            counter.add("P" + i);
+        }
+        assertEquals(100, counter.count(), 1);
+        assertTrue(counter.isApproximate());
+    }
+
+    @Test
+    public void estimateWithinErrorBound() {
+        // the standard error at precision 14 is 1.04 / sqrt(2^14), below 1%; three of them bound every count here
+        for (int n : new int[]{1_000, 10_000, 100_000, 1_000_000}) {
+            HyperLogLog counter = new HyperLogLog();
+            for (int i = 0; i < n; i++) {
+                counter.add("PEPTIDE" + i);
+            }
+            assertEquals("count of " + n, n, counter.count(), n * 0.025);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class IdentityConstraintCheckerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reportsEveryBrokenRef() throws Exception {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setNumberOfPsms(2000);
+        generator.setDefectRate(SyntheticDataGenerator.Defect.BROKEN_REFERENCE, 0.02);
+        File mzIdentML = generator.generate(folder.getRoot()).get(0);
+
+        Report report = validateSchema(mzIdentML);
+        long brokenRefs = generator.countDefects().get(SyntheticDataGenerator.Defect.BROKEN_REFERENCE);
+        assertTrue(brokenRefs > 0);
+        assertEquals(brokenRefs, count(report, IdentityConstraintChecker.KEY_NOT_FOUND));
+        assertEquals(0, count(report, IdentityConstraintChecker.DUPLICATE_UNIQUE));
+        assertEquals(brokenRefs, report.getNumErrors());
+    }
+
+    @Test
+    public void reportsDuplicateIdsAndForwardRefs() throws Exception {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setNumberOfPsms(200);
+        File mzIdentML = generator.generate(folder.getRoot()).get(0);
+        String text = new String(Files.readAllBytes(mzIdentML.toPath()), StandardCharsets.UTF_8);
+        int start = text.indexOf("<DBSequence ");
+        int end = text.indexOf("/>", start) + 2;
+        // a second copy of the first protein and a ref to a CV that is never declared
+        text = text.substring(0, end) + text.substring(start, end) + text.substring(end);
+        text = text.replaceFirst("cvRef=\"PSI-MS\"", "cvRef=\"MISSING\"");
+        Files.write(mzIdentML.toPath(), text.getBytes(StandardCharsets.UTF_8));
+
+        Report report = validateSchema(mzIdentML);
+        assertEquals(1, count(report, IdentityConstraintChecker.DUPLICATE_UNIQUE));
+        assertEquals(1, count(report, IdentityConstraintChecker.KEY_NOT_FOUND));
+        ReportMessage missing = example(report, IdentityConstraintChecker.KEY_NOT_FOUND);
+        assertTrue(missing.getMessage(), missing.getMessage().contains("'MISSING'"));
+        assertTrue(missing.getLine() > 0);
+    }
+
+    @Test
+    public void keepsAFileValidWhenTheLimitsAreReached() throws Exception {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setNumberOfPsms(5000);
+        File mzIdentML = generator.generate(folder.getRoot()).get(0);
+
+        Report report = new ResultReport();
+        // one pending ref and the smallest set of ids, which is full past 3072 ids
+        IdentityConstraintChecker checker = new IdentityConstraintChecker(report, null, 1, 1);
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.newSAXParser().parse(mzIdentML, new DefaultHandler() {
+            @Override
+            public void setDocumentLocator(Locator locator) {
+                checker.setDocumentLocator(locator);
+            }
+
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                checker.startElement(uri, localName, attributes);
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                checker.endElement();
+            }
+
+            @Override
+            public void endDocument() {
+                checker.endDocument();
+            }
+        });
+
+        assertFalse(checker.isComplete());
+        assertEquals(0, checker.getNumberOfErrors());
+        assertTrue(report.getMessages().isEmpty());
+        assertEquals(0, report.getNumErrors());
+        assertTrue(validateSchema(mzIdentML).getMessages().isEmpty());
+    }
+
+    private static Report validateSchema(File mzIdentML) {
+        Report report = new ResultReport();
+        new MzIdentMLStreamValidator(report, MzIdentMLStreamValidator.Mode.SCHEMA_ONLY).validate(mzIdentML);
+        return report;
+    }
+
+    private static long count(Report report, String code) {
+        for (MessageStore.Group group : report.getMessages().getGroups()) {
+            if (group.getTemplate().equals(code)) {
+                return group.getCount();
+            }
+        }
+        return 0;
+    }
+
+    private static ReportMessage example(Report report, String code) {
+        for (MessageStore.Group group : report.getMessages().getGroups()) {
+            if (group.getTemplate().equals(code)) {
+                return group.getExamples().get(0);
+            }
+        }
+        throw new AssertionError("No " + code + " message");
+    }
+}
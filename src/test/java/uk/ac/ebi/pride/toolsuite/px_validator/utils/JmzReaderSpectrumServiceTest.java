@@ -0,0 +1,123 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.pride.utilities.util.Triple;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class JmzReaderSpectrumServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsPeakListsOfGzippedMgf() throws Exception {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setNumberOfPsms(500);
+        File mgf = generator.generate(folder.getRoot()).get(1);
+        File gzipped = new File(folder.getRoot(), mgf.getName() + GzipFile.EXTENSION);
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipped))) {
+            Files.copy(mgf.toPath(), out);
+        }
+        SpectrumIndex plainIndex = MgfIndexer.index(mgf);
+
+        List<Triple<String, SpectraData, Utility.FileType>> files = new ArrayList<>();
+        files.add(new Triple<>(gzipped.getPath(), null, Utility.FileType.MGF));
+        try (JmzReaderSpectrumService service = JmzReaderSpectrumService.getInstance(files, 1)) {
+            SpectrumIndex index = service.getSpectrumIndex(gzipped.getPath());
+            assertEquals(plainIndex.size(), index.size());
+            // in descending order, the service reads them front to back
+            int[] positions = {index.size() - 1, index.size() / 2, 3, 0};
+            List<Integer> read = new ArrayList<>();
+            service.readPeakLists(gzipped.getPath(), positions, (position, peaks) -> {
+                read.add(position);
+                try (InputStream in = new FileInputStream(mgf)) {
+                    in.skip(plainIndex.getOffset(position));
+                    PeakList expected = PeakList.readMgf(in);
+                    assertEquals(expected.size(), peaks.size());
+                    assertTrue(peaks.size() > 0);
+                    for (int i = 0; i < peaks.size(); i++) {
+                        assertEquals(expected.getMz(i), peaks.getMz(i), 0);
+                        assertEquals(expected.getIntensity(i), peaks.getIntensity(i), 0);
+                    }
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            List<Integer> ascending = new ArrayList<>(read);
+            Collections.sort(ascending);
+            assertEquals(ascending, read);
+            assertEquals(positions.length, read.size());
+        }
+    }
+
+    @Test
+    public void indexesMzMLWithByteOffsets() throws Exception {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setNumberOfPsms(300);
+        generator.setPeakFormat(SyntheticDataGenerator.PeakFormat.MZML);
+        File mzML = generator.generate(folder.getRoot()).get(1);
+        byte[] content = Files.readAllBytes(mzML.toPath());
+
+        List<Triple<String, SpectraData, Utility.FileType>> files = new ArrayList<>();
+        files.add(new Triple<>(mzML.getPath(), null, Utility.FileType.MZML));
+        try (JmzReaderSpectrumService service = JmzReaderSpectrumService.getInstance(files, 1)) {
+            SpectrumIndex index = service.getSpectrumIndex(mzML.getPath());
+            assertEquals(300, index.size());
+            for (int i = 0; i < index.size(); i++) {
+                long offset = index.getOffset(i);
+                String tag = "<spectrum index=\"" + i + "\" id=\"" + index.getId(i) + "\"";
+                assertEquals(tag, new String(content, (int) offset, tag.length(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void readsPeakListsOfGzippedMzMLInPlace() throws Exception {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setNumberOfPsms(300);
+        generator.setPeakFormat(SyntheticDataGenerator.PeakFormat.MZML);
+        File mzML = generator.generate(folder.getRoot()).get(1);
+        File gzipped = new File(folder.getRoot(), mzML.getName() + GzipFile.EXTENSION);
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipped))) {
+            Files.copy(mzML.toPath(), out);
+        }
+
+        List<Triple<String, SpectraData, Utility.FileType>> files = new ArrayList<>();
+        files.add(new Triple<>(mzML.getPath(), null, Utility.FileType.MZML));
+        files.add(new Triple<>(gzipped.getPath(), null, Utility.FileType.MZML));
+        try (JmzReaderSpectrumService service = JmzReaderSpectrumService.getInstance(files, 1)) {
+            SpectrumIndex index = service.getSpectrumIndex(gzipped.getPath());
+            int[] positions = {index.size() - 1, index.size() / 2, 1, 0};
+            List<Integer> read = new ArrayList<>();
+            service.readPeakLists(gzipped.getPath(), positions, (position, peaks) -> {
+                read.add(position);
+                PeakList expected = service.getPeakList(mzML.getPath(), position);
+                assertTrue(peaks.size() > 0);
+                assertEquals(expected.size(), peaks.size());
+                for (int i = 0; i < peaks.size(); i++) {
+                    assertEquals(expected.getMz(i), peaks.getMz(i), 0);
+                    assertEquals(expected.getIntensity(i), peaks.getIntensity(i), 0);
+                }
+            });
+            assertEquals(Arrays.asList(0, 1, index.size() / 2, index.size() - 1), read);
+        }
+    }
+}
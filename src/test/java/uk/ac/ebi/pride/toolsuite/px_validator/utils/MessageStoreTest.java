@@ -0,0 +1,114 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Test;
+import uk.ac.ebi.pride.data.validation.ValidationMessage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MessageStoreTest {
+
+    private static final int THREADS = 8;
+    private static final int MESSAGES_PER_THREAD = 20000;
+    private static final int TEMPLATES = 10;
+
+    @Test
+    public void groupsTheMessagesByLevelAndTemplate() {
+        MessageStore store = new MessageStore(2);
+
+        assertTrue(store.isEmpty());
+        assertTrue(store.add(new ReportMessage(ValidationMessage.Type.ERROR, "Peak 1 of spectrum 12 is missing")));
+        assertTrue(store.add(new ReportMessage(ValidationMessage.Type.ERROR, "Peak 2 of spectrum 345 is missing")));
+        assertFalse(store.add(new ReportMessage(ValidationMessage.Type.ERROR, "Peak 3 of spectrum 6 is missing")));
+        assertTrue(store.add(new ReportMessage(ValidationMessage.Type.WARNING, "Peak 4 of spectrum 7 is missing")));
+        assertTrue(store.add(new ReportMessage(ValidationMessage.Type.ERROR, "Spectrum 8 has no peaks")));
+
+        List<MessageStore.Group> groups = store.getGroups();
+        assertEquals(3, groups.size());
+        assertEquals("Peak # of spectrum # is missing", groups.get(0).getTemplate());
+        assertEquals(ValidationMessage.Type.ERROR, groups.get(0).getType());
+        assertEquals(3, groups.get(0).getCount());
+        assertEquals("Peak 1 of spectrum 12 is missing", groups.get(0).getExamples().get(0).getMessage());
+        assertEquals("Peak 2 of spectrum 345 is missing", groups.get(0).getExamples().get(1).getMessage());
+        assertEquals(ValidationMessage.Type.WARNING, groups.get(1).getType());
+        assertEquals("Spectrum # has no peaks", groups.get(2).getTemplate());
+        assertEquals(5, store.getNumberOfMessages());
+    }
+
+    @Test
+    public void countsTheMessagesOfNewTemplatesOnceTheGroupsAreFull() {
+        MessageStore store = new MessageStore(1);
+        for (int i = 0; i < MessageStore.MAX_GROUPS + 10; i++) {
+            store.add(new ReportMessage(ValidationMessage.Type.ERROR, "C" + i, "Check " + i + " failed",
+                    ReportMessage.UNKNOWN, ReportMessage.UNKNOWN));
+        }
+
+        List<MessageStore.Group> groups = store.getGroups();
+        assertEquals(MessageStore.MAX_GROUPS + 1, groups.size());
+        MessageStore.Group other = groups.get(groups.size() - 1);
+        assertEquals(MessageStore.OTHER_TEMPLATE, other.getTemplate());
+        assertEquals(10, other.getCount());
+        assertEquals(1, other.getExamples().size());
+        assertEquals(MessageStore.MAX_GROUPS + 10, store.getNumberOfMessages());
+    }
+
+    @Test
+    public void keepsTheCountsAndExamplesExactUnderConcurrentAdds() throws Exception {
+        MessageStore store = new MessageStore(MessageStore.DEFAULT_NUMBER_OF_EXAMPLES);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> kept = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                kept.add(executor.submit(() -> {
+                    start.await();
+                    int examples = 0;
+                    for (int i = 0; i < MESSAGES_PER_THREAD; i++) {
+                        String message = "Check " + (char) ('A' + i % TEMPLATES) + " failed for PSM " + thread + "_" + i;
+                        if (store.add(new ReportMessage(ValidationMessage.Type.ERROR, message))) {
+                            examples++;
+                        }
+                    }
+                    return examples;
+                }));
+            }
+            start.countDown();
+            int keptExamples = 0;
+            for (Future<Integer> future : kept) {
+                keptExamples += future.get(1, TimeUnit.MINUTES);
+            }
+
+            List<MessageStore.Group> groups = store.getGroups();
+            assertEquals(TEMPLATES, groups.size());
+            assertEquals((long) THREADS * MESSAGES_PER_THREAD, store.getNumberOfMessages());
+            long count = 0;
+            int examples = 0;
+            for (MessageStore.Group group : groups) {
+                assertEquals((long) THREADS * MESSAGES_PER_THREAD / TEMPLATES, group.getCount());
+                assertEquals(MessageStore.DEFAULT_NUMBER_OF_EXAMPLES, group.getExamples().size());
+                Set<String> distinct = new HashSet<>();
+                for (ReportMessage example : group.getExamples()) {
+                    assertEquals(group.getTemplate(), example.getTemplate());
+                    distinct.add(example.getMessage());
+                }
+                assertEquals(MessageStore.DEFAULT_NUMBER_OF_EXAMPLES, distinct.size());
+                count += group.getCount();
+                examples += group.getExamples().size();
+            }
+            assertEquals(store.getNumberOfMessages(), count);
+            assertEquals(examples, keptExamples);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
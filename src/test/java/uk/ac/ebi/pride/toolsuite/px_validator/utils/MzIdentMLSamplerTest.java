@@ -0,0 +1,122 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MzIdentMLSamplerTest {
+
+    private static final int NUMBER_OF_PSMS = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsEveryInjectedDefectWhenAllBlocksAreSampled() throws Exception {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setNumberOfPsms(NUMBER_OF_PSMS);
+        generator.setDefectRate(SyntheticDataGenerator.Defect.BROKEN_REFERENCE, 0.02);
+        File mzIdentML = generator.generate(folder.getRoot()).get(0);
+
+        Report report = new ResultReport();
+        MzIdentMLSampler sampler = sample(mzIdentML, NUMBER_OF_PSMS * 2, report);
+        long brokenRefs = generator.countDefects().get(SyntheticDataGenerator.Defect.BROKEN_REFERENCE);
+        assertTrue(brokenRefs > 0);
+        assertEquals(NUMBER_OF_PSMS, sampler.getNumberOfSampledResults());
+        assertEquals(NUMBER_OF_PSMS, sampler.getNumberOfSampledPSMs());
+        assertEquals(brokenRefs, report.getNumErrors());
+    }
+
+    @Test
+    public void estimatesThePsmsOfTheListOnly() throws Exception {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setNumberOfPsms(NUMBER_OF_PSMS);
+        File mzIdentML = generator.generate(folder.getRoot()).get(0);
+        String text = read(mzIdentML);
+        // a large block after the list must not count as PSMs
+        int listEnd = text.indexOf("</SpectrumIdentificationList>") + "</SpectrumIdentificationList>".length();
+        StringBuilder padding = new StringBuilder("\n");
+        for (int i = 0; i < text.length() / 80; i++) {
+            padding.append("<!-- ").append(String.format("%72d", i)).append(" -->\n");
+        }
+        write(mzIdentML, text.substring(0, listEnd) + padding + text.substring(listEnd));
+
+        Report report = new ResultReport();
+        MzIdentMLSampler sampler = sample(mzIdentML, 20, report);
+        assertEquals(0, report.getNumErrors());
+        assertEquals(20, sampler.getNumberOfSampledResults());
+        assertEquals(NUMBER_OF_PSMS, sampler.getEstimatedNumberOfPSMs(), NUMBER_OF_PSMS * 0.1);
+    }
+
+    @Test
+    public void findsPrefixedBlocks() throws Exception {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setNumberOfPsms(NUMBER_OF_PSMS);
+        File mzIdentML = generator.generate(folder.getRoot()).get(0);
+        String text = read(mzIdentML);
+        int listStart = text.indexOf("<SpectrumIdentificationList");
+        int listEnd = text.indexOf("</SpectrumIdentificationList>");
+        String list = text.substring(listStart, listEnd).replaceAll("<(/?)([A-Za-z])", "<$1mzid:$2");
+        text = text.substring(0, listStart) + list + text.substring(listEnd);
+        write(mzIdentML, text.replaceFirst("<MzIdentML ", "<MzIdentML xmlns:mzid=\"" + namespace(text) + "\" "));
+
+        Report report = new ResultReport();
+        MzIdentMLSampler sampler = sample(mzIdentML, 20, report);
+        assertEquals(0, report.getNumErrors());
+        assertEquals(20, sampler.getNumberOfSampledResults());
+    }
+
+    @Test
+    public void reportsAListWithoutSampledBlocks() throws Exception {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setNumberOfPsms(NUMBER_OF_PSMS);
+        File mzIdentML = generator.generate(folder.getRoot()).get(0);
+        write(mzIdentML, read(mzIdentML).replace("SpectrumIdentificationResult ", "SpectrumIdentificationResults ")
+                .replace("SpectrumIdentificationResult>", "SpectrumIdentificationResults>"));
+
+        // the header validation reads the whole list and reports the unknown elements too
+        Report report = new ResultReport();
+        MzIdentMLSampler sampler = sample(mzIdentML, 20, report);
+        assertEquals(0, sampler.getNumberOfSampledResults());
+        boolean isReported = false;
+        for (MessageStore.Group group : report.getMessages().getGroups()) {
+            isReported |= group.getTemplate().startsWith("No SpectrumIdentificationResult could be sampled");
+        }
+        assertTrue(isReported);
+    }
+
+    private static MzIdentMLSampler sample(File mzIdentML, int sampleSize, Report report) throws Exception {
+        MzIdentMLStreamValidator header = new MzIdentMLStreamValidator(report, MzIdentMLStreamValidator.Mode.HEADER);
+        header.validate(mzIdentML);
+        Set<String> spectraDataIds = new HashSet<>();
+        for (SpectraData spectraData : header.getSpectraData()) {
+            spectraDataIds.add(spectraData.getId());
+        }
+        MzIdentMLSampler sampler = new MzIdentMLSampler(mzIdentML, header.getVersion(), spectraDataIds,
+                header.getPeptideIds(), header.getPeptideEvidenceIds(), report);
+        sampler.validate(sampleSize);
+        return sampler;
+    }
+
+    private static String namespace(String text) {
+        int start = text.indexOf("xmlns=\"") + "xmlns=\"".length();
+        return text.substring(start, text.indexOf('"', start));
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File file, String text) throws Exception {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
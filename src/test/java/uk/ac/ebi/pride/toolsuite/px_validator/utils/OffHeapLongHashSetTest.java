@@ -0,0 +1,75 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class OffHeapLongHashSetTest {
+
+    @Test
+    public void keepsValuesWhileGrowing() {
+        OffHeapLongHashSet set = new OffHeapLongHashSet();
+        Random random = new Random(1);
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextInt(50_000) * 0xc2b2ae3d27d4eb4fL;
+            assertEquals(expected.add(value), set.addIfAbsent(value));
+        }
+        assertEquals(expected.size(), set.count());
+        for (long value : expected) {
+            assertTrue(set.contains(value));
+        }
+        assertFalse(set.isFull());
+        set.free();
+    }
+
+    @Test
+    public void countsZero() {
+        OffHeapLongHashSet set = new OffHeapLongHashSet();
+        assertFalse(set.contains(0));
+        set.add(0);
+        set.add(0);
+        assertTrue(set.contains(0));
+        assertEquals(1, set.count());
+        Set<Long> values = new HashSet<>();
+        set.forEach(values::add);
+        assertEquals(1, values.size());
+        assertTrue(values.contains(0L));
+    }
+
+    @Test
+    public void stopsGrowingAtMaxCapacity() {
+        OffHeapLongHashSet set = new OffHeapLongHashSet(1 << 13);
+        long value = 1;
+        while (!set.isFull()) {
+            set.add(value++);
+        }
+        assertEquals((1 << 13) * 3 / 4 + 1, set.count());
+        assertFalse(set.addIfAbsent(1));
+        try {
+            set.add(value);
+            fail("A full set took a new value");
+        } catch (IllegalStateException e) {
+            assertEquals((1 << 13) * 3 / 4 + 1, set.count());
+        }
+    }
+
+    @Test
+    public void fallsBackToEstimate() {
+        FallbackDistinctCounter counter = new FallbackDistinctCounter(new OffHeapLongHashSet(1 << 13));
+        for (int i = 0; i < 6000; i++) {
+            counter.add("value" + i);
+        }
+        assertFalse(counter.isApproximate());
+        assertEquals(6000, counter.count());
+        for (int i = 0; i < 100_000; i++) {
+            counter.add("value" + i);
+        }
+        assertTrue(counter.isApproximate());
+        assertEquals(100_000, counter.count(), 100_000 * 0.03);
+    }
+}
@@ -0,0 +1,72 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class PeakListTest {
+
+    @Test
+    public void parsesTheMgfNumberNotations() throws IOException {
+        String[] values = {"100", "100.25", ".5", "7.", "0.000123", "1.5e3", "1.5E+3", "2.5e-4", "00012.0500",
+                "1234567890.123456789", "12345678901234567890123", "3e300", "1e-320"};
+        StringBuilder mgf = new StringBuilder("BEGIN IONS\nPEPMASS=500\n");
+        for (int i = 0; i < values.length; i++) {
+            mgf.append(values[i]).append(' ').append(i + 1).append('\n');
+        }
+        PeakList peaks = read(mgf.append("END IONS\n").toString());
+
+        assertEquals(values.length, peaks.size());
+        for (int i = 0; i < peaks.size(); i++) {
+            double intensity = peaks.getIntensity(i);
+            double expected = Double.parseDouble(values[(int) intensity - 1]);
+            assertEquals(values[(int) intensity - 1], expected, peaks.getMz(i), Math.abs(expected) * 1e-15);
+        }
+    }
+
+    @Test
+    public void readsTheIntensityAfterAnyBlanksAndIgnoresTheCharge() throws IOException {
+        PeakList peaks = read("BEGIN IONS\n  100.5 \t 20.5e1\t2+\r\n200 1E2\nEND IONS\n");
+
+        assertEquals(2, peaks.size());
+        assertEquals(100.5, peaks.getMz(0), 0);
+        assertEquals(205, peaks.getIntensity(0), 0);
+        assertEquals(200, peaks.getMz(1), 0);
+        assertEquals(100, peaks.getIntensity(1), 0);
+    }
+
+    @Test
+    public void ignoresLinesThatAreNotTwoNumbers() throws IOException {
+        PeakList peaks = read("BEGIN IONS\n100\n100 abc\n100abc 5\n.e5 5\n-100 5\n1.5e 5\n300 30\nEND IONS\n");
+
+        assertEquals(1, peaks.size());
+        assertEquals(300, peaks.getMz(0), 0);
+        assertEquals(30, peaks.getIntensity(0), 0);
+    }
+
+    @Test
+    public void keepsAMissingExponentOutOfTheNumber() throws IOException {
+        // the e is not followed by digits, it ends the number and the line is not two numbers
+        assertEquals(0, read("BEGIN IONS\n100e 5\nEND IONS\n").size());
+        assertEquals(100e5, read("BEGIN IONS\n100e5 5\nEND IONS\n").getMz(0), 0);
+    }
+
+    @Test
+    public void stopsAtTheEndOfTheSpectrum() throws IOException {
+        PeakList peaks = read("BEGIN IONS\n200 2\n100 1\nEND IONS\nBEGIN IONS\n300 3\nEND IONS\n");
+
+        assertEquals(2, peaks.size());
+        assertEquals(100, peaks.getMz(0), 0);
+        assertEquals(200, peaks.getMz(1), 0);
+        assertEquals(1, read("BEGIN IONS\n100 1\nBEGIN IONS\n300 3\n").size());
+        assertEquals(1, read("BEGIN IONS\n100 1").size());
+    }
+
+    private static PeakList read(String mgf) throws IOException {
+        return PeakList.readMgf(new ByteArrayInputStream(mgf.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
@@ -0,0 +1,82 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrecursorMatcherTest {
+
+    private static final double MZ = 500.0;
+
+    @Test
+    public void parsesTheUnit() {
+        PrecursorMatcher ppm = PrecursorMatcher.parse(" 10 ppm ", 1);
+        assertTrue(ppm.isPpm());
+        assertEquals(10, ppm.getTolerance(), 0);
+        PrecursorMatcher da = PrecursorMatcher.parse("0.02Da", 0);
+        assertFalse(da.isPpm());
+        assertEquals(0.02, da.getTolerance(), 0);
+        assertFalse(PrecursorMatcher.parse("0.02", 0).isPpm());
+        assertTrue(PrecursorMatcher.parse("0.02", 0).isChargeChecked());
+        assertFalse(PrecursorMatcher.parse("0.02", 0, false).isChargeChecked());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnInvalidTolerance() {
+        PrecursorMatcher.parse("10 mDa", 0);
+    }
+
+    @Test
+    public void scalesPpmWithTheMz() {
+        PrecursorMatcher matcher = new PrecursorMatcher(10, true, 0);
+        // 10 ppm of 500 is 0.005, of 1000 it is 0.01
+        assertTrue(matcher.matches(MZ, 2, MZ + 0.0049, 2));
+        assertFalse(matcher.matches(MZ, 2, MZ + 0.0051, 2));
+        assertTrue(matcher.matches(2 * MZ, 2, 2 * MZ - 0.0099, 2));
+        assertEquals(PsmMismatch.Reason.MZ, matcher.check(2 * MZ, 2, 2 * MZ - 0.0101, 2));
+    }
+
+    @Test
+    public void acceptsIsotopeErrorsAtTheChargeOfThePsm() {
+        PrecursorMatcher matcher = new PrecursorMatcher(0.01, false, 2);
+        double spacing = PrecursorMatcher.C13_SPACING / 2;
+        assertTrue(matcher.matches(MZ, 2, MZ + spacing, 2));
+        assertTrue(matcher.matches(MZ, 2, MZ - 2 * spacing + 0.005, 2));
+        assertFalse(matcher.matches(MZ, 2, MZ + 3 * spacing, 2));
+        // a 1+ spacing is two 2+ spacings, within the two errors
+        assertTrue(matcher.matches(MZ, 0, MZ + PrecursorMatcher.C13_SPACING, 2));
+        // the spacing of 3+ is not a multiple of the 2+ one
+        assertFalse(matcher.matches(MZ, 0, MZ + PrecursorMatcher.C13_SPACING / 3, 2));
+        assertFalse(new PrecursorMatcher(0.01, false, 0).matches(MZ, 2, MZ + spacing, 2));
+    }
+
+    @Test
+    public void triesTheUsualChargesWhenNoneIsKnown() {
+        PrecursorMatcher matcher = new PrecursorMatcher(0.01, false, 1);
+        for (int charge = 1; charge <= PrecursorMatcher.MAX_UNKNOWN_CHARGE; charge++) {
+            assertTrue(matcher.matches(MZ, 0, MZ + PrecursorMatcher.C13_SPACING / charge, 0));
+        }
+        int tooHigh = PrecursorMatcher.MAX_UNKNOWN_CHARGE + 3;
+        assertFalse(matcher.matches(MZ, 0, MZ + PrecursorMatcher.C13_SPACING / tooHigh, 0));
+        // the charge of the spectrum stands for the missing PSM charge
+        assertFalse(matcher.matches(MZ, 3, MZ + PrecursorMatcher.C13_SPACING / 2, 0));
+    }
+
+    @Test
+    public void rejectsADifferentCharge() {
+        PrecursorMatcher matcher = new PrecursorMatcher(0.01, false, 1);
+        assertEquals(PsmMismatch.Reason.CHARGE, matcher.check(MZ, 3, MZ, 2));
+        assertNull(matcher.check(MZ, 2, MZ, -2));
+        assertNull(matcher.check(MZ, 0, MZ, 2));
+        assertNull(matcher.check(MZ, 2, MZ, 0));
+        PrecursorMatcher ignoringCharge = new PrecursorMatcher(0.01, false, 1, false);
+        assertNull(ignoringCharge.check(MZ, 3, MZ, 2));
+    }
+
+    @Test
+    public void needsBothMzValues() {
+        PrecursorMatcher matcher = new PrecursorMatcher(0.01, false, 1);
+        assertEquals(PsmMismatch.Reason.NO_PRECURSOR, matcher.check(Double.NaN, 2, MZ, 2));
+        assertEquals(PsmMismatch.Reason.MZ, matcher.check(MZ, 2, Double.NaN, 2));
+    }
+}
@@ -0,0 +1,107 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PsmSamplerTest {
+
+    private static final int PSMS = 10000;
+    private static final int SPECTRA = 5000;
+
+    @Test
+    public void givesTheSameSampleForTheSameSeed() {
+        int[] positions = getPositions();
+        int[] charges = getCharges();
+        int[] sample = new PsmSampler(500, 0.95, 0.05, 42).sample(positions, charges, SPECTRA);
+
+        assertArrayEquals(sample, new PsmSampler(500, 0.95, 0.05, 42).sample(positions, charges, SPECTRA));
+        assertFalse(Arrays.equals(sample, new PsmSampler(500, 0.95, 0.05, 43).sample(positions, charges, SPECTRA)));
+    }
+
+    @Test
+    public void samplesDistinctPsmsUpToTheSampleSize() {
+        int[] sample = new PsmSampler(500, 0.95, 0.05, 1).sample(getPositions(), getCharges(), SPECTRA);
+
+        assertEquals(500, sample.length);
+        Set<Integer> distinct = new HashSet<>();
+        for (int psm : sample) {
+            assertTrue(psm >= 0 && psm < PSMS);
+            distinct.add(psm);
+        }
+        assertEquals(sample.length, distinct.size());
+        assertEquals(PSMS, new PsmSampler(0, 0.95, 0.05, 1).sample(getPositions(), getCharges(), SPECTRA).length);
+        assertEquals(0, new PsmSampler(500, 0.95, 0.05, 1).sample(new int[0], new int[0], SPECTRA).length);
+    }
+
+    @Test
+    public void sharesTheSampleBetweenTheStrata() {
+        int[] positions = getPositions();
+        int[] charges = getCharges();
+        // a tenth of the PSMs have no spectrum, they get a tenth of the sample
+        for (int i = 0; i < PSMS; i += 10) {
+            positions[i] = -1;
+        }
+        int[] sample = new PsmSampler(1000, 0.95, 0.05, 7).sample(positions, charges, SPECTRA);
+
+        int notFound = 0;
+        int[] buckets = new int[PsmSampler.POSITION_BUCKETS];
+        for (int psm : sample) {
+            if (positions[psm] < 0) {
+                notFound++;
+            } else {
+                buckets[positions[psm] * PsmSampler.POSITION_BUCKETS / SPECTRA]++;
+            }
+        }
+        assertEquals(100, notFound);
+        for (int bucket : buckets) {
+            assertEquals(90, bucket, 2);
+        }
+    }
+
+    @Test
+    public void stopsOnceTheMismatchRateIsDecided() {
+        PsmSampler sampler = new PsmSampler(0, 0.95, 0.05, 1);
+
+        assertFalse(sampler.isDecided(0, 0));
+        assertFalse(sampler.isDecided(10, 0));
+        // no mismatch in 100 PSMs puts the upper bound of the rate below 5%
+        assertTrue(sampler.isDecided(100, 0));
+        assertTrue(sampler.isDecided(20, 20));
+        // a rate close to the accepted one stays undecided for much longer
+        assertFalse(sampler.isDecided(1000, 50));
+        assertFalse(sampler.isDecided(1000, 60));
+        assertTrue(sampler.isDecided(1000, 100));
+
+        double[] interval = sampler.getMismatchRateInterval(1000, 50);
+        assertTrue(interval[0] < 0.05 && interval[1] > 0.05);
+        assertTrue(interval[0] >= 0 && interval[1] <= 1);
+    }
+
+    @Test
+    public void computesTheNormalQuantile() {
+        assertEquals(0, PsmSampler.normalQuantile(0.5), 1e-9);
+        assertEquals(1.959964, PsmSampler.normalQuantile(0.975), 1e-6);
+        assertEquals(-2.326348, PsmSampler.normalQuantile(0.01), 1e-6);
+    }
+
+    private static int[] getPositions() {
+        int[] positions = new int[PSMS];
+        for (int i = 0; i < PSMS; i++) {
+            positions[i] = i / 2;
+        }
+        return positions;
+    }
+
+    private static int[] getCharges() {
+        int[] charges = new int[PSMS];
+        for (int i = 0; i < PSMS; i++) {
+            charges[i] = 2 + i % 2;
+        }
+        return charges;
+    }
+}
@@ -0,0 +1,91 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class SpectrumIndexCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clearMemory() {
+        SpectrumIndexCache.setMemoryCapacity(0);
+    }
+
+    @Test
+    public void readsBackWhatItWrote() throws Exception {
+        File peakFile = writePeakFile("BEGIN IONS\nEND IONS\n");
+        SpectrumIndex index = createIndex();
+        SpectrumIndexCache cache = new SpectrumIndexCache(folder.newFolder("cache"));
+        assertNull(cache.get(peakFile));
+        cache.put(peakFile, index);
+
+        SpectrumIndex cached = cache.get(peakFile);
+        assertNotNull(cached);
+        assertNotSame(index, cached);
+        assertArrayEquals(index.getIds(), cached.getIds());
+        assertArrayEquals(index.getTitles(), cached.getTitles());
+        assertArrayEquals(index.getScans(), cached.getScans());
+        assertArrayEquals(index.getOffsets(), cached.getOffsets());
+        assertArrayEquals(index.getMsLevels(), cached.getMsLevels());
+        assertArrayEquals(index.getPrecursorCharges(), cached.getPrecursorCharges());
+        assertArrayEquals(index.getPrecursorMzs(), cached.getPrecursorMzs(), 0);
+        assertEquals(2, cached.find("scan=3"));
+    }
+
+    @Test
+    public void ignoresAnEntryOfAnotherVersionOfTheFile() throws Exception {
+        File peakFile = writePeakFile("BEGIN IONS\nEND IONS\n");
+        SpectrumIndexCache cache = new SpectrumIndexCache(folder.newFolder("cache"));
+        cache.put(peakFile, createIndex());
+        Files.write(peakFile.toPath(), "BEGIN IONS\nTITLE=changed\nEND IONS\n".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(cache.get(peakFile));
+    }
+
+    @Test
+    public void keepsRecentIndexesInMemory() throws Exception {
+        File peakFile = writePeakFile("BEGIN IONS\nEND IONS\n");
+        SpectrumIndex index = createIndex();
+        SpectrumIndexCache.setMemoryCapacity(1);
+        SpectrumIndexCache cache = new SpectrumIndexCache(folder.newFolder("cache"));
+        cache.put(peakFile, index);
+
+        assertSame(index, cache.get(peakFile));
+    }
+
+    @Test
+    public void readsAnEmptyIndex() throws Exception {
+        File peakFile = writePeakFile("");
+        SpectrumIndexCache cache = new SpectrumIndexCache(folder.newFolder("cache"));
+        cache.put(peakFile, new SpectrumIndex(new String[0], new String[0], new int[0], new long[0], new byte[0],
+                new byte[0], new double[0]));
+
+        assertEquals(0, cache.get(peakFile).size());
+    }
+
+    private File writePeakFile(String content) throws Exception {
+        File peakFile = folder.newFile("spectra.mgf");
+        Files.write(peakFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return peakFile;
+    }
+
+    /**
+     * @return index with null, empty and non-ASCII strings
+     */
+    private static SpectrumIndex createIndex() {
+        return new SpectrumIndex(new String[]{"scan=1", null, "scan=3", ""},
+                new String[]{"first", "spectrum \u00e9 \u00fc \u4e2d", null, "last"},
+                new int[]{1, 2, 3, 4}, new long[]{0, 100, 3_000_000_000L, 3_000_000_500L},
+                new byte[]{2, 2, 1, 2}, new byte[]{2, 3, 0, 0}, new double[]{500.25, 600.5, Double.NaN, 700.75});
+    }
+}
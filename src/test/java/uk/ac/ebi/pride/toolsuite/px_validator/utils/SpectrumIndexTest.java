@@ -0,0 +1,60 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpectrumIndexTest {
+
+    @Test
+    public void findsMzMLSpectraByIdScanAndIdPart() {
+        SpectrumIndex index = new SpectrumIndex.Builder()
+                .add("controllerType=0 controllerNumber=1 scan=7", null, 7, 0, 2, 2, 500)
+                .add("controllerType=0 controllerNumber=1 scan=12", null, 12, 100, 2, 2, 600)
+                .build();
+
+        assertEquals(0, index.find("controllerType=0 controllerNumber=1 scan=7"));
+        assertEquals(1, index.find("12"));
+        assertEquals(1, index.find("scan=12"));
+        assertEquals(0, index.find("scan=7"));
+        // shared by both spectra
+        assertEquals(-1, index.find("controllerNumber=1"));
+        assertEquals(-1, index.find("012"));
+        assertEquals(-1, index.find("13"));
+        assertEquals(-1, index.find("controllerType=0 controllerNumber=1 scan=1"));
+    }
+
+    @Test
+    public void findsMgfSpectraByTitleAndTheScanOfTheTitle() {
+        SpectrumIndex index = new SpectrumIndex.Builder()
+                .add("1", "run1.scan=120.120.2", -1, 0, 2, 2, 500)
+                .add("2", "run1 spectrum 2", -1, 50, 2, 3, 600)
+                .add("3", "run1.scan=3.3.2", -1, 90, 2, 2, 700)
+                .build();
+
+        assertEquals(1, index.find("run1 spectrum 2"));
+        assertEquals(0, index.find("120"));
+        assertEquals(0, index.find("controllerType=0 controllerNumber=1 scan=120"));
+        // the native id comes first, 3 is also the scan of the third spectrum
+        assertEquals(2, index.find("3"));
+        assertEquals(1, index.find("2"));
+        assertEquals(-1, index.find("run1"));
+        assertEquals(-1, index.find(null));
+    }
+
+    @Test
+    public void findsEveryKeyOfALargeIndex() {
+        SpectrumIndex.Builder builder = new SpectrumIndex.Builder();
+        for (int i = 0; i < 50000; i++) {
+            builder.add("index=" + i, "file.scan=" + (i + 100000) + ".2", -1, i, 2, 2, 500);
+        }
+        SpectrumIndex index = builder.build();
+
+        for (int i = 0; i < 50000; i++) {
+            assertEquals(i, index.find("index=" + i));
+            assertEquals(i, index.find(Integer.toString(i + 100000)));
+            assertEquals(i, index.find("scan=" + (i + 100000)));
+        }
+        assertEquals(-1, index.find("index=50000"));
+    }
+}
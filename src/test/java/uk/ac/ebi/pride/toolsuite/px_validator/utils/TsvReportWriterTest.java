@@ -0,0 +1,35 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Test;
+import uk.ac.ebi.pride.data.validation.ValidationMessage;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TsvReportWriterTest {
+
+    @Test
+    public void writesAMissingValueAsBackslashN() throws IOException {
+        StringWriter out = new StringWriter();
+        try (TsvReportWriter writer = new TsvReportWriter(out)) {
+            writer.writeMessage(new ReportMessage(ValidationMessage.Type.ERROR, "Missing"));
+        }
+        String tsv = out.toString();
+        assertTrue(tsv.contains("message\t0\tcode\t\\N\n"));
+        assertTrue(tsv.contains("message\t0\tline\t\\N\n"));
+        assertTrue(tsv.contains("message\t0\tcolumn\t\\N\n"));
+        assertFalse(tsv.contains("null"));
+    }
+
+    @Test
+    public void escapesATextThatLooksLikeAMissingValue() throws IOException {
+        StringWriter out = new StringWriter();
+        try (TsvReportWriter writer = new TsvReportWriter(out)) {
+            writer.writeRecord(ReportWriter.SUMMARY, Collections.singletonMap("status", "\\N\tnull\n"));
+        }
+        assertTrue(out.toString().endsWith("summary\t0\tstatus\t\\\\N\\tnull\\n\n"));
+    }
+}
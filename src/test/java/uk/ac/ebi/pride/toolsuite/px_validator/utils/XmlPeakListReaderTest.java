@@ -0,0 +1,100 @@
+package uk.ac.ebi.pride.toolsuite.px_validator.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+
+public class XmlPeakListReaderTest {
+
+    private static final double[] MZS = {300.5, 150.25, 700.125};
+    private static final double[] INTENSITIES = {10, 20, 30};
+
+    @Test
+    public void readsZlibFloatArraysOfMzML() throws IOException {
+        String spectrum = "<spectrum index=\"0\" id=\"scan=7\" defaultArrayLength=\"3\"><binaryDataArrayList count=\"2\">"
+                + array(floats(MZS, ByteOrder.LITTLE_ENDIAN), "MS:1000514", "MS:1000521", "MS:1000574")
+                + array(doubles(INTENSITIES, ByteOrder.LITTLE_ENDIAN), "MS:1000515", "MS:1000523", "MS:1000576")
+                + "</binaryDataArrayList></spectrum>\n<spectrum index=\"1\" id=\"scan=8\">";
+        PeakList peaks = read(spectrum, Utility.FileType.MZML, "scan=7");
+
+        assertEquals(3, peaks.size());
+        assertEquals(150.25, peaks.getMz(0), 0);
+        assertEquals(20, peaks.getIntensity(0), 0);
+        assertEquals(700.125, peaks.getMz(2), 0);
+        assertEquals(30, peaks.getIntensity(2), 0);
+    }
+
+    @Test
+    public void readsTheFirstPeaksOfAnMzXMLScan() throws IOException {
+        double[] pairs = {300.5, 10, 150.25, 20};
+        String scan = "<scan num=\"12\" msLevel=\"2\"><precursorMz precursorCharge=\"2\">500.1</precursorMz>"
+                + "<peaks precision=\"64\" byteOrder=\"network\" contentType=\"m/z-int\" compressionType=\"zlib\">"
+                + Base64.getEncoder().encodeToString(deflate(doubles(pairs, ByteOrder.BIG_ENDIAN))) + "</peaks>"
+                + "<scan num=\"13\" msLevel=\"2\"><peaks precision=\"32\">AAAA</peaks></scan></scan>";
+        PeakList peaks = read(scan, Utility.FileType.MZXML, "12");
+
+        assertEquals(2, peaks.size());
+        assertEquals(150.25, peaks.getMz(0), 0);
+        assertEquals(10, peaks.getIntensity(1), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnAnotherSpectrum() throws IOException {
+        read("<spectrum index=\"1\" id=\"scan=8\"></spectrum>", Utility.FileType.MZML, "scan=7");
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnNumpressArrays() throws IOException {
+        String spectrum = "<spectrum index=\"0\" id=\"scan=7\"><binaryDataArrayList count=\"1\"><binaryDataArray>"
+                + "<cvParam accession=\"MS:1002312\" name=\"MS-Numpress linear prediction compression\"/>"
+                + "<cvParam accession=\"MS:1000514\" name=\"m/z array\"/><binary>AAAA</binary></binaryDataArray>"
+                + "</binaryDataArrayList></spectrum>";
+        read(spectrum, Utility.FileType.MZML, "scan=7");
+    }
+
+    private static PeakList read(String xml, Utility.FileType fileType, String id) throws IOException {
+        byte[] bytes = xml.getBytes(StandardCharsets.US_ASCII);
+        int end = xml.indexOf("\n<spectrum");
+        return XmlPeakListReader.read(new ByteArrayInputStream(bytes), end >= 0 ? end : -1, fileType, id);
+    }
+
+    private static String array(byte[] bytes, String array, String type, String compression) throws IOException {
+        byte[] encoded = "MS:1000574".equals(compression) ? deflate(bytes) : bytes;
+        return "<binaryDataArray><cvParam accession=\"" + type + "\" name=\"t\"/><cvParam accession=\"" + compression
+                + "\" name=\"c\"/><cvParam accession=\"" + array + "\" name=\"a\"/><binary>"
+                + Base64.getEncoder().encodeToString(encoded) + "</binary></binaryDataArray>";
+    }
+
+    private static byte[] floats(double[] values, ByteOrder order) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES).order(order);
+        for (double value : values) {
+            buffer.putFloat((float) value);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] doubles(double[] values, ByteOrder order) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Double.BYTES).order(order);
+        for (double value : values) {
+            buffer.putDouble(value);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] deflate(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}